@@ -1,5 +1,7 @@
 package ibm.maven.plugins.ace.mojos;
 
+import ibm.maven.plugins.ace.utils.BuildTracer;
+
 import java.io.File;
 import java.io.IOException;
 
@@ -13,7 +15,7 @@ import org.codehaus.plexus.util.FileUtils;
  * Cleans up the ${ace.workspace} directory. Build errors will appear in the ace Toolkit if .msgflow files are left under the ${ace.workspace} - the path determines the Namespace of the flow and that
  * certainly won't match the original directory structure.
  */
-@Mojo(name = "clean-bar-build-workspace", requiresProject = false)
+@Mojo(name = "clean-bar-build-workspace", requiresProject = false, threadSafe = true)
 public class CleanBarBuildWorkspaceMojo extends AbstractMojo {
 
     /**
@@ -28,7 +30,23 @@ public class CleanBarBuildWorkspaceMojo extends AbstractMojo {
     @Parameter(property = "ace.debugWorkspace", defaultValue = "true")
     protected boolean debugWorkspace;
 
+    /**
+     * The file recording the time spent in the goals of the build as a Chrome trace. A relative path is resolved against
+     * the module, so use an absolute one to trace a reactor into one file. No trace is written if it isn't set.
+     */
+    @Parameter(property = "ace.traceFile")
+    protected File traceFile;
+
     public void execute() throws MojoFailureException {
+        BuildTracer.Span span = BuildTracer.startMojo("clean-bar-build-workspace", null, traceFile, getLog());
+        try {
+            cleanWorkspace();
+        } finally {
+            span.end();
+        }
+    }
+
+    private void cleanWorkspace() throws MojoFailureException {
         if (debugWorkspace) {
             getLog().info("debugWorkspace enabled - workspace will not be cleaned");
         } else {
@@ -0,0 +1,430 @@
+package ibm.maven.plugins.ace.mojos;
+
+import ibm.maven.plugins.ace.utils.BarBuildCache;
+import ibm.maven.plugins.ace.utils.BuildTracer;
+import ibm.maven.plugins.ace.utils.ZipRewriter;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.apache.maven.execution.MavenSession;
+import org.apache.maven.model.Plugin;
+import org.apache.maven.model.PluginExecution;
+import org.apache.maven.plugin.MojoExecution;
+import org.apache.maven.plugin.MojoExecutionException;
+import org.apache.maven.plugin.MojoFailureException;
+import org.apache.maven.plugin.PluginParameterExpressionEvaluator;
+import org.apache.maven.plugin.descriptor.MojoDescriptor;
+import org.apache.maven.plugin.descriptor.PluginDescriptor;
+import org.apache.maven.plugins.annotations.Mojo;
+import org.apache.maven.plugins.annotations.Parameter;
+import org.apache.maven.project.MavenProject;
+import org.codehaus.plexus.component.configurator.expression.ExpressionEvaluationException;
+import org.codehaus.plexus.util.FileUtils;
+import org.codehaus.plexus.util.xml.Xpp3Dom;
+
+/**
+ * Builds the bar files of all ace-bar modules of the reactor with as few mqsicreatebar runs as possible. The projects
+ * of the module workspaces are combined into shared workspaces, one bar file is built per shared workspace and then
+ * split into the bar files of the modules. Modules whose workspaces contain different versions of the same project
+ * can't share a workspace, so they are built in separate runs.
+ *
+ * The module workspaces must have been prepared, and create-bar of the modules then skips mqsicreatebar as long as their
+ * workspace is unchanged, eg.:
+ *
+ * <pre>
+ * mvn process-resources ibm.maven.plugins:ace-maven-plugin:create-bar-aggregate install
+ * </pre>
+ *
+ * The toolkit installation (toolkitInstallDir, toolkitVersion, ...) is that of the project the goal is run on. The
+ * applicationName, workspace, barName, cleanBuild, esql21 and skipWSErrorCheck of a module are resolved like Maven does
+ * for its create-bar execution: from the execution and plugin configuration, the -Dace.* properties and the defaults.
+ * Only modules with the same mqsicreatebar options are built together.
+ */
+@Mojo(name = "create-bar-aggregate", aggregator = true, threadSafe = true)
+public class CreateBarAggregateMojo extends CreateBarMojo {
+
+    private static final String ACE_BAR_PACKAGING = "ace-bar";
+
+    private static final String PLUGIN_KEY = "ibm.maven.plugins:ace-maven-plugin";
+
+    private static final String CREATE_BAR_GOAL = "create-bar";
+
+    /**
+     * The directory holding the shared workspaces and bar files.
+     */
+    @Parameter(property = "ace.aggregateDirectory", defaultValue = "${project.build.directory}/ace/aggregate", required = true)
+    protected File aggregateDirectory;
+
+    /**
+     * The descriptor of this plugin, for resolving the create-bar parameters of the modules
+     */
+    @Parameter(defaultValue = "${plugin}", readonly = true)
+    protected PluginDescriptor pluginDescriptor;
+
+    /**
+     * an ace-bar module of the reactor
+     */
+    protected static class BarModule {
+
+        protected MavenProject project;
+
+        protected File workspace;
+
+        protected File barName;
+
+        protected boolean cleanBuild;
+
+        protected boolean esql21;
+
+        protected boolean skipWSErrorCheck;
+
+        protected final List<String> apps = new ArrayList<String>();
+
+        protected final List<String> libs = new ArrayList<String>();
+
+        protected final List<String> policies = new ArrayList<String>();
+
+        protected final Map<String, String> projectDigests = new HashMap<String, String>();
+
+        protected String fingerprint;
+
+        /**
+         * @return the mqsicreatebar options, modules can only be built together if they are the same
+         */
+        private List<Boolean> getOptions() {
+            return Arrays.asList(cleanBuild, esql21, skipWSErrorCheck);
+        }
+    }
+
+    @Override
+    public void execute() throws MojoFailureException, MojoExecutionException {
+        BuildTracer.Span span = BuildTracer.startMojo("create-bar-aggregate", project, traceFile, getLog());
+        try {
+            createAggregateBars();
+        } finally {
+            span.end();
+        }
+    }
+
+    private void createAggregateBars() throws MojoFailureException, MojoExecutionException {
+        List<BarModule> modules = new ArrayList<BarModule>();
+        for (MavenProject module : session.getProjects()) {
+            if (ACE_BAR_PACKAGING.equals(module.getPackaging())) {
+                modules.add(getBarModule(module));
+            }
+        }
+        if (modules.isEmpty()) {
+            getLog().info("No ace-bar modules in the reactor, nothing to build");
+            return;
+        }
+
+        List<List<BarModule>> groups = groupModules(modules);
+        getLog().info("Building the bar files of " + modules.size() + " modules with " + groups.size() + " mqsicreatebar runs");
+        for (int i = 0; i < groups.size(); i++) {
+            buildGroup(i, groups.get(i));
+        }
+    }
+
+    /**
+     * reads the settings of a module and classifies its projects
+     *
+     * @param module an ace-bar module
+     * @return the module
+     * @throws MojoFailureException If an exception occurs
+     */
+    private BarModule getBarModule(MavenProject module) throws MojoFailureException {
+        BarModule barModule = new BarModule();
+        barModule.project = module;
+
+        MojoExecution execution = getCreateBarExecution(module);
+        PluginParameterExpressionEvaluator evaluator = getCreateBarEvaluator(module, execution);
+        barModule.workspace = getModuleFile(module, execution, evaluator, "workspace");
+        barModule.barName = getModuleFile(module, execution, evaluator, "barName");
+        barModule.cleanBuild = Boolean.parseBoolean(getModuleSetting(module, execution, evaluator, "cleanBuild"));
+        barModule.esql21 = Boolean.parseBoolean(getModuleSetting(module, execution, evaluator, "esql21"));
+        barModule.skipWSErrorCheck = Boolean.parseBoolean(getModuleSetting(module, execution, evaluator, "skipWSErrorCheck"));
+        if (!barModule.workspace.isDirectory()) {
+            throw new MojoFailureException("The workspace of " + module.getArtifactId() + " hasn't been prepared: "
+                    + barModule.workspace.getAbsolutePath());
+        }
+
+        classifyProjects(module, barModule.workspace, getModuleSetting(module, execution, evaluator, "applicationName"),
+                barModule.apps, barModule.libs, barModule.policies);
+
+        try {
+            for (String projectName : getProjectNames(barModule.workspace)) {
+                barModule.projectDigests.put(projectName, BarBuildCache.fingerprint(new File(barModule.workspace, projectName),
+                        Collections.<String> emptyList(), null, null));
+            }
+            barModule.fingerprint = getAggregateFingerprint(barModule.workspace, getModuleParams(barModule));
+        } catch (IOException e) {
+            throw new MojoFailureException("Error reading the workspace " + barModule.workspace.getAbsolutePath(), e);
+        }
+        return barModule;
+    }
+
+    /**
+     * @param module an ace-bar module
+     * @return the mqsicreatebar parameters create-bar of the module would use
+     */
+    protected List<String> getModuleParams(BarModule module) {
+        return constructParams(module.workspace, module.barName, module.cleanBuild, module.esql21, module.skipWSErrorCheck,
+                getObjectParams(module.apps, module.libs, module.policies), createBarTraceFile);
+    }
+
+    /**
+     * puts the modules into as few groups as possible, where the modules of a group have the same mqsicreatebar options
+     * and don't contain different versions of the same project
+     *
+     * @param modules the ace-bar modules
+     * @return the groups
+     */
+    protected List<List<BarModule>> groupModules(List<BarModule> modules) {
+        List<List<BarModule>> groups = new ArrayList<List<BarModule>>();
+        List<Map<String, String>> groupDigests = new ArrayList<Map<String, String>>();
+        for (BarModule module : modules) {
+            int group = 0;
+            for (; group < groups.size(); group++) {
+                if (groups.get(group).get(0).getOptions().equals(module.getOptions())
+                        && isCompatible(groupDigests.get(group), module.projectDigests)) {
+                    break;
+                }
+            }
+            if (group == groups.size()) {
+                groups.add(new ArrayList<BarModule>());
+                groupDigests.add(new HashMap<String, String>());
+            } else {
+                getLog().debug(module.project.getArtifactId() + " conflicts with the options or projects of the previous groups");
+            }
+            groups.get(group).add(module);
+            groupDigests.get(group).putAll(module.projectDigests);
+        }
+        return groups;
+    }
+
+    private boolean isCompatible(Map<String, String> groupDigests, Map<String, String> projectDigests) {
+        for (Map.Entry<String, String> project : projectDigests.entrySet()) {
+            String digest = groupDigests.get(project.getKey());
+            if (digest != null && !digest.equals(project.getValue())) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * builds the bar files of a group of modules in one shared workspace
+     *
+     * @throws MojoFailureException If an exception occurs
+     */
+    private void buildGroup(int index, List<BarModule> group) throws MojoFailureException {
+        File sharedWorkspace = new File(aggregateDirectory, "workspace-" + index);
+        File combinedBar = new File(aggregateDirectory, "aggregate-" + index + ".bar");
+
+        Set<String> apps = new LinkedHashSet<String>();
+        Set<String> libs = new LinkedHashSet<String>();
+        Set<String> policies = new LinkedHashSet<String>();
+        try {
+            // start from scratch, so that no projects of earlier builds are left
+            FileUtils.deleteDirectory(sharedWorkspace);
+            sharedWorkspace.mkdirs();
+            for (BarModule module : group) {
+                getLog().info("Adding the projects of " + module.project.getArtifactId() + " to " + sharedWorkspace.getAbsolutePath());
+                for (String projectName : module.projectDigests.keySet()) {
+                    File target = new File(sharedWorkspace, projectName);
+                    if (!target.exists()) {
+                        FileUtils.copyDirectoryStructure(new File(module.workspace, projectName), target);
+                    }
+                }
+                apps.addAll(module.apps);
+                libs.addAll(module.libs);
+                policies.addAll(module.policies);
+            }
+        } catch (IOException e) {
+            throw new MojoFailureException("Error preparing the shared workspace " + sharedWorkspace.getAbsolutePath(), e);
+        }
+
+        workspace = sharedWorkspace;
+        barName = combinedBar;
+        createBarTraceFile = new File(aggregateDirectory, "createbartrace-" + index + ".txt");
+        cleanBuild = group.get(0).cleanBuild;
+        esql21 = group.get(0).esql21;
+        skipWSErrorCheck = group.get(0).skipWSErrorCheck;
+        executeMqsiCreateBar(constructParams(getObjectParams(new ArrayList<String>(apps), new ArrayList<String>(libs),
+                new ArrayList<String>(policies))));
+
+        Set<String> allObjects = new LinkedHashSet<String>();
+        allObjects.addAll(apps);
+        allObjects.addAll(libs);
+        allObjects.addAll(policies);
+        for (BarModule module : group) {
+            Set<String> moduleObjects = new LinkedHashSet<String>();
+            moduleObjects.addAll(module.apps);
+            moduleObjects.addAll(module.libs);
+            moduleObjects.addAll(module.policies);
+            try {
+                splitBar(combinedBar, module.barName, moduleObjects, allObjects);
+                FileUtils.fileWrite(getAggregateMarker(module.barName).getAbsolutePath(), module.fingerprint);
+            } catch (IOException e) {
+                throw new MojoFailureException("Error writing the bar file " + module.barName.getAbsolutePath(), e);
+            }
+            getLog().info("Wrote " + module.barName.getAbsolutePath());
+        }
+    }
+
+    /**
+     * writes the bar file of a module: the combined bar file without the applications, libraries and policy projects
+     * of the other modules
+     *
+     * @param combinedBar the bar file built from the shared workspace
+     * @param moduleBar the bar file of the module to be written
+     * @param moduleObjects the applications, libraries and policy projects of the module
+     * @param allObjects the applications, libraries and policy projects of all modules built together
+     * @throws IOException if the bar file can't be read or written
+     */
+    protected static void splitBar(File combinedBar, File moduleBar, final Set<String> moduleObjects, final Set<String> allObjects)
+            throws IOException {
+        moduleBar.getAbsoluteFile().getParentFile().mkdirs();
+        ZipRewriter.rewrite(combinedBar, moduleBar, new ZipRewriter.EntryTransformer() {
+            @Override
+            public boolean remove(String name) {
+                // the deployable objects are the top-level entries, eg. App1.appzip or Lib1.libzip
+                if (name.indexOf('/') >= 0) {
+                    return false;
+                }
+                int dot = name.lastIndexOf('.');
+                String objectName = dot > 0 ? name.substring(0, dot) : name;
+                return allObjects.contains(objectName) && !moduleObjects.contains(objectName);
+            }
+        });
+    }
+
+    /**
+     * @return the names of the projects in a workspace, without .metadata and the like
+     */
+    private static List<String> getProjectNames(File workspace) {
+        List<String> projectNames = new ArrayList<String>();
+        File[] files = workspace.listFiles();
+        if (files != null) {
+            for (File file : files) {
+                if (file.isDirectory() && !file.getName().startsWith(".")) {
+                    projectNames.add(file.getName());
+                }
+            }
+        }
+        Collections.sort(projectNames);
+        return projectNames;
+    }
+
+    /**
+     * @return the create-bar execution of a module, with the configuration Maven would use for it
+     * @throws MojoFailureException if the module doesn't have exactly one create-bar execution
+     */
+    private MojoExecution getCreateBarExecution(MavenProject module) throws MojoFailureException {
+        if (pluginDescriptor == null || pluginDescriptor.getMojo(CREATE_BAR_GOAL) == null) {
+            throw new MojoFailureException("Can't determine the create-bar settings of " + module.getArtifactId()
+                    + ", the plugin descriptor isn't available");
+        }
+        Plugin plugin = module.getPlugin(PLUGIN_KEY);
+        Xpp3Dom pluginConfiguration = plugin == null ? null : (Xpp3Dom) plugin.getConfiguration();
+
+        // the ace-bar packaging binds create-bar as default-create-bar, which can be configured like any execution
+        String executionId = "default-" + CREATE_BAR_GOAL;
+        Xpp3Dom configuration = pluginConfiguration;
+        if (plugin != null) {
+            int found = 0;
+            for (PluginExecution execution : plugin.getExecutions()) {
+                if (execution.getGoals().contains(CREATE_BAR_GOAL) || executionId.equals(execution.getId())) {
+                    executionId = execution.getId();
+                    configuration = Xpp3Dom.mergeXpp3Dom((Xpp3Dom) execution.getConfiguration(), pluginConfiguration);
+                    found++;
+                }
+            }
+            if (found > 1) {
+                throw new MojoFailureException("Can't determine the create-bar settings of " + module.getArtifactId()
+                        + ", it has " + found + " create-bar executions");
+            }
+        }
+
+        MojoExecution execution = new MojoExecution(pluginDescriptor.getMojo(CREATE_BAR_GOAL), executionId);
+        execution.setConfiguration(configuration == null ? new Xpp3Dom("configuration") : configuration);
+        return execution;
+    }
+
+    /**
+     * @return an evaluator for the create-bar parameters of a module, with the module as current project
+     */
+    private PluginParameterExpressionEvaluator getCreateBarEvaluator(MavenProject module, MojoExecution execution) {
+        MavenSession moduleSession = session.clone();
+        moduleSession.setCurrentProject(module);
+        return new PluginParameterExpressionEvaluator(moduleSession, execution);
+    }
+
+    private File getModuleFile(MavenProject module, MojoExecution execution, PluginParameterExpressionEvaluator evaluator,
+            String name) throws MojoFailureException {
+        String value = getModuleSetting(module, execution, evaluator, name);
+        if (value == null) {
+            throw new MojoFailureException("Can't determine the " + name + " of " + module.getArtifactId());
+        }
+        File file = new File(value);
+        return file.isAbsolute() ? file : new File(module.getBasedir(), value);
+    }
+
+    /**
+     * resolves a create-bar parameter of a module like Maven does: the configured value, otherwise the value of the
+     * parameter's property (eg. -Dace.esql21), otherwise the default value
+     *
+     * @return the value, or null if the parameter isn't set
+     * @throws MojoFailureException if the value can't be resolved
+     */
+    private String getModuleSetting(MavenProject module, MojoExecution execution, PluginParameterExpressionEvaluator evaluator,
+            String name) throws MojoFailureException {
+        MojoDescriptor descriptor = execution.getMojoDescriptor();
+        org.apache.maven.plugin.descriptor.Parameter parameter = descriptor.getParameterMap().get(name);
+        if (parameter == null) {
+            throw new MojoFailureException("Unknown create-bar parameter: " + name);
+        }
+
+        List<String> expressions = new ArrayList<String>();
+        Xpp3Dom child = execution.getConfiguration().getChild(name);
+        if (child != null && child.getValue() != null) {
+            expressions.add(child.getValue().trim());
+        }
+        expressions.add(parameter.getExpression());
+        expressions.add(parameter.getDefaultValue());
+
+        for (String expression : expressions) {
+            if (expression == null || expression.length() == 0) {
+                continue;
+            }
+            Object value;
+            try {
+                value = evaluator.evaluate(expression);
+            } catch (ExpressionEvaluationException e) {
+                throw new MojoFailureException("Can't determine the create-bar parameter " + name + " of "
+                        + module.getArtifactId() + ": " + expression, e);
+            }
+            if (value == null) {
+                continue;
+            }
+            String result = value.toString().trim();
+            if (result.contains("${")) {
+                throw new MojoFailureException("Can't determine the create-bar parameter " + name + " of "
+                        + module.getArtifactId() + ": " + result);
+            }
+            if (result.length() > 0) {
+                return result;
+            }
+        }
+        return null;
+    }
+}
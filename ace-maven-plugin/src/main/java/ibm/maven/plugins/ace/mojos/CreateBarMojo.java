@@ -1,15 +1,26 @@
 package ibm.maven.plugins.ace.mojos;
 
+import ibm.maven.plugins.ace.utils.AsyncLogForwarder;
+import ibm.maven.plugins.ace.utils.BarAssembler;
+import ibm.maven.plugins.ace.utils.BarBuildCache;
+import ibm.maven.plugins.ace.utils.BuildTracer;
 import ibm.maven.plugins.ace.utils.EclipseProjectUtils;
-import ibm.maven.plugins.ace.utils.ProcessOutputLogger;
+import ibm.maven.plugins.ace.utils.HostProcessSemaphore;
+import ibm.maven.plugins.ace.utils.ProcessMetrics;
+import ibm.maven.plugins.ace.utils.ProcessOutputPump;
+import ibm.maven.plugins.ace.utils.ProcessPriority;
+import ibm.maven.plugins.ace.utils.ProcessWatchdog;
+import ibm.maven.plugins.ace.utils.ToolkitDaemonClient;
 import ibm.maven.plugins.ace.utils.ZipUtils;
 
 import java.io.File;
 import java.io.IOException;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
 import java.util.List;
 import java.util.UUID;
+import java.util.regex.Pattern;
 
 import org.apache.maven.execution.MavenSession;
 import org.apache.maven.model.Dependency;
@@ -23,6 +34,7 @@ import org.apache.maven.plugins.annotations.Mojo;
 import org.apache.maven.plugins.annotations.Parameter;
 import org.apache.maven.project.MavenProject;
 import org.codehaus.plexus.util.FileUtils;
+import org.codehaus.plexus.util.cli.CommandLineUtils;
 
 /**
  * Creates a .bar file from a ace-bar Project.
@@ -30,9 +42,15 @@ import org.codehaus.plexus.util.FileUtils;
  * Implemented with help from: https://github.com/TimMoore/mojo-executor/blob/master/README.md
  */
 
-@Mojo(name = "create-bar", defaultPhase = LifecyclePhase.COMPILE)
+@Mojo(name = "create-bar", defaultPhase = LifecyclePhase.COMPILE, threadSafe = true)
 public class CreateBarMojo extends AbstractMojo {
 
+    /**
+     * the messages of a workspace that is locked by another toolkit
+     */
+    private static final List<String> DEFAULT_RETRY_PATTERNS = Arrays.asList("(?i)workspace (is )?in use", "(?i)workspace cannot be created",
+            "(?i)currently in use by another");
+
     /**
      * The name of the BAR (compressed file format) archive file where the
      * result is stored.
@@ -46,6 +64,73 @@ public class CreateBarMojo extends AbstractMojo {
     @Parameter(property = "ace.applybaroverride", defaultValue = "true", required = true)
     protected Boolean applyBarOverride;
 
+    /**
+     * Whether deployAsSource bar files should be assembled in-process from the workspace instead of by mqsicreatebar.
+     * mqsicreatebar is still used if the workspace contains anything that needs to be compiled. The workspace isn't
+     * validated by the toolkit then, so this is only done together with skipWSErrorCheck: errors mqsicreatebar would
+     * report end up in the bar file and only show when it is deployed.
+     */
+    @Parameter(property = "ace.inProcessBarBuild", defaultValue = "false")
+    protected boolean inProcessBarBuild;
+
+    /**
+     * Whether bar files created by mqsicreatebar should be cached and restored when the workspace, the command line and
+     * the toolkit are unchanged
+     */
+    @Parameter(property = "ace.barCache", defaultValue = "false")
+    protected boolean barCache;
+
+    /**
+     * The directory holding the cached bar files
+     */
+    @Parameter(property = "ace.barCacheDirectory", defaultValue = "${user.home}/.ace/bar-cache")
+    protected File barCacheDirectory;
+
+    /**
+     * The maximum size of the bar cache in megabytes. The least recently used entries are evicted first. 0 disables
+     * the size limit.
+     */
+    @Parameter(property = "ace.barCacheMaxSize", defaultValue = "2048")
+    protected long barCacheMaxSize;
+
+    /**
+     * The number of days after which unused entries are evicted from the bar cache. 0 disables the age limit.
+     */
+    @Parameter(property = "ace.barCacheMaxAge", defaultValue = "14")
+    protected int barCacheMaxAge;
+
+    /**
+     * Whether bar files should be built by a long running toolkit process (see ToolkitDaemonClient for the protocol)
+     * instead of starting mqsicreatebar for every module. mqsicreatebar is started as usual if no daemon is available.
+     */
+    @Parameter(property = "ace.toolkitDaemon", defaultValue = "false")
+    protected boolean toolkitDaemon;
+
+    /**
+     * The command line starting the toolkit daemon if none is running. If empty, an already running daemon is used
+     * but none is started.
+     */
+    @Parameter(property = "ace.toolkitDaemonCommand", defaultValue = "")
+    protected String toolkitDaemonCommand;
+
+    /**
+     * The directory holding the port files (and logs) of the toolkit daemons, one per toolkit installation.
+     */
+    @Parameter(property = "ace.toolkitDaemonDirectory", defaultValue = "${user.home}/.ace/toolkit-daemon")
+    protected File toolkitDaemonDirectory;
+
+    /**
+     * The number of minutes after which an idle toolkit daemon exits.
+     */
+    @Parameter(property = "ace.toolkitDaemonIdleTimeout", defaultValue = "30")
+    protected int toolkitDaemonIdleTimeout;
+
+    /**
+     * The number of seconds to wait for a newly started toolkit daemon to answer.
+     */
+    @Parameter(property = "ace.toolkitDaemonStartupTimeout", defaultValue = "120")
+    protected int toolkitDaemonStartupTimeout;
+
     /**
      * Refreshes the projects in the workspace and then invokes a clean build before new items are added to the BAR file.
      */
@@ -58,6 +143,13 @@ public class CreateBarMojo extends AbstractMojo {
     @Parameter(property = "ace.createBarTraceFile", defaultValue = "${project.build.directory}/createbartrace.txt", required = true)
     protected File createBarTraceFile;
 
+    /**
+     * The directory the command files executing mqsicreatebar are written to, one per module so that the modules of a
+     * parallel build (-T) don't share it
+     */
+    @Parameter(property = "ace.commandDirectory", defaultValue = "${project.build.directory}/ace/tmp", required = true)
+    protected File commandDirectory;
+
     /**
      * Include "-deployAsSource" parameter?
      */
@@ -134,12 +226,111 @@ public class CreateBarMojo extends AbstractMojo {
     @Parameter(property = "ace.discardJarsPattern", defaultValue = "**/javacompute_**.jar,**/jplugin2_**.jar")
     protected String discardJarsPattern;
 
+    /**
+     * Whether the jars are also removed from the applications and libraries nested in the bar file, where ace v11 and
+     * later place them
+     */
+    @Parameter(property = "ace.discardJarsInNestedArchives", defaultValue = "true")
+    protected boolean discardJarsInNestedArchives;
+
     /**
      * Whether classloaders are in use with this bar
      */
     @Parameter(property = "ace.useClassloaders", defaultValue = "false", required = true)
     protected Boolean useClassloaders;
 
+    /**
+     * The level the output of mqsicreatebar is logged at (error, warn, info, debug or off), unless a rule or the
+     * severity of a BIP message decides otherwise
+     */
+    @Parameter(property = "ace.toolkitLogLevel", defaultValue = "info")
+    protected String toolkitLogLevel;
+
+    /**
+     * Rules deciding the level of mqsicreatebar output lines, as level:regex, eg. debug:^Building
+     */
+    @Parameter(property = "ace.toolkitLogRules")
+    protected List<String> toolkitLogRules;
+
+    /**
+     * Regular expressions of mqsicreatebar output lines that aren't logged
+     */
+    @Parameter(property = "ace.toolkitLogExcludes")
+    protected List<String> toolkitLogExcludes;
+
+    /**
+     * The number of last lines of mqsicreatebar output logged in full if it fails
+     */
+    @Parameter(property = "ace.toolkitLogTailLines", defaultValue = "200")
+    protected int toolkitLogTailLines;
+
+    /**
+     * The maximum number of minutes mqsicreatebar may run before it is killed together with the processes it started,
+     * 0 for no limit
+     */
+    @Parameter(property = "ace.processTimeout", defaultValue = "0")
+    protected int processTimeout;
+
+    /**
+     * The maximum number of minutes mqsicreatebar may run without writing any output before it is killed, 0 for no
+     * limit
+     */
+    @Parameter(property = "ace.processInactivityTimeout", defaultValue = "0")
+    protected int processInactivityTimeout;
+
+    /**
+     * The number of times mqsicreatebar is executed again if it failed with a transient error
+     */
+    @Parameter(property = "ace.processRetries", defaultValue = "1")
+    protected int processRetries;
+
+    /**
+     * Regular expressions of mqsicreatebar output lines indicating a transient error, by default the ones of a locked
+     * workspace
+     */
+    @Parameter(property = "ace.processRetryPatterns")
+    protected List<String> processRetryPatterns;
+
+    /**
+     * The number of seconds to wait before executing mqsicreatebar again
+     */
+    @Parameter(property = "ace.processRetryDelay", defaultValue = "10")
+    protected int processRetryDelay;
+
+    /**
+     * The maximum number of mqsicreatebar processes running at the same time on this host, across all builds using the
+     * same ace.processSlotsDirectory, 0 for no limit
+     */
+    @Parameter(property = "ace.maxConcurrentToolkits", defaultValue = "0")
+    protected int maxConcurrentToolkits;
+
+    /**
+     * The directory shared by the builds on this host to limit the number of processes running at the same time and to
+     * lock the workspaces mqsicreatebar runs in
+     */
+    @Parameter(property = "ace.processSlotsDirectory", defaultValue = "${java.io.tmpdir}/ace-process-slots")
+    protected File processSlotsDirectory;
+
+    /**
+     * The niceness mqsicreatebar is started with (Unix only), eg. 10, unset to keep the priority of Maven
+     */
+    @Parameter(property = "ace.processNice")
+    protected Integer processNice;
+
+    /**
+     * The ionice scheduling class mqsicreatebar is started with (Linux only), eg. 3 for idle, unset to keep the I/O
+     * priority of Maven
+     */
+    @Parameter(property = "ace.processIoniceClass")
+    protected Integer processIoniceClass;
+
+    /**
+     * The file recording the time spent in the goals of the build as a Chrome trace. A relative path is resolved against
+     * the module, so use an absolute one to trace a reactor into one file. No trace is written if it isn't set.
+     */
+    @Parameter(property = "ace.traceFile")
+    protected File traceFile;
+
     /**
      * The Maven Project Object
      */
@@ -158,11 +349,31 @@ public class CreateBarMojo extends AbstractMojo {
     @Component
     protected BuildPluginManager buildPluginManager;
 
-    private List<String> addObjectsAppsLibs() throws MojoFailureException {
-        List<String> params = new ArrayList<String>();
-        List<String> apps = new ArrayList<String>();
-        List<String> libs = new ArrayList<String>();
-        List<String> policies = new ArrayList<String>();
+    /**
+     * sorts the bar project and its direct dependencies into applications, libraries and policy projects
+     * 
+     * @param apps receives the applications
+     * @param libs receives the libraries
+     * @param policies receives the policy projects
+     * @throws MojoFailureException If an exception occurs
+     */
+    private void classifyProjects(List<String> apps, List<String> libs, List<String> policies) throws MojoFailureException {
+        classifyProjects(project, workspace, applicationName, apps, libs, policies);
+    }
+
+    /**
+     * sorts a bar project and its direct dependencies into applications, libraries and policy projects
+     * 
+     * @param project the bar project
+     * @param workspace the workspace the projects have been unpacked to
+     * @param applicationName the name of the application (or library or policy project) built by the bar project
+     * @param apps receives the applications
+     * @param libs receives the libraries
+     * @param policies receives the policy projects
+     * @throws MojoFailureException If an exception occurs
+     */
+    protected static void classifyProjects(MavenProject project, File workspace, String applicationName, List<String> apps,
+            List<String> libs, List<String> policies) throws MojoFailureException {
 
         // loop through the projects, adding them as "-a" Applications, "-l"
         // libraries or the deployable artefacts as "-o" objects
@@ -175,12 +386,19 @@ public class CreateBarMojo extends AbstractMojo {
        //If the project is an application, add it as application else add it as library - Added below code on 08/06/2018
         //Updated the code to support PolicyProjects in ACE v11
        
-        if (EclipseProjectUtils.isApplication(new File(workspace, applicationName), getLog())) {
+        switch (EclipseProjectUtils.getProjectKind(new File(workspace, applicationName))) {
+        case APPLICATION:
             apps.add(applicationName);
-        } else if (EclipseProjectUtils.isLibrary(new File(workspace, applicationName), getLog())) {
+            break;
+        case LIBRARY:
+        case SHARED_LIBRARY:
             libs.add(applicationName);
-        }else if (EclipseProjectUtils.isPolicyProject(new File(workspace, applicationName), getLog())) {
-        	policies.add(applicationName);
+            break;
+        case POLICY_PROJECT:
+            policies.add(applicationName);
+            break;
+        default:
+            break;
         }
         
         //apps.add(applicationName);
@@ -194,20 +412,40 @@ public class CreateBarMojo extends AbstractMojo {
             }
 
             // the projectName is the directoryName is the artifactId
-            projectName = dependency.getArtifactId();
+            String projectName = dependency.getArtifactId();
 
-            // Updated to exclude Shared library 
-            if (EclipseProjectUtils.isApplication(new File(workspace, projectName), getLog())) {
+            // Updated to exclude Shared library (and policy projects, which are only added as the bar project itself)
+            switch (EclipseProjectUtils.getProjectKind(new File(workspace, projectName))) {
+            case APPLICATION:
                 apps.add(projectName);
-            } else if (EclipseProjectUtils.isLibrary(new File(workspace, projectName), getLog())) {
-            	if (!EclipseProjectUtils.isSharedLibrary(new File(workspace, projectName), getLog())){
+                break;
+            case LIBRARY:
                 libs.add(projectName);
-            	}
-            else if (EclipseProjectUtils.isPolicyProject(new File(workspace, projectName), getLog())) {
-            	policies.add(projectName);
-                }
+                break;
+            default:
+                break;
             }
         }
+    }
+
+    private List<String> addObjectsAppsLibs() throws MojoFailureException {
+        List<String> apps = new ArrayList<String>();
+        List<String> libs = new ArrayList<String>();
+        List<String> policies = new ArrayList<String>();
+
+        classifyProjects(apps, libs, policies);
+
+        return getObjectParams(apps, libs, policies);
+    }
+
+    /**
+     * @param apps the applications
+     * @param libs the libraries
+     * @param policies the policy projects
+     * @return the mqsicreatebar parameters adding them to the bar file
+     */
+    protected List<String> getObjectParams(List<String> apps, List<String> libs, List<String> policies) {
+        List<String> params = new ArrayList<String>();
 
         // if there are applications, add them
         if (!apps.isEmpty()) {
@@ -248,10 +486,35 @@ public class CreateBarMojo extends AbstractMojo {
     }
 
     protected List<String> constructParams() throws MojoFailureException {
+        return constructParams(addObjectsAppsLibs());
+    }
+
+    /**
+     * @param objectParams the parameters adding the applications, libraries and policy projects, see
+     *            {@link #getObjectParams(List, List, List)}
+     * @return the mqsicreatebar parameters for the workspace and bar file of this mojo
+     * @throws MojoFailureException If an exception occurs
+     */
+    protected List<String> constructParams(List<String> objectParams) throws MojoFailureException {
+        createWorkspaceDirectory();
+        return constructParams(workspace, barName, cleanBuild, esql21, skipWSErrorCheck, objectParams, createBarTraceFile);
+    }
+
+    /**
+     * @param workspace the workspace
+     * @param barName the bar file to be built
+     * @param cleanBuild whether to clean the projects before building
+     * @param esql21 whether to compile ESQL for broker version 2.1
+     * @param skipWSErrorCheck whether to build although the workspace contains errors
+     * @param objectParams the parameters adding the applications, libraries and policy projects
+     * @param createBarTraceFile the trace file of mqsicreatebar
+     * @return the mqsicreatebar parameters
+     */
+    protected static List<String> constructParams(File workspace, File barName, boolean cleanBuild, boolean esql21,
+            boolean skipWSErrorCheck, List<String> objectParams, File createBarTraceFile) {
         List<String> params = new ArrayList<String>();
 
         // workspace parameter - required
-        createWorkspaceDirectory();
         params.add("-data");
         params.add(workspace.toString());
 
@@ -294,7 +557,7 @@ public class CreateBarMojo extends AbstractMojo {
          */
 
         // object names - required
-        params.addAll(addObjectsAppsLibs());
+        params.addAll(objectParams);
 
         if (skipWSErrorCheck) {
             params.add("-skipWSErrorCheck");
@@ -323,6 +586,15 @@ public class CreateBarMojo extends AbstractMojo {
     }
 
     public void execute() throws MojoFailureException, MojoExecutionException {
+        BuildTracer.Span span = BuildTracer.startMojo("create-bar", project, traceFile, getLog());
+        try {
+            createBar();
+        } finally {
+            span.end();
+        }
+    }
+
+    private void createBar() throws MojoFailureException, MojoExecutionException {
 
         getLog().info("Creating bar file: " + barName);
 
@@ -333,14 +605,23 @@ public class CreateBarMojo extends AbstractMojo {
 
         List<String> params = constructParams();
 
-        executeMqsiCreateBar(params);
+        if (isBuiltByAggregate(params)) {
+            getLog().info("Bar file was built by create-bar-aggregate from the same workspace, mqsicreatebar was not executed");
+        } else if (inProcessBarBuild && assembleBar()) {
+            getLog().info("Bar file assembled in-process, mqsicreatebar was not executed");
+        } else if (barCache) {
+            createBarWithCache(params);
+        } else {
+            executeMqsiCreateBar(params);
+        }
 
         try {
             // if classloaders are in use, all jars are to be removed
             if (useClassloaders) {
                 getLog().info(
                         "Classloaders in use. All jars will be removed from the bar file.");
-                ZipUtils.removeFiles(barName, "**/*.jar");
+                long removed = ZipUtils.removeFiles(barName, "**/*.jar", discardJarsInNestedArchives);
+                getLog().info("Removed " + removed + " bytes of jars from the bar file");
             } else {
                 // remove the jars specified with discardJarsPattern
                 if (discardJarsPattern != null
@@ -348,7 +629,8 @@ public class CreateBarMojo extends AbstractMojo {
                     getLog().info(
                             "Classloaders are not in use. The following jars will be removed from the bar file: "
                                     + discardJarsPattern);
-                    ZipUtils.removeFiles(barName, discardJarsPattern);
+                    long removed = ZipUtils.removeFiles(barName, discardJarsPattern, discardJarsInNestedArchives);
+                    getLog().info("Removed " + removed + " bytes of jars from the bar file");
                 }
             }
         } catch (IOException e) {
@@ -358,6 +640,131 @@ public class CreateBarMojo extends AbstractMojo {
 
     }
 
+    /**
+     * @param params the parameters mqsicreatebar would be executed with
+     * @return true if create-bar-aggregate has built the bar file from the current contents of the workspace
+     * @throws MojoFailureException If an exception occurs
+     */
+    private boolean isBuiltByAggregate(List<String> params) throws MojoFailureException {
+        File marker = getAggregateMarker(barName);
+        if (!marker.isFile() || !barName.isFile()) {
+            return false;
+        }
+        try {
+            String expected = FileUtils.fileRead(marker).trim();
+            return expected.equals(getAggregateFingerprint(workspace, params));
+        } catch (IOException e) {
+            getLog().debug("Could not check " + marker.getAbsolutePath(), e);
+            return false;
+        }
+    }
+
+    /**
+     * @param barName the bar file of a module
+     * @return the file recording the workspace the bar file was built from by create-bar-aggregate
+     */
+    protected static File getAggregateMarker(File barName) {
+        return new File(barName.getPath() + ".aggregate");
+    }
+
+    /**
+     * @param workspace the workspace of a module
+     * @param params the mqsicreatebar parameters of the module
+     * @return the fingerprint recorded by create-bar-aggregate for the bar file of the module
+     * @throws IOException if the workspace can't be read
+     */
+    protected String getAggregateFingerprint(File workspace, List<String> params) throws IOException {
+        return BarBuildCache.fingerprint(workspace, getFingerprintParams(params), toolkitInstallDir, toolkitVersion);
+    }
+
+    /**
+     * @param params mqsicreatebar parameters
+     * @return the parameters without the workspace, bar file and trace file, which differ between the aggregate build
+     *         and the build of a module
+     */
+    protected static List<String> getFingerprintParams(List<String> params) {
+        List<String> fingerprintParams = new ArrayList<String>();
+        for (int i = 0; i < params.size(); i++) {
+            String param = params.get(i);
+            if ("-data".equals(param) || "-b".equals(param) || "-v".equals(param)) {
+                // skip the value as well
+                i++;
+            } else {
+                fingerprintParams.add(param);
+            }
+        }
+        return fingerprintParams;
+    }
+
+    /**
+     * assembles the bar file in-process, if the workspace only contains content which is deployed as source
+     * 
+     * @return true if the bar file was assembled, false if mqsicreatebar is required
+     * @throws MojoFailureException If an exception occurs
+     */
+    private boolean assembleBar() throws MojoFailureException {
+        if (!deployAsSource || esql21) {
+            getLog().info("In-process bar build requires deployAsSource and no esql21, using mqsicreatebar");
+            return false;
+        }
+        if (!skipWSErrorCheck) {
+            // the toolkit validates the workspace, the in-process build doesn't
+            getLog().info("In-process bar build doesn't validate the workspace and requires skipWSErrorCheck, using mqsicreatebar");
+            return false;
+        }
+
+        List<String> apps = new ArrayList<String>();
+        List<String> libs = new ArrayList<String>();
+        List<String> policies = new ArrayList<String>();
+        classifyProjects(apps, libs, policies);
+
+        BarAssembler assembler = new BarAssembler(workspace, toolkitInstallDir, getLog());
+        String unsupportedReason = assembler.prepare(apps, libs, policies);
+        if (unsupportedReason != null) {
+            getLog().info("In-process bar build not possible (" + unsupportedReason + "), using mqsicreatebar");
+            return false;
+        }
+
+        try {
+            assembler.write(barName);
+        } catch (IOException e) {
+            throw new MojoFailureException("Error writing bar file: " + barName, e);
+        }
+        return true;
+    }
+
+    /**
+     * restores the bar file from the bar cache if the inputs are unchanged, otherwise executes mqsicreatebar and stores
+     * the result in the cache. The jars are removed afterwards in either case, so the cache holds the bar file as
+     * created by the toolkit.
+     * 
+     * @param params
+     * @throws MojoFailureException If an exception occurs
+     */
+    private void createBarWithCache(List<String> params) throws MojoFailureException {
+        BarBuildCache cache = new BarBuildCache(barCacheDirectory, barCacheMaxSize * 1024 * 1024,
+                barCacheMaxAge * 24L * 60 * 60 * 1000, getLog());
+
+        String fingerprint;
+        try {
+            fingerprint = BarBuildCache.fingerprint(workspace, params, toolkitInstallDir, toolkitVersion);
+            if (cache.restore(fingerprint, barName)) {
+                return;
+            }
+        } catch (IOException e) {
+            throw new MojoFailureException("Error reading the bar cache: " + barCacheDirectory, e);
+        }
+
+        executeMqsiCreateBar(params);
+
+        try {
+            cache.store(fingerprint, barName);
+        } catch (IOException e) {
+            // a failure to cache shouldn't break the build
+            getLog().warn("Could not store " + barName + " in the bar cache: " + e.getMessage());
+        }
+    }
+
     /**
      * executes mqsicreatebar. Since mqsicreatebar does something strange with
      * stdOut & stdErr, command must be written to a temporary file and executed
@@ -366,15 +773,16 @@ public class CreateBarMojo extends AbstractMojo {
      * @param params
      * @throws MojoFailureException If an exception occurs
      */
-    private void executeMqsiCreateBar(List<String> params)
+    protected void executeMqsiCreateBar(List<String> params)
             throws MojoFailureException {
 
-        File cmdFile = new File(System.getProperty("java.io.tmpdir")
-                + File.separator + "createbarCommand-" + UUID.randomUUID()
-                + ".cmd");
+        if (toolkitDaemon && executeWithDaemon(params)) {
+            return;
+        }
 
-        // make sure that it will be cleaned up on exit
-        cmdFile.deleteOnExit();
+        // each module writes its own command files, they are deleted when mqsicreatebar has finished
+        commandDirectory.mkdirs();
+        File cmdFile = new File(commandDirectory, "createbarCommand-" + UUID.randomUUID() + ".cmd");
 
         // construct the command - very windows-centric for now
         List<String> command = new ArrayList<String>();
@@ -402,52 +810,216 @@ public class CreateBarMojo extends AbstractMojo {
         }
 
         // ProcessBuilder pb = new ProcessBuilder(command);
-        ProcessBuilder pb = new ProcessBuilder(cmdFile.getAbsolutePath());
+        ProcessBuilder pb = new ProcessBuilder(ProcessPriority.apply(Arrays.asList(cmdFile.getAbsolutePath()), processNice, processIoniceClass));
 
         pb.directory(workspace);
         // redirect subprocess stderr to stdout
         pb.redirectErrorStream(true);
-        Process process;
-        ProcessOutputLogger stdOutHandler = null;
-        ProcessOutputLogger stdErrorHandler = null;
+        List<Pattern> retryPatterns;
         try {
-            process = pb.start();
-            stdOutHandler = new ProcessOutputLogger(process.getInputStream(), getLog());
-            stdErrorHandler = new ProcessOutputLogger(process.getErrorStream(), getLog());
-            stdOutHandler.start();
-            stdErrorHandler.start();
-            process.waitFor();
-        } catch (IOException e) {
-            throw new MojoFailureException("Error executing: "
-                    + getCommandLine(command), e);
-        } catch (InterruptedException e) {
-            throw new MojoFailureException("Error executing: "
-                    + getCommandLine(command), e);
+            retryPatterns = ProcessWatchdog.compile(processRetryPatterns != null ? processRetryPatterns : DEFAULT_RETRY_PATTERNS);
+        } catch (IllegalArgumentException e) {
+            throw new MojoFailureException("Invalid retry pattern: " + e.getMessage(), e);
+        }
+        HostProcessSemaphore.Slot workspaceLock = lockWorkspace();
+        try {
+            executeMqsiCreateBar(pb, command, retryPatterns);
         } finally {
-            if (stdOutHandler != null) {
-                stdOutHandler.interrupt();
+            workspaceLock.release();
+            cmdFile.delete();
+        }
+    }
+
+    /**
+     * executes the command file of mqsicreatebar, again if it fails with a transient error
+     * 
+     * @param pb the process builder executing the command file
+     * @param command the command, for messages
+     * @param retryPatterns the patterns of transient errors
+     * @throws MojoFailureException If an exception occurs
+     */
+    private void executeMqsiCreateBar(ProcessBuilder pb, List<String> command, List<Pattern> retryPatterns) throws MojoFailureException {
+        for (int attempt = 0;; attempt++) {
+            AsyncLogForwarder forwarder = createLogForwarder();
+            ProcessWatchdog watchdog;
+            int exitCode = -1;
+            HostProcessSemaphore.Slot slot = acquireSlot();
+            BuildTracer.Span span = BuildTracer.start(BuildTracer.PROCESS, "mqsicreatebar", project);
+            try {
+                Process process = pb.start();
+                watchdog = new ProcessWatchdog(process, "mqsicreatebar", processTimeout * 60000L, processInactivityTimeout * 60000L, retryPatterns,
+                        getLog());
+                ProcessMetrics metrics = ProcessMetrics.start("mqsicreatebar", process);
+                ProcessOutputPump stdOutPump = ProcessOutputPump.start(process.getInputStream(), watchdog.watch(forwarder));
                 try {
-                    stdOutHandler.join();
-                } catch (InterruptedException e) {
-                    // this should never happen, so ignore this one
+                    exitCode = watchdog.waitFor();
+                } finally {
+                    metrics.stop();
+                    watchdog.awaitOutput(stdOutPump);
+                    forwarder.close(exitCode);
+                }
+                getLog().debug("mqsicreatebar output ended after " + stdOutPump.getTimeToLastByteMillis() + " ms");
+                recordMetrics(metrics);
+            } catch (IOException e) {
+                throw new MojoFailureException("Error executing: "
+                        + getCommandLine(command), e);
+            } catch (InterruptedException e) {
+                throw new MojoFailureException("Error executing: "
+                        + getCommandLine(command), e);
+            } finally {
+                span.end();
+                if (slot != null) {
+                    slot.release();
                 }
             }
-            if (stdErrorHandler != null) {
-                stdErrorHandler.interrupt();
+
+            if (exitCode == 0) {
+                return;
+            }
+            if (watchdog.isTransientFailure() && attempt < processRetries) {
+                getLog().warn("mqsicreatebar failed with a transient error (" + watchdog.getTransientFailure() + "), retrying in " + processRetryDelay
+                        + " s");
                 try {
-                    stdErrorHandler.join();
+                    Thread.sleep(processRetryDelay * 1000L);
                 } catch (InterruptedException e) {
-                    // this should never happen, so ignore this one
+                    Thread.currentThread().interrupt();
+                    throw new MojoFailureException("Interrupted while waiting to retry mqsicreatebar", e);
                 }
+                continue;
             }
-        }
-
-        if (process.exitValue() != 0) {
             // logOutputFile(outFile, "error");
             throw new MojoFailureException(
                     "mqsicreate bar finished with exit code: "
-                            + process.exitValue());
+                            + exitCode);
+        }
+    }
+
+    /**
+     * waits until no other module (of this or another build) executes mqsicreatebar in or unpacks its dependencies into
+     * the same workspace, as the toolkit refuses to open a workspace that is in use. Modules using their own workspaces
+     * never wait.
+     * 
+     * @return the lock, to be released when mqsicreatebar has finished
+     * @throws MojoFailureException If the workspace can't be locked
+     */
+    private HostProcessSemaphore.Slot lockWorkspace() throws MojoFailureException {
+        BuildTracer.Span span = BuildTracer.start(BuildTracer.SLOT, "wait for workspace", project);
+        try {
+            return HostProcessSemaphore.forWorkspace(processSlotsDirectory, workspace).acquire("mqsicreatebar in workspace " + workspace, getLog());
+        } catch (IOException e) {
+            throw new MojoFailureException("Error locking the workspace " + workspace.getAbsolutePath(), e);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new MojoFailureException("Interrupted while waiting for the workspace " + workspace.getAbsolutePath(), e);
+        } finally {
+            span.end();
+        }
+    }
+
+    /**
+     * waits for a free toolkit slot on this host, if the number of toolkits is limited
+     * 
+     * @return the slot, or null if the number isn't limited
+     * @throws MojoFailureException If the slots directory can't be used
+     */
+    private HostProcessSemaphore.Slot acquireSlot() throws MojoFailureException {
+        if (maxConcurrentToolkits <= 0) {
+            return null;
+        }
+        BuildTracer.Span span = BuildTracer.start(BuildTracer.SLOT, "wait for toolkit slot", project);
+        try {
+            return new HostProcessSemaphore(new File(processSlotsDirectory, "toolkit"), maxConcurrentToolkits).acquire("mqsicreatebar", getLog());
+        } catch (IOException e) {
+            throw new MojoFailureException("Error waiting for a toolkit slot in " + processSlotsDirectory.getAbsolutePath(), e);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new MojoFailureException("Interrupted while waiting for a toolkit slot", e);
+        } finally {
+            span.end();
+        }
+    }
+
+    /**
+     * @return a forwarder for the output of mqsicreatebar, configured by the toolkitLog parameters
+     * @throws MojoFailureException If a parameter is invalid
+     */
+    private AsyncLogForwarder createLogForwarder() throws MojoFailureException {
+        try {
+            return new AsyncLogForwarder(getLog(), AsyncLogForwarder.Level.parse(toolkitLogLevel), toolkitLogRules, toolkitLogExcludes,
+                    toolkitLogTailLines);
+        } catch (IllegalArgumentException e) {
+            throw new MojoFailureException("Invalid toolkit log configuration: " + e.getMessage(), e);
+        }
+    }
+
+    /**
+     * logs the resource usage of a command and adds it to target/ace/metrics.json
+     * 
+     * @param metrics the metrics of the finished command
+     */
+    private void recordMetrics(ProcessMetrics metrics) {
+        getLog().info(metrics.getSummary());
+        File metricsFile = new File(project.getBuild().getDirectory(), "ace/metrics.json");
+        try {
+            ProcessMetrics.record(metrics, metricsFile);
+        } catch (IOException e) {
+            getLog().warn("Could not write " + metricsFile.getAbsolutePath() + ": " + e.getMessage());
+        }
+    }
+
+    /**
+     * sends the build to the toolkit daemon, starting it if required
+     * 
+     * @param params
+     * @return true if the daemon built the bar file, false if mqsicreatebar has to be executed instead
+     * @throws MojoFailureException If the daemon reported a failed build
+     */
+    private boolean executeWithDaemon(List<String> params) throws MojoFailureException {
+        // one daemon per toolkit installation
+        File portFile = new File(toolkitDaemonDirectory, "daemon-"
+                + Integer.toHexString(String.valueOf(toolkitInstallDir).hashCode()) + ".port");
+        ToolkitDaemonClient client = new ToolkitDaemonClient(portFile, 5000, getLog());
+
+        List<String> startCommand = new ArrayList<String>();
+        if (toolkitDaemonCommand != null && toolkitDaemonCommand.trim().length() > 0) {
+            try {
+                startCommand.addAll(Arrays.asList(CommandLineUtils.translateCommandline(toolkitDaemonCommand)));
+            } catch (Exception e) {
+                throw new MojoFailureException("Invalid ace.toolkitDaemonCommand: " + toolkitDaemonCommand, e);
+            }
+        }
+        if (!client.ensureRunning(startCommand, toolkitInstallDir, toolkitDaemonIdleTimeout * 60L,
+                toolkitDaemonStartupTimeout * 1000L)) {
+            getLog().warn("No toolkit daemon available, executing mqsicreatebar");
+            return false;
+        }
+
+        getLog().info("Building the bar file with the toolkit daemon: " + getCommandLine(params));
+        int exitCode = 0;
+        HostProcessSemaphore.Slot workspaceLock = lockWorkspace();
+        BuildTracer.Span span = BuildTracer.start(BuildTracer.PROCESS, "toolkit-daemon", project);
+        try {
+            AsyncLogForwarder forwarder = createLogForwarder();
+            try {
+                exitCode = client.build(workspace, params, forwarder);
+            } finally {
+                forwarder.close(exitCode);
+            }
+        } catch (IOException e) {
+            getLog().warn("Building with the toolkit daemon failed (" + e.getMessage() + "), executing mqsicreatebar");
+            return false;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new MojoFailureException("Interrupted while building with the toolkit daemon", e);
+        } finally {
+            span.end();
+            workspaceLock.release();
+        }
+        if (exitCode != 0) {
+            throw new MojoFailureException(
+                    "mqsicreate bar finished with exit code: " + exitCode);
         }
+        return true;
     }
 
     private String getCommandLine(List<String> command) {
@@ -0,0 +1,45 @@
+package ibm.maven.plugins.ace.mojos;
+
+import ibm.maven.plugins.ace.utils.ExtractedArtifactStore;
+import ibm.maven.plugins.ace.utils.ExtractedArtifactStore.LinkMode;
+
+import java.io.File;
+
+import org.apache.maven.plugin.AbstractMojo;
+import org.apache.maven.plugin.MojoFailureException;
+import org.apache.maven.plugins.annotations.Mojo;
+import org.apache.maven.plugins.annotations.Parameter;
+
+/**
+ * Removes the least recently used entries from the shared store of extracted dependencies (see ace.artifactStore of
+ * prepare-bar-build-workspace) until it fits into ${ace.artifactStoreMaxSize}.
+ */
+@Mojo(name = "evict-artifact-store", requiresProject = false, threadSafe = true)
+public class EvictArtifactStoreMojo extends AbstractMojo {
+
+    /**
+     * The directory of the shared store of extracted dependencies.
+     */
+    @Parameter(property = "ace.artifactStoreDirectory", defaultValue = "${settings.localRepository}/.ace/extracted")
+    protected File artifactStoreDirectory;
+
+    /**
+     * The maximum size of the store in megabytes.
+     */
+    @Parameter(property = "ace.artifactStoreMaxSize", defaultValue = "4096")
+    protected long artifactStoreMaxSize;
+
+    public void execute() throws MojoFailureException {
+        if (!artifactStoreDirectory.isDirectory()) {
+            getLog().info("There is no artifact store at " + artifactStoreDirectory.getAbsolutePath());
+            return;
+        }
+        if (artifactStoreMaxSize < 0) {
+            throw new MojoFailureException("ace.artifactStoreMaxSize must not be negative: " + artifactStoreMaxSize);
+        }
+
+        ExtractedArtifactStore store = new ExtractedArtifactStore(artifactStoreDirectory, LinkMode.COPY, getLog());
+        long removed = store.evict(artifactStoreMaxSize * 1024 * 1024);
+        getLog().info("Removed " + removed + " bytes from the artifact store " + artifactStoreDirectory.getAbsolutePath());
+    }
+}
@@ -1,5 +1,6 @@
 package ibm.maven.plugins.ace.mojos;
 
+import ibm.maven.plugins.ace.utils.BuildTracer;
 
 import static org.twdata.maven.mojoexecutor.MojoExecutor.artifactId;
 import static org.twdata.maven.mojoexecutor.MojoExecutor.configuration;
@@ -34,7 +35,7 @@ import org.codehaus.plexus.util.IOUtil;
  * 
  * Implemented with help from: https://github.com/TimMoore/mojo-executor/blob/master/README.md
  */
-@Mojo(name = "package-ace-bar")
+@Mojo(name = "package-ace-bar", threadSafe = true)
 public class PackageaceBarMojo extends CreateBarMojo {
 
     /**
@@ -63,6 +64,15 @@ public class PackageaceBarMojo extends CreateBarMojo {
 
     @Override
     public void execute() throws MojoFailureException, MojoExecutionException {
+        BuildTracer.Span span = BuildTracer.startMojo("package-ace-bar", project, traceFile, getLog());
+        try {
+            packageBar();
+        } finally {
+            span.end();
+        }
+    }
+
+    private void packageBar() throws MojoFailureException, MojoExecutionException {
 
         packageaceBarArtifact();
 
@@ -87,8 +97,13 @@ public class PackageaceBarMojo extends CreateBarMojo {
 
         // mvn org.apache.maven.plugins:maven-assembly-plugin:2.4:single -Ddescriptor=target\assemblies\ace-bar-project.xml -Dassembly.appendAssemblyId=false
 
-        executeMojo(plugin(groupId("org.apache.maven.plugins"), artifactId("maven-assembly-plugin"), version("2.4")), goal("single"), configuration(element(name("descriptor"),
-                "${project.build.directory}/assemblies/ace-bar-project.xml"), element(name("appendAssemblyId"), "false")), executionEnvironment(project, session, buildPluginManager));
+        BuildTracer.Span span = BuildTracer.start(BuildTracer.DELEGATION, "maven-assembly-plugin:single", project);
+        try {
+            executeMojo(plugin(groupId("org.apache.maven.plugins"), artifactId("maven-assembly-plugin"), version("2.4")), goal("single"), configuration(element(name("descriptor"),
+                    "${project.build.directory}/assemblies/ace-bar-project.xml"), element(name("appendAssemblyId"), "false")), executionEnvironment(project, session, buildPluginManager));
+        } finally {
+            span.end();
+        }
 
         // delete the archive-tmp directory
         try {
@@ -38,7 +38,7 @@ import org.codehaus.plexus.util.IOUtil;
  * 
  * Implemented with help from: https://github.com/TimMoore/mojo-executor/blob/master/README.md
  */
-@Mojo(name = "package-par")
+@Mojo(name = "package-par", threadSafe = true)
 public class PackageaceParMojo extends AbstractMojo {
 
     /**
@@ -10,16 +10,25 @@ import static org.twdata.maven.mojoexecutor.MojoExecutor.groupId;
 import static org.twdata.maven.mojoexecutor.MojoExecutor.name;
 import static org.twdata.maven.mojoexecutor.MojoExecutor.plugin;
 import static org.twdata.maven.mojoexecutor.MojoExecutor.version;
+import ibm.maven.plugins.ace.utils.BuildTracer;
+import ibm.maven.plugins.ace.utils.DependencyUnpacker;
+import ibm.maven.plugins.ace.utils.ExtractedArtifactStore;
+import ibm.maven.plugins.ace.utils.ExtractedArtifactStore.LinkMode;
+import ibm.maven.plugins.ace.utils.HostProcessSemaphore;
 import ibm.maven.plugins.ace.utils.PomXmlUtils;
 
 import java.io.File;
 import java.io.IOException;
 import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
 
-import javax.xml.bind.JAXBException;
+import javax.xml.stream.XMLStreamException;
 
+import org.apache.maven.artifact.Artifact;
+import org.apache.maven.artifact.resolver.filter.ScopeArtifactFilter;
 import org.apache.maven.execution.MavenSession;
 import org.apache.maven.plugin.AbstractMojo;
 import org.apache.maven.plugin.BuildPluginManager;
@@ -33,8 +42,6 @@ import org.apache.maven.plugins.annotations.ResolutionScope;
 import org.apache.maven.project.MavenProject;
 import org.codehaus.plexus.util.FileUtils;
 
-import ibm.maven.plugins.ace.generated.maven_pom.Model;
-
 /**
  * Unpacks the dependent WebSphere Message Broker Projects.
  * 
@@ -42,7 +49,7 @@ import ibm.maven.plugins.ace.generated.maven_pom.Model;
  * 
  * requiresDependencyResolution below is required for the unpack-dependencies goal to work correctly. See https://github.com/TimMoore/mojo-executor/issues/3
  */
-@Mojo(name = "prepare-bar-build-workspace", requiresDependencyResolution = ResolutionScope.TEST)
+@Mojo(name = "prepare-bar-build-workspace", requiresDependencyResolution = ResolutionScope.TEST, threadSafe = true)
 public class PrepareBarBuildWorkspaceMojo extends AbstractMojo {
 
     /**
@@ -82,13 +89,100 @@ public class PrepareBarBuildWorkspaceMojo extends AbstractMojo {
     @Parameter(property = "ace.unpackDependenciesDirectory", defaultValue = "${project.build.directory}/ace/dependencies", required = true, readonly = true)
     protected File unpackDependenciesDirectory;
 
+    /**
+     * Whether the dependencies are unpacked by the plugin itself, several at a time and only if they changed since the
+     * last build. If false, maven-dependency-plugin:unpack-dependencies is used.
+     */
+    @Parameter(property = "ace.nativeUnpack", defaultValue = "true")
+    protected boolean nativeUnpack;
+
+    /**
+     * The maximum number of dependencies unpacked at the same time. Defaults to the number of processors.
+     */
+    @Parameter(property = "ace.unpackThreads", defaultValue = "0")
+    protected int unpackThreads;
+
+    /**
+     * Whether the dependencies are extracted once into a store shared by all builds on the machine, from which the
+     * workspace is then materialized. Only used with ace.nativeUnpack.
+     */
+    @Parameter(property = "ace.artifactStore", defaultValue = "false")
+    protected boolean artifactStore;
+
+    /**
+     * The directory of the shared store of extracted dependencies.
+     */
+    @Parameter(property = "ace.artifactStoreDirectory", defaultValue = "${settings.localRepository}/.ace/extracted")
+    protected File artifactStoreDirectory;
+
+    /**
+     * How the files are put into the workspace: HARDLINK (copying where linking isn't possible) or COPY. The files in
+     * the store are read-only, so use COPY if the toolkit has to modify files of the dependencies in place.
+     */
+    @Parameter(property = "ace.artifactStoreLinkMode", defaultValue = "HARDLINK")
+    protected LinkMode artifactStoreLinkMode;
+
+    /**
+     * The directory shared by the builds on this host to lock the workspaces, so that the dependencies aren't unpacked
+     * into a workspace while mqsicreatebar runs in it for another module
+     */
+    @Parameter(property = "ace.processSlotsDirectory", defaultValue = "${java.io.tmpdir}/ace-process-slots")
+    protected File processSlotsDirectory;
+
+    /**
+     * The file recording the time spent in the goals of the build as a Chrome trace. A relative path is resolved against
+     * the module, so use an absolute one to trace a reactor into one file. No trace is written if it isn't set.
+     */
+    @Parameter(property = "ace.traceFile")
+    protected File traceFile;
+
     public void execute() throws MojoExecutionException, MojoFailureException {
+        BuildTracer.Span span = BuildTracer.startMojo("prepare-bar-build-workspace", project, traceFile, getLog());
+        try {
+            prepareWorkspace();
+        } finally {
+            span.end();
+        }
+    }
 
-        unpackaceDependencies();
+    private void prepareWorkspace() throws MojoExecutionException, MojoFailureException {
+
+        // modules sharing the workspace may be built at the same time with -T
+        HostProcessSemaphore.Slot workspaceLock = lockWorkspace();
+        try {
+            if (nativeUnpack) {
+                unpackaceDependenciesNatively();
+            } else {
+                unpackaceDependencies();
+            }
+        } finally {
+            workspaceLock.release();
+        }
 
         deleteUnquiredPoms();
     }
 
+    /**
+     * waits until no other module (of this or another build) unpacks its dependencies into or executes mqsicreatebar
+     * in the same workspace. Modules using their own workspaces never wait.
+     * 
+     * @return the lock, to be released when the dependencies have been unpacked
+     * @throws MojoFailureException If the workspace can't be locked
+     */
+    private HostProcessSemaphore.Slot lockWorkspace() throws MojoFailureException {
+        BuildTracer.Span span = BuildTracer.start(BuildTracer.SLOT, "wait for workspace", project);
+        try {
+            return HostProcessSemaphore.forWorkspace(processSlotsDirectory, workspace).acquire("unpacking into workspace " + workspace, getLog());
+        } catch (IOException e) {
+            throw new MojoFailureException("Error locking the workspace " + workspace.getAbsolutePath(), e);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new MojoFailureException("Interrupted while waiting for the workspace " + workspace.getAbsolutePath(), e);
+        } finally {
+            span.end();
+        }
+    }
+
     /**
      * deletes the unrequired pom.xml files. pom.xml's appear in all projects, but are only really required for java projects for .bar packaging
      * 
@@ -135,14 +229,16 @@ public class PrepareBarBuildWorkspaceMojo extends AbstractMojo {
      */
     private boolean isJarPackaging(File pomFile) {
         try {
-            Model model = PomXmlUtils.unmarshallPomFile(pomFile);
+            String packaging = PomXmlUtils.readPomSummary(pomFile).getPackaging();
 
             // packaging "jar" is the default and may not be defined
-            if (model.getPackaging() == null || model.getPackaging().equals("") || model.getPackaging().equals("jar")) {
+            if (packaging == null || packaging.equals("") || packaging.equals("jar")) {
                 return true;
             }
-        } catch (JAXBException e) {
-            getLog().debug("Exception unmarshalling ('" + pomFile.getAbsolutePath() + "')", e);
+        } catch (IOException e) {
+            getLog().debug("Exception reading ('" + pomFile.getAbsolutePath() + "')", e);
+        } catch (XMLStreamException e) {
+            getLog().debug("Exception reading ('" + pomFile.getAbsolutePath() + "')", e);
         }
 
         // this should really never happen
@@ -160,9 +256,14 @@ public class PrepareBarBuildWorkspaceMojo extends AbstractMojo {
         workspace.mkdirs();
 
         // unpack all dependencies that match the given scope
-        executeMojo(plugin(groupId("org.apache.maven.plugins"), artifactId("maven-dependency-plugin"), version("2.8")), goal("unpack-dependencies"), configuration(element(name("outputDirectory"),
-                workspace.getAbsolutePath()), element(name("includeTypes"), UNPACK_ace_DEPENDENCY_TYPES), element(name("includeScope"), UNPACK_ace_DEPENDENCY_SCOPE)),
-                executionEnvironment(project, session, buildPluginManager));
+        BuildTracer.Span span = BuildTracer.start(BuildTracer.DELEGATION, "maven-dependency-plugin:unpack-dependencies", project);
+        try {
+            executeMojo(plugin(groupId("org.apache.maven.plugins"), artifactId("maven-dependency-plugin"), version("2.8")), goal("unpack-dependencies"), configuration(element(name("outputDirectory"),
+                    workspace.getAbsolutePath()), element(name("includeTypes"), UNPACK_ace_DEPENDENCY_TYPES), element(name("includeScope"), UNPACK_ace_DEPENDENCY_SCOPE)),
+                    executionEnvironment(project, session, buildPluginManager));
+        } finally {
+            span.end();
+        }
 
         // delete the dependency-maven-plugin-markers directory
         try {
@@ -173,6 +274,36 @@ public class PrepareBarBuildWorkspaceMojo extends AbstractMojo {
         }
     }
 
+    /**
+     * unpacks the dependencies of the given types and scope to the workspace, skipping the ones that are unchanged
+     * since the last build
+     * 
+     * @throws MojoFailureException If an exception occurs
+     */
+    private void unpackaceDependenciesNatively() throws MojoFailureException {
+
+        // same selection as includeTypes and includeScope of unpack-dependencies
+        Set<String> types = getUnpackaceDependencyTypes();
+        ScopeArtifactFilter scopeFilter = new ScopeArtifactFilter(UNPACK_ace_DEPENDENCY_SCOPE);
+        Map<String, File> archives = new LinkedHashMap<String, File>();
+        for (Artifact artifact : project.getArtifacts()) {
+            if (types.contains(artifact.getType()) && scopeFilter.include(artifact) && artifact.getFile() != null) {
+                // the version isn't part of the key, so that a new version replaces the projects of the old one
+                archives.put(artifact.getGroupId() + ":" + artifact.getArtifactId() + ":" + artifact.getType()
+                        + (artifact.hasClassifier() ? ":" + artifact.getClassifier() : ""), artifact.getFile());
+            }
+        }
+
+        int threads = unpackThreads > 0 ? unpackThreads : Runtime.getRuntime().availableProcessors();
+        File markerDirectory = new File(project.getBuild().getDirectory(), "ace/unpack-markers");
+        DependencyUnpacker unpacker = new DependencyUnpacker(workspace, markerDirectory, threads, getLog());
+        if (artifactStore) {
+            unpacker.setStore(new ExtractedArtifactStore(artifactStoreDirectory, artifactStoreLinkMode, getLog()));
+        }
+        int unpacked = unpacker.unpack(archives);
+        getLog().info("Unpacked " + unpacked + " of " + archives.size() + " dependencies, the others were unchanged");
+    }
+
     /**
      * @return the types that will be unpacked when preparing the Bar Build Workspace
      */
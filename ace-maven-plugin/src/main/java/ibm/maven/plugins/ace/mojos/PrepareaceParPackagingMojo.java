@@ -33,7 +33,7 @@ import org.codehaus.plexus.util.FileUtils;
  * 
  * requiresDependencyResolution below is required for the unpack-dependencies goal to work correctly. See https://github.com/TimMoore/mojo-executor/issues/3
  */
-@Mojo(name = "prepare-ace-par-packaging", requiresDependencyResolution = ResolutionScope.TEST)
+@Mojo(name = "prepare-ace-par-packaging", requiresDependencyResolution = ResolutionScope.TEST, threadSafe = true)
 public class PrepareaceParPackagingMojo extends AbstractMojo {
 
     /**
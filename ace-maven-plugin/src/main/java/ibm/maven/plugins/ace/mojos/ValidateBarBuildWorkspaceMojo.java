@@ -1,11 +1,19 @@
 package ibm.maven.plugins.ace.mojos;
 
+import ibm.maven.plugins.ace.utils.BuildTracer;
 import ibm.maven.plugins.ace.utils.EclipseProjectUtils;
 import ibm.maven.plugins.ace.utils.PomXmlUtils;
 
 import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
 
-import javax.xml.bind.JAXBException;
+import javax.xml.stream.XMLStreamException;
 
 import org.apache.maven.execution.MavenSession;
 import org.apache.maven.plugin.AbstractMojo;
@@ -18,8 +26,6 @@ import org.apache.maven.plugins.annotations.Parameter;
 import org.apache.maven.plugins.annotations.ResolutionScope;
 import org.apache.maven.project.MavenProject;
 
-import ibm.maven.plugins.ace.generated.maven_pom.Model;
-
 /**
  * Unpacks the dependent WebSphere Message Broker Projects.
  * 
@@ -27,7 +33,7 @@ import ibm.maven.plugins.ace.generated.maven_pom.Model;
  * 
  * requiresDependencyResolution below is required for the unpack-dependencies goal to work correctly. See https://github.com/TimMoore/mojo-executor/issues/3
  */
-@Mojo(name = "validate-bar-build-workspace", requiresDependencyResolution = ResolutionScope.TEST)
+@Mojo(name = "validate-bar-build-workspace", requiresDependencyResolution = ResolutionScope.TEST, threadSafe = true)
 public class ValidateBarBuildWorkspaceMojo extends AbstractMojo {
 
     /**
@@ -60,7 +66,23 @@ public class ValidateBarBuildWorkspaceMojo extends AbstractMojo {
     @Parameter(property = "ace.unpackDependenciesDirectory", defaultValue = "${project.build.directory}/ace/dependencies", required = true, readonly = true)
     protected File unpackDependenciesDirectory;
 
+    /**
+     * The file recording the time spent in the goals of the build as a Chrome trace. A relative path is resolved against
+     * the module, so use an absolute one to trace a reactor into one file. No trace is written if it isn't set.
+     */
+    @Parameter(property = "ace.traceFile")
+    protected File traceFile;
+
     public void execute() throws MojoExecutionException, MojoFailureException {
+        BuildTracer.Span span = BuildTracer.startMojo("validate-bar-build-workspace", project, traceFile, getLog());
+        try {
+            validateWorkspace();
+        } finally {
+            span.end();
+        }
+    }
+
+    private void validateWorkspace() throws MojoExecutionException, MojoFailureException {
 
         // the following code would be a nicer implementation, but breaks the Integration Tests
         //
@@ -79,8 +101,13 @@ public class ValidateBarBuildWorkspaceMojo extends AbstractMojo {
 
         // loop through the project directories
         File[] projects = workspace.listFiles();
-        //
-        for (File projectDirectory : projects) {
+        if (projects == null) {
+            throw new MojoFailureException("The workspace doesn't exist: " + workspace.getAbsolutePath());
+        }
+
+        // the projects are independent of each other, so they are validated in parallel and all the mismatches are reported
+        List<Callable<List<String>>> validations = new ArrayList<Callable<List<String>>>();
+        for (final File projectDirectory : projects) {
             // ignore the directory .metadata
             // normally it won't exist unless a previous build failed during bar packaging and no clean was specified on the new build
            //Added the code to ignore folders starting with dot as those are hidden folders and not to be used when compiling the project
@@ -92,20 +119,63 @@ public class ValidateBarBuildWorkspaceMojo extends AbstractMojo {
                 continue;
             }
 
-            String projectDirectoryName = projectDirectory.getName();
+            validations.add(new Callable<List<String>>() {
+                public List<String> call() {
+                    return validateProject(projectDirectory);
+                }
+            });
+        }
 
-            // checks that the directory name is the same as the name in the .project file
+        List<String> mismatches = new ArrayList<String>();
+        ForkJoinPool pool = new ForkJoinPool();
+        try {
+            for (Future<List<String>> result : pool.invokeAll(validations)) {
+                mismatches.addAll(result.get());
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new MojoFailureException("Interrupted while validating the workspace", e);
+        } catch (ExecutionException e) {
+            throw new MojoFailureException("Error validating the workspace", e.getCause());
+        } finally {
+            pool.shutdown();
+        }
+
+        if (!mismatches.isEmpty()) {
+            for (String mismatch : mismatches) {
+                getLog().error(mismatch);
+            }
+            if (mismatches.size() == 1) {
+                throw new MojoFailureException(mismatches.get(0));
+            }
+            throw new MojoFailureException(mismatches.size() + " projects in the workspace are invalid, see the errors above");
+        }
+    }
+
+    /**
+     * @param projectDirectory the directory of the project in the workspace
+     * @return the problems found, an empty list if the project is valid
+     */
+    protected List<String> validateProject(File projectDirectory) {
+        List<String> mismatches = new ArrayList<String>();
+        String projectDirectoryName = projectDirectory.getName();
+
+        // checks that the directory name is the same as the name in the .project file
+        try {
             String eclipseProjectName = EclipseProjectUtils.getProjectName(projectDirectory);
             if (!projectDirectoryName.equals(eclipseProjectName)) {
-                throw new MojoFailureException("The Project Directory Name ('" + projectDirectoryName + "') is not the same as the Project Name (in .project file) ('" + eclipseProjectName + "')");
+                mismatches.add("The Project Directory Name ('" + projectDirectoryName + "') is not the same as the Project Name (in .project file) ('" + eclipseProjectName + "')");
             }
+        } catch (MojoFailureException e) {
+            mismatches.add(e.getMessage() + (e.getCause() != null ? ": " + e.getCause().getMessage() : ""));
+        }
 
-            // checks that the directory name is the same as the artifactId from the pom.xml file
-            String artifactId = getProjectArtifactId(projectDirectory);
-            if (artifactId != null && !projectDirectoryName.equals(artifactId)) {
-                throw new MojoFailureException("The Project Directory Name ('" + projectDirectoryName + "') is not the same as the Maven artifactId (in pom.xml): " + artifactId);
-            }
+        // checks that the directory name is the same as the artifactId from the pom.xml file
+        String artifactId = getProjectArtifactId(projectDirectory);
+        if (artifactId != null && !projectDirectoryName.equals(artifactId)) {
+            mismatches.add("The Project Directory Name ('" + projectDirectoryName + "') is not the same as the Maven artifactId (in pom.xml): " + artifactId);
         }
+        return mismatches;
     }
 
     /**
@@ -113,16 +183,16 @@ public class ValidateBarBuildWorkspaceMojo extends AbstractMojo {
      * 
      * @param projectDirectory directory containing pom.xml
      * @return the artifactId from the pom.xml
-     * @throws MojoFailureException if something goes wrong
      */
-    private String getProjectArtifactId(File projectDirectory) throws MojoFailureException {
+    private String getProjectArtifactId(File projectDirectory) {
         File pomFile = new File(projectDirectory, "pom.xml");
         String artifactId = null;
         try {
-            Model model = PomXmlUtils.unmarshallPomFile(pomFile);
-            artifactId = model.getArtifactId();
-        } catch (JAXBException e) {
-            getLog().debug("Exception unmarshalling ('" + pomFile.getAbsolutePath() + "')", e);
+            artifactId = PomXmlUtils.readPomSummary(pomFile).getArtifactId();
+        } catch (IOException e) {
+            getLog().debug("Exception reading ('" + pomFile.getAbsolutePath() + "')", e);
+        } catch (XMLStreamException e) {
+            getLog().debug("Exception reading ('" + pomFile.getAbsolutePath() + "')", e);
         }
         return artifactId;
     }
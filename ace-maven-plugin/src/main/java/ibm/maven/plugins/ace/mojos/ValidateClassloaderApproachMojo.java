@@ -1,5 +1,6 @@
 package ibm.maven.plugins.ace.mojos;
 
+import ibm.maven.plugins.ace.utils.BuildTracer;
 import ibm.maven.plugins.ace.utils.ConfigurablePropertiesUtil;
 
 import java.io.BufferedReader;
@@ -18,7 +19,7 @@ import org.apache.maven.plugins.annotations.Parameter;
  * Goal which reads the default.properties file to figure out if the classloader approach for this bar project is consistent. Either all jar nodes in all flows must use a classloader or none of them
  * should.
  */
-@Mojo(name = "validate-classloader-approach")
+@Mojo(name = "validate-classloader-approach", threadSafe = true)
 public class ValidateClassloaderApproachMojo extends AbstractMojo {
 
     /**
@@ -39,7 +40,23 @@ public class ValidateClassloaderApproachMojo extends AbstractMojo {
     @Parameter(property = "ace.useClassloaders", defaultValue = "false")
     protected Boolean useClassloaders;
 
+    /**
+     * The file recording the time spent in the goals of the build as a Chrome trace. A relative path is resolved against
+     * the module, so use an absolute one to trace a reactor into one file. No trace is written if it isn't set.
+     */
+    @Parameter(property = "ace.traceFile")
+    protected File traceFile;
+
     public void execute() throws MojoFailureException {
+        BuildTracer.Span span = BuildTracer.startMojo("validate-classloader-approach", null, traceFile, getLog());
+        try {
+            validateApproach();
+        } finally {
+            span.end();
+        }
+    }
+
+    private void validateApproach() throws MojoFailureException {
 
         // the defaultPropertiesFile will be created in an earlier Maven build
         // step
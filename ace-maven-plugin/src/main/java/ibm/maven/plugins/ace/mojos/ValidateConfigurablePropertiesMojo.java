@@ -10,17 +10,38 @@ import static org.twdata.maven.mojoexecutor.MojoExecutor.groupId;
 import static org.twdata.maven.mojoexecutor.MojoExecutor.name;
 import static org.twdata.maven.mojoexecutor.MojoExecutor.plugin;
 import static org.twdata.maven.mojoexecutor.MojoExecutor.version;
-import ibm.maven.plugins.ace.utils.ConfigurablePropertiesUtil;
+import ibm.maven.plugins.ace.utils.BarDescriptorReader;
+import ibm.maven.plugins.ace.utils.BarOverrideEngine;
+import ibm.maven.plugins.ace.utils.BuildTracer;
+import ibm.maven.plugins.ace.utils.ConfigurablePropertyIndex;
 import ibm.maven.plugins.ace.utils.EclipseProjectUtils;
-import ibm.maven.plugins.ace.utils.ProcessOutputCatcher;
+import ibm.maven.plugins.ace.utils.HostProcessSemaphore;
+import ibm.maven.plugins.ace.utils.MqsiProfileEnvironment;
+import ibm.maven.plugins.ace.utils.ProcessMetrics;
 import ibm.maven.plugins.ace.utils.ProcessOutputLogger;
+import ibm.maven.plugins.ace.utils.ProcessOutputPump;
+import ibm.maven.plugins.ace.utils.ProcessPriority;
+import ibm.maven.plugins.ace.utils.ProcessWatchdog;
+import ibm.maven.plugins.ace.utils.ReadBarOutputParser;
+import ibm.maven.plugins.ace.utils.SpillingLineBuffer;
 
 import java.io.File;
 import java.io.FileWriter;
 import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
 import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
 import java.util.UUID;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 import org.apache.commons.io.FilenameUtils;
 import org.apache.maven.artifact.Artifact;
@@ -29,7 +50,6 @@ import org.apache.maven.plugin.AbstractMojo;
 import org.apache.maven.plugin.BuildPluginManager;
 import org.apache.maven.plugin.MojoExecutionException;
 import org.apache.maven.plugin.MojoFailureException;
-import org.apache.maven.plugin.logging.Log;
 import org.apache.maven.plugins.annotations.Component;
 import org.apache.maven.plugins.annotations.LifecyclePhase;
 import org.apache.maven.plugins.annotations.Mojo;
@@ -40,7 +60,7 @@ import org.codehaus.plexus.util.FileUtils;
 /**
  * Goal which reads the a bar file, including creating a list of configurable properties
  */
-@Mojo(name = "validate-configurable-properties", defaultPhase = LifecyclePhase.PACKAGE)
+@Mojo(name = "validate-configurable-properties", defaultPhase = LifecyclePhase.PACKAGE, threadSafe = true)
 public class ValidateConfigurablePropertiesMojo extends AbstractMojo {
 
     /**
@@ -82,6 +102,18 @@ public class ValidateConfigurablePropertiesMojo extends AbstractMojo {
     @Parameter(property = "ace.failOnInvalidProperties", defaultValue = "true", required = true)
     protected Boolean failOnInvalidProperties;
 
+    /**
+     * The maximum number of properties files validated at the same time, 0 for the number of processors
+     */
+    @Parameter(property = "ace.validatePropertiesThreads", defaultValue = "0")
+    protected int validatePropertiesThreads;
+
+    /**
+     * The report of the unknown, duplicated and missing properties of each properties file, as JSON
+     */
+    @Parameter(property = "ace.propertiesReportFile", defaultValue = "${project.build.directory}/ace/properties-report.json")
+    protected File propertiesReportFile;
+
     /**
      * Installation directory of the ace Toolkit
      */
@@ -126,6 +158,74 @@ public class ValidateConfigurablePropertiesMojo extends AbstractMojo {
     @Parameter(property = "ace.applyBarOverrideTraceFile", defaultValue = "${project.build.directory}/applybaroverridetrace.txt", required = true)
     protected File applyBarOverrideTraceFile;
 
+    /**
+     * Whether the configurable properties are read from the deployment descriptors of the bar by the plugin itself
+     * instead of from the output of mqsireadbar
+     */
+    @Parameter(property = "ace.inProcessBarRead", defaultValue = "false")
+    protected boolean inProcessBarRead;
+
+    /**
+     * Whether the properties files are applied by the plugin itself instead of by mqsiapplybaroverride, which avoids
+     * starting the runtime for every properties file. Overrides for policy projects always use mqsiapplybaroverride.
+     */
+    @Parameter(property = "ace.inProcessBarOverride", defaultValue = "false")
+    protected boolean inProcessBarOverride;
+
+    /**
+     * The maximum number of mqsiapplybaroverride processes to run at the same time, one per properties file
+     */
+    @Parameter(property = "ace.applyBarOverrideThreads", defaultValue = "1")
+    protected int applyBarOverrideThreads;
+
+    /**
+     * The size in KB of the output of a parallel mqsiapplybaroverride process kept in memory until it is logged, more
+     * output is spilled to a temporary file
+     */
+    @Parameter(property = "ace.capturedOutputMemory", defaultValue = "1024")
+    protected int capturedOutputMemory;
+
+    /**
+     * The maximum number of minutes mqsireadbar or mqsiapplybaroverride may run before it is killed together with the
+     * processes it started, 0 for no limit
+     */
+    @Parameter(property = "ace.processTimeout", defaultValue = "0")
+    protected int processTimeout;
+
+    /**
+     * The maximum number of minutes mqsireadbar or mqsiapplybaroverride may run without writing any output before it
+     * is killed, 0 for no limit
+     */
+    @Parameter(property = "ace.processInactivityTimeout", defaultValue = "0")
+    protected int processInactivityTimeout;
+
+    /**
+     * The maximum number of mqsireadbar and mqsiapplybaroverride processes running at the same time on this host,
+     * across all builds using the same ace.processSlotsDirectory, 0 for no limit
+     */
+    @Parameter(property = "ace.maxConcurrentRuntimes", defaultValue = "0")
+    protected int maxConcurrentRuntimes;
+
+    /**
+     * The directory shared by the builds on this host to limit the number of processes running at the same time
+     */
+    @Parameter(property = "ace.processSlotsDirectory", defaultValue = "${java.io.tmpdir}/ace-process-slots")
+    protected File processSlotsDirectory;
+
+    /**
+     * The niceness mqsireadbar and mqsiapplybaroverride are started with (Unix only), eg. 10, unset to keep the
+     * priority of Maven
+     */
+    @Parameter(property = "ace.processNice")
+    protected Integer processNice;
+
+    /**
+     * The ionice scheduling class mqsireadbar and mqsiapplybaroverride are started with (Linux only), eg. 3 for idle,
+     * unset to keep the I/O priority of Maven
+     */
+    @Parameter(property = "ace.processIoniceClass")
+    protected Integer processIoniceClass;
+
     /**
      * The Maven Project Object
      */
@@ -151,32 +251,55 @@ public class ValidateConfigurablePropertiesMojo extends AbstractMojo {
     protected String applicationName;
 
 
+    /**
+     * The file recording the time spent in the goals of the build as a Chrome trace. A relative path is resolved against
+     * the module, so use an absolute one to trace a reactor into one file. No trace is written if it isn't set.
+     */
+    @Parameter(property = "ace.traceFile")
+    protected File traceFile;
+
     public void execute() throws MojoFailureException, MojoExecutionException {
+        BuildTracer.Span span = BuildTracer.startMojo("validate-configurable-properties", project, traceFile, getLog());
+        try {
+            validateProperties();
+        } finally {
+            span.end();
+        }
+    }
+
+    private void validateProperties() throws MojoFailureException, MojoExecutionException {
 
     	
     	copyAndFilterResources();
 
         getLog().info("Reading bar file: " + barName);
 
-        List<String> params = new ArrayList<String>();
-        params.add("-b");
-        params.add(barName.getAbsolutePath());
+        List<String> configurableProperties;
+        if (inProcessBarRead) {
+            try {
+                configurableProperties = BarDescriptorReader.getConfigurableProperties(barName);
+            } catch (IOException e) {
+                throw new MojoFailureException("Error reading bar file: " + barName.getAbsolutePath(), e);
+            }
+        } else {
+            List<String> params = new ArrayList<String>();
+            params.add("-b");
+            params.add(barName.getAbsolutePath());
 
-        // process the bar file recursively (applies to applications and libraries)
-        params.add("-r");
-        
-      /*  params.add("-v");
-        params.add(readBarTraceFile.getAbsolutePath());
-*/
+            // process the bar file recursively (applies to applications and libraries)
+            params.add("-r");
 
-        List<String> output = executeReadBar(params);
+          /*  params.add("-v");
+            params.add(readBarTraceFile.getAbsolutePath());
+    */
 
-        List<String> configurableProperties = getConfigurableProperties(output);
+            configurableProperties = executeReadBar(params);
+        }
 
         writeToFile(configurableProperties, defaultPropertiesFile);
 
         if (applyBarOverride){
-        validatePropertiesFiles(ConfigurablePropertiesUtil.getPropNames(configurableProperties));
+        validatePropertiesFiles(new ConfigurablePropertyIndex(configurableProperties));
 
         
         executeApplyBarOverrides();
@@ -187,92 +310,304 @@ public class ValidateConfigurablePropertiesMojo extends AbstractMojo {
 
         getLog().debug("Project Build Resources: " + project.getBuild().getResources().toString());
 
-        // copy the main resources
-        executeMojo(plugin(groupId("org.apache.maven.plugins"), artifactId("maven-resources-plugin"), version("2.6")), goal("copy-resources"), configuration(element(name("outputDirectory"),
-                "${project.build.directory}/ace"), element(name("resources"), element(name("resource"),
-                // TODO hard-coding this isn't great form
-                // see also ValidateConfigurablePropertiesMojo.java
-                element(name("directory"), "src/main/resources"), element(name("filtering"), "true")))), executionEnvironment(project, session, buildPluginManager));
-
-        // copy the test resources
-        executeMojo(plugin(groupId("org.apache.maven.plugins"), artifactId("maven-resources-plugin"), version("2.6")), goal("copy-resources"), configuration(element(name("outputDirectory"),
-                "${project.build.directory}/ace-test"), element(name("resources"), element(name("resource"),
-                // TODO hard-coding this isn't great form
-                // see also ValidateConfigurablePropertiesMojo.java
-                element(name("directory"), "src/test/resources"), element(name("filtering"), "true")))), executionEnvironment(project, session, buildPluginManager));
+        BuildTracer.Span span = BuildTracer.start(BuildTracer.DELEGATION, "maven-resources-plugin:copy-resources", project);
+        try {
+            // copy the main resources
+            executeMojo(plugin(groupId("org.apache.maven.plugins"), artifactId("maven-resources-plugin"), version("2.6")), goal("copy-resources"), configuration(element(name("outputDirectory"),
+                    "${project.build.directory}/ace"), element(name("resources"), element(name("resource"),
+                    // TODO hard-coding this isn't great form
+                    // see also ValidateConfigurablePropertiesMojo.java
+                    element(name("directory"), "src/main/resources"), element(name("filtering"), "true")))), executionEnvironment(project, session, buildPluginManager));
+
+            // copy the test resources
+            executeMojo(plugin(groupId("org.apache.maven.plugins"), artifactId("maven-resources-plugin"), version("2.6")), goal("copy-resources"), configuration(element(name("outputDirectory"),
+                    "${project.build.directory}/ace-test"), element(name("resources"), element(name("resource"),
+                    // TODO hard-coding this isn't great form
+                    // see also ValidateConfigurablePropertiesMojo.java
+                    element(name("directory"), "src/test/resources"), element(name("filtering"), "true")))), executionEnvironment(project, session, buildPluginManager));
+        } finally {
+            span.end();
+        }
 
 
     }
 
     private void executeApplyBarOverrides() throws MojoFailureException, MojoExecutionException {
 
+        final List<File> propFiles;
         try {
-            getLog().info("Applying properties files as bar file overrides");
-            for (File propFile : getTargetPropertiesFiles()) {
-
-                getLog().info("  " + propFile.getAbsolutePath());
-
-                List<String> params = new ArrayList<String>();
-
-                // (Required) The path to the BAR file.
-                params.add("-b");
-                params.add(barName.getAbsolutePath());
-
-                // (Optional) The name of the output BAR file to which the BAR file changes are to be made.
-                params.add("-o");
-               // String outputBarFile = new File(propFile.getParent(), propFile.getName().replaceAll("properties$", "bar")).getAbsolutePath();
-                
-                // Updated by Anand Awasthi
-                String outputBarFile = new File(barName.getParent(), propFile.getName().replaceAll("properties$", "bar")).toString();
-                outputBarFile = outputBarFile.replaceAll(".bar", "_"+versionString+".bar");
-                params.add(outputBarFile);
-
-                // (Optional) The path to one of the following resources:
-                // - A BAR file that contains the deployment descriptor.
-                // - A properties file in which each line contains a property-name=override.
-                // - A deployment descriptor that is used to apply overrides to the BAR file.
-                params.add("-p");
-                params.add(propFile.getAbsolutePath());
-
-                // (Optional) The name of an application in the BAR file
-                
-                // Added below code on 8/23/2018 - Updated it for policy projects for ACE v11 on 4/7/2019
-                if (EclipseProjectUtils.isApplication(new File(workspace, applicationName), getLog())) {
-                	params.add("-k");
-                } else if (EclipseProjectUtils.isLibrary(new File(workspace, applicationName), getLog())) {
-                	params.add("-y");
-                }else if (EclipseProjectUtils.isPolicyProject(new File(workspace, applicationName), getLog())) {
-                    	params.add("-x");
-                }
-                //Addition done on 8/23/2018
-                
-              //  params.add(getApplicationParameter());
-                params.add(getApplicationName());
+            propFiles = getTargetPropertiesFiles();
+        } catch (IOException e) {
+            throw new MojoFailureException("Error applying bar overrides", e);
+        }
 
-                // (Optional) A list of the property-name=override pairs, current-property-value=override pairs.
-                // -m
+        getLog().info("Applying properties files as bar file overrides");
+
+        // (Optional) The name of an application in the BAR file
+        // Added below code on 8/23/2018 - Updated it for policy projects for ACE v11 on 4/7/2019
+        String applicationFlag = null;
+        switch (EclipseProjectUtils.getProjectKind(new File(workspace, applicationName))) {
+        case APPLICATION:
+            applicationFlag = "-k";
+            break;
+        case LIBRARY:
+        case SHARED_LIBRARY:
+            applicationFlag = "-y";
+            break;
+        case POLICY_PROJECT:
+            applicationFlag = "-x";
+            break;
+        default:
+            break;
+        }
+        final String application = getApplicationName();
+
+        // policy projects (-x) are only supported by mqsiapplybaroverride
+        BarOverrideEngine.Target target = null;
+        if (inProcessBarOverride) {
+            if (applicationFlag == null) {
+                target = BarOverrideEngine.Target.BAR;
+            } else if ("-k".equals(applicationFlag)) {
+                target = BarOverrideEngine.Target.APPLICATION;
+            } else if ("-y".equals(applicationFlag)) {
+                target = BarOverrideEngine.Target.LIBRARY;
+            } else {
+                getLog().info("Overrides for policy projects are applied with mqsiapplybaroverride");
+            }
+        }
+        final BarOverrideEngine.Target inProcessTarget = target;
+
+        // every override writes its own output bar and trace file, so they have to be unique before anything runs in parallel
+        Map<String, File> outputBarFiles = new LinkedHashMap<String, File>();
+        Set<String> traceFiles = new HashSet<String>();
+        for (File propFile : propFiles) {
+            String outputBarFile = getOutputBarFile(propFile);
+            File previous = outputBarFiles.put(outputBarFile, propFile);
+            if (previous != null) {
+                throw new MojoFailureException("Properties files " + previous.getAbsolutePath() + " and " + propFile.getAbsolutePath() + " would both be written to " + outputBarFile);
+            }
+            if (!traceFiles.add(getTraceFileParameter(propFile))) {
+                throw new MojoFailureException("More than one properties file would write the trace file " + getTraceFileParameter(propFile));
+            }
+        }
+
+        int threads = Math.max(1, Math.min(applyBarOverrideThreads, propFiles.size()));
+        if (threads > 1) {
+            getLog().info("Running up to " + threads + " mqsiapplybaroverride processes in parallel");
+        }
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        Map<File, Future<Iterable<String>>> results = new LinkedHashMap<File, Future<Iterable<String>>>();
+        try {
+            for (final Map.Entry<String, File> outputBar : outputBarFiles.entrySet()) {
+                final File propFile = outputBar.getValue();
+                final List<String> params = getApplyBarOverrideParams(propFile, applicationFlag, application);
+                final File outputBarFile = new File(outputBar.getKey());
+                final boolean parallel = threads > 1;
+
+                results.put(propFile, executor.submit(new Callable<Iterable<String>>() {
+                    public Iterable<String> call() throws Exception {
+                        if (inProcessTarget != null) {
+                            return applyBarOverrideInProcess(propFile, inProcessTarget, application, outputBarFile, parallel);
+                        }
+                        return applyBarOverride(propFile, params, outputBarFile, parallel);
+                    }
+                }));
+            }
 
-                // (Optional) Specifies that all deployment descriptor files are updated recursively.
-                if (applyBarOverrideRecursively) {
-                    params.add("-r");
+            // wait for all of them, so that one failure doesn't leave the others running unnoticed
+            List<String> failures = new ArrayList<String>();
+            for (Map.Entry<File, Future<Iterable<String>>> result : results.entrySet()) {
+                File propFile = result.getKey();
+                try {
+                    Iterable<String> output = result.getValue().get();
+                    if (output != null) {
+                        getLog().info("  " + propFile.getAbsolutePath());
+                        try {
+                            for (String outputLine : output) {
+                                getLog().info(outputLine);
+                            }
+                        } finally {
+                            closeOutput(output);
+                        }
+                    }
+                } catch (ExecutionException e) {
+                    Throwable cause = e.getCause();
+                    getLog().error("Error applying bar overrides from " + propFile.getAbsolutePath() + ": " + cause.getMessage());
+                    if (cause instanceof ApplyBarOverrideException) {
+                        SpillingLineBuffer output = ((ApplyBarOverrideException) cause).output;
+                        try {
+                            for (String outputLine : output) {
+                                getLog().error(outputLine);
+                            }
+                        } finally {
+                            output.close();
+                        }
+                    }
+                    failures.add(propFile.getName());
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new MojoFailureException("Interrupted while applying bar overrides", e);
                 }
+            }
+
+            if (!failures.isEmpty()) {
+                throw new MojoFailureException("Error applying bar overrides from: " + failures);
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+
+        // Delete the original bar, only once all the overrides have been written -- Added by Anand Awasthi
+        barName.delete();
+    }
+
+    /**
+     * @param propFile the properties file to be applied
+     * @param applicationFlag the parameter identifying the type of the application, or null if unknown
+     * @param application the name of the application to be overridden
+     * @return the mqsiapplybaroverride parameters, without the output bar file
+     */
+    private List<String> getApplyBarOverrideParams(File propFile, String applicationFlag, String application) {
+        List<String> params = new ArrayList<String>();
+
+        // (Required) The path to the BAR file.
+        params.add("-b");
+        params.add(barName.getAbsolutePath());
+
+        // (Optional) The path to one of the following resources:
+        // - A BAR file that contains the deployment descriptor.
+        // - A properties file in which each line contains a property-name=override.
+        // - A deployment descriptor that is used to apply overrides to the BAR file.
+        params.add("-p");
+        params.add(propFile.getAbsolutePath());
+
+        // (Optional) The name of an application in the BAR file
+        if (applicationFlag != null) {
+            params.add(applicationFlag);
+        }
+        params.add(application);
+
+        // (Optional) A list of the property-name=override pairs, current-property-value=override pairs.
+        // -m
+
+        // (Optional) Specifies that all deployment descriptor files are updated recursively.
+        if (applyBarOverrideRecursively) {
+            params.add("-r");
+        }
+
+        // (Optional) Specifies that the internal trace is to be sent to the named file.
+        params.add("-v");
+        params.add(getTraceFileParameter(propFile));
+
+        return params;
+    }
+
+    /**
+     * Runs mqsiapplybaroverride for one properties file. The output bar is written into a directory of its own and only
+     * moved to its final name when the command succeeded, so concurrent overrides never see each other's partial files.
+     *
+     * @param propFile the properties file to be applied
+     * @param params the parameters from {@link #getApplyBarOverrideParams(File, String, String)}
+     * @param outputBarFile the final name of the output bar
+     * @param captureOutput whether to return the output instead of logging it as it arrives
+     * @return the output of the command if captureOutput is set, null otherwise
+     * @throws MojoFailureException If an exception occurs
+     */
+    private Iterable<String> applyBarOverride(File propFile, List<String> params, File outputBarFile, boolean captureOutput) throws MojoFailureException {
+        if (!captureOutput) {
+            getLog().info("  " + propFile.getAbsolutePath());
+        }
+
+        File stagingDir = new File(outputBarFile.getParentFile(), ".applybaroverride-" + UUID.randomUUID());
+        try {
+            if (!stagingDir.mkdirs()) {
+                throw new MojoFailureException("Could not create directory: " + stagingDir.getAbsolutePath());
+            }
+            File stagedBarFile = new File(stagingDir, outputBarFile.getName());
+
+            List<String> command = new ArrayList<String>(params);
+            // (Optional) The name of the output BAR file to which the BAR file changes are to be made.
+            command.add("-o");
+            command.add(stagedBarFile.getAbsolutePath());
 
-                // (Optional) Specifies that the internal trace is to be sent to the named file.
-                params.add("-v");
-                params.add(getTraceFileParameter(propFile));
+            SpillingLineBuffer output = captureOutput ? new SpillingLineBuffer(capturedOutputMemory * 1024L, new File(project.getBuild().getDirectory(), "ace")) : null;
+            try {
+                executeApplyBarOverride(command, output);
+            } catch (ApplyBarOverrideException e) {
+                // the output is logged and deleted by the caller
+                throw e;
+            } catch (MojoFailureException e) {
+                closeOutput(output);
+                throw e;
+            }
 
-                // (Optional) The name of a library in the BAR file to which to apply overrides.
-                // -y
+            try {
+                Files.move(stagedBarFile.toPath(), outputBarFile.toPath(), StandardCopyOption.REPLACE_EXISTING);
+            } catch (IOException e) {
+                closeOutput(output);
+                throw new MojoFailureException("Could not move " + stagedBarFile.getAbsolutePath() + " to " + outputBarFile.getAbsolutePath(), e);
+            }
+            return output;
+        } finally {
+            try {
+                FileUtils.deleteDirectory(stagingDir);
+            } catch (IOException e) {
+                getLog().warn("Could not delete directory: " + stagingDir.getAbsolutePath());
+            }
+        }
+    }
 
-                executeApplyBarOverride(params);               
+    /**
+     * Applies a properties file without starting mqsiapplybaroverride, see {@link BarOverrideEngine}. Like
+     * {@link #applyBarOverride(File, List, File, boolean)} the output bar is written to a temporary name first.
+     *
+     * @param propFile the properties file to be applied
+     * @param target the part of the bar to be overridden
+     * @param application the name of the application or library to be overridden
+     * @param outputBarFile the final name of the output bar
+     * @param captureOutput whether to return the output instead of logging it
+     * @return the output if captureOutput is set, null otherwise
+     * @throws MojoFailureException If an exception occurs
+     */
+    private Iterable<String> applyBarOverrideInProcess(File propFile, BarOverrideEngine.Target target, String application, File outputBarFile,
+            boolean captureOutput) throws MojoFailureException {
+        List<String> output = new ArrayList<String>();
+        output.add("  " + propFile.getAbsolutePath());
 
+        File stagedBarFile = new File(outputBarFile.getParentFile(), outputBarFile.getName() + "." + UUID.randomUUID() + ".tmp");
+        try {
+            BarOverrideEngine engine = new BarOverrideEngine(BarOverrideEngine.readOverrides(propFile), getLog());
+            engine.apply(barName, stagedBarFile, target, application, applyBarOverrideRecursively);
+            for (String unused : engine.getUnusedOverrides()) {
+                output.add("    no configurable property matches: " + unused);
             }
-            // Delete the original bar -- Added by Anand Awasthi
-            barName.delete();
-            
+            Files.move(stagedBarFile.toPath(), outputBarFile.toPath(), StandardCopyOption.REPLACE_EXISTING);
         } catch (IOException e) {
-            throw new MojoFailureException("Error applying bar overrides", e);
+            throw new MojoFailureException("Error applying bar overrides from " + propFile.getAbsolutePath(), e);
+        } finally {
+            stagedBarFile.delete();
+        }
+
+        if (captureOutput) {
+            return output;
+        }
+        for (String outputLine : output) {
+            getLog().info(outputLine);
         }
+        return null;
+    }
+
+    /**
+     * @param propFile the name of the apply bar override property file
+     * @return the bar file the overrides from propFile are written to
+     */
+    protected String getOutputBarFile(File propFile) {
+        // String outputBarFile = new File(propFile.getParent(), propFile.getName().replaceAll("properties$", "bar")).getAbsolutePath();
+
+        // Updated by Anand Awasthi
+        String outputBarFile = new File(barName.getParent(), propFile.getName().replaceAll("properties$", "bar")).toString();
+        outputBarFile = outputBarFile.replaceAll(".bar", "_" + versionString + ".bar");
+        return outputBarFile;
     }
 
     /**
@@ -321,10 +656,7 @@ public class ValidateConfigurablePropertiesMojo extends AbstractMojo {
         throw new MojoExecutionException("Unable to determine application to be overriden. Calculated name is: " + appName);
     }
 
-    @SuppressWarnings("unchecked")
-    private void validatePropertiesFiles(List<String> validProps) throws MojoFailureException {
-
-        boolean invalidPropertiesFound = false;
+    private void validatePropertiesFiles(ConfigurablePropertyIndex index) throws MojoFailureException {
 
         List<File> propFiles = null;
         try {
@@ -332,29 +664,42 @@ public class ValidateConfigurablePropertiesMojo extends AbstractMojo {
         } catch (IOException e) {
             throw new MojoFailureException("Error searching for properties files", e);
         }
-        getLog().info("Validating properties files");
-        for (File file : propFiles) {
-            getLog().info("  " + file.getAbsolutePath());
-            try {
-                List<String> definedProps = FileUtils.loadFile(file);
+        getLog().info("Validating " + propFiles.size() + " properties files against " + index.size() + " configurable properties");
 
-                // check if all the defined properties are valid
-                if (!validProps.containsAll(ConfigurablePropertiesUtil.getPropNames(definedProps))) {
-
-                    getLog().error("Invalid properties found in " + file.getAbsolutePath());
-                    invalidPropertiesFound = true;
+        int threads = validatePropertiesThreads > 0 ? validatePropertiesThreads : Runtime.getRuntime().availableProcessors();
+        List<ConfigurablePropertyIndex.Report> reports;
+        try {
+            reports = index.validate(propFiles, threads);
+        } catch (IOException e) {
+            throw new MojoFailureException("Error loading properties file: " + e.getMessage(), e);
+        }
 
-                    // list the invalid properties in this file
-                    for (String definedProp : definedProps) {
-                        if (!validProps.contains(ConfigurablePropertiesUtil.getPropName(definedProp))) {
-                            getLog().error("  " + definedProp);
-                        }
-                    }
+        boolean invalidPropertiesFound = false;
+        for (ConfigurablePropertyIndex.Report report : reports) {
+            getLog().info("  " + report.getFile().getAbsolutePath());
+            if (!report.isValid()) {
+                getLog().error("Invalid properties found in " + report.getFile().getAbsolutePath());
+                invalidPropertiesFound = true;
+
+                // list the invalid properties in this file
+                for (ConfigurablePropertyIndex.UnknownProperty unknown : report.getUnknown()) {
+                    getLog().error("  " + unknown.getLine() + " (line " + unknown.getLineNumber() + ", " + unknown.getReason() + ")");
                 }
-
-            } catch (IOException e) {
-                throw new MojoFailureException("Error loading properties file: " + file.getAbsolutePath(), e);
             }
+            for (String duplicated : report.getDuplicated()) {
+                getLog().warn("  Property defined more than once: " + duplicated);
+            }
+            if (getLog().isDebugEnabled()) {
+                for (String missing : report.getMissing()) {
+                    getLog().debug("  Property not defined: " + missing);
+                }
+            }
+        }
+
+        try {
+            ConfigurablePropertyIndex.writeReport(reports, propertiesReportFile);
+        } catch (IOException e) {
+            getLog().warn("Could not write " + propertiesReportFile.getAbsolutePath() + ": " + e.getMessage());
         }
 
         if (failOnInvalidProperties && invalidPropertiesFound) {
@@ -364,86 +709,23 @@ public class ValidateConfigurablePropertiesMojo extends AbstractMojo {
 
     /**
      * @param params
+     * @param output collects the output of the command, if null it is logged instead
      * @throws MojoFailureException If an exception occurs
      */
-    private void executeApplyBarOverride(List<String> params) throws MojoFailureException {
+    private void executeApplyBarOverride(List<String> params, SpillingLineBuffer output) throws MojoFailureException {
 
-    	 //Check underlying operating system
-        String osName = System.getProperty("os.name").toLowerCase();
-        String executable=null;
-        File cmdFile=null;
-        ProcessBuilder pb =null;
-       
-        List<String> command = new ArrayList<String>();
-       
-        if (osName.contains("windows")){
-        	cmdFile = new File(System.getProperty("java.io.tmpdir") + File.separator + "readbarCommand-" + UUID.randomUUID() + ".cmd");
-        	cmdFile.deleteOnExit();
-        	executable = aceRunDir+"/mqsiprofile&&mqsiapplybaroverride";
-        	
-        }else if(osName.contains("linux")){
-        	
-        	executable = ". "+aceRunDir+"/mqsiprofile&&mqsiapplybaroverride";
-        	
-        }
-        
-      
-        command.add(executable);
-        command.addAll(params);
-
-        if (getLog().isDebugEnabled()) {
-        	if (osName.contains("windows")){
-            getLog().debug("executing command file: " + cmdFile.getAbsolutePath());
-        	}
-            getLog().debug("executeMqsiApplyBarOverride command: " + getCommandLine(command));
-        }
-
-        if (osName.contains("windows")){
-            try {
-                FileUtils.fileWrite(cmdFile, getCommandLine(command));
-
-                // make sure it can be executed on Unix
-                cmdFile.setExecutable(true);
-            } catch (IOException e1) {
-                throw new MojoFailureException("Could not create command file: " + cmdFile.getAbsolutePath());
-            }
-            }
-
-        if (osName.contains("windows")){
-        	pb = new ProcessBuilder(cmdFile.getAbsolutePath());
-        }else if (osName.contains("linux")){
-        	pb = new ProcessBuilder();
-        	pb.command("bash", "-c", getCommandLine(command));
-        }
-        // redirect subprocess stderr to stdout
-        pb.redirectErrorStream(true);
-        Process process;
-        ProcessOutputLogger stdOutHandler = null;
-        try {
-            pb.redirectErrorStream(true);
-            process = pb.start();
-            stdOutHandler = new ProcessOutputLogger(process.getInputStream(), getLog());
-            stdOutHandler.start();
-            process.waitFor();
-
-        } catch (IOException e) {
-            throw new MojoFailureException("Error executing: " + getCommandLine(command), e);
-        } catch (InterruptedException e) {
-            throw new MojoFailureException("Error executing: " + getCommandLine(command), e);
-        } finally {
-            if (stdOutHandler != null) {
-                stdOutHandler.interrupt();
-                try {
-                    stdOutHandler.join();
-                } catch (InterruptedException e) {
-                    // this should never happen, so ignore this one
-                }
-            }
+        ProcessOutputPump.LineHandler handler;
+        if (output != null) {
+            handler = output;
+        } else {
+            handler = new ProcessOutputLogger(getLog());
         }
+        int exitCode = executeAceCommand("mqsiapplybaroverride", params, handler);
 
-        if (process.exitValue() != 0) {
+        if (exitCode != 0) {
             // logOutputFile(outFile, "error");
-            throw new MojoFailureException("mqsiapplybaroverride finished with exit code: " + process.exitValue());
+            String message = "mqsiapplybaroverride finished with exit code: " + exitCode;
+            throw output != null ? new ApplyBarOverrideException(message, output) : new MojoFailureException(message);
         }
 
         getLog().debug("mqsiapplybaroverride complete");
@@ -452,100 +734,125 @@ public class ValidateConfigurablePropertiesMojo extends AbstractMojo {
 
     /**
      * @param params the parameters to be used with the mqsireadbar command
-     * @return the screen output of the executed mqsireadbar command
+     * @return the configurable properties, parsed from the output while mqsireadbar is running
      * @throws MojoFailureException If an exception occurs
      */
     private List<String> executeReadBar(List<String> params) throws MojoFailureException {
-        ArrayList<String> output = new ArrayList<String>();
-
-     
-        //Check underlying operating system
-        String osName = System.getProperty("os.name").toLowerCase();
-        String executable=null;
-        File cmdFile=null;
-        ProcessBuilder pb =null;
-       
-        List<String> command = new ArrayList<String>();
-        
-        if (osName.contains("windows")){
-        	cmdFile = new File(System.getProperty("java.io.tmpdir") + File.separator + "readbarCommand-" + UUID.randomUUID() + ".cmd");
-        	cmdFile.deleteOnExit();
-        	executable = aceRunDir+"/mqsiprofile&&mqsireadbar";
-        	
-        }else if(osName.contains("linux")){
-        	
-        	executable = ". "+aceRunDir+"/mqsiprofile&&mqsireadbar";
-        	
-        }
-        
-        command.add(executable);
-        command.addAll(params);
-       
+        final List<String> configurableProperties = new ArrayList<String>();
+        ReadBarOutputParser parser = new ReadBarOutputParser(new ReadBarOutputParser.PropertyHandler() {
+            public void handleProperty(String property) {
+                configurableProperties.add(property);
+            }
+        }, getLog());
 
-        if (getLog().isDebugEnabled()) {
-        	if (osName.contains("windows")){
-            getLog().debug("executing command file: " + cmdFile.getAbsolutePath());
-        	}
-            getLog().debug("executeMqsiReadBar command: " + getCommandLine(command));
+        int exitCode = executeAceCommand("mqsireadbar", params, parser);
+
+        if (exitCode != 0) {
+            // logOutputFile(outFile, "error");
+            throw new MojoFailureException("mqsireadbar finished with exit code: " + exitCode);
         }
 
-        if (osName.contains("windows")){
-        try {
-            FileUtils.fileWrite(cmdFile, getCommandLine(command));
+        getLog().info("mqsireadbar complete, " + parser.getPropertyCount() + " configurable properties");
+        return configurableProperties;
+    }
 
-            // make sure it can be executed on Unix
-            cmdFile.setExecutable(true);
-        } catch (IOException e1) {
-            throw new MojoFailureException("Could not create command file: " + cmdFile.getAbsolutePath());
-        }
+    /**
+     * executes an ACE command directly, with the environment set up by the mqsiprofile of aceRunDir. The profile is
+     * only sourced once per build.
+     * 
+     * @param name the name of the command, eg. mqsireadbar
+     * @param params the parameters of the command
+     * @param handler receives the output of the command (stdout and stderr)
+     * @return the exit code of the command
+     * @throws MojoFailureException If the command can't be executed
+     */
+    private int executeAceCommand(String name, List<String> params, ProcessOutputPump.LineHandler handler) throws MojoFailureException {
+        Map<String, String> environment;
+        try {
+            environment = MqsiProfileEnvironment.getEnvironment(aceRunDir, getLog());
+        } catch (IOException e) {
+            throw new MojoFailureException("Error setting up the environment with " + aceRunDir + "/mqsiprofile", e);
         }
 
-        if (osName.contains("windows")){
-        	pb = new ProcessBuilder(cmdFile.getAbsolutePath());
-        }else if (osName.contains("linux")){
-        	pb = new ProcessBuilder();
-        	pb.command("bash", "-c", getCommandLine(command));
+        List<String> command = new ArrayList<String>();
+        command.add(MqsiProfileEnvironment.resolveExecutable(name, environment, aceRunDir));
+        command.addAll(params);
+
+        if (getLog().isDebugEnabled()) {
+            getLog().debug("execute" + name + " command: " + getCommandLine(command));
         }
 
+        ProcessBuilder pb = new ProcessBuilder(ProcessPriority.apply(command, processNice, processIoniceClass));
+        pb.environment().clear();
+        pb.environment().putAll(environment);
         // redirect subprocess stderr to stdout
         pb.redirectErrorStream(true);
-        Process process;
-        ProcessOutputCatcher stdOutHandler = null;
+        HostProcessSemaphore.Slot slot = acquireSlot(name);
+        BuildTracer.Span span = BuildTracer.start(BuildTracer.PROCESS, name, project);
         try {
-            pb.redirectErrorStream(true);
-            process = pb.start();
-            stdOutHandler = new ProcessOutputCatcher(process.getInputStream(), output);
-            stdOutHandler.start();
-            process.waitFor();
-
+            Process process = pb.start();
+            ProcessWatchdog watchdog = new ProcessWatchdog(process, name, processTimeout * 60000L, processInactivityTimeout * 60000L, null, getLog());
+            ProcessMetrics metrics = ProcessMetrics.start(name, process);
+            process.getOutputStream().close();
+            ProcessOutputPump stdOutPump = ProcessOutputPump.start(process.getInputStream(), watchdog.watch(handler));
+            int exitCode;
+            try {
+                exitCode = watchdog.waitFor();
+            } finally {
+                metrics.stop();
+                watchdog.awaitOutput(stdOutPump);
+            }
+            recordMetrics(metrics);
+            return exitCode;
         } catch (IOException e) {
-            throw new MojoFailureException("Error executing: " + getCommandLine(command), e.getCause());
+            throw new MojoFailureException("Error executing: " + getCommandLine(command), e);
         } catch (InterruptedException e) {
-            throw new MojoFailureException("Error executing: " + getCommandLine(command), e.getCause());
+            throw new MojoFailureException("Error executing: " + getCommandLine(command), e);
         } finally {
-            if (stdOutHandler != null) {
-                stdOutHandler.interrupt();
-                try {
-                    stdOutHandler.join();
-                } catch (InterruptedException e) {
-                    // this should never happen, so ignore this one
-                }
+            span.end();
+            if (slot != null) {
+                slot.release();
             }
         }
+    }
 
-        if (process.exitValue() != 0) {
-            // logOutputFile(outFile, "error");
-            throw new MojoFailureException("mqsireadbar finished with exit code: " + process.exitValue());
+    /**
+     * waits for a free runtime slot on this host, if the number of runtime commands is limited
+     * 
+     * @param name the name of the command
+     * @return the slot, or null if the number isn't limited
+     * @throws MojoFailureException If the slots directory can't be used
+     */
+    private HostProcessSemaphore.Slot acquireSlot(String name) throws MojoFailureException {
+        if (maxConcurrentRuntimes <= 0) {
+            return null;
+        }
+        BuildTracer.Span span = BuildTracer.start(BuildTracer.SLOT, "wait for runtime slot", project);
+        try {
+            return new HostProcessSemaphore(new File(processSlotsDirectory, "runtime"), maxConcurrentRuntimes).acquire(name, getLog());
+        } catch (IOException e) {
+            throw new MojoFailureException("Error waiting for a runtime slot in " + processSlotsDirectory.getAbsolutePath(), e);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new MojoFailureException("Interrupted while waiting for a runtime slot", e);
+        } finally {
+            span.end();
         }
+    }
 
-        getLog().info("mqsireadbar complete");
-        if (getLog().isDebugEnabled()) {
-            Log log = getLog();
-            for (String outputLine : output) {
-                log.debug(outputLine);
-            }
+    /**
+     * logs the resource usage of a command and adds it to target/ace/metrics.json
+     * 
+     * @param metrics the metrics of the finished command
+     */
+    private void recordMetrics(ProcessMetrics metrics) {
+        getLog().info(metrics.getSummary());
+        File metricsFile = new File(project.getBuild().getDirectory(), "ace/metrics.json");
+        try {
+            ProcessMetrics.record(metrics, metricsFile);
+        } catch (IOException e) {
+            getLog().warn("Could not write " + metricsFile.getAbsolutePath() + ": " + e.getMessage());
         }
-        return output;
     }
 
     private void writeToFile(List<String> configurableProperties, File file) throws MojoFailureException {
@@ -577,56 +884,11 @@ public class ValidateConfigurablePropertiesMojo extends AbstractMojo {
      * @param output the output of the mqsireadbar command for a given bar file
      * @return a list of properties that can be overriden for a given bar file
      */
-    protected List<String> getConfigurableProperties(List<String> output) {
-        // extract the configurable properties
-
-        // output format changed for ace9...
-
-        // 1. search the output for a line indented with spaces followed by "Deployment descriptor:"
-        // 2. everything after that is a configurable property up until
-        // 3.a. a line less indented than the output line from "1" above
-        // OR
-        // 3.b. a blank line followed by "  BIP8071I: Successful command completion."
-        boolean inDeploymentDescriptor = false;
-        int currentIndentation = 0;
-
-        // this could probably be done more efficiently with a subList
+    protected List<String> getConfigurableProperties(Iterable<String> output) {
         List<String> configurableProperties = new ArrayList<String>();
+        ReadBarOutputParser parser = new ReadBarOutputParser(configurableProperties);
         for (String outputLine : output) {
-           
-        	// Code added by Anand
-        	if (outputLine.matches(" *Deployment descriptor:")) {
-                inDeploymentDescriptor = false;               
-            }
-        	// Addition done
-        	
-        	if (!inDeploymentDescriptor) {
-                if (outputLine.matches(" *Deployment descriptor:")) {
-                    inDeploymentDescriptor = true;
-
-                    // calculate how far indented the outputLine is
-                    currentIndentation = getIndentation(outputLine);
-                }
-                continue;
-            } 
-                        
-            else {
-                // inDeploymentDescriptor == true, check that it hasn't ended
-                if (getIndentation(outputLine) < currentIndentation) {
-                    // reset and continue
-                    currentIndentation = 0;
-                    inDeploymentDescriptor = false;
-                    continue;
-                }
-
-                if (!outputLine.trim().equals("")) {
-                    configurableProperties.add(outputLine.trim());
-                } else {
-                    // we found a blank line - assume it's the one before
-                    // "  BIP8071I: Successful command completion." and stop
-                    break;
-                }
-            }
+            parser.handleLine(outputLine);
         }
         return configurableProperties;
     }
@@ -636,7 +898,33 @@ public class ValidateConfigurablePropertiesMojo extends AbstractMojo {
      * @return dummy comment
      */
     protected int getIndentation(String outputLine) {
-        return outputLine.length() - outputLine.replaceAll("^ *", "").length();
+        return ReadBarOutputParser.getIndentation(outputLine);
+    }
+
+    /**
+     * deletes the temporary file of captured output, if any
+     * 
+     * @param output the output of a command
+     */
+    private void closeOutput(Iterable<String> output) {
+        if (output instanceof SpillingLineBuffer) {
+            ((SpillingLineBuffer) output).close();
+        }
+    }
+
+    /**
+     * A failed mqsiapplybaroverride run whose output was captured rather than logged.
+     */
+    private static class ApplyBarOverrideException extends MojoFailureException {
+
+        private static final long serialVersionUID = 1L;
+
+        private final SpillingLineBuffer output;
+
+        ApplyBarOverrideException(String message, SpillingLineBuffer output) {
+            super(message);
+            this.output = output;
+        }
     }
 
     private String getCommandLine(List<String> command) {
@@ -0,0 +1,254 @@
+package ibm.maven.plugins.ace.utils;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.regex.Pattern;
+import java.util.regex.PatternSyntaxException;
+
+import org.apache.maven.plugin.logging.Log;
+
+/**
+ * Forwards the output of a process, see {@link ProcessOutputPump}, to the Maven log on a separate thread, in batches,
+ * so that a slow console doesn't slow down the process reading its output (mqsicreatebar -trace writes tens of
+ * thousands of lines).
+ * <p>
+ * The level of each line is decided by rules ("level:regex", the first one finding a match wins), by default BIPnnnnE
+ * messages are errors, BIPnnnnW messages warnings and everything else is logged at the default level. Lines matching
+ * an exclude pattern aren't logged at all. The last lines of the output are kept regardless of level and excludes, and
+ * are logged as errors if the process fails, see {@link #close(int)}.
+ */
+public class AsyncLogForwarder implements ProcessOutputPump.LineHandler {
+
+    /**
+     * The levels a line can be logged at.
+     */
+    public enum Level {
+        ERROR, WARN, INFO, DEBUG, OFF;
+
+        /**
+         * @param level the name of a level, ignoring case
+         * @return the level
+         * @throws IllegalArgumentException if there is no such level
+         */
+        public static Level parse(String level) {
+            return valueOf(level.trim().toUpperCase(Locale.ROOT));
+        }
+    }
+
+    /** the maximum number of lines waiting to be logged, the process is slowed down if they can't be logged quickly enough */
+    private static final int QUEUE_CAPACITY = 8192;
+
+    private static final int BATCH_SIZE = 512;
+
+    private static final String DEFAULT_ERROR_RULE = "error:BIP\\d{4}E";
+
+    private static final String DEFAULT_WARN_RULE = "warn:BIP\\d{4}W";
+
+    /** marks the end of the output in the queue */
+    private static final String[] END = new String[0];
+
+    private final Log log;
+
+    private final Level defaultLevel;
+
+    private final List<Pattern> rulePatterns = new ArrayList<Pattern>();
+
+    private final List<Level> ruleLevels = new ArrayList<Level>();
+
+    private final List<Pattern> excludes = new ArrayList<Pattern>();
+
+    private final BlockingQueue<Object[]> queue = new ArrayBlockingQueue<Object[]>(QUEUE_CAPACITY);
+
+    private final String[] tail;
+
+    private int tailNext;
+
+    private long lineCount;
+
+    private boolean started;
+
+    private boolean closed;
+
+    private final Thread thread;
+
+    /**
+     * Creates a forwarder, its thread is started when the first line is to be logged.
+     *
+     * @param log the log the lines are forwarded to
+     * @param defaultLevel the level of lines not matching a rule
+     * @param rules rules "level:regex" deciding the level of the lines matching the regex, checked before the default
+     *            rules, may be null
+     * @param excludes regexes of lines not to be logged, may be null
+     * @param tailLines the number of last lines logged if the process fails
+     * @throws IllegalArgumentException if a rule or an exclude is invalid
+     */
+    public AsyncLogForwarder(Log log, Level defaultLevel, List<String> rules, List<String> excludes, int tailLines) {
+        this.log = log;
+        this.defaultLevel = defaultLevel;
+        List<String> allRules = new ArrayList<String>();
+        if (rules != null) {
+            allRules.addAll(rules);
+        }
+        allRules.add(DEFAULT_ERROR_RULE);
+        allRules.add(DEFAULT_WARN_RULE);
+        for (String rule : allRules) {
+            int colon = rule.indexOf(':');
+            if (colon < 0) {
+                throw new IllegalArgumentException("Invalid log level rule, expected level:regex: " + rule);
+            }
+            ruleLevels.add(Level.parse(rule.substring(0, colon)));
+            rulePatterns.add(compile(rule.substring(colon + 1)));
+        }
+        if (excludes != null) {
+            for (String exclude : excludes) {
+                this.excludes.add(compile(exclude));
+            }
+        }
+        this.tail = new String[Math.max(0, tailLines)];
+
+        thread = new Thread(new Runnable() {
+            public void run() {
+                forward();
+            }
+        }, "ace-log-forwarder");
+        // never keep Maven from exiting
+        thread.setDaemon(true);
+    }
+
+    public void handleLine(String line) {
+        synchronized (tail) {
+            if (tail.length > 0) {
+                tail[tailNext] = line;
+                tailNext = (tailNext + 1) % tail.length;
+            }
+            lineCount++;
+        }
+
+        Level level = getLevel(line);
+        if (level == Level.OFF) {
+            return;
+        }
+        synchronized (thread) {
+            if (closed) {
+                return;
+            }
+            if (!started) {
+                thread.start();
+                started = true;
+            }
+        }
+        try {
+            queue.put(new Object[] { level, line });
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Waits until all lines have been logged, then logs the last lines of the output if the process failed.
+     *
+     * @param exitCode the exit code of the process
+     * @throws InterruptedException if the current thread was interrupted while waiting
+     */
+    public void close(int exitCode) throws InterruptedException {
+        synchronized (thread) {
+            if (closed) {
+                return;
+            }
+            closed = true;
+            if (!started) {
+                thread.start();
+                started = true;
+            }
+        }
+        queue.put(END);
+        thread.join();
+
+        if (exitCode != 0 && tail.length > 0) {
+            List<String> lines = getTail();
+            log.error("Last " + lines.size() + " of " + lineCount + " lines of output:");
+            for (String line : lines) {
+                log.error(line);
+            }
+        }
+    }
+
+    /**
+     * @return the last lines of the output, oldest first
+     */
+    public List<String> getTail() {
+        synchronized (tail) {
+            List<String> lines = new ArrayList<String>();
+            for (int i = 0; i < tail.length; i++) {
+                String line = tail[(tailNext + i) % tail.length];
+                if (line != null) {
+                    lines.add(line);
+                }
+            }
+            return lines;
+        }
+    }
+
+    Level getLevel(String line) {
+        for (Pattern exclude : excludes) {
+            if (exclude.matcher(line).find()) {
+                return Level.OFF;
+            }
+        }
+        for (int i = 0; i < rulePatterns.size(); i++) {
+            if (rulePatterns.get(i).matcher(line).find()) {
+                return ruleLevels.get(i);
+            }
+        }
+        return defaultLevel;
+    }
+
+    private void forward() {
+        List<Object[]> batch = new ArrayList<Object[]>(BATCH_SIZE);
+        try {
+            while (true) {
+                batch.add(queue.take());
+                queue.drainTo(batch, BATCH_SIZE - 1);
+                for (Object[] entry : batch) {
+                    if (entry == END) {
+                        return;
+                    }
+                    write((Level) entry[0], (String) entry[1]);
+                }
+                batch.clear();
+            }
+        } catch (InterruptedException e) {
+            // the build is being aborted
+        }
+    }
+
+    private void write(Level level, String line) {
+        switch (level) {
+        case ERROR:
+            log.error(line);
+            break;
+        case WARN:
+            log.warn(line);
+            break;
+        case INFO:
+            log.info(line);
+            break;
+        case DEBUG:
+            log.debug(line);
+            break;
+        default:
+            break;
+        }
+    }
+
+    private static Pattern compile(String regex) {
+        try {
+            return Pattern.compile(regex);
+        } catch (PatternSyntaxException e) {
+            throw new IllegalArgumentException("Invalid regular expression: " + regex, e);
+        }
+    }
+}
@@ -0,0 +1,404 @@
+package ibm.maven.plugins.ace.utils;
+
+import ibm.maven.plugins.ace.utils.MessageFlowParser.FlowDefinition;
+import ibm.maven.plugins.ace.utils.MessageFlowParser.NodeInstance;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Enumeration;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+import java.util.zip.ZipOutputStream;
+
+import javax.xml.stream.XMLOutputFactory;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamWriter;
+
+import org.apache.maven.plugin.MojoFailureException;
+import org.apache.maven.plugin.logging.Log;
+import org.codehaus.plexus.util.IOUtil;
+
+/**
+ * Assembles a bar file for deployAsSource builds without starting the toolkit. Applications and libraries are packed as
+ * .appzip and .libzip archives straight from the workspace, together with a META-INF/broker.xml deployment descriptor
+ * listing the configurable properties of their flows and subflows.
+ *
+ * Anything that needs the toolkit to be compiled or generated (Java projects, message sets, policy projects, nodes
+ * whose definition can't be found) is reported by {@link #prepare(List, List, List)}, so that the caller can fall back
+ * to mqsicreatebar.
+ *
+ * The workspace is not validated: errors the toolkit would report (eg. in ESQL or in the flows) end up in the bar file
+ * and only show when it is deployed.
+ */
+public class BarAssembler {
+
+    private static final String JAVA_NATURE = "org.eclipse.jdt.core.javanature";
+
+    private static final String DEPLOYMENT_DESCRIPTOR = "META-INF/broker.xml";
+
+    /**
+     * the configurable properties every message flow has, regardless of its nodes, in the order mqsicreatebar writes them
+     */
+    private static final List<String> MESSAGE_FLOW_PROPERTIES = Arrays.asList("additionalInstances", "notificationThresholdMsgsPerSec",
+            "maximumRateMsgsPerSec", "processingTimeoutSec", "processingTimeoutAction", "wlmPolicy", "commitCount", "commitInterval",
+            "coordinatedTransaction", "consumerPolicySet", "providerPolicySet", "consumerPolicySetBindings", "providerPolicySetBindings",
+            "securityProfileName", "monitoringProfile", "startMode", "startInstancesWhenFlowStarts");
+
+    /**
+     * .msgnode definitions found in the toolkit installations, by toolkit directory and file name
+     */
+    private static final Map<File, Map<String, String>> TOOLKIT_NODE_DEFINITIONS = Collections.synchronizedMap(new HashMap<File, Map<String, String>>());
+
+    private final File workspace;
+
+    private final File toolkitInstallDir;
+
+    private final Log log;
+
+    private final Map<String, FlowDefinition> definitions = new HashMap<String, FlowDefinition>();
+
+    private final Map<String, byte[]> archives = new LinkedHashMap<String, byte[]>();
+
+    /**
+     * @param workspace the workspace containing the projects
+     * @param toolkitInstallDir the installation directory of the toolkit, used to look up the built-in node definitions
+     * @param log logger to be used if debugging information should be produced
+     */
+    public BarAssembler(File workspace, File toolkitInstallDir, Log log) {
+        this.workspace = workspace;
+        this.toolkitInstallDir = toolkitInstallDir;
+        this.log = log;
+    }
+
+    /**
+     * Builds the archives for the given projects in memory.
+     *
+     * @param applications the applications to be added to the bar
+     * @param libraries the libraries to be added to the bar
+     * @param policyProjects the policy projects to be added to the bar
+     * @return null if the bar can be assembled, otherwise the reason why it can't
+     * @throws MojoFailureException if a project can't be read
+     */
+    public String prepare(List<String> applications, List<String> libraries, List<String> policyProjects) throws MojoFailureException {
+        archives.clear();
+
+        if (!policyProjects.isEmpty()) {
+            return "policy projects are not supported: " + policyProjects;
+        }
+
+        try {
+            for (String application : applications) {
+                archives.put(application + ".appzip", buildArchive(application, true));
+            }
+            for (String library : libraries) {
+                archives.put(library + ".libzip", buildArchive(library, false));
+            }
+        } catch (UnsupportedContentException e) {
+            archives.clear();
+            return e.getMessage();
+        } catch (XMLStreamException e) {
+            archives.clear();
+            return "error reading a flow: " + e.getMessage();
+        } catch (IOException e) {
+            throw new MojoFailureException("Error assembling the bar file from: " + workspace, e);
+        }
+        return null;
+    }
+
+    /**
+     * Writes the archives built by {@link #prepare(List, List, List)} to the bar file.
+     *
+     * @param barFile the bar file to be written
+     * @throws IOException if the bar file can't be written
+     */
+    public void write(File barFile) throws IOException {
+        ZipOutputStream zos = new ZipOutputStream(new FileOutputStream(barFile));
+        try {
+            for (Map.Entry<String, byte[]> archive : archives.entrySet()) {
+                zos.putNextEntry(new ZipEntry(archive.getKey()));
+                zos.write(archive.getValue());
+                zos.closeEntry();
+            }
+        } finally {
+            zos.close();
+        }
+    }
+
+    private byte[] buildArchive(String projectName, boolean includeLibraries) throws MojoFailureException, IOException, XMLStreamException,
+            UnsupportedContentException {
+        File projectDirectory = new File(workspace, projectName);
+        checkProject(projectName);
+
+        // the project itself followed by the libraries it references, which is also where subflows are looked up
+        Set<String> searchPath = new LinkedHashSet<String>();
+        searchPath.add(projectName);
+        addReferencedLibraries(projectName, searchPath);
+
+        log.debug("Assembling " + projectName + " (searching " + searchPath + ")");
+
+        ByteArrayOutputStream bos = new ByteArrayOutputStream();
+        ZipOutputStream zos = new ZipOutputStream(bos);
+        try {
+            List<String> flows = new ArrayList<String>();
+            addProjectFiles(zos, projectDirectory, "", flows);
+
+            if (includeLibraries) {
+                for (String library : searchPath) {
+                    if (!library.equals(projectName)) {
+                        zos.putNextEntry(new ZipEntry(library + ".libzip"));
+                        zos.write(buildArchive(library, false));
+                        zos.closeEntry();
+                    }
+                }
+            }
+
+            zos.putNextEntry(new ZipEntry(DEPLOYMENT_DESCRIPTOR));
+            writeDeploymentDescriptor(zos, projectDirectory, flows, searchPath);
+            zos.closeEntry();
+        } finally {
+            zos.close();
+        }
+        return bos.toByteArray();
+    }
+
+    private void checkProject(String projectName) throws MojoFailureException, UnsupportedContentException {
+        File projectDirectory = new File(workspace, projectName);
+        if (!new File(projectDirectory, ".project").isFile()) {
+            throw new UnsupportedContentException("project " + projectName + " was not found in the workspace");
+        }
+        if (EclipseProjectUtils.hasNature(projectDirectory, JAVA_NATURE)) {
+            throw new UnsupportedContentException("project " + projectName + " is a Java project and must be compiled");
+        }
+    }
+
+    private void addReferencedLibraries(String projectName, Set<String> searchPath) throws MojoFailureException, UnsupportedContentException {
+        for (String referencedProject : EclipseProjectUtils.getReferencedProjects(new File(workspace, projectName))) {
+            if (searchPath.contains(referencedProject)) {
+                continue;
+            }
+            checkProject(referencedProject);
+            File referencedDirectory = new File(workspace, referencedProject);
+            if (EclipseProjectUtils.getProjectKind(referencedDirectory) != EclipseProjectUtils.ProjectKind.LIBRARY) {
+                throw new UnsupportedContentException("project " + projectName + " references " + referencedProject + ", which is not a static library");
+            }
+            searchPath.add(referencedProject);
+            addReferencedLibraries(referencedProject, searchPath);
+        }
+    }
+
+    private void addProjectFiles(ZipOutputStream zos, File directory, String relativePath, List<String> flows) throws IOException,
+            UnsupportedContentException {
+        File[] files = directory.listFiles();
+        if (files == null) {
+            return;
+        }
+        Arrays.sort(files);
+
+        for (File file : files) {
+            String name = file.getName();
+            String path = relativePath + name;
+
+            // .project, .settings etc. and the build output of the toolkit aren't deployed
+            if (name.startsWith(".") || (relativePath.length() == 0 && "bin".equals(name))) {
+                continue;
+            }
+
+            if (file.isDirectory()) {
+                addProjectFiles(zos, file, path + "/", flows);
+                continue;
+            }
+
+            if (name.endsWith(".mset")) {
+                throw new UnsupportedContentException("message sets must be compiled: " + path);
+            }
+            if (name.endsWith(".msgflow") || name.endsWith(".subflow")) {
+                flows.add(path);
+            }
+
+            zos.putNextEntry(new ZipEntry(path));
+            InputStream is = new FileInputStream(file);
+            try {
+                IOUtil.copy(is, zos);
+            } finally {
+                is.close();
+            }
+            zos.closeEntry();
+        }
+    }
+
+    private void writeDeploymentDescriptor(OutputStream os, File projectDirectory, List<String> flows, Set<String> searchPath) throws IOException,
+            XMLStreamException, UnsupportedContentException {
+        XMLStreamWriter writer = XMLOutputFactory.newInstance().createXMLStreamWriter(os, "UTF-8");
+        writer.writeStartDocument("UTF-8", "1.0");
+        writer.writeStartElement("Broker");
+
+        for (String flowPath : flows) {
+            boolean messageFlow = flowPath.endsWith(".msgflow");
+            String flowName = flowPath.substring(0, flowPath.lastIndexOf('.')).replace('/', '.');
+            FlowDefinition flow = getDefinition(new File(projectDirectory, flowPath).getAbsolutePath());
+
+            writer.writeStartElement(messageFlow ? "CompiledMessageFlow" : "CompiledSubFlow");
+            writer.writeAttribute("name", flowName);
+
+            if (messageFlow) {
+                for (String property : MESSAGE_FLOW_PROPERTIES) {
+                    writeConfigurableProperty(writer, flowName + "#" + property, null);
+                }
+            }
+            for (Map.Entry<String, String> property : flow.properties.entrySet()) {
+                writeConfigurableProperty(writer, flowName + "#" + property.getKey(), property.getValue());
+            }
+            for (NodeInstance node : flow.nodes) {
+                FlowDefinition nodeType = getNodeType(node, flowPath, searchPath);
+                String label = node.label != null ? node.label : node.id;
+                for (Map.Entry<String, String> property : nodeType.properties.entrySet()) {
+                    if (flow.promotedNodeProperties.contains(node.id + "." + property.getKey())) {
+                        continue;
+                    }
+                    String value = node.attributes.containsKey(property.getKey()) ? node.attributes.get(property.getKey()) : property.getValue();
+                    writeConfigurableProperty(writer, flowName + "#" + label + "." + property.getKey(), value);
+                }
+            }
+
+            writer.writeEndElement();
+        }
+
+        writer.writeEndElement();
+        writer.writeEndDocument();
+        writer.close();
+    }
+
+    private void writeConfigurableProperty(XMLStreamWriter writer, String uri, String value) throws XMLStreamException {
+        writer.writeEmptyElement("ConfigurableProperty");
+        if (value != null) {
+            writer.writeAttribute("override", value);
+        }
+        writer.writeAttribute("uri", uri);
+    }
+
+    private FlowDefinition getNodeType(NodeInstance node, String flowPath, Set<String> searchPath) throws IOException, XMLStreamException,
+            UnsupportedContentException {
+        String typeUri = node.typeUri;
+        if (typeUri == null) {
+            throw new UnsupportedContentException("the type of node " + node.id + " in " + flowPath + " can't be determined");
+        }
+
+        // subflows (and flows used as subflows) are looked up in the project and the libraries it references
+        if (typeUri.endsWith(".subflow") || typeUri.endsWith(".msgflow")) {
+            for (String project : searchPath) {
+                File definition = new File(new File(workspace, project), typeUri);
+                if (definition.isFile()) {
+                    return getDefinition(definition.getAbsolutePath());
+                }
+            }
+            throw new UnsupportedContentException("subflow " + typeUri + " used in " + flowPath + " was not found");
+        }
+
+        if (typeUri.endsWith(".msgnode")) {
+            String location = getToolkitNodeDefinitions().get(typeUri);
+            if (location != null) {
+                return getDefinition(location);
+            }
+        }
+        throw new UnsupportedContentException("the definition of node type " + typeUri + " used in " + flowPath + " was not found in the toolkit");
+    }
+
+    /**
+     * @param location the path of the definition, or "jar!/entry" for definitions inside a jar
+     */
+    private FlowDefinition getDefinition(String location) throws IOException, XMLStreamException {
+        FlowDefinition definition = definitions.get(location);
+        if (definition != null) {
+            return definition;
+        }
+
+        int separator = location.indexOf("!/");
+        if (separator > 0) {
+            ZipFile jar = new ZipFile(location.substring(0, separator));
+            try {
+                InputStream is = jar.getInputStream(jar.getEntry(location.substring(separator + 2)));
+                definition = MessageFlowParser.parse(is);
+            } finally {
+                jar.close();
+            }
+        } else {
+            InputStream is = new FileInputStream(location);
+            try {
+                definition = MessageFlowParser.parse(is);
+            } finally {
+                is.close();
+            }
+        }
+
+        definitions.put(location, definition);
+        return definition;
+    }
+
+    private Map<String, String> getToolkitNodeDefinitions() throws IOException {
+        synchronized (TOOLKIT_NODE_DEFINITIONS) {
+            Map<String, String> nodeDefinitions = TOOLKIT_NODE_DEFINITIONS.get(toolkitInstallDir);
+            if (nodeDefinitions == null) {
+                nodeDefinitions = new HashMap<String, String>();
+                if (toolkitInstallDir != null) {
+                    indexNodeDefinitions(new File(toolkitInstallDir, "plugins"), nodeDefinitions);
+                }
+                log.debug("Found " + nodeDefinitions.size() + " node definitions in " + toolkitInstallDir);
+                TOOLKIT_NODE_DEFINITIONS.put(toolkitInstallDir, nodeDefinitions);
+            }
+            return nodeDefinitions;
+        }
+    }
+
+    private static void indexNodeDefinitions(File directory, Map<String, String> nodeDefinitions) throws IOException {
+        File[] files = directory.listFiles();
+        if (files == null) {
+            return;
+        }
+        for (File file : files) {
+            if (file.isDirectory()) {
+                indexNodeDefinitions(file, nodeDefinitions);
+            } else if (file.getName().endsWith(".msgnode")) {
+                nodeDefinitions.put(file.getName(), file.getAbsolutePath());
+            } else if (file.getName().endsWith(".jar")) {
+                ZipFile jar = new ZipFile(file);
+                try {
+                    Enumeration<? extends ZipEntry> entries = jar.entries();
+                    while (entries.hasMoreElements()) {
+                        String entryName = entries.nextElement().getName();
+                        if (entryName.endsWith(".msgnode")) {
+                            nodeDefinitions.put(entryName.substring(entryName.lastIndexOf('/') + 1), file.getAbsolutePath() + "!/" + entryName);
+                        }
+                    }
+                } finally {
+                    jar.close();
+                }
+            }
+        }
+    }
+
+    /**
+     * thrown when the workspace contains something that only the toolkit can build
+     */
+    private static class UnsupportedContentException extends Exception {
+
+        private static final long serialVersionUID = 1L;
+
+        UnsupportedContentException(String message) {
+            super(message);
+        }
+    }
+}
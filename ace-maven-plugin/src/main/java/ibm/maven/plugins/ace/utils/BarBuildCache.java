@@ -0,0 +1,261 @@
+package ibm.maven.plugins.ace.utils;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.UUID;
+
+import org.apache.maven.plugin.logging.Log;
+
+/**
+ * A local cache of bar files created by mqsicreatebar. Entries are keyed by a fingerprint of everything that goes into
+ * the toolkit invocation (the workspace contents, the command line and the toolkit), so a hit can be restored instead
+ * of starting the toolkit again.
+ */
+public class BarBuildCache {
+
+    private static final String ENTRY_SUFFIX = ".bar";
+
+    private static final Charset UTF8 = Charset.forName("UTF-8");
+
+    private final File cacheDirectory;
+
+    private final long maxSizeBytes;
+
+    private final long maxAgeMillis;
+
+    private final Log log;
+
+    /**
+     * @param cacheDirectory the directory holding the cached bar files
+     * @param maxSizeBytes the maximum total size of the cache, 0 or less for unlimited
+     * @param maxAgeMillis the maximum time since an entry was last used, 0 or less for unlimited
+     * @param log logger for hits, misses and evictions
+     */
+    public BarBuildCache(File cacheDirectory, long maxSizeBytes, long maxAgeMillis, Log log) {
+        this.cacheDirectory = cacheDirectory;
+        this.maxSizeBytes = maxSizeBytes;
+        this.maxAgeMillis = maxAgeMillis;
+        this.log = log;
+    }
+
+    /**
+     * Calculates the input fingerprint of a mqsicreatebar invocation.
+     *
+     * @param workspace the workspace the bar is built from
+     * @param params the mqsicreatebar command line parameters
+     * @param toolkitInstallDir the installation directory of the toolkit
+     * @param toolkitVersion the configured toolkit version
+     * @return a hex encoded SHA-256 fingerprint
+     * @throws IOException if the workspace can't be read
+     */
+    public static String fingerprint(File workspace, List<String> params, File toolkitInstallDir, String toolkitVersion) throws IOException {
+        MessageDigest digest = newDigest();
+
+        update(digest, "toolkit");
+        update(digest, String.valueOf(toolkitVersion));
+        if (toolkitInstallDir != null) {
+            File executable = new File(toolkitInstallDir, "mqsicreatebar");
+            update(digest, toolkitInstallDir.getAbsolutePath());
+            update(digest, String.valueOf(executable.lastModified()));
+        }
+
+        update(digest, "params");
+        for (String param : params) {
+            update(digest, param);
+        }
+
+        update(digest, "workspace");
+        digestDirectory(digest, workspace, "", 0);
+
+        return toHex(digest.digest());
+    }
+
+    /**
+     * Copies the cached bar for the given fingerprint to barFile, if there is one.
+     *
+     * @param fingerprint the input fingerprint
+     * @param barFile where the bar should be restored to
+     * @return true if the bar was restored from the cache
+     * @throws IOException if the cached entry can't be copied
+     */
+    public boolean restore(String fingerprint, File barFile) throws IOException {
+        File entry = getEntry(fingerprint);
+        if (!entry.isFile()) {
+            log.info("Bar cache miss: " + fingerprint);
+            return false;
+        }
+
+        log.info("Bar cache hit: " + fingerprint + " - restoring " + barFile.getName() + " from " + entry.getAbsolutePath());
+        barFile.getAbsoluteFile().getParentFile().mkdirs();
+        File tmpFile = new File(barFile.getAbsolutePath() + "." + UUID.randomUUID() + ".tmp");
+        try {
+            Files.copy(entry.toPath(), tmpFile.toPath(), StandardCopyOption.REPLACE_EXISTING);
+            Files.move(tmpFile.toPath(), barFile.toPath(), StandardCopyOption.REPLACE_EXISTING);
+        } finally {
+            tmpFile.delete();
+        }
+
+        // the modification time of an entry records when it was last used
+        entry.setLastModified(System.currentTimeMillis());
+        return true;
+    }
+
+    /**
+     * Stores a freshly built bar file in the cache and evicts old entries.
+     *
+     * @param fingerprint the input fingerprint the bar was built from
+     * @param barFile the bar to be stored
+     * @throws IOException if the bar can't be copied into the cache
+     */
+    public void store(String fingerprint, File barFile) throws IOException {
+        // mkdirs fails if another build has just created the directory
+        if (!cacheDirectory.mkdirs() && !cacheDirectory.isDirectory()) {
+            throw new IOException("Could not create bar cache directory: " + cacheDirectory.getAbsolutePath());
+        }
+
+        // copy to a temporary name first, so that concurrent builds never see half written entries
+        File entry = getEntry(fingerprint);
+        File tmpFile = new File(cacheDirectory, fingerprint + "." + UUID.randomUUID() + ".tmp");
+        try {
+            Files.copy(barFile.toPath(), tmpFile.toPath(), StandardCopyOption.REPLACE_EXISTING);
+            Files.move(tmpFile.toPath(), entry.toPath(), StandardCopyOption.REPLACE_EXISTING);
+        } finally {
+            tmpFile.delete();
+        }
+        log.info("Stored " + barFile.getName() + " in bar cache: " + fingerprint);
+
+        evict();
+    }
+
+    /**
+     * Removes entries that haven't been used within the maximum age, then removes the least recently used entries until
+     * the cache fits into the maximum size.
+     */
+    public void evict() {
+        File[] files = cacheDirectory.listFiles();
+        if (files == null) {
+            return;
+        }
+
+        List<File> entries = new ArrayList<File>();
+        long now = System.currentTimeMillis();
+        for (File file : files) {
+            if (!file.isFile() || !file.getName().endsWith(ENTRY_SUFFIX)) {
+                continue;
+            }
+            if (maxAgeMillis > 0 && now - file.lastModified() > maxAgeMillis) {
+                evict(file, "older than the maximum age");
+            } else {
+                entries.add(file);
+            }
+        }
+
+        if (maxSizeBytes <= 0) {
+            return;
+        }
+
+        // least recently used first
+        Collections.sort(entries, new Comparator<File>() {
+            public int compare(File f1, File f2) {
+                return Long.compare(f1.lastModified(), f2.lastModified());
+            }
+        });
+
+        long totalSize = 0;
+        for (File entry : entries) {
+            totalSize += entry.length();
+        }
+        for (File entry : entries) {
+            if (totalSize <= maxSizeBytes) {
+                break;
+            }
+            totalSize -= entry.length();
+            evict(entry, "cache exceeds the maximum size");
+        }
+    }
+
+    private void evict(File entry, String reason) {
+        if (entry.delete()) {
+            log.info("Evicted " + entry.getName() + " from bar cache (" + reason + ")");
+        } else {
+            log.warn("Could not evict " + entry.getAbsolutePath() + " from bar cache");
+        }
+    }
+
+    private File getEntry(String fingerprint) {
+        return new File(cacheDirectory, fingerprint + ENTRY_SUFFIX);
+    }
+
+    /**
+     * Adds the relative paths and contents of all files below a directory to the digest, in a stable order.
+     */
+    private static void digestDirectory(MessageDigest digest, File directory, String relativePath, int depth) throws IOException {
+        File[] files = directory.listFiles();
+        if (files == null) {
+            return;
+        }
+        Arrays.sort(files);
+
+        byte[] buffer = new byte[8192];
+        for (File file : files) {
+            String name = file.getName();
+            String path = relativePath + name;
+
+            if (file.isDirectory()) {
+                // the .metadata directory and the bin directories of the projects are written by the toolkit
+                if (".metadata".equals(name) || (depth == 1 && "bin".equals(name))) {
+                    continue;
+                }
+                digestDirectory(digest, file, path + "/", depth + 1);
+            } else {
+                update(digest, path);
+                update(digest, String.valueOf(file.length()));
+                InputStream is = new FileInputStream(file);
+                try {
+                    int read;
+                    while ((read = is.read(buffer)) != -1) {
+                        digest.update(buffer, 0, read);
+                    }
+                } finally {
+                    is.close();
+                }
+            }
+        }
+    }
+
+    private static MessageDigest newDigest() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            // every JRE is required to support SHA-256
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static void update(MessageDigest digest, String value) {
+        digest.update(value.getBytes(UTF8));
+        // separate the values, so that "ab","c" and "a","bc" differ
+        digest.update((byte) 0);
+    }
+
+    private static String toHex(byte[] bytes) {
+        StringBuilder sb = new StringBuilder(bytes.length * 2);
+        for (byte b : bytes) {
+            sb.append(Character.forDigit((b >> 4) & 0xf, 16));
+            sb.append(Character.forDigit(b & 0xf, 16));
+        }
+        return sb.toString();
+    }
+}
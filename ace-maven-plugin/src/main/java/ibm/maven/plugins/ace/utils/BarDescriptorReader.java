@@ -0,0 +1,95 @@
+package ibm.maven.plugins.ace.utils;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+
+/**
+ * Reads the configurable properties from the deployment descriptors (META-INF/broker.xml) of a bar file and the
+ * archives nested in it, instead of running mqsireadbar and parsing its output.
+ */
+public final class BarDescriptorReader {
+
+    private static final String DEPLOYMENT_DESCRIPTOR = "META-INF/broker.xml";
+
+    private static final XMLInputFactory XML_INPUT_FACTORY = XMLInputFactory.newInstance();
+
+    static {
+        XML_INPUT_FACTORY.setProperty(XMLInputFactory.SUPPORT_DTD, Boolean.FALSE);
+    }
+
+    /**
+     * hide the default constructor
+     */
+    private BarDescriptorReader() {
+        super();
+    }
+
+    /**
+     * @param barFile the bar file to be read
+     * @return the configurable properties in the same format as the deployment descriptor section of the mqsireadbar
+     *         output: "name = value" if the property has a value, otherwise only the name
+     * @throws IOException if the bar or one of its descriptors can't be read
+     */
+    public static List<String> getConfigurableProperties(File barFile) throws IOException {
+        List<String> properties = new ArrayList<String>();
+        ZipRewriter.read(barFile, new DescriptorCollector(properties));
+        return properties;
+    }
+
+    /**
+     * Collects the properties of the descriptor of an archive and of all the archives nested in it.
+     */
+    private static class DescriptorCollector extends ZipRewriter.EntryTransformer {
+
+        private final List<String> properties;
+
+        DescriptorCollector(List<String> properties) {
+            this.properties = properties;
+        }
+
+        @Override
+        public boolean transforms(String name) {
+            return DEPLOYMENT_DESCRIPTOR.equals(name) || ZipUtils.isNestedArchive(name);
+        }
+
+        @Override
+        public byte[] transform(String name, byte[] content) throws IOException {
+            if (DEPLOYMENT_DESCRIPTOR.equals(name)) {
+                try {
+                    readDescriptor(content, properties);
+                } catch (XMLStreamException e) {
+                    throw new IOException("Error reading " + name, e);
+                }
+            } else {
+                ZipRewriter.read(content, new DescriptorCollector(properties));
+            }
+            return null;
+        }
+    }
+
+    private static void readDescriptor(byte[] content, List<String> properties) throws XMLStreamException {
+        XMLStreamReader reader = XML_INPUT_FACTORY.createXMLStreamReader(new ByteArrayInputStream(content));
+        try {
+            while (reader.hasNext()) {
+                if (reader.next() == XMLStreamConstants.START_ELEMENT && "ConfigurableProperty".equals(reader.getLocalName())) {
+                    String uri = reader.getAttributeValue(null, "uri");
+                    String override = reader.getAttributeValue(null, "override");
+                    if (uri == null) {
+                        continue;
+                    }
+                    properties.add(override == null || override.length() == 0 ? uri : uri + " = " + override);
+                }
+            }
+        } finally {
+            reader.close();
+        }
+    }
+}
@@ -0,0 +1,267 @@
+package ibm.maven.plugins.ace.utils;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import javax.xml.stream.XMLEventFactory;
+import javax.xml.stream.XMLEventReader;
+import javax.xml.stream.XMLEventWriter;
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLOutputFactory;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.events.Attribute;
+import javax.xml.stream.events.StartElement;
+import javax.xml.stream.events.XMLEvent;
+
+import org.apache.maven.plugin.logging.Log;
+import org.codehaus.plexus.util.FileUtils;
+
+/**
+ * Applies a properties file to the deployment descriptors (META-INF/broker.xml) of a bar file, the way
+ * mqsiapplybaroverride does, without starting the runtime. The descriptors are rewritten with StAX, everything else in
+ * the bar is copied without being recompressed.
+ * <p>
+ * Each line of the properties file is either property-name=override, where the name is the uri of a configurable
+ * property (eg. "com.example.Flow1#MQ Input.queueName"), or current-property-value=override, which replaces every
+ * override currently set to that value.
+ */
+public class BarOverrideEngine {
+
+    /**
+     * The part of the bar the overrides are applied to, the equivalent of the -k and -y parameters of
+     * mqsiapplybaroverride.
+     */
+    public enum Target {
+
+        /** the deployment descriptor of the bar itself */
+        BAR(),
+
+        /** an application in the bar (-k) */
+        APPLICATION(".appzip"),
+
+        /** a static or shared library in the bar (-y) */
+        LIBRARY(".libzip", ".shlibzip");
+
+        private final List<String> extensions;
+
+        Target(String... extensions) {
+            this.extensions = Arrays.asList(extensions);
+        }
+    }
+
+    private static final String DEPLOYMENT_DESCRIPTOR = "META-INF/broker.xml";
+
+    private static final XMLInputFactory XML_INPUT_FACTORY = XMLInputFactory.newInstance();
+
+    private static final XMLOutputFactory XML_OUTPUT_FACTORY = XMLOutputFactory.newInstance();
+
+    private static final XMLEventFactory XML_EVENT_FACTORY = XMLEventFactory.newInstance();
+
+    static {
+        XML_INPUT_FACTORY.setProperty(XMLInputFactory.SUPPORT_DTD, Boolean.FALSE);
+    }
+
+    private final Map<String, String> overrides;
+
+    private final Set<String> usedOverrides = new HashSet<String>();
+
+    private final Log log;
+
+    /**
+     * @param overrides the overrides mapped by property name or current value, see {@link #readOverrides(File)}
+     * @param log logger for the overridden properties
+     */
+    public BarOverrideEngine(Map<String, String> overrides, Log log) {
+        this.overrides = overrides;
+        this.log = log;
+    }
+
+    /**
+     * Reads a properties file in the format used by mqsiapplybaroverride. Unlike java.util.Properties, spaces are
+     * allowed in the names, which is needed for the names of nodes.
+     *
+     * @param propertiesFile the properties file
+     * @return the overrides in the order of the file
+     * @throws IOException if the file can't be read
+     */
+    @SuppressWarnings("unchecked")
+    public static Map<String, String> readOverrides(File propertiesFile) throws IOException {
+        Map<String, String> overrides = new LinkedHashMap<String, String>();
+        for (String line : (List<String>) FileUtils.loadFile(propertiesFile)) {
+            int equals = line.indexOf('=');
+            if (line.startsWith("#") || equals < 0) {
+                continue;
+            }
+            overrides.put(line.substring(0, equals).trim(), line.substring(equals + 1).trim());
+        }
+        return overrides;
+    }
+
+    /**
+     * Writes a copy of a bar with the overrides applied.
+     *
+     * @param bar the bar to be read
+     * @param outputBar the bar to be written
+     * @param target the part of the bar the overrides are applied to
+     * @param targetName the name of the application or library, ignored for {@link Target#BAR}
+     * @param recursive whether the descriptors of archives nested in the target are overridden as well (-r)
+     * @throws IOException if the bar can't be read or written, or doesn't contain the target
+     */
+    public void apply(File bar, File outputBar, Target target, String targetName, boolean recursive) throws IOException {
+        List<String> targetArchives = new ArrayList<String>();
+        for (String extension : target.extensions) {
+            targetArchives.add(targetName + extension);
+        }
+
+        ArchiveTransformer transformer = new ArchiveTransformer(target == Target.BAR, recursive, targetArchives);
+        ZipRewriter.rewrite(bar, outputBar, transformer);
+
+        if (target != Target.BAR && !transformer.targetFound) {
+            throw new IOException("No " + target.name().toLowerCase() + " " + targetName + " was found in " + bar.getAbsolutePath());
+        }
+    }
+
+    /**
+     * @return the overrides that didn't match any configurable property in the bars processed so far
+     */
+    public List<String> getUnusedOverrides() {
+        List<String> unused = new ArrayList<String>();
+        for (String name : overrides.keySet()) {
+            if (!usedOverrides.contains(name)) {
+                unused.add(name);
+            }
+        }
+        return unused;
+    }
+
+    /**
+     * Overrides the descriptor of one archive level and descends into the nested archives as required.
+     */
+    private class ArchiveTransformer extends ZipRewriter.EntryTransformer {
+
+        private final boolean applyHere;
+
+        private final boolean recursive;
+
+        private final List<String> targetArchives;
+
+        private boolean targetFound;
+
+        ArchiveTransformer(boolean applyHere, boolean recursive, List<String> targetArchives) {
+            this.applyHere = applyHere;
+            this.recursive = recursive;
+            this.targetArchives = targetArchives;
+        }
+
+        @Override
+        public boolean transforms(String name) {
+            if (DEPLOYMENT_DESCRIPTOR.equals(name)) {
+                return applyHere;
+            }
+            if (targetArchives.contains(name)) {
+                return true;
+            }
+            return applyHere && recursive && ZipUtils.isNestedArchive(name);
+        }
+
+        @Override
+        public byte[] transform(String name, byte[] content) throws IOException {
+            if (DEPLOYMENT_DESCRIPTOR.equals(name)) {
+                try {
+                    return overrideDescriptor(content);
+                } catch (XMLStreamException e) {
+                    throw new IOException("Error overriding " + name, e);
+                }
+            }
+            if (targetArchives.contains(name)) {
+                targetFound = true;
+            }
+            return ZipRewriter.rewrite(content, new ArchiveTransformer(true, recursive, new ArrayList<String>()));
+        }
+    }
+
+    /**
+     * @param content a deployment descriptor
+     * @return the overridden descriptor, or null if no property was changed
+     */
+    private byte[] overrideDescriptor(byte[] content) throws XMLStreamException {
+        ByteArrayOutputStream os = new ByteArrayOutputStream(content.length + 1024);
+        XMLEventReader reader = XML_INPUT_FACTORY.createXMLEventReader(new ByteArrayInputStream(content));
+        XMLEventWriter writer = XML_OUTPUT_FACTORY.createXMLEventWriter(os, "UTF-8");
+        boolean changed = false;
+        try {
+            while (reader.hasNext()) {
+                XMLEvent event = reader.nextEvent();
+                if (event.isStartElement() && "ConfigurableProperty".equals(event.asStartElement().getName().getLocalPart())) {
+                    StartElement overridden = overrideProperty(event.asStartElement());
+                    if (overridden != null) {
+                        event = overridden;
+                        changed = true;
+                    }
+                }
+                writer.add(event);
+            }
+            writer.flush();
+        } finally {
+            reader.close();
+            writer.close();
+        }
+        return changed ? os.toByteArray() : null;
+    }
+
+    /**
+     * @return the ConfigurableProperty element with its new override, or null if it isn't overridden
+     */
+    @SuppressWarnings("unchecked")
+    private StartElement overrideProperty(StartElement element) {
+        String uri = null;
+        String currentValue = null;
+        List<Attribute> attributes = new ArrayList<Attribute>();
+        for (Iterator<Attribute> i = element.getAttributes(); i.hasNext();) {
+            Attribute attribute = i.next();
+            String name = attribute.getName().getLocalPart();
+            if ("uri".equals(name)) {
+                uri = attribute.getValue();
+            } else if ("override".equals(name)) {
+                currentValue = attribute.getValue();
+            }
+            attributes.add(attribute);
+        }
+
+        // the name of a property takes precedence over its current value
+        String key = null;
+        if (uri != null && overrides.containsKey(uri)) {
+            key = uri;
+        } else if (currentValue != null && currentValue.length() > 0 && overrides.containsKey(currentValue)) {
+            key = currentValue;
+        }
+        if (key == null) {
+            return null;
+        }
+        usedOverrides.add(key);
+        String value = overrides.get(key);
+        log.debug("  " + uri + " = " + value);
+
+        boolean replaced = false;
+        for (int i = 0; i < attributes.size(); i++) {
+            if ("override".equals(attributes.get(i).getName().getLocalPart())) {
+                attributes.set(i, XML_EVENT_FACTORY.createAttribute(attributes.get(i).getName(), value));
+                replaced = true;
+            }
+        }
+        if (!replaced) {
+            attributes.add(0, XML_EVENT_FACTORY.createAttribute("override", value));
+        }
+        return XML_EVENT_FACTORY.createStartElement(element.getName(), attributes.iterator(), element.getNamespaces());
+    }
+}
@@ -0,0 +1,234 @@
+package ibm.maven.plugins.ace.utils;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.maven.plugin.logging.Log;
+import org.apache.maven.project.MavenProject;
+
+/**
+ * Records the time spent in the mojos, subprocesses, zip rewrites and delegated mojo executions of a build as a Chrome
+ * trace (the JSON format read by chrome://tracing and Perfetto). Tracing is enabled by the traceFile parameter of the
+ * goals, eg. with -Dace.traceFile=$PWD/target/ace-trace.json. All modules of a reactor go into the same file, which
+ * is rewritten whenever a mojo has finished, so it is complete even though a plugin isn't told when the build ends.
+ * <p>
+ * The trace file of the last mojo span started applies to the spans started after it. Without one, the start methods
+ * return a span doing nothing.
+ */
+public final class BuildTracer {
+
+    /** the category of mojo spans, whose end writes the trace file */
+    public static final String MOJO = "mojo";
+
+    /** the category of subprocess spans */
+    public static final String PROCESS = "process";
+
+    /** the category of zip spans */
+    public static final String ZIP = "zip";
+
+    /** the category of spans of mojos executed by other mojos */
+    public static final String DELEGATION = "executeMojo";
+
+    /** the category of time spent waiting for a process slot */
+    public static final String SLOT = "slot";
+
+    /** microseconds since the epoch at the time of {@link #BASE_NANOS} */
+    private static final long BASE_MICROS = System.currentTimeMillis() * 1000;
+
+    private static final long BASE_NANOS = System.nanoTime();
+
+    private static final Span NO_SPAN = new Span(null, null, null, null, null);
+
+    private static final List<String> EVENTS = new ArrayList<String>();
+
+    private static final Map<Long, String> THREAD_NAMES = new LinkedHashMap<Long, String>();
+
+    private static volatile File traceFile;
+
+    /**
+     * A span of time, recorded when it ends.
+     */
+    public static final class Span {
+
+        private final String category;
+
+        private final String name;
+
+        private final String detail;
+
+        /** the file written when a mojo span ends, null for the other spans */
+        private final File traceFile;
+
+        private final Log log;
+
+        private final long startMicros = now();
+
+        private Span(String category, String name, String detail, File traceFile, Log log) {
+            this.category = category;
+            this.name = name;
+            this.detail = detail;
+            this.traceFile = traceFile;
+            this.log = log;
+        }
+
+        /**
+         * Records the span, and writes the trace file if it is a mojo span. A span must be ended on the thread that
+         * started it.
+         */
+        public void end() {
+            if (this == NO_SPAN) {
+                return;
+            }
+            Thread thread = Thread.currentThread();
+            StringBuilder sb = new StringBuilder("{\"ph\":\"X\",\"pid\":1");
+            sb.append(",\"tid\":").append(thread.getId());
+            sb.append(",\"ts\":").append(startMicros);
+            sb.append(",\"dur\":").append(now() - startMicros);
+            sb.append(",\"cat\":\"").append(JsonUtils.escape(category)).append('"');
+            sb.append(",\"name\":\"").append(JsonUtils.escape(name)).append('"');
+            if (detail != null) {
+                sb.append(",\"args\":{\"detail\":\"").append(JsonUtils.escape(detail)).append("\"}");
+            }
+            sb.append('}');
+
+            synchronized (EVENTS) {
+                EVENTS.add(sb.toString());
+                if (!THREAD_NAMES.containsKey(thread.getId())) {
+                    THREAD_NAMES.put(thread.getId(), thread.getName());
+                }
+            }
+            if (traceFile != null) {
+                write(traceFile, log);
+            }
+        }
+    }
+
+    /**
+     * hide the default constructor
+     */
+    private BuildTracer() {
+        super();
+    }
+
+    /**
+     * @return true if the last mojo span was started with a trace file
+     */
+    public static boolean isEnabled() {
+        return traceFile != null;
+    }
+
+    /**
+     * Starts the span of a mojo on the current thread, which enables or disables tracing for the spans started within
+     * it. Its end writes the trace file.
+     *
+     * @param name the name of the mojo
+     * @param project the module, may be null
+     * @param traceFile the trace file, null to disable tracing
+     * @param log logger for failures to write the trace file
+     * @return the span, to be ended in a finally block
+     */
+    public static Span startMojo(String name, MavenProject project, File traceFile, Log log) {
+        BuildTracer.traceFile = traceFile;
+        if (traceFile == null) {
+            return NO_SPAN;
+        }
+        return new Span(MOJO, name, project == null ? null : project.getArtifactId(), traceFile, log);
+    }
+
+    /**
+     * Starts a span on the current thread.
+     *
+     * @param category the kind of work, eg. {@link #PROCESS}
+     * @param name what is being done, eg. the name of the process
+     * @param detail shown when the span is selected (eg. the module or file), may be null
+     * @return the span, to be ended in a finally block
+     */
+    public static Span start(String category, String name, String detail) {
+        if (!isEnabled()) {
+            return NO_SPAN;
+        }
+        return new Span(category, name, detail, null, null);
+    }
+
+    /**
+     * Starts a span of work done for a module.
+     *
+     * @param category the kind of work, eg. {@link #PROCESS}
+     * @param name what is being done, eg. the name of the process
+     * @param project the module, may be null
+     * @return the span, to be ended in a finally block
+     */
+    public static Span start(String category, String name, MavenProject project) {
+        return start(category, name, project == null ? null : project.getArtifactId());
+    }
+
+    /**
+     * Starts a span without details.
+     *
+     * @param category the kind of work, eg. {@link #PROCESS}
+     * @param name what is being done, eg. the name of the process
+     * @return the span, to be ended in a finally block
+     */
+    public static Span start(String category, String name) {
+        return start(category, name, (String) null);
+    }
+
+    /**
+     * Writes the spans recorded so far.
+     *
+     * @param traceFile the trace file
+     * @param log logger for failures
+     */
+    static void write(File traceFile, Log log) {
+        synchronized (EVENTS) {
+            try {
+                traceFile.getAbsoluteFile().getParentFile().mkdirs();
+                File tmpFile = new File(traceFile.getPath() + ".tmp");
+                Writer writer = new OutputStreamWriter(new FileOutputStream(tmpFile), "UTF-8");
+                try {
+                    writer.write("{\"displayTimeUnit\":\"ms\",\"traceEvents\":[\n");
+                    writer.write("{\"ph\":\"M\",\"pid\":1,\"name\":\"process_name\",\"args\":{\"name\":\"maven\"}}");
+                    for (Map.Entry<Long, String> thread : THREAD_NAMES.entrySet()) {
+                        writer.write(",\n{\"ph\":\"M\",\"pid\":1,\"tid\":" + thread.getKey()
+                                + ",\"name\":\"thread_name\",\"args\":{\"name\":\"" + JsonUtils.escape(thread.getValue()) + "\"}}");
+                    }
+                    for (String event : EVENTS) {
+                        writer.write(",\n");
+                        writer.write(event);
+                    }
+                    writer.write("\n]}\n");
+                } finally {
+                    writer.close();
+                }
+                Files.move(tmpFile.toPath(), traceFile.toPath(), StandardCopyOption.REPLACE_EXISTING);
+            } catch (IOException e) {
+                // tracing must never break the build
+                log.warn("Could not write the trace file " + traceFile + ": " + e.getMessage());
+            }
+        }
+    }
+
+    /**
+     * Forgets the spans recorded so far, for tests.
+     */
+    static void reset() {
+        synchronized (EVENTS) {
+            EVENTS.clear();
+            THREAD_NAMES.clear();
+        }
+        traceFile = null;
+    }
+
+    private static long now() {
+        return BASE_MICROS + (System.nanoTime() - BASE_NANOS) / 1000;
+    }
+}
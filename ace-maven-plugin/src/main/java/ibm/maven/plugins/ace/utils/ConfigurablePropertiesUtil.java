@@ -33,16 +33,15 @@ public final class ConfigurablePropertiesUtil {
     }
 
     public static String getPropName(String configurablePropertyEntry) {
-        // use the value up to an equals sign if present
-        return (configurablePropertyEntry.split("=")[0]).trim();
+        // use the value up to the first equals sign if present, the value may contain further ones
+        int equals = configurablePropertyEntry.indexOf('=');
+        return (equals < 0 ? configurablePropertyEntry : configurablePropertyEntry.substring(0, equals)).trim();
     }
 
     public static String getPropValue(String configurablePropertyEntry) {
-        // use the value up to an equals sign if present
-        if (configurablePropertyEntry.split("=").length == 2) {
-            return (configurablePropertyEntry.split("=")[1]).trim();
-        }
-        return "";
+        // use the value after the first equals sign if present
+        int equals = configurablePropertyEntry.indexOf('=');
+        return equals < 0 ? "" : configurablePropertyEntry.substring(equals + 1).trim();
     }
 
 }
@@ -0,0 +1,319 @@
+package ibm.maven.plugins.ace.utils;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * The configurable properties of a bar file, indexed for validating properties files against them. The names are
+ * hashed, and indexed by flow (the part up to the last "#") and by node (the flow and the part after it up to the
+ * first "."), so that an unknown property can be reported as belonging to an unknown flow, an unknown node or being an
+ * unknown property of a known node.
+ * <p>
+ * The index is immutable once built and can be used from several threads.
+ */
+public class ConfigurablePropertyIndex {
+
+    /**
+     * Why a property of a properties file isn't a configurable property of the bar file.
+     */
+    public enum Reason {
+        /** no configurable property of the bar starts with the flow of the property */
+        UNKNOWN_FLOW,
+        /** the flow is known, but it has no configurable properties for the node of the property */
+        UNKNOWN_NODE,
+        /** the node is known, but it has no such configurable property */
+        UNKNOWN_PROPERTY
+    }
+
+    /**
+     * A property of a properties file that isn't a configurable property of the bar file.
+     */
+    public static final class UnknownProperty {
+
+        private final int lineNumber;
+
+        private final String line;
+
+        private final Reason reason;
+
+        UnknownProperty(int lineNumber, String line, Reason reason) {
+            this.lineNumber = lineNumber;
+            this.line = line;
+            this.reason = reason;
+        }
+
+        public int getLineNumber() {
+            return lineNumber;
+        }
+
+        /**
+         * @return the line of the properties file, trimmed
+         */
+        public String getLine() {
+            return line;
+        }
+
+        public Reason getReason() {
+            return reason;
+        }
+    }
+
+    /**
+     * The result of validating a properties file.
+     */
+    public static final class Report {
+
+        private final File file;
+
+        private final List<UnknownProperty> unknown = new ArrayList<UnknownProperty>();
+
+        private final List<String> duplicated = new ArrayList<String>();
+
+        private final List<String> missing = new ArrayList<String>();
+
+        Report(File file) {
+            this.file = file;
+        }
+
+        public File getFile() {
+            return file;
+        }
+
+        /**
+         * @return the properties that aren't configurable properties of the bar file, in the order of the file
+         */
+        public List<UnknownProperty> getUnknown() {
+            return unknown;
+        }
+
+        /**
+         * @return the names of the properties defined more than once, the last definition wins
+         */
+        public List<String> getDuplicated() {
+            return duplicated;
+        }
+
+        /**
+         * @return the names of the configurable properties the file doesn't define, sorted
+         */
+        public List<String> getMissing() {
+            return missing;
+        }
+
+        /**
+         * @return true if the file defines configurable properties only
+         */
+        public boolean isValid() {
+            return unknown.isEmpty();
+        }
+    }
+
+    private final Set<String> names = new HashSet<String>();
+
+    private final Set<String> flows = new HashSet<String>();
+
+    private final Set<String> nodes = new HashSet<String>();
+
+    /**
+     * @param configurableProperties the configurable properties of the bar, eg. "Flow#Node.property = value" or
+     *            "Flow#property"
+     */
+    public ConfigurablePropertyIndex(List<String> configurableProperties) {
+        for (String configurableProperty : configurableProperties) {
+            String name = ConfigurablePropertiesUtil.getPropName(configurableProperty);
+            names.add(name);
+            flows.add(getFlow(name));
+            nodes.add(getNode(name));
+        }
+    }
+
+    /**
+     * @param name the name of a property
+     * @return true if it is a configurable property of the bar
+     */
+    public boolean contains(String name) {
+        return names.contains(name);
+    }
+
+    /**
+     * @return the number of configurable properties
+     */
+    public int size() {
+        return names.size();
+    }
+
+    /**
+     * Validates a properties file, reading it line by line. Like FileUtils.loadFile(), blank lines and lines starting
+     * with "#" are ignored.
+     *
+     * @param file the properties file
+     * @return the report
+     * @throws IOException if the file can't be read
+     */
+    public Report validate(File file) throws IOException {
+        Report report = new Report(file);
+        Set<String> defined = new HashSet<String>();
+        Set<String> duplicated = new LinkedHashSet<String>();
+
+        BufferedReader reader = new BufferedReader(new InputStreamReader(new FileInputStream(file)));
+        try {
+            String line;
+            int lineNumber = 0;
+            while ((line = reader.readLine()) != null) {
+                lineNumber++;
+                line = line.trim();
+                if (line.length() == 0 || line.startsWith("#")) {
+                    continue;
+                }
+                String name = ConfigurablePropertiesUtil.getPropName(line);
+                if (!defined.add(name)) {
+                    duplicated.add(name);
+                }
+                if (!names.contains(name)) {
+                    report.unknown.add(new UnknownProperty(lineNumber, line, getReason(name)));
+                }
+            }
+        } finally {
+            reader.close();
+        }
+
+        report.duplicated.addAll(duplicated);
+        for (String name : names) {
+            if (!defined.contains(name)) {
+                report.missing.add(name);
+            }
+        }
+        Collections.sort(report.missing);
+        return report;
+    }
+
+    /**
+     * Validates several properties files at the same time.
+     *
+     * @param files the properties files
+     * @param threads the maximum number of files read at the same time
+     * @return the reports, in the order of the files
+     * @throws IOException if a file can't be read
+     */
+    public List<Report> validate(List<File> files, int threads) throws IOException {
+        List<Report> reports = new ArrayList<Report>();
+        if (files.isEmpty()) {
+            return reports;
+        }
+        ExecutorService executor = Executors.newFixedThreadPool(Math.max(1, Math.min(threads, files.size())));
+        try {
+            List<Future<Report>> results = new ArrayList<Future<Report>>();
+            for (final File file : files) {
+                results.add(executor.submit(new Callable<Report>() {
+                    public Report call() throws IOException {
+                        return validate(file);
+                    }
+                }));
+            }
+            for (int i = 0; i < results.size(); i++) {
+                try {
+                    reports.add(results.get(i).get());
+                } catch (ExecutionException e) {
+                    if (e.getCause() instanceof IOException) {
+                        throw (IOException) e.getCause();
+                    }
+                    throw new IOException("Error validating " + files.get(i), e.getCause());
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new IOException("Interrupted while validating " + files.get(i), e);
+                }
+            }
+            return reports;
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    /**
+     * Writes reports as JSON.
+     *
+     * @param reports the reports
+     * @param reportFile the file to be written
+     * @throws IOException if the file can't be written
+     */
+    public static void writeReport(List<Report> reports, File reportFile) throws IOException {
+        reportFile.getAbsoluteFile().getParentFile().mkdirs();
+        Writer writer = new OutputStreamWriter(new FileOutputStream(reportFile), "UTF-8");
+        try {
+            writer.write("{\n  \"files\": [");
+            for (int i = 0; i < reports.size(); i++) {
+                Report report = reports.get(i);
+                writer.write(i == 0 ? "\n" : ",\n");
+                writer.write("    {\"file\": \"" + JsonUtils.escape(report.getFile().getAbsolutePath()) + "\"");
+                writer.write(", \"valid\": " + report.isValid());
+                writer.write(",\n      \"unknown\": [");
+                for (int j = 0; j < report.getUnknown().size(); j++) {
+                    UnknownProperty unknown = report.getUnknown().get(j);
+                    writer.write(j == 0 ? "" : ", ");
+                    writer.write("{\"line\": " + unknown.getLineNumber() + ", \"property\": \"" + JsonUtils.escape(unknown.getLine()) + "\", \"reason\": \""
+                            + unknown.getReason() + "\"}");
+                }
+                writer.write("],\n      \"duplicated\": ");
+                writeNames(writer, report.getDuplicated());
+                writer.write(",\n      \"missing\": ");
+                writeNames(writer, report.getMissing());
+                writer.write("}");
+            }
+            writer.write("\n  ]\n}\n");
+        } finally {
+            writer.close();
+        }
+    }
+
+    private Reason getReason(String name) {
+        if (!flows.contains(getFlow(name))) {
+            return Reason.UNKNOWN_FLOW;
+        }
+        if (!nodes.contains(getNode(name))) {
+            return Reason.UNKNOWN_NODE;
+        }
+        return Reason.UNKNOWN_PROPERTY;
+    }
+
+    /**
+     * @return the name up to the last "#", eg. "Flow" for "Flow#Node.property", or "" if there is none
+     */
+    static String getFlow(String name) {
+        int hash = name.lastIndexOf('#');
+        return hash < 0 ? "" : name.substring(0, hash);
+    }
+
+    /**
+     * @return the name up to the first "." after the last "#", eg. "Flow#Node" for "Flow#Node.property", or the name
+     *         itself for a user defined property like "Flow#property"
+     */
+    static String getNode(String name) {
+        int dot = name.indexOf('.', name.lastIndexOf('#') + 1);
+        return dot < 0 ? name : name.substring(0, dot);
+    }
+
+    private static void writeNames(Writer writer, List<String> names) throws IOException {
+        writer.write("[");
+        for (int i = 0; i < names.size(); i++) {
+            writer.write((i == 0 ? "\"" : ", \"") + JsonUtils.escape(names.get(i)) + "\"");
+        }
+        writer.write("]");
+    }
+}
@@ -0,0 +1,307 @@
+package ibm.maven.plugins.ace.utils;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Enumeration;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+
+import org.apache.maven.plugin.MojoFailureException;
+import org.apache.maven.plugin.logging.Log;
+import org.codehaus.plexus.util.FileUtils;
+import org.codehaus.plexus.util.StringUtils;
+
+/**
+ * Unpacks the zip dependencies of a bar project into the workspace, several at a time. For every archive a marker
+ * recording its checksum and the projects it contained is written, so an archive that hasn't changed since the last
+ * build isn't unpacked again. Changed archives (typically SNAPSHOTs) replace the projects they unpacked before.
+ */
+public class DependencyUnpacker {
+
+    private static final String MARKER_SUFFIX = ".unpacked";
+
+    private final File workspace;
+
+    private final File markerDirectory;
+
+    private final int threads;
+
+    private final Log log;
+
+    private ExtractedArtifactStore store;
+
+    /**
+     * @param workspace the directory the archives are unpacked to
+     * @param markerDirectory the directory holding the markers of the unpacked archives
+     * @param threads the maximum number of archives unpacked at the same time
+     * @param log logger
+     */
+    public DependencyUnpacker(File workspace, File markerDirectory, int threads, Log log) {
+        this.workspace = workspace;
+        this.markerDirectory = markerDirectory;
+        this.threads = Math.max(1, threads);
+        this.log = log;
+    }
+
+    /**
+     * @param store the store the archives are materialized from instead of being extracted to the workspace, or null
+     */
+    public void setStore(ExtractedArtifactStore store) {
+        this.store = store;
+    }
+
+    /**
+     * @param archives the archives to be unpacked, by a key that identifies the dependency across builds (eg.
+     *            groupId:artifactId:type)
+     * @return the number of archives that were unpacked, the others were unchanged
+     * @throws MojoFailureException if an archive can't be unpacked
+     */
+    public int unpack(Map<String, File> archives) throws MojoFailureException {
+        // mkdirs fails if a module sharing the workspace has just created the directories
+        if (!workspace.mkdirs() && !workspace.isDirectory()) {
+            throw new MojoFailureException("Could not create the workspace: " + workspace.getAbsolutePath());
+        }
+        if (!markerDirectory.mkdirs() && !markerDirectory.isDirectory()) {
+            throw new MojoFailureException("Could not create directory: " + markerDirectory.getAbsolutePath());
+        }
+
+        ExecutorService executor = Executors.newFixedThreadPool(Math.min(threads, Math.max(1, archives.size())));
+        try {
+            Map<String, Future<Boolean>> results = new LinkedHashMap<String, Future<Boolean>>();
+            for (final Map.Entry<String, File> archive : archives.entrySet()) {
+                results.put(archive.getKey(), executor.submit(new Callable<Boolean>() {
+                    public Boolean call() throws IOException {
+                        return unpackIfChanged(archive.getKey(), archive.getValue());
+                    }
+                }));
+            }
+
+            int unpacked = 0;
+            for (Map.Entry<String, Future<Boolean>> result : results.entrySet()) {
+                try {
+                    if (result.getValue().get()) {
+                        unpacked++;
+                    }
+                } catch (ExecutionException e) {
+                    throw new MojoFailureException("Error unpacking " + result.getKey() + ": " + e.getCause().getMessage(), e.getCause());
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new MojoFailureException("Interrupted while unpacking " + result.getKey(), e);
+                }
+            }
+            return unpacked;
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    /**
+     * @return true if the archive was unpacked, false if it was unchanged
+     */
+    private boolean unpackIfChanged(String key, File archive) throws IOException {
+        File markerFile = new File(markerDirectory, key.replaceAll("[^A-Za-z0-9._-]", "_") + MARKER_SUFFIX);
+        Properties marker = readMarker(markerFile);
+
+        String checksum = null;
+        if (marker != null && isUnpacked(marker)) {
+            // the same file as last time, no need to look at its contents
+            if (archive.getAbsolutePath().equals(marker.getProperty("path")) && String.valueOf(archive.length()).equals(marker.getProperty("length"))
+                    && String.valueOf(archive.lastModified()).equals(marker.getProperty("lastModified"))) {
+                log.debug("Unchanged, not unpacking " + key);
+                return false;
+            }
+            // a different file (eg. a SNAPSHOT that was resolved again), which may still have the same contents
+            checksum = checksum(archive);
+            if (checksum.equals(marker.getProperty("sha256"))) {
+                log.debug("Unchanged contents, not unpacking " + key);
+                writeMarker(markerFile, archive, checksum, marker.getProperty("projects"));
+                return false;
+            }
+        }
+        if (checksum == null) {
+            checksum = checksum(archive);
+        }
+
+        // remove what the previous version unpacked, so that deleted files don't linger
+        if (marker != null) {
+            for (String project : getProjects(marker)) {
+                FileUtils.deleteDirectory(new File(workspace, project));
+            }
+        }
+
+        Set<String> projects;
+        BuildTracer.Span span = BuildTracer.start(BuildTracer.ZIP, "unpack " + archive.getName(), key);
+        try {
+            if (store != null) {
+                log.info("Materializing " + archive.getName() + " in " + workspace.getAbsolutePath());
+                projects = store.materialize(archive, checksum, workspace);
+            } else {
+                log.info("Unpacking " + archive.getName() + " to " + workspace.getAbsolutePath());
+                projects = extract(archive, workspace);
+            }
+        } finally {
+            span.end();
+        }
+        writeMarker(markerFile, archive, checksum, StringUtils.join(projects.iterator(), "/"));
+        return true;
+    }
+
+    /**
+     * Extracts a zip file, refusing entries that would end up outside of the directory.
+     *
+     * @param archive the zip file
+     * @param directory the directory the archive is extracted to
+     * @return the top-level names (usually a single project directory) that were extracted
+     * @throws IOException if the archive can't be read or contains entries outside of the directory
+     */
+    static Set<String> extract(File archive, File directory) throws IOException {
+        Path root = directory.getCanonicalFile().toPath();
+        Set<String> topLevelNames = new LinkedHashSet<String>();
+        byte[] buffer = new byte[64 * 1024];
+
+        ZipFile zipFile = new ZipFile(archive);
+        try {
+            Enumeration<? extends ZipEntry> entries = zipFile.entries();
+            while (entries.hasMoreElements()) {
+                ZipEntry entry = entries.nextElement();
+                Path target = root.resolve(entry.getName()).normalize();
+                // refuse entries like "../../.bashrc" that would end up outside of the directory
+                if (!target.startsWith(root) || target.equals(root)) {
+                    throw new IOException("Entry " + entry.getName() + " of " + archive.getName() + " is outside of " + directory.getPath());
+                }
+                topLevelNames.add(root.relativize(target).getName(0).toString());
+
+                File file = target.toFile();
+                if (entry.isDirectory()) {
+                    file.mkdirs();
+                    continue;
+                }
+                file.getParentFile().mkdirs();
+                InputStream is = zipFile.getInputStream(entry);
+                try {
+                    OutputStream os = new FileOutputStream(file);
+                    try {
+                        int read;
+                        while ((read = is.read(buffer)) != -1) {
+                            os.write(buffer, 0, read);
+                        }
+                    } finally {
+                        os.close();
+                    }
+                } finally {
+                    is.close();
+                }
+                if (entry.getTime() != -1) {
+                    file.setLastModified(entry.getTime());
+                }
+            }
+        } finally {
+            zipFile.close();
+        }
+        return topLevelNames;
+    }
+
+    private boolean isUnpacked(Properties marker) {
+        for (String project : getProjects(marker)) {
+            if (!new File(workspace, project).exists()) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private List<String> getProjects(Properties marker) {
+        List<String> projects = new ArrayList<String>();
+        for (String project : marker.getProperty("projects", "").split("/")) {
+            if (project.length() > 0) {
+                projects.add(project);
+            }
+        }
+        return projects;
+    }
+
+    private Properties readMarker(File markerFile) {
+        if (!markerFile.isFile()) {
+            return null;
+        }
+        Properties marker = new Properties();
+        try {
+            InputStream is = new FileInputStream(markerFile);
+            try {
+                marker.load(is);
+            } finally {
+                is.close();
+            }
+        } catch (IOException e) {
+            log.debug("Ignoring unreadable marker " + markerFile.getAbsolutePath(), e);
+            return null;
+        }
+        return marker;
+    }
+
+    private void writeMarker(File markerFile, File archive, String checksum, String projects) throws IOException {
+        Properties marker = new Properties();
+        marker.setProperty("path", archive.getAbsolutePath());
+        marker.setProperty("length", String.valueOf(archive.length()));
+        marker.setProperty("lastModified", String.valueOf(archive.lastModified()));
+        marker.setProperty("sha256", checksum);
+        marker.setProperty("projects", projects);
+
+        File tmpFile = new File(markerFile.getPath() + ".tmp");
+        OutputStream os = new FileOutputStream(tmpFile);
+        try {
+            marker.store(os, null);
+        } finally {
+            os.close();
+        }
+        Files.move(tmpFile.toPath(), markerFile.toPath(), StandardCopyOption.REPLACE_EXISTING);
+    }
+
+    static String checksum(File file) throws IOException {
+        MessageDigest digest;
+        try {
+            digest = MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            // every JRE is required to support SHA-256
+            throw new IllegalStateException(e);
+        }
+        byte[] buffer = new byte[64 * 1024];
+        InputStream is = new FileInputStream(file);
+        try {
+            int read;
+            while ((read = is.read(buffer)) != -1) {
+                digest.update(buffer, 0, read);
+            }
+        } finally {
+            is.close();
+        }
+
+        StringBuilder sb = new StringBuilder();
+        for (byte b : digest.digest()) {
+            sb.append(Character.forDigit((b >> 4) & 0xf, 16));
+            sb.append(Character.forDigit(b & 0xf, 16));
+        }
+        return sb.toString();
+    }
+}
@@ -1,12 +1,22 @@
 package ibm.maven.plugins.ace.utils;
 
+import java.io.BufferedInputStream;
 import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 
 import javax.xml.bind.JAXBContext;
 import javax.xml.bind.JAXBException;
 import javax.xml.bind.Unmarshaller;
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
 
 import org.apache.maven.plugin.MojoFailureException;
 import org.apache.maven.plugin.logging.Log;
@@ -19,20 +29,155 @@ import ibm.maven.plugins.ace.generated.eclipse_project.ProjectDescription;
  */
 public class EclipseProjectUtils {
 
-    private static ProjectDescription getProjectDescription(File projectDirectory) throws MojoFailureException {
-        ProjectDescription projectDescription = new ProjectDescription();
+    private static final String APPLICATION_NATURE = "com.ibm.etools.msgbroker.tooling.applicationNature";
+
+    private static final String LIBRARY_NATURE = "com.ibm.etools.msgbroker.tooling.libraryNature";
+
+    private static final String SHARED_LIBRARY_NATURE = "com.ibm.etools.msgbroker.tooling.sharedLibraryNature";
+
+    private static final String POLICY_PROJECT_NATURE = "com.ibm.etools.mft.policy.ui.Nature";
+
+    /**
+     * The kind of an ace project, as determined by its natures.
+     */
+    public enum ProjectKind {
+        APPLICATION, LIBRARY, SHARED_LIBRARY, POLICY_PROJECT, OTHER
+    }
+
+    /**
+     * the parsed .project files by canonical path, shared by all mojo executions (including parallel ones)
+     */
+    private static final ConcurrentMap<String, CachedProjectDescription> PROJECT_DESCRIPTIONS = new ConcurrentHashMap<String, CachedProjectDescription>();
+
+    private static final XMLInputFactory XML_INPUT_FACTORY = XMLInputFactory.newInstance();
+
+    static {
+        XML_INPUT_FACTORY.setProperty(XMLInputFactory.SUPPORT_DTD, Boolean.FALSE);
+    }
+
+    /**
+     * The parts of a .project file the plugin uses, together with the state of the file they were read from.
+     */
+    private static final class CachedProjectDescription {
+
+        final long lastModified;
+
+        final long length;
+
+        String name;
+
+        final List<String> projects = new ArrayList<String>();
+
+        final List<String> natures = new ArrayList<String>();
+
+        CachedProjectDescription(long lastModified, long length) {
+            this.lastModified = lastModified;
+            this.length = length;
+        }
+    }
+
+    /**
+     * JAXBContexts are expensive to create but thread safe, so there's only one
+     */
+    private static final class JaxbContextHolder {
+
+        static final JAXBContext CONTEXT;
+
+        static {
+            try {
+                CONTEXT = JAXBContext.newInstance(ProjectDescription.class);
+            } catch (JAXBException e) {
+                throw new IllegalStateException("Could not create the JAXBContext for .project files", e);
+            }
+        }
+    }
+
+    /**
+     * returns the parsed .project file of a project. The result is cached until the file changes, so it must not be
+     * modified.
+     */
+    private static CachedProjectDescription getProjectDescription(File projectDirectory) throws MojoFailureException {
+        File projectFile = new File(projectDirectory, ".project");
+        String key;
         try {
-            // unmarshall the .project file, which is in the temp workspace
+            key = projectFile.getCanonicalPath();
+        } catch (IOException e) {
+            key = projectFile.getAbsolutePath();
+        }
+        long lastModified = projectFile.lastModified();
+        long length = projectFile.length();
+
+        CachedProjectDescription cached = PROJECT_DESCRIPTIONS.get(key);
+        if (cached != null && cached.lastModified == lastModified && cached.length == length) {
+            return cached;
+        }
+
+        CachedProjectDescription projectDescription = new CachedProjectDescription(lastModified, length);
+        try {
+            // read the .project file, which is in the temp workspace
             // under a directory of the same name as the projectName
-            projectDescription = unmarshallEclipseProjectFile(new File(
-                    projectDirectory, ".project"));
-        } catch (JAXBException e) {
+            readProjectFile(projectFile, projectDescription);
+        } catch (IOException e) {
+            throw (new MojoFailureException(
+                    "Error parsing .project file in: " + projectDirectory.getPath(), e));
+        } catch (XMLStreamException e) {
             throw (new MojoFailureException(
                     "Error parsing .project file in: " + projectDirectory.getPath(), e));
         }
+        PROJECT_DESCRIPTIONS.put(key, projectDescription);
         return projectDescription;
     }
 
+    /**
+     * Reads the name, the referenced projects and the natures of a .project file. The file is only read up to the end
+     * of the natures, as the build specification and linked resources aren't needed and the name and the referenced
+     * projects come before the natures in the files written by the toolkit.
+     */
+    private static void readProjectFile(File projectFile, CachedProjectDescription projectDescription) throws IOException, XMLStreamException {
+        InputStream is = new BufferedInputStream(new FileInputStream(projectFile));
+        try {
+            XMLStreamReader reader = XML_INPUT_FACTORY.createXMLStreamReader(is);
+            try {
+                // the path of the current element below projectDescription, eg. "natures/nature"
+                String parent = null;
+                int depth = 0;
+                while (reader.hasNext()) {
+                    int event = reader.next();
+                    if (event == XMLStreamConstants.START_ELEMENT) {
+                        depth++;
+                        String localName = reader.getLocalName();
+                        if (depth == 2) {
+                            parent = localName;
+                            if ("name".equals(localName)) {
+                                projectDescription.name = reader.getElementText().trim();
+                                depth--;
+                            }
+                        } else if (depth == 3 && "projects".equals(parent) && "project".equals(localName)) {
+                            projectDescription.projects.add(reader.getElementText().trim());
+                            depth--;
+                        } else if (depth == 3 && "natures".equals(parent) && "nature".equals(localName)) {
+                            projectDescription.natures.add(reader.getElementText().trim());
+                            depth--;
+                        }
+                    } else if (event == XMLStreamConstants.END_ELEMENT) {
+                        depth--;
+                        if (depth == 1 && "natures".equals(reader.getLocalName()) && projectDescription.name != null) {
+                            break;
+                        }
+                    }
+                }
+            } finally {
+                reader.close();
+            }
+        } finally {
+            is.close();
+        }
+    }
+
+    private static List<String> getNatures(File projectDirectory) throws MojoFailureException {
+        return getProjectDescription(projectDirectory).natures;
+    }
+
     /**
      * @param workspace
      * @return the names of the projects (actually, just all directories) in the
@@ -68,7 +213,49 @@ public class EclipseProjectUtils {
      */
     public static String getProjectName(File projectDirectory) throws MojoFailureException {
 
-        return getProjectDescription(projectDirectory).getName();
+        return getProjectDescription(projectDirectory).name;
+    }
+
+    /**
+     * @param projectDirectory the (workspace) directory containing the project
+     * @return the names of the projects referenced by the project
+     * @throws MojoFailureException if something went wrong
+     */
+    public static List<String> getReferencedProjects(File projectDirectory) throws MojoFailureException {
+
+        return new ArrayList<String>(getProjectDescription(projectDirectory).projects);
+    }
+
+    /**
+     * @param projectDirectory the (workspace) directory containing the project
+     * @param nature the id of the nature
+     * @return true if the project has the given nature
+     * @throws MojoFailureException if something went wrong
+     */
+    public static boolean hasNature(File projectDirectory, String nature) throws MojoFailureException {
+
+        return getNatures(projectDirectory).contains(nature);
+    }
+
+    /**
+     * classifies a project with a single read of its .project file. Applications take precedence over libraries, and
+     * libraries over policy projects, as in the isXxx methods.
+     *
+     * @param projectDirectory the (workspace) directory containing the project
+     * @return the kind of the project
+     * @throws MojoFailureException if something went wrong
+     */
+    public static ProjectKind getProjectKind(File projectDirectory) throws MojoFailureException {
+
+        List<String> natureList = getNatures(projectDirectory);
+        if (natureList.contains(APPLICATION_NATURE)) {
+            return ProjectKind.APPLICATION;
+        } else if (natureList.contains(LIBRARY_NATURE)) {
+            return natureList.contains(SHARED_LIBRARY_NATURE) ? ProjectKind.SHARED_LIBRARY : ProjectKind.LIBRARY;
+        } else if (natureList.contains(POLICY_PROJECT_NATURE)) {
+            return ProjectKind.POLICY_PROJECT;
+        }
+        return ProjectKind.OTHER;
     }
 
     /**
@@ -79,9 +266,9 @@ public class EclipseProjectUtils {
      */
     public static boolean isApplication(File projectDirectory, Log log) throws MojoFailureException {
 
-        List<String> natureList = getProjectDescription(projectDirectory).getNatures().getNature();
+        List<String> natureList = getNatures(projectDirectory);
         if (natureList
-                .contains("com.ibm.etools.msgbroker.tooling.applicationNature")) {
+                .contains(APPLICATION_NATURE)) {
             log.debug(
                     projectDirectory + " is an ace Application");
             return true;
@@ -98,9 +285,9 @@ public class EclipseProjectUtils {
      */
     public static boolean isLibrary(File projectDirectory, Log log) throws MojoFailureException {
 
-        List<String> natureList = getProjectDescription(projectDirectory).getNatures().getNature();
+        List<String> natureList = getNatures(projectDirectory);
         if (natureList
-                .contains("com.ibm.etools.msgbroker.tooling.libraryNature")) {
+                .contains(LIBRARY_NATURE)) {
             log.debug(projectDirectory + " is an ace Library");
             return true;
         } else {
@@ -117,9 +304,9 @@ public class EclipseProjectUtils {
      */
     public static boolean isSharedLibrary(File projectDirectory, Log log) throws MojoFailureException {
 
-        List<String> natureList = getProjectDescription(projectDirectory).getNatures().getNature();
+        List<String> natureList = getNatures(projectDirectory);
         if (natureList
-                .contains("com.ibm.etools.msgbroker.tooling.sharedLibraryNature")) {
+                .contains(SHARED_LIBRARY_NATURE)) {
             log.debug(projectDirectory + " is an ace shared Library");
             return true;
         } else {
@@ -135,9 +322,9 @@ public class EclipseProjectUtils {
      */
     public static boolean isPolicyProject(File projectDirectory, Log log) throws MojoFailureException {
 
-        List<String> natureList = getProjectDescription(projectDirectory).getNatures().getNature();
+        List<String> natureList = getNatures(projectDirectory);
         if (natureList
-                .contains("com.ibm.etools.mft.policy.ui.Nature")) {
+                .contains(POLICY_PROJECT_NATURE)) {
             log.debug(
                     projectDirectory + " is an ace Policy project");
             return true;
@@ -149,7 +336,8 @@ public class EclipseProjectUtils {
 
     
     /**
-     * returns a java object containing the contents of the .project file
+     * returns a java object containing the contents of the .project file. The plugin itself only needs a few
+     * elements, which are read with StAX instead.
      * 
      * @param projectFile the .project file to be unmarshalled
      * @return the unmarshalled .profile file
@@ -157,8 +345,8 @@ public class EclipseProjectUtils {
      */
     protected static ProjectDescription unmarshallEclipseProjectFile(File projectFile)
             throws JAXBException {
-        JAXBContext context = JAXBContext.newInstance(ProjectDescription.class);
-        Unmarshaller unmarshaller = context.createUnmarshaller();
+        // unmarshallers aren't thread safe, so every call gets its own
+        Unmarshaller unmarshaller = JaxbContextHolder.CONTEXT.createUnmarshaller();
         return (ProjectDescription) unmarshaller.unmarshal(projectFile);
 
     }
@@ -0,0 +1,325 @@
+package ibm.maven.plugins.ace.utils;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Properties;
+import java.util.Set;
+import java.util.UUID;
+
+import org.apache.maven.plugin.logging.Log;
+import org.codehaus.plexus.util.FileUtils;
+
+/**
+ * A store of extracted zip dependencies shared by all builds on a machine. Every archive is extracted once into a
+ * directory named after its SHA-256 and workspaces are then materialized from there, with hardlinks where the file
+ * system allows it.
+ * <p>
+ * The files in the store are made read-only, because a hardlinked file in a workspace is the same file as the one in
+ * the store: a tool writing into it in place fails instead of changing the store. Tools that replace files, and
+ * deleting projects from the workspace, don't affect the store.
+ * <p>
+ * Next to every entry directory there is an entry file recording its size. Its modification time records when the entry
+ * was last used, which is what {@link #evict(long)} goes by.
+ */
+public class ExtractedArtifactStore {
+
+    /**
+     * How the files of an entry are put into a workspace.
+     */
+    public enum LinkMode {
+
+        /** hardlink the files, copying them where linking isn't possible (eg. another file system) */
+        HARDLINK,
+
+        /** always copy the files */
+        COPY
+    }
+
+    private static final String ENTRY_SUFFIX = ".entry";
+
+    private static final String EVICTED_SUFFIX = ".evicted";
+
+    /** the number of times an entry is added again if it is evicted while being materialized */
+    private static final int MAX_ATTEMPTS = 3;
+
+    private final File storeDirectory;
+
+    private final LinkMode linkMode;
+
+    private final Log log;
+
+    /**
+     * @param storeDirectory the directory holding the extracted archives
+     * @param linkMode how the files are put into the workspaces
+     * @param log logger
+     */
+    public ExtractedArtifactStore(File storeDirectory, LinkMode linkMode, Log log) {
+        this.storeDirectory = storeDirectory;
+        this.linkMode = linkMode;
+        this.log = log;
+    }
+
+    /**
+     * Puts the contents of an archive into a directory, extracting it into the store first if it isn't there yet.
+     *
+     * @param archive the zip file
+     * @param checksum the hex encoded SHA-256 of the archive
+     * @param directory the directory the contents are put into
+     * @return the top-level names (usually a single project directory) of the archive
+     * @throws IOException if the archive can't be extracted or the files can't be linked or copied
+     */
+    public Set<String> materialize(File archive, String checksum, File directory) throws IOException {
+        File entryDirectory = new File(storeDirectory, checksum);
+        File entryFile = new File(storeDirectory, checksum + ENTRY_SUFFIX);
+        for (int attempt = 1;; attempt++) {
+            boolean added = false;
+            if (entryFile.isFile() && entryDirectory.isDirectory()) {
+                log.debug("Artifact store hit for " + archive.getName() + ": " + checksum);
+            } else {
+                log.debug("Artifact store miss for " + archive.getName() + ": " + checksum);
+                add(archive, entryDirectory, entryFile);
+                added = true;
+            }
+            entryFile.setLastModified(System.currentTimeMillis());
+
+            String[] names = entryDirectory.list();
+            // an entry is never empty, unless the archive is, so it was evicted after the check above
+            if (names == null || (names.length == 0 && !added)) {
+                log.debug(checksum + " was evicted from the artifact store concurrently");
+            } else {
+                try {
+                    Set<String> topLevelNames = new LinkedHashSet<String>();
+                    for (String name : names) {
+                        topLevelNames.add(name);
+                        link(new File(entryDirectory, name), new File(directory, name));
+                    }
+                    return topLevelNames;
+                } catch (NoSuchFileException e) {
+                    log.debug(checksum + " was evicted from the artifact store while being materialized: " + e.getMessage());
+                }
+            }
+            if (attempt == MAX_ATTEMPTS) {
+                throw new IOException("Could not materialize " + archive.getName() + " from the artifact store, it was evicted " + attempt
+                        + " times in the meantime");
+            }
+            // a new entry file makes add() replace what is left of the entry directory
+            entryFile.delete();
+        }
+    }
+
+    /**
+     * Removes the least recently used entries until the store fits into the maximum size.
+     *
+     * @param maxSizeBytes the maximum total size of the store
+     * @return the number of bytes removed
+     */
+    public long evict(long maxSizeBytes) {
+        File[] files = storeDirectory.listFiles();
+        if (files == null) {
+            return 0;
+        }
+
+        List<File> entryFiles = new ArrayList<File>();
+        long totalSize = 0;
+        for (File file : files) {
+            if (file.isFile() && file.getName().endsWith(ENTRY_SUFFIX)) {
+                entryFiles.add(file);
+                totalSize += getSize(file);
+            } else if (file.isDirectory() && file.getName().endsWith(EVICTED_SUFFIX)) {
+                // left over by an earlier eviction that couldn't delete everything
+                try {
+                    deleteEntryDirectory(file);
+                } catch (IOException e) {
+                    log.warn("Could not delete " + file.getAbsolutePath() + ": " + e.getMessage());
+                }
+            }
+        }
+
+        // least recently used first
+        Collections.sort(entryFiles, new Comparator<File>() {
+            public int compare(File f1, File f2) {
+                return Long.compare(f1.lastModified(), f2.lastModified());
+            }
+        });
+
+        long removed = 0;
+        for (File entryFile : entryFiles) {
+            if (totalSize - removed <= maxSizeBytes) {
+                break;
+            }
+            String checksum = entryFile.getName().substring(0, entryFile.getName().length() - ENTRY_SUFFIX.length());
+            long size = getSize(entryFile);
+            // the entry file goes first, so that nobody uses the directory while it is being deleted
+            if (!entryFile.delete()) {
+                log.warn("Could not evict " + entryFile.getAbsolutePath() + " from the artifact store");
+                continue;
+            }
+            try {
+                removeEntryDirectory(new File(storeDirectory, checksum));
+            } catch (IOException e) {
+                log.warn("Could not delete " + checksum + " from the artifact store: " + e.getMessage());
+            }
+            removed += size;
+            log.info("Evicted " + checksum + " (" + size + " bytes) from the artifact store");
+        }
+        return removed;
+    }
+
+    /**
+     * Extracts an archive into the store. The archive is extracted to a temporary directory first, so that concurrent
+     * builds never see a half extracted entry.
+     */
+    private void add(File archive, File entryDirectory, File entryFile) throws IOException {
+        // mkdirs fails if another build has just created the directory
+        if (!storeDirectory.mkdirs() && !storeDirectory.isDirectory()) {
+            throw new IOException("Could not create artifact store directory: " + storeDirectory.getAbsolutePath());
+        }
+
+        // left over by an eviction that couldn't delete everything
+        if (entryDirectory.exists() && !entryFile.exists()) {
+            removeEntryDirectory(entryDirectory);
+        }
+
+        File tmpDirectory = new File(storeDirectory, entryDirectory.getName() + "." + UUID.randomUUID() + ".tmp");
+        try {
+            DependencyUnpacker.extract(archive, tmpDirectory);
+            long size = makeReadOnly(tmpDirectory);
+            try {
+                Files.move(tmpDirectory.toPath(), entryDirectory.toPath(), StandardCopyOption.ATOMIC_MOVE);
+            } catch (FileAlreadyExistsException e) {
+                // another build extracted the same archive in the meantime
+                log.debug(entryDirectory.getName() + " was added to the artifact store concurrently");
+            } catch (IOException e) {
+                // on some platforms an existing non-empty target is reported as a generic error
+                if (!entryDirectory.isDirectory()) {
+                    throw e;
+                }
+            }
+
+            Properties entry = new Properties();
+            entry.setProperty("archive", archive.getName());
+            entry.setProperty("size", String.valueOf(size));
+            File tmpFile = new File(storeDirectory, entryFile.getName() + "." + UUID.randomUUID() + ".tmp");
+            OutputStream os = new FileOutputStream(tmpFile);
+            try {
+                entry.store(os, null);
+            } finally {
+                os.close();
+            }
+            Files.move(tmpFile.toPath(), entryFile.toPath(), StandardCopyOption.REPLACE_EXISTING);
+        } finally {
+            if (tmpDirectory.exists()) {
+                deleteEntryDirectory(tmpDirectory);
+            }
+        }
+    }
+
+    private void link(File source, File target) throws IOException {
+        if (source.isDirectory()) {
+            target.mkdirs();
+            String[] names = source.list();
+            if (names != null) {
+                for (String name : names) {
+                    link(new File(source, name), new File(target, name));
+                }
+            }
+            return;
+        }
+
+        Files.deleteIfExists(target.toPath());
+        if (linkMode == LinkMode.HARDLINK) {
+            try {
+                Files.createLink(target.toPath(), source.toPath());
+                return;
+            } catch (IOException e) {
+                log.debug("Could not link " + target.getAbsolutePath() + ", copying it instead: " + e.getMessage());
+            } catch (UnsupportedOperationException e) {
+                log.debug("Could not link " + target.getAbsolutePath() + ", copying it instead: " + e.getMessage());
+            }
+        }
+        Files.copy(source.toPath(), target.toPath(), StandardCopyOption.COPY_ATTRIBUTES);
+        // the copy is the workspace's own file
+        target.setWritable(true);
+    }
+
+    /**
+     * @return the total size of the files below the directory
+     */
+    private static long makeReadOnly(File file) {
+        if (file.isDirectory()) {
+            long size = 0;
+            File[] files = file.listFiles();
+            if (files != null) {
+                for (File child : files) {
+                    size += makeReadOnly(child);
+                }
+            }
+            return size;
+        }
+        file.setWritable(false, false);
+        return file.length();
+    }
+
+    /**
+     * Moves an entry directory out of the way before deleting it, so that nobody sees it partially deleted. If it can't
+     * be moved (eg. a file is in use on Windows), it is left alone, the next {@link #add} replaces it.
+     */
+    private void removeEntryDirectory(File entryDirectory) throws IOException {
+        File evictedDirectory = new File(storeDirectory, entryDirectory.getName() + "." + UUID.randomUUID() + EVICTED_SUFFIX);
+        try {
+            Files.move(entryDirectory.toPath(), evictedDirectory.toPath(), StandardCopyOption.ATOMIC_MOVE);
+        } catch (NoSuchFileException e) {
+            return;
+        }
+        deleteEntryDirectory(evictedDirectory);
+    }
+
+    /**
+     * Deletes a directory of the store, whose files are read-only.
+     */
+    private static void deleteEntryDirectory(File directory) throws IOException {
+        // deleting a file only needs the directory to be writable, except on Windows
+        makeWritable(directory);
+        FileUtils.deleteDirectory(directory);
+    }
+
+    private static void makeWritable(File file) {
+        file.setWritable(true);
+        File[] files = file.listFiles();
+        if (files != null) {
+            for (File child : files) {
+                makeWritable(child);
+            }
+        }
+    }
+
+    private static long getSize(File entryFile) {
+        Properties entry = new Properties();
+        try {
+            InputStream is = new FileInputStream(entryFile);
+            try {
+                entry.load(is);
+            } finally {
+                is.close();
+            }
+            return Long.parseLong(entry.getProperty("size", "0"));
+        } catch (IOException e) {
+            return 0;
+        } catch (NumberFormatException e) {
+            return 0;
+        }
+    }
+}
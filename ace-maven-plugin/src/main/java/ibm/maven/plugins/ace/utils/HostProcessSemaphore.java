@@ -0,0 +1,292 @@
+package ibm.maven.plugins.ace.utils;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.channels.OverlappingFileLockException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.UUID;
+
+import org.apache.maven.plugin.logging.Log;
+
+/**
+ * Limits the number of processes of a kind (eg. toolkits) running at the same time on a host, across all Maven builds
+ * (and all threads of a build with -T) using the same directory. The slots are files locked by their holders, so a slot
+ * is freed by the operating system if a build dies.
+ * <p>
+ * Waiting builds queue up in the order they asked for a slot: each one takes a numbered ticket, which it holds locked
+ * while waiting, and only the oldest ticket whose holder is still alive may take a free slot.
+ * <p>
+ * File locks belong to the JVM, and on Unix closing any channel to a file releases all locks the JVM holds on it. So the
+ * files locked by this JVM are kept in a registry, and a file found there is never opened a second time.
+ */
+public class HostProcessSemaphore {
+
+    private static final long POLL_MILLIS = 500;
+
+    private static final String COUNTER_FILE = "counter";
+
+    private static final String TICKET_SUFFIX = ".ticket";
+
+    /** the slot and ticket files locked by this JVM, by canonical path */
+    private static final Map<String, FileChannel> HELD = new HashMap<String, FileChannel>();
+
+    private final File directory;
+
+    private final int slots;
+
+    /**
+     * A slot that has been acquired.
+     */
+    public static final class Slot {
+
+        private final String path;
+
+        private final FileChannel channel;
+
+        private Slot(String path, FileChannel channel) {
+            this.path = path;
+            this.channel = channel;
+        }
+
+        /**
+         * Frees the slot for the next waiting process.
+         */
+        public void release() {
+            unlock(path, channel, false);
+        }
+    }
+
+    /**
+     * @param directory the directory shared by the builds, eg. one per kind of process
+     * @param slots the maximum number of processes
+     */
+    public HostProcessSemaphore(File directory, int slots) {
+        this.directory = directory;
+        this.slots = slots;
+    }
+
+    /**
+     * @param directory the directory shared by the builds
+     * @param workspace a toolkit workspace
+     * @return a semaphore with a single slot that guards the workspace. Its directory is named after the canonical
+     *         path of the workspace and kept outside of it, as a workspace is only taken as a new one without .metadata
+     */
+    public static HostProcessSemaphore forWorkspace(File directory, File workspace) {
+        String path;
+        try {
+            path = workspace.getCanonicalPath();
+        } catch (IOException e) {
+            path = workspace.getAbsolutePath();
+        }
+        return new HostProcessSemaphore(new File(directory, "workspace-" + workspace.getName() + "-" + Integer.toHexString(path.hashCode())), 1);
+    }
+
+    /**
+     * Waits for a free slot.
+     *
+     * @param name the name of the process, for messages
+     * @param log logger
+     * @return the slot, to be released in a finally block
+     * @throws IOException if the directory can't be used
+     * @throws InterruptedException if the current thread was interrupted while waiting
+     */
+    public Slot acquire(String name, Log log) throws IOException, InterruptedException {
+        // mkdirs fails if another thread or build has just created the directory
+        if (!directory.mkdirs() && !directory.isDirectory()) {
+            throw new IOException("Could not create directory: " + directory.getAbsolutePath());
+        }
+        long startMillis = System.currentTimeMillis();
+
+        File ticketFile = takeTicket();
+        String ticketPath = ticketFile.getCanonicalPath();
+        FileChannel ticket;
+        synchronized (HELD) {
+            ticket = HELD.get(ticketPath);
+        }
+        try {
+            boolean waiting = false;
+            while (true) {
+                if (isFirstInQueue(ticketFile)) {
+                    Slot slot = tryAcquireSlot();
+                    if (slot != null) {
+                        long waitedMillis = System.currentTimeMillis() - startMillis;
+                        if (waiting) {
+                            log.info("Waited " + waitedMillis / 1000 + " s for one of " + slots + " slots to start " + name);
+                        } else {
+                            log.debug("Got one of " + slots + " slots to start " + name + " in " + waitedMillis + " ms");
+                        }
+                        return slot;
+                    }
+                }
+                if (!waiting) {
+                    log.info("Waiting for one of " + slots + " slots in " + directory.getAbsolutePath() + " to start " + name);
+                    waiting = true;
+                }
+                Thread.sleep(POLL_MILLIS);
+            }
+        } finally {
+            unlock(ticketPath, ticket, true);
+        }
+    }
+
+    /**
+     * Creates and locks the next ticket. It is locked under a temporary name and then renamed, so that the others
+     * never see it unlocked and take it for a stale one.
+     *
+     * @return the ticket file
+     */
+    private File takeTicket() throws IOException {
+        File tmpFile = new File(directory, UUID.randomUUID() + ".tmp");
+        File ticketFile = new File(directory, String.format("%019d", nextTicket()) + TICKET_SUFFIX);
+        String path = ticketFile.getCanonicalPath();
+        synchronized (HELD) {
+            // channels (unlike RandomAccessFile) allow an open file to be renamed on Windows
+            FileChannel channel = FileChannel.open(tmpFile.toPath(), StandardOpenOption.CREATE_NEW, StandardOpenOption.READ,
+                    StandardOpenOption.WRITE);
+            try {
+                channel.lock();
+                Files.move(tmpFile.toPath(), ticketFile.toPath(), StandardCopyOption.ATOMIC_MOVE);
+            } catch (IOException e) {
+                channel.close();
+                tmpFile.delete();
+                throw e;
+            }
+            HELD.put(path, channel);
+        }
+        return ticketFile;
+    }
+
+    /**
+     * @return the next number of the counter file shared by all builds
+     */
+    private long nextTicket() throws IOException {
+        // file locks are held by the JVM, the threads of this one have to take turns themselves
+        synchronized (HostProcessSemaphore.class) {
+            FileChannel counter = FileChannel.open(new File(directory, COUNTER_FILE).toPath(), StandardOpenOption.CREATE,
+                    StandardOpenOption.READ, StandardOpenOption.WRITE);
+            try {
+                counter.lock();
+                ByteBuffer buffer = ByteBuffer.allocate(8);
+                long next = counter.read(buffer, 0) == 8 ? buffer.getLong(0) + 1 : 0;
+                buffer.clear();
+                buffer.putLong(0, next);
+                counter.write(buffer, 0);
+                return next;
+            } finally {
+                // releases the lock
+                counter.close();
+            }
+        }
+    }
+
+    /**
+     * @return true if all older tickets are stale, ie. their holders died without deleting them
+     */
+    private boolean isFirstInQueue(File ticketFile) throws IOException {
+        String[] tickets = directory.list();
+        if (tickets == null) {
+            return true;
+        }
+        Arrays.sort(tickets);
+        for (String ticket : tickets) {
+            if (!ticket.endsWith(TICKET_SUFFIX)) {
+                continue;
+            }
+            if (ticket.compareTo(ticketFile.getName()) >= 0) {
+                return true;
+            }
+            File file = new File(directory, ticket);
+            synchronized (HELD) {
+                if (isHeld(file)) {
+                    return false;
+                }
+                file.delete();
+            }
+        }
+        return true;
+    }
+
+    private Slot tryAcquireSlot() throws IOException {
+        synchronized (HELD) {
+            for (int i = 0; i < slots; i++) {
+                File file = new File(directory, "slot-" + i + ".lock");
+                String path = file.getCanonicalPath();
+                if (HELD.containsKey(path)) {
+                    continue;
+                }
+                FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.CREATE, StandardOpenOption.READ,
+                        StandardOpenOption.WRITE);
+                if (tryLock(channel) != null) {
+                    HELD.put(path, channel);
+                    return new Slot(path, channel);
+                }
+                // not held by this JVM, so closing it doesn't release anybody's lock
+                channel.close();
+            }
+            return null;
+        }
+    }
+
+    /**
+     * Must be called while synchronized on {@link #HELD}.
+     */
+    private static boolean isHeld(File file) throws IOException {
+        if (HELD.containsKey(file.getCanonicalPath())) {
+            return true;
+        }
+        FileChannel channel;
+        try {
+            channel = FileChannel.open(file.toPath(), StandardOpenOption.READ, StandardOpenOption.WRITE);
+        } catch (IOException e) {
+            // deleted in the meantime
+            return false;
+        }
+        try {
+            return tryLock(channel) == null;
+        } finally {
+            channel.close();
+        }
+    }
+
+    private static FileLock tryLock(FileChannel channel) throws IOException {
+        try {
+            return channel.tryLock();
+        } catch (OverlappingFileLockException e) {
+            // can't happen as long as all channels are opened through the registry
+            return null;
+        }
+    }
+
+    /**
+     * Releases a slot or ticket held by this JVM, unless it has been released already.
+     *
+     * @param path the canonical path of the file
+     * @param channel the channel holding the lock
+     * @param delete whether to delete the file, which is done before it is unlocked
+     */
+    private static void unlock(String path, FileChannel channel, boolean delete) {
+        synchronized (HELD) {
+            if (HELD.get(path) != channel) {
+                return;
+            }
+            HELD.remove(path);
+            if (delete) {
+                new File(path).delete();
+            }
+            try {
+                // closing the channel releases the lock
+                channel.close();
+            } catch (IOException e) {
+                // ignore this one
+            }
+        }
+    }
+}
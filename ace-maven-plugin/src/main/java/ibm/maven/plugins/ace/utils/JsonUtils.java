@@ -0,0 +1,30 @@
+package ibm.maven.plugins.ace.utils;
+
+import java.util.Locale;
+
+/**
+ * Helpers for the JSON files written by the plugin, eg. the traces, process metrics and property reports.
+ */
+public class JsonUtils {
+
+    private JsonUtils() {
+    }
+
+    /**
+     * @param value a string
+     * @return the string with quotes, backslashes and control characters escaped, to be put into a JSON string literal
+     */
+    public static String escape(String value) {
+        StringBuilder sb = new StringBuilder();
+        for (char c : value.toCharArray()) {
+            if (c == '"' || c == '\\') {
+                sb.append('\\').append(c);
+            } else if (c < 0x20) {
+                sb.append(String.format(Locale.ROOT, "\\u%04x", (int) c));
+            } else {
+                sb.append(c);
+            }
+        }
+        return sb.toString();
+    }
+}
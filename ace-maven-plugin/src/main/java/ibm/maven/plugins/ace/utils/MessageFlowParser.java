@@ -0,0 +1,175 @@
+package ibm.maven.plugins.ace.utils;
+
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+
+/**
+ * Reads the parts of a .msgflow, .subflow or .msgnode file that are needed to work out its configurable properties.
+ * All three share the same XMI structure: the configurable properties of the flow (or node type) itself are described by
+ * propertyDescriptor elements, and a flow's composition contains the node instances.
+ */
+final class MessageFlowParser {
+
+    private static final String XMI_NAMESPACE = "http://www.omg.org/XMI";
+
+    private static final String PROPERTY_PREFIX = "Property.";
+
+    private static final XMLInputFactory XML_INPUT_FACTORY = XMLInputFactory.newInstance();
+
+    static {
+        XML_INPUT_FACTORY.setProperty(XMLInputFactory.SUPPORT_DTD, Boolean.FALSE);
+    }
+
+    /**
+     * hide the default constructor
+     */
+    private MessageFlowParser() {
+        super();
+    }
+
+    /**
+     * A parsed flow or node type definition.
+     */
+    static final class FlowDefinition {
+
+        /**
+         * the configurable properties of the flow (or node type) mapped to their default values (null if none)
+         */
+        final Map<String, String> properties = new LinkedHashMap<String, String>();
+
+        /**
+         * the nodes in the composition of the flow
+         */
+        final List<NodeInstance> nodes = new ArrayList<NodeInstance>();
+
+        /**
+         * node properties that were promoted to the flow, as "nodeId.propertyName"
+         */
+        final Set<String> promotedNodeProperties = new HashSet<String>();
+    }
+
+    /**
+     * A node in the composition of a flow.
+     */
+    static final class NodeInstance {
+
+        String id;
+
+        String label;
+
+        /**
+         * the namespace of the node type, which is also the path of its definition, eg. "ComIbmMQInput.msgnode" or
+         * "com/example/Sub.subflow"
+         */
+        String typeUri;
+
+        final Map<String, String> attributes = new HashMap<String, String>();
+    }
+
+    static FlowDefinition parse(InputStream is) throws XMLStreamException {
+        FlowDefinition flow = new FlowDefinition();
+
+        Map<String, String> featureNames = new HashMap<String, String>();
+        Map<String, String> featureDefaults = new HashMap<String, String>();
+        List<String> configurableFeatures = new ArrayList<String>();
+
+        XMLStreamReader reader = XML_INPUT_FACTORY.createXMLStreamReader(is);
+        try {
+            NodeInstance currentNode = null;
+            String currentLinkNodes = null;
+            while (reader.hasNext()) {
+                int event = reader.next();
+                if (event == XMLStreamConstants.END_ELEMENT) {
+                    String localName = reader.getLocalName();
+                    if ("nodes".equals(localName)) {
+                        currentNode = null;
+                    } else if ("attributeLinks".equals(localName)) {
+                        currentLinkNodes = null;
+                    }
+                    continue;
+                }
+                if (event != XMLStreamConstants.START_ELEMENT) {
+                    continue;
+                }
+
+                String localName = reader.getLocalName();
+                if ("eStructuralFeatures".equals(localName)) {
+                    String id = reader.getAttributeValue(XMI_NAMESPACE, "id");
+                    if (id != null) {
+                        featureNames.put(id, reader.getAttributeValue(null, "name"));
+                        featureDefaults.put(id, reader.getAttributeValue(null, "defaultValueLiteral"));
+                    }
+                } else if ("propertyDescriptor".equals(localName)) {
+                    if ("true".equals(reader.getAttributeValue(null, "configurable"))) {
+                        String describedAttribute = reader.getAttributeValue(null, "describedAttribute");
+                        if (describedAttribute != null) {
+                            configurableFeatures.add(describedAttribute);
+                        }
+                    }
+                } else if ("nodes".equals(localName)) {
+                    currentNode = readNode(reader);
+                    flow.nodes.add(currentNode);
+                } else if ("translation".equals(localName) && currentNode != null && currentNode.label == null) {
+                    currentNode.label = reader.getAttributeValue(null, "string");
+                } else if ("attributeLinks".equals(localName)) {
+                    currentLinkNodes = reader.getAttributeValue(null, "overriddenNodes");
+                } else if ("overriddenAttribute".equals(localName) && currentLinkNodes != null) {
+                    String href = reader.getAttributeValue(null, "href");
+                    if (href != null && href.contains("#" + PROPERTY_PREFIX)) {
+                        String propertyName = href.substring(href.indexOf("#" + PROPERTY_PREFIX) + PROPERTY_PREFIX.length() + 1);
+                        for (String nodeId : currentLinkNodes.trim().split("\\s+")) {
+                            flow.promotedNodeProperties.add(nodeId + "." + propertyName);
+                        }
+                    }
+                }
+            }
+        } finally {
+            reader.close();
+        }
+
+        for (String featureId : configurableFeatures) {
+            String name = featureNames.get(featureId);
+            if (name == null) {
+                name = featureId.startsWith(PROPERTY_PREFIX) ? featureId.substring(PROPERTY_PREFIX.length()) : featureId;
+            }
+            if (!flow.properties.containsKey(name)) {
+                flow.properties.put(name, featureDefaults.get(featureId));
+            }
+        }
+
+        return flow;
+    }
+
+    private static NodeInstance readNode(XMLStreamReader reader) {
+        NodeInstance node = new NodeInstance();
+        for (int i = 0; i < reader.getAttributeCount(); i++) {
+            String namespace = reader.getAttributeNamespace(i);
+            String name = reader.getAttributeLocalName(i);
+            String value = reader.getAttributeValue(i);
+            if (XMI_NAMESPACE.equals(namespace)) {
+                if ("id".equals(name)) {
+                    node.id = value;
+                } else if ("type".equals(name)) {
+                    // eg. xmi:type="ComIbmMQInput.msgnode:FCMComposite_1"
+                    int colon = value.lastIndexOf(':');
+                    String prefix = colon > 0 ? value.substring(0, colon) : "";
+                    node.typeUri = reader.getNamespaceContext().getNamespaceURI(prefix);
+                }
+            } else if (namespace == null || namespace.length() == 0) {
+                node.attributes.put(name, value);
+            }
+        }
+        return node;
+    }
+}
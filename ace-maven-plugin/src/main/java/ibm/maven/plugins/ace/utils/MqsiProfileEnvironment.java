@@ -0,0 +1,143 @@
+package ibm.maven.plugins.ace.utils;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.apache.maven.plugin.logging.Log;
+
+/**
+ * The environment set up by the mqsiprofile script of an ACE installation. The script is sourced once per build (per
+ * JVM and installation) and the resulting environment is reused, so that the ACE commands can be started directly with
+ * it instead of through a shell sourcing the profile every time.
+ */
+public final class MqsiProfileEnvironment {
+
+    private static final Map<String, Map<String, String>> ENVIRONMENTS = new ConcurrentHashMap<String, Map<String, String>>();
+
+    /**
+     * hide the default constructor
+     */
+    private MqsiProfileEnvironment() {
+        super();
+    }
+
+    /**
+     * @param aceRunDir the directory containing mqsiprofile
+     * @param log logger
+     * @return the environment after sourcing mqsiprofile, unmodifiable
+     * @throws IOException if the profile can't be sourced
+     */
+    public static Map<String, String> getEnvironment(File aceRunDir, Log log) throws IOException {
+        String key = aceRunDir.getCanonicalPath();
+        Map<String, String> environment = ENVIRONMENTS.get(key);
+        if (environment == null) {
+            synchronized (ENVIRONMENTS) {
+                environment = ENVIRONMENTS.get(key);
+                if (environment == null) {
+                    environment = Collections.unmodifiableMap(capture(aceRunDir, log));
+                    ENVIRONMENTS.put(key, environment);
+                }
+            }
+        }
+        return environment;
+    }
+
+    /**
+     * Finds an ACE command on the PATH of the environment, the way the shell would.
+     *
+     * @param name the name of the command, eg. mqsireadbar
+     * @param environment the environment, see {@link #getEnvironment(File, Log)}
+     * @param aceRunDir the directory containing mqsiprofile, searched if the command isn't on the PATH
+     * @return the absolute path of the command, or the name itself if it can't be found
+     */
+    public static String resolveExecutable(String name, Map<String, String> environment, File aceRunDir) {
+        String[] extensions = isWindows() ? new String[] { ".exe", ".cmd", ".bat", "" } : new String[] { "" };
+
+        String path = getIgnoreCase(environment, "PATH");
+        StringBuilder directories = new StringBuilder(path == null ? "" : path);
+        directories.append(File.pathSeparator).append(aceRunDir.getAbsolutePath());
+        for (String directory : directories.toString().split(File.pathSeparator)) {
+            if (directory.length() == 0) {
+                continue;
+            }
+            for (String extension : extensions) {
+                File file = new File(directory, name + extension);
+                if (file.isFile() && file.canExecute()) {
+                    return file.getAbsolutePath();
+                }
+            }
+        }
+        return name;
+    }
+
+    private static Map<String, String> capture(File aceRunDir, Log log) throws IOException {
+        ProcessBuilder pb;
+        if (isWindows()) {
+            pb = new ProcessBuilder("cmd", "/c", "\"" + new File(aceRunDir, "mqsiprofile.cmd").getAbsolutePath() + "\" >nul 2>&1 && set");
+        } else {
+            // the profile is passed as $0, so that the path needs no quoting
+            pb = new ProcessBuilder("bash", "-c", ". \"$0\" >/dev/null 2>&1 && env -0", new File(aceRunDir, "mqsiprofile").getAbsolutePath());
+        }
+        log.debug("Capturing the mqsiprofile environment: " + pb.command());
+
+        byte[] output;
+        int exitCode;
+        try {
+            Process process = pb.start();
+            process.getOutputStream().close();
+            output = readFully(process.getInputStream());
+            exitCode = process.waitFor();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while sourcing " + aceRunDir + "/mqsiprofile", e);
+        }
+        if (exitCode != 0) {
+            throw new IOException("Sourcing " + aceRunDir + "/mqsiprofile failed with exit code: " + exitCode);
+        }
+
+        Map<String, String> environment = new HashMap<String, String>();
+        String separator = isWindows() ? "\r?\n" : "\u0000";
+        for (String variable : new String(output, System.getProperty("sun.jnu.encoding", "UTF-8")).split(separator)) {
+            int equals = variable.indexOf('=');
+            // Windows has some internal variables like "=C:", which mustn't be passed on
+            if (equals > 0) {
+                environment.put(variable.substring(0, equals), variable.substring(equals + 1));
+            }
+        }
+        log.debug("Captured " + environment.size() + " environment variables from " + aceRunDir + "/mqsiprofile");
+        return environment;
+    }
+
+    private static byte[] readFully(InputStream is) throws IOException {
+        try {
+            ByteArrayOutputStream os = new ByteArrayOutputStream();
+            byte[] buffer = new byte[8192];
+            int read;
+            while ((read = is.read(buffer)) != -1) {
+                os.write(buffer, 0, read);
+            }
+            return os.toByteArray();
+        } finally {
+            is.close();
+        }
+    }
+
+    private static String getIgnoreCase(Map<String, String> environment, String name) {
+        for (Map.Entry<String, String> variable : environment.entrySet()) {
+            if (variable.getKey().equalsIgnoreCase(name)) {
+                return variable.getValue();
+            }
+        }
+        return null;
+    }
+
+    private static boolean isWindows() {
+        return System.getProperty("os.name").toLowerCase().contains("windows");
+    }
+}
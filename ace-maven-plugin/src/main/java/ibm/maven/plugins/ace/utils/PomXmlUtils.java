@@ -1,11 +1,19 @@
 package ibm.maven.plugins.ace.utils;
 
+import java.io.BufferedInputStream;
 import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
 
 import javax.xml.bind.JAXBContext;
 import javax.xml.bind.JAXBException;
 import javax.xml.bind.JAXBIntrospector;
 import javax.xml.bind.Unmarshaller;
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
 
 import ibm.maven.plugins.ace.generated.maven_pom.Model;
 
@@ -15,6 +23,37 @@ import ibm.maven.plugins.ace.generated.maven_pom.Model;
  */
 public class PomXmlUtils {
 
+    private static final XMLInputFactory XML_INPUT_FACTORY = XMLInputFactory.newInstance();
+
+    static {
+        XML_INPUT_FACTORY.setProperty(XMLInputFactory.SUPPORT_DTD, Boolean.FALSE);
+    }
+
+    /**
+     * The artifactId and packaging of a pom.xml, which is all the plugin needs to know about the poms in the
+     * workspace.
+     */
+    public static final class PomSummary {
+
+        private String artifactId;
+
+        private String packaging;
+
+        /**
+         * @return the artifactId of the project itself (not of its parent), or null if it isn't defined
+         */
+        public String getArtifactId() {
+            return artifactId;
+        }
+
+        /**
+         * @return the packaging, or null if it isn't defined
+         */
+        public String getPackaging() {
+            return packaging;
+        }
+    }
+
     /**
      * @param pomFile
      * @return
@@ -27,4 +66,44 @@ public class PomXmlUtils {
         return (Model) JAXBIntrospector.getValue(unmarshaller.unmarshal(pomFile));
 
     }
+
+    /**
+     * Reads the artifactId and packaging of a pom.xml with StAX. Only the direct children of the project element are
+     * looked at, and reading stops as soon as both have been found.
+     *
+     * @param pomFile the pom.xml to be read
+     * @return the artifactId and packaging
+     * @throws IOException if the file can't be read
+     * @throws XMLStreamException if the file isn't well formed
+     */
+    public static PomSummary readPomSummary(File pomFile) throws IOException, XMLStreamException {
+        PomSummary summary = new PomSummary();
+        InputStream is = new BufferedInputStream(new FileInputStream(pomFile));
+        try {
+            XMLStreamReader reader = XML_INPUT_FACTORY.createXMLStreamReader(is);
+            try {
+                int depth = 0;
+                while (reader.hasNext() && (summary.artifactId == null || summary.packaging == null)) {
+                    int event = reader.next();
+                    if (event == XMLStreamConstants.START_ELEMENT) {
+                        depth++;
+                        if (depth == 2 && "artifactId".equals(reader.getLocalName())) {
+                            summary.artifactId = reader.getElementText().trim();
+                            depth--;
+                        } else if (depth == 2 && "packaging".equals(reader.getLocalName())) {
+                            summary.packaging = reader.getElementText().trim();
+                            depth--;
+                        }
+                    } else if (event == XMLStreamConstants.END_ELEMENT) {
+                        depth--;
+                    }
+                }
+            } finally {
+                reader.close();
+            }
+        } finally {
+            is.close();
+        }
+        return summary;
+    }
 }
@@ -0,0 +1,377 @@
+package ibm.maven.plugins.ace.utils;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.lang.reflect.Field;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Samples the resource usage of a process and its descendants from /proc while it runs: CPU time, peak resident memory
+ * and bytes read from and written to storage. On systems without /proc only the wall time is measured.
+ * <p>
+ * The values of every process of the tree are the last ones sampled before it exited, so processes living shorter than
+ * the sampling interval are missed.
+ */
+public final class ProcessMetrics {
+
+    private static final long SAMPLE_INTERVAL_MILLIS = 250;
+
+    /** the USER_HZ of the kernel, which is 100 on all common Linux platforms */
+    private static final long CLOCK_TICKS_PER_SECOND = 100;
+
+    private static final File PROC = new File("/proc");
+
+    private static final Charset UTF8 = Charset.forName("UTF-8");
+
+    private static final ScheduledExecutorService SAMPLER = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+        public Thread newThread(Runnable r) {
+            Thread thread = new Thread(r, "ace-process-metrics");
+            thread.setDaemon(true);
+            return thread;
+        }
+    });
+
+    /** the metrics recorded per metrics file in this build */
+    private static final Map<String, List<ProcessMetrics>> RECORDED = new HashMap<String, List<ProcessMetrics>>();
+
+    /**
+     * the last values seen per pid
+     */
+    private static final class Usage {
+
+        private long cpuTicks;
+
+        private long readBytes;
+
+        private long writeBytes;
+    }
+
+    private final String name;
+
+    private final long pid;
+
+    private final long startMillis = System.currentTimeMillis();
+
+    private final long startNanos = System.nanoTime();
+
+    private final Map<Long, Usage> usages = new HashMap<Long, Usage>();
+
+    private long wallMillis = -1;
+
+    private long peakRssBytes;
+
+    private int samples;
+
+    private ScheduledFuture<?> sampling;
+
+    private ProcessMetrics(String name, long pid) {
+        this.name = name;
+        this.pid = pid;
+    }
+
+    /**
+     * Starts sampling a process.
+     *
+     * @param name the name of the command, eg. mqsicreatebar
+     * @param process the process, which should have been started just now
+     * @return the metrics of the process, complete once {@link #stop()} has been called
+     */
+    public static ProcessMetrics start(String name, Process process) {
+        final ProcessMetrics metrics = new ProcessMetrics(name, getPid(process));
+        if (metrics.pid > 0 && PROC.isDirectory()) {
+            metrics.sampling = SAMPLER.scheduleAtFixedRate(new Runnable() {
+                public void run() {
+                    metrics.sample();
+                }
+            }, 0, SAMPLE_INTERVAL_MILLIS, TimeUnit.MILLISECONDS);
+        }
+        return metrics;
+    }
+
+    /**
+     * Stops sampling, to be called once the process has finished.
+     */
+    public synchronized void stop() {
+        if (sampling != null) {
+            sampling.cancel(false);
+        }
+        wallMillis = (System.nanoTime() - startNanos) / 1000000;
+    }
+
+    /**
+     * @return the CPU time of the process and its descendants in milliseconds, -1 if it couldn't be sampled
+     */
+    public synchronized long getCpuMillis() {
+        if (samples == 0) {
+            return -1;
+        }
+        long ticks = 0;
+        for (Usage usage : usages.values()) {
+            ticks += usage.cpuTicks;
+        }
+        return ticks * 1000 / CLOCK_TICKS_PER_SECOND;
+    }
+
+    /**
+     * @return the highest total resident memory of the process and its descendants in bytes, -1 if it couldn't be
+     *         sampled
+     */
+    public synchronized long getPeakRssBytes() {
+        return samples == 0 ? -1 : peakRssBytes;
+    }
+
+    /**
+     * @return the bytes read from storage by the process and its descendants, -1 if it couldn't be sampled
+     */
+    public synchronized long getReadBytes() {
+        if (samples == 0) {
+            return -1;
+        }
+        long bytes = 0;
+        for (Usage usage : usages.values()) {
+            bytes += usage.readBytes;
+        }
+        return bytes;
+    }
+
+    /**
+     * @return the bytes written to storage by the process and its descendants, -1 if it couldn't be sampled
+     */
+    public synchronized long getWriteBytes() {
+        if (samples == 0) {
+            return -1;
+        }
+        long bytes = 0;
+        for (Usage usage : usages.values()) {
+            bytes += usage.writeBytes;
+        }
+        return bytes;
+    }
+
+    /**
+     * @return the wall time from starting to stopping the sampling in milliseconds
+     */
+    public synchronized long getWallMillis() {
+        return wallMillis;
+    }
+
+    /**
+     * @return a one line summary for the build log
+     */
+    public synchronized String getSummary() {
+        StringBuilder sb = new StringBuilder(name);
+        sb.append(String.format(Locale.ROOT, ": wall %.1f s", wallMillis / 1000.0));
+        if (samples == 0) {
+            return sb.append(" (no resource usage available)").toString();
+        }
+        long cpuMillis = getCpuMillis();
+        sb.append(String.format(Locale.ROOT, ", CPU %.1f s (%d%%)", cpuMillis / 1000.0, wallMillis > 0 ? cpuMillis * 100 / wallMillis : 0));
+        sb.append(String.format(Locale.ROOT, ", peak RSS %d MB", peakRssBytes / (1024 * 1024)));
+        sb.append(String.format(Locale.ROOT, ", read %d MB, written %d MB", getReadBytes() / (1024 * 1024), getWriteBytes() / (1024 * 1024)));
+        return sb.toString();
+    }
+
+    /**
+     * Adds the metrics to a JSON file holding the metrics of all processes started for a module in this build. A file
+     * left by an earlier build is replaced.
+     *
+     * @param metrics the metrics of a finished process
+     * @param metricsFile the file, eg. target/ace/metrics.json
+     * @throws IOException if the file can't be written
+     */
+    public static void record(ProcessMetrics metrics, File metricsFile) throws IOException {
+        String key = metricsFile.getAbsolutePath();
+        synchronized (RECORDED) {
+            List<ProcessMetrics> recorded = RECORDED.get(key);
+            if (recorded == null) {
+                recorded = new ArrayList<ProcessMetrics>();
+                RECORDED.put(key, recorded);
+            }
+            recorded.add(metrics);
+
+            metricsFile.getAbsoluteFile().getParentFile().mkdirs();
+            File tmpFile = new File(metricsFile.getPath() + ".tmp");
+            Writer writer = new OutputStreamWriter(new FileOutputStream(tmpFile), UTF8);
+            try {
+                writer.write("{\n  \"processes\": [");
+                for (int i = 0; i < recorded.size(); i++) {
+                    writer.write(i == 0 ? "\n" : ",\n");
+                    writer.write(recorded.get(i).toJson());
+                }
+                writer.write("\n  ]\n}\n");
+            } finally {
+                writer.close();
+            }
+            Files.move(tmpFile.toPath(), metricsFile.toPath(), StandardCopyOption.REPLACE_EXISTING);
+        }
+    }
+
+    private synchronized String toJson() {
+        StringBuilder sb = new StringBuilder("    {");
+        sb.append("\"name\": \"").append(JsonUtils.escape(name)).append("\"");
+        sb.append(", \"start\": ").append(startMillis);
+        sb.append(", \"wallMillis\": ").append(wallMillis);
+        sb.append(", \"cpuMillis\": ").append(getCpuMillis());
+        sb.append(", \"peakRssBytes\": ").append(getPeakRssBytes());
+        sb.append(", \"readBytes\": ").append(getReadBytes());
+        sb.append(", \"writeBytes\": ").append(getWriteBytes());
+        sb.append(", \"processes\": ").append(usages.size());
+        sb.append(", \"samples\": ").append(samples);
+        return sb.append("}").toString();
+    }
+
+    private synchronized void sample() {
+        Set<Long> tree = getProcessTree(pid);
+        if (tree.isEmpty()) {
+            return;
+        }
+        long rssBytes = 0;
+        for (Long treePid : tree) {
+            File dir = new File(PROC, String.valueOf(treePid));
+            Usage usage = usages.get(treePid);
+            if (usage == null) {
+                usage = new Usage();
+            }
+
+            String[] stat = readStat(dir);
+            if (stat == null) {
+                // exited in the meantime
+                continue;
+            }
+            // utime and stime, the 14th and 15th fields
+            usage.cpuTicks = Long.parseLong(stat[11]) + Long.parseLong(stat[12]);
+
+            Map<String, String> status = readKeyValues(new File(dir, "status"));
+            rssBytes += parseKiloBytes(status.get("VmRSS"));
+
+            // only readable for our own processes
+            Map<String, String> io = readKeyValues(new File(dir, "io"));
+            if (io.containsKey("read_bytes")) {
+                usage.readBytes = Long.parseLong(io.get("read_bytes"));
+                usage.writeBytes = Long.parseLong(io.get("write_bytes"));
+            }
+            usages.put(treePid, usage);
+        }
+        peakRssBytes = Math.max(peakRssBytes, rssBytes);
+        samples++;
+    }
+
+    /**
+     * @return the pid and the pids of all descendants, empty if the process has exited or there is no /proc
+     */
+    static Set<Long> getProcessTree(long rootPid) {
+        Map<Long, List<Long>> children = new HashMap<Long, List<Long>>();
+        String[] names = PROC.list();
+        if (names == null) {
+            return new HashSet<Long>();
+        }
+        for (String name : names) {
+            if (name.isEmpty() || !Character.isDigit(name.charAt(0))) {
+                continue;
+            }
+            String[] stat = readStat(new File(PROC, name));
+            if (stat == null) {
+                continue;
+            }
+            // ppid, the 4th field
+            Long ppid = Long.valueOf(stat[1]);
+            List<Long> siblings = children.get(ppid);
+            if (siblings == null) {
+                siblings = new ArrayList<Long>();
+                children.put(ppid, siblings);
+            }
+            siblings.add(Long.valueOf(name));
+        }
+
+        Set<Long> tree = new HashSet<Long>();
+        if (!new File(PROC, String.valueOf(rootPid)).isDirectory()) {
+            return tree;
+        }
+        List<Long> pending = new ArrayList<Long>();
+        pending.add(rootPid);
+        while (!pending.isEmpty()) {
+            Long next = pending.remove(pending.size() - 1);
+            if (tree.add(next) && children.containsKey(next)) {
+                pending.addAll(children.get(next));
+            }
+        }
+        return tree;
+    }
+
+    /**
+     * @return the fields of /proc/pid/stat after the command name, starting with the state (the 3rd field), or null
+     */
+    private static String[] readStat(File dir) {
+        try {
+            String stat = new String(Files.readAllBytes(new File(dir, "stat").toPath()), UTF8);
+            // the command name is in parentheses and may contain spaces and parentheses itself
+            return stat.substring(stat.lastIndexOf(')') + 2).trim().split(" ");
+        } catch (IOException e) {
+            return null;
+        } catch (RuntimeException e) {
+            return null;
+        }
+    }
+
+    private static Map<String, String> readKeyValues(File file) {
+        Map<String, String> values = new HashMap<String, String>();
+        try {
+            for (String line : Files.readAllLines(file.toPath(), UTF8)) {
+                int colon = line.indexOf(':');
+                if (colon > 0) {
+                    values.put(line.substring(0, colon).trim(), line.substring(colon + 1).trim());
+                }
+            }
+        } catch (IOException e) {
+            // not there or not readable
+        }
+        return values;
+    }
+
+    private static long parseKiloBytes(String value) {
+        if (value == null) {
+            return 0;
+        }
+        try {
+            return Long.parseLong(value.replace("kB", "").trim()) * 1024;
+        } catch (NumberFormatException e) {
+            return 0;
+        }
+    }
+
+    /**
+     * @return the pid of a process, -1 if it can't be determined
+     */
+    static long getPid(Process process) {
+        try {
+            // Java 9 and later
+            return ((Number) Process.class.getMethod("pid").invoke(process)).longValue();
+        } catch (Exception e) {
+            // Java 8 on Unix
+            try {
+                Field field = process.getClass().getDeclaredField("pid");
+                field.setAccessible(true);
+                return field.getInt(process);
+            } catch (Exception e2) {
+                return -1;
+            }
+        }
+    }
+}
@@ -1,50 +1,19 @@
 package ibm.maven.plugins.ace.utils;
 
-import java.io.BufferedReader;
-import java.io.IOException;
-import java.io.InputStream;
-import java.io.InputStreamReader;
-
 import org.apache.maven.plugin.logging.Log;
 
-public class ProcessOutputLogger extends Thread {
+/**
+ * Logs the output of a process, see {@link ProcessOutputPump}.
+ */
+public class ProcessOutputLogger implements ProcessOutputPump.LineHandler {
 
-    private InputStream is;
     private Log log;
 
-    public ProcessOutputLogger(InputStream is, Log log) {
-        this.is = is;
+    public ProcessOutputLogger(Log log) {
         this.log = log;
     }
 
-    @Override
-    public void run() {
-        BufferedReader bufferedReader = new BufferedReader(new InputStreamReader(is));
-        String line = null;
-        try {
-            while (true) {
-                line = bufferedReader.readLine();
-                if (line != null) {
-                    log.info(line);
-                    line = null;
-                } else {
-                    Thread.sleep(500);
-                }
-            }
-        } catch (IOException ioe) {
-            // TODO handle this better
-            ioe.printStackTrace();
-        } catch (InterruptedException ie) {
-            // this is to be expected when the child process is finished
-        } catch (Exception e) {
-            // TODO handle this better
-            e.printStackTrace();
-        } finally {
-            try {
-                bufferedReader.close();
-            } catch (IOException e) {
-                // ignore this one
-            }
-        }
+    public void handleLine(String line) {
+        log.info(line);
     }
 }
\ No newline at end of file
@@ -0,0 +1,167 @@
+package ibm.maven.plugins.ace.utils;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Reads the output of a process line by line until the end of the stream and hands the lines to a
+ * {@link LineHandler}. The lines are handed over on the reading thread in the order they were written, so at most one
+ * line is buffered and a slow handler slows down the process instead of filling up memory.
+ * <p>
+ * If the handler fails, the rest of the output is read and discarded, so that the process doesn't block on a full
+ * pipe, and the failure is rethrown by {@link #await()}.
+ * <p>
+ * The pumps run on a shared executor using virtual threads where the JRE has them, otherwise daemon threads that are
+ * reused across processes.
+ */
+public final class ProcessOutputPump {
+
+    /**
+     * Receives the lines of a process output.
+     */
+    public interface LineHandler {
+
+        /**
+         * @param line a line of the output, without the line terminator
+         */
+        void handleLine(String line);
+    }
+
+    private static final ExecutorService EXECUTOR = createExecutor();
+
+    private final InputStream is;
+
+    private final LineHandler handler;
+
+    private final CountDownLatch finished = new CountDownLatch(1);
+
+    private final long startNanos = System.nanoTime();
+
+    private volatile long endNanos;
+
+    private volatile IOException exception;
+
+    private volatile RuntimeException handlerException;
+
+    private ProcessOutputPump(InputStream is, LineHandler handler) {
+        this.is = is;
+        this.handler = handler;
+    }
+
+    /**
+     * Starts pumping a stream, typically Process.getInputStream().
+     *
+     * @param is the stream to be read, closed at its end
+     * @param handler receives the lines
+     * @return the running pump
+     */
+    public static ProcessOutputPump start(InputStream is, LineHandler handler) {
+        final ProcessOutputPump pump = new ProcessOutputPump(is, handler);
+        EXECUTOR.execute(new Runnable() {
+            public void run() {
+                pump.pump();
+            }
+        });
+        return pump;
+    }
+
+    /**
+     * Waits until the end of the stream has been reached and all lines have been handled.
+     *
+     * @throws IOException if reading the stream failed
+     * @throws InterruptedException if the current thread was interrupted while waiting
+     * @throws RuntimeException the first exception thrown by the handler
+     */
+    public void await() throws IOException, InterruptedException {
+        finished.await();
+        rethrow();
+    }
+
+    /**
+     * Waits until the end of the stream has been reached and all lines have been handled, or the timeout expired.
+     *
+     * @param timeout the maximum time to wait
+     * @param unit the unit of the timeout
+     * @return false if the end of the stream wasn't reached within the timeout
+     * @throws IOException if reading the stream failed
+     * @throws InterruptedException if the current thread was interrupted while waiting
+     * @throws RuntimeException the first exception thrown by the handler
+     */
+    public boolean await(long timeout, TimeUnit unit) throws IOException, InterruptedException {
+        if (!finished.await(timeout, unit)) {
+            return false;
+        }
+        rethrow();
+        return true;
+    }
+
+    /**
+     * @return the milliseconds from starting the pump until the end of the stream was reached, or -1 if it hasn't been
+     *         reached yet
+     */
+    public long getTimeToLastByteMillis() {
+        return endNanos == 0 ? -1 : (endNanos - startNanos) / 1000000;
+    }
+
+    private void rethrow() throws IOException {
+        if (handlerException != null) {
+            throw handlerException;
+        }
+        if (exception != null) {
+            throw exception;
+        }
+    }
+
+    private void pump() {
+        BufferedReader reader = new BufferedReader(new InputStreamReader(is));
+        try {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                if (handlerException != null) {
+                    // drain the output after a failure of the handler
+                    continue;
+                }
+                try {
+                    handler.handleLine(line);
+                } catch (RuntimeException e) {
+                    handlerException = e;
+                }
+            }
+        } catch (IOException e) {
+            exception = e;
+        } finally {
+            endNanos = System.nanoTime();
+            try {
+                reader.close();
+            } catch (IOException e) {
+                // ignore this one
+            }
+            finished.countDown();
+        }
+    }
+
+    private static ExecutorService createExecutor() {
+        try {
+            // Java 21 and later, looked up reflectively as the plugin is compiled for older JREs
+            return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+        } catch (Exception e) {
+            final AtomicInteger count = new AtomicInteger();
+            return Executors.newCachedThreadPool(new ThreadFactory() {
+                public Thread newThread(Runnable r) {
+                    Thread thread = new Thread(r, "ace-process-output-" + count.incrementAndGet());
+                    // never keep Maven from exiting
+                    thread.setDaemon(true);
+                    return thread;
+                }
+            });
+        }
+    }
+}
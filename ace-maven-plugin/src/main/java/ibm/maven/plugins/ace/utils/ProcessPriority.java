@@ -0,0 +1,60 @@
+package ibm.maven.plugins.ace.utils;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Lowers the CPU and I/O priority of a command with nice and ionice, where they are available (ie. not on Windows).
+ */
+public final class ProcessPriority {
+
+    /**
+     * hide the default constructor
+     */
+    private ProcessPriority() {
+        super();
+    }
+
+    /**
+     * @param command the command
+     * @param nice the niceness (-20 to 19), or null to leave the CPU priority alone
+     * @param ioniceClass the I/O scheduling class of ionice (1 realtime, 2 best-effort, 3 idle), or null to leave the
+     *            I/O priority alone
+     * @return the command, prefixed with nice and/or ionice if requested and available
+     */
+    public static List<String> apply(List<String> command, Integer nice, Integer ioniceClass) {
+        List<String> prefixed = new ArrayList<String>();
+        if (nice != null) {
+            String executable = find("nice");
+            if (executable != null) {
+                prefixed.add(executable);
+                prefixed.add("-n");
+                prefixed.add(nice.toString());
+            }
+        }
+        if (ioniceClass != null) {
+            String executable = find("ionice");
+            if (executable != null) {
+                prefixed.add(executable);
+                prefixed.add("-c");
+                prefixed.add(ioniceClass.toString());
+            }
+        }
+        prefixed.addAll(command);
+        return prefixed;
+    }
+
+    private static String find(String name) {
+        if (System.getProperty("os.name").toLowerCase().contains("windows")) {
+            return null;
+        }
+        for (String directory : new String[] { "/usr/bin", "/bin", "/usr/local/bin" }) {
+            File file = new File(directory, name);
+            if (file.canExecute()) {
+                return file.getAbsolutePath();
+            }
+        }
+        return null;
+    }
+}
@@ -0,0 +1,286 @@
+package ibm.maven.plugins.ace.utils;
+
+import java.io.File;
+import java.io.IOException;
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Pattern;
+import java.util.stream.Stream;
+
+import org.apache.maven.plugin.logging.Log;
+
+/**
+ * Supervises a running process: waits for it with an overall timeout and an output inactivity timeout, and kills it
+ * together with all of its descendants (eg. the Eclipse started by mqsicreatebar) when a timeout expires or the JVM
+ * shuts down, eg. because the Maven build was aborted.
+ * <p>
+ * The output of the process has to be passed through {@link #watch(ProcessOutputPump.LineHandler)} to be noticed. The
+ * lines are also matched against the patterns of transient failures, see {@link #isTransientFailure()}.
+ */
+public class ProcessWatchdog {
+
+    /**
+     * Thrown if a process was killed because a timeout expired.
+     */
+    public static class ProcessTimeoutException extends IOException {
+
+        private static final long serialVersionUID = 1L;
+
+        ProcessTimeoutException(String message) {
+            super(message);
+        }
+    }
+
+    private static final long POLL_MILLIS = 1000;
+
+    /** the time the output of a killed process is waited for */
+    private static final long KILLED_OUTPUT_MILLIS = 10000;
+
+    /** the processes being watched, killed by the shutdown hook */
+    private static final Set<ProcessWatchdog> RUNNING = new LinkedHashSet<ProcessWatchdog>();
+
+    private static boolean shutdownHookAdded;
+
+    private final Process process;
+
+    private final String name;
+
+    private final long timeoutMillis;
+
+    private final long inactivityTimeoutMillis;
+
+    private final List<Pattern> transientFailurePatterns;
+
+    private final Log log;
+
+    private volatile long lastActivityNanos = System.nanoTime();
+
+    private volatile String transientFailure;
+
+    private volatile boolean killed;
+
+    /**
+     * Starts watching a process.
+     *
+     * @param process the process
+     * @param name the name of the command, for messages
+     * @param timeoutMillis the maximum time the process may run, 0 for no limit
+     * @param inactivityTimeoutMillis the maximum time the process may be silent, 0 for no limit
+     * @param transientFailurePatterns patterns of output lines indicating a failure that may go away if the command is
+     *            executed again, may be null
+     * @param log logger
+     */
+    public ProcessWatchdog(Process process, String name, long timeoutMillis, long inactivityTimeoutMillis, List<Pattern> transientFailurePatterns,
+            Log log) {
+        this.process = process;
+        this.name = name;
+        this.timeoutMillis = timeoutMillis;
+        this.inactivityTimeoutMillis = inactivityTimeoutMillis;
+        this.transientFailurePatterns = transientFailurePatterns != null ? transientFailurePatterns : new ArrayList<Pattern>();
+        this.log = log;
+        register(this);
+    }
+
+    /**
+     * @param regexes regular expressions
+     * @return the compiled patterns
+     * @throws IllegalArgumentException if a regular expression is invalid
+     */
+    public static List<Pattern> compile(List<String> regexes) {
+        List<Pattern> patterns = new ArrayList<Pattern>();
+        if (regexes != null) {
+            for (String regex : regexes) {
+                patterns.add(Pattern.compile(regex));
+            }
+        }
+        return patterns;
+    }
+
+    /**
+     * @param handler receives the output of the process
+     * @return a handler noting the activity of the process and then passing the lines on
+     */
+    public ProcessOutputPump.LineHandler watch(final ProcessOutputPump.LineHandler handler) {
+        return new ProcessOutputPump.LineHandler() {
+            public void handleLine(String line) {
+                lastActivityNanos = System.nanoTime();
+                if (transientFailure == null) {
+                    for (Pattern pattern : transientFailurePatterns) {
+                        if (pattern.matcher(line).find()) {
+                            transientFailure = line;
+                            break;
+                        }
+                    }
+                }
+                handler.handleLine(line);
+            }
+        };
+    }
+
+    /**
+     * Waits for the process to end, killing it and its descendants if a timeout expires.
+     *
+     * @return the exit code of the process
+     * @throws ProcessTimeoutException if the process was killed because a timeout expired
+     * @throws InterruptedException if the current thread was interrupted while waiting, the process is killed then
+     */
+    public int waitFor() throws ProcessTimeoutException, InterruptedException {
+        long startNanos = System.nanoTime();
+        try {
+            while (!process.waitFor(POLL_MILLIS, TimeUnit.MILLISECONDS)) {
+                long now = System.nanoTime();
+                if (timeoutMillis > 0 && now - startNanos > TimeUnit.MILLISECONDS.toNanos(timeoutMillis)) {
+                    killTree();
+                    throw new ProcessTimeoutException(name + " didn't finish within " + timeoutMillis / 1000 + " s and was killed");
+                }
+                if (inactivityTimeoutMillis > 0 && now - lastActivityNanos > TimeUnit.MILLISECONDS.toNanos(inactivityTimeoutMillis)) {
+                    killTree();
+                    throw new ProcessTimeoutException(name + " didn't write any output for " + inactivityTimeoutMillis / 1000 + " s and was killed");
+                }
+            }
+            return process.exitValue();
+        } catch (InterruptedException e) {
+            killTree();
+            throw e;
+        } finally {
+            unregister(this);
+        }
+    }
+
+    /**
+     * @return true if the output contained a line matching a transient failure pattern
+     */
+    public boolean isTransientFailure() {
+        return transientFailure != null;
+    }
+
+    /**
+     * @return the first line matching a transient failure pattern, or null
+     */
+    public String getTransientFailure() {
+        return transientFailure;
+    }
+
+    /**
+     * Waits until the output of the process has been read. Once the process has been killed, the output is only
+     * waited for a while, as a descendant that couldn't be killed may still hold it open.
+     *
+     * @param pump the pump reading the output of the process
+     * @throws IOException if reading the output failed
+     * @throws InterruptedException if the current thread was interrupted while waiting
+     */
+    public void awaitOutput(ProcessOutputPump pump) throws IOException, InterruptedException {
+        if (!killed) {
+            pump.await();
+        } else if (!pump.await(KILLED_OUTPUT_MILLIS, TimeUnit.MILLISECONDS)) {
+            log.warn("The output of " + name + " is still open " + KILLED_OUTPUT_MILLIS / 1000 + " s after it was killed, it isn't read any further");
+        }
+    }
+
+    /**
+     * Kills the process and all of its descendants, the descendants first so that none of them is orphaned before it
+     * is found. The descendants are found with ProcessHandle on Java 9 and later, on Java 8 in /proc.
+     */
+    public void killTree() {
+        killed = true;
+        List<Object> handles = getDescendantHandles(process);
+        List<Long> pids = handles == null ? getDescendantPids(process) : new ArrayList<Long>();
+        int descendants = handles != null ? handles.size() : pids.size();
+        log.warn("Killing " + name + (descendants == 0 ? "" : " and " + descendants + " descendant processes"));
+        if (handles != null) {
+            for (Object handle : handles) {
+                try {
+                    Class.forName("java.lang.ProcessHandle").getMethod("destroyForcibly").invoke(handle);
+                } catch (Exception e) {
+                    log.debug("Could not kill " + handle + ": " + e.getMessage());
+                }
+            }
+        } else if (!pids.isEmpty()) {
+            kill(pids);
+        }
+        process.destroyForcibly();
+    }
+
+    /**
+     * @return the descendants of the process as ProcessHandles, or null before Java 9
+     */
+    private static List<Object> getDescendantHandles(Process process) {
+        List<Object> descendants = new ArrayList<Object>();
+        try {
+            // Java 9 and later, looked up reflectively as the plugin is compiled for older JREs
+            Object handle = Process.class.getMethod("toHandle").invoke(process);
+            Method method = Class.forName("java.lang.ProcessHandle").getMethod("descendants");
+            Stream<?> stream = (Stream<?>) method.invoke(handle);
+            for (Iterator<?> i = stream.iterator(); i.hasNext();) {
+                descendants.add(i.next());
+            }
+        } catch (Exception e) {
+            // no ProcessHandle
+            return null;
+        }
+        return descendants;
+    }
+
+    /**
+     * @return the pids of the descendants of the process, empty if there is no /proc
+     */
+    static List<Long> getDescendantPids(Process process) {
+        long pid = ProcessMetrics.getPid(process);
+        List<Long> descendants = new ArrayList<Long>();
+        if (pid > 0) {
+            descendants.addAll(ProcessMetrics.getProcessTree(pid));
+            descendants.remove(Long.valueOf(pid));
+        }
+        return descendants;
+    }
+
+    private void kill(List<Long> pids) {
+        List<String> command = new ArrayList<String>();
+        command.add("kill");
+        command.add("-KILL");
+        for (Long pid : pids) {
+            command.add(pid.toString());
+        }
+        try {
+            // fails for the processes that have exited in the meantime, the others are killed anyway
+            Process kill = new ProcessBuilder(command).redirectErrorStream(true).redirectOutput(ProcessBuilder.Redirect.to(new File("/dev/null")))
+                    .start();
+            kill.waitFor();
+        } catch (IOException e) {
+            log.debug("Could not kill " + pids + ": " + e.getMessage());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private static void register(ProcessWatchdog watchdog) {
+        synchronized (RUNNING) {
+            if (!shutdownHookAdded) {
+                Runtime.getRuntime().addShutdownHook(new Thread(new Runnable() {
+                    public void run() {
+                        List<ProcessWatchdog> running;
+                        synchronized (RUNNING) {
+                            running = new ArrayList<ProcessWatchdog>(RUNNING);
+                        }
+                        for (ProcessWatchdog watchdog : running) {
+                            watchdog.killTree();
+                        }
+                    }
+                }, "ace-process-cleanup"));
+                shutdownHookAdded = true;
+            }
+            RUNNING.add(watchdog);
+        }
+    }
+
+    private static void unregister(ProcessWatchdog watchdog) {
+        synchronized (RUNNING) {
+            RUNNING.remove(watchdog);
+        }
+    }
+}
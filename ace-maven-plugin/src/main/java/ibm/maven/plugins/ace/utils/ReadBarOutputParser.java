@@ -0,0 +1,125 @@
+package ibm.maven.plugins.ace.utils;
+
+import java.util.List;
+
+import org.apache.maven.plugin.logging.Log;
+
+/**
+ * Extracts the configurable properties from the output of mqsireadbar while it is being read, see
+ * {@link ProcessOutputPump}. The output is never held in memory; each line is looked at once and each property is
+ * handed on as soon as it has been recognised.
+ * <p>
+ * The properties are the lines following a line "Deployment descriptor:" (indented with spaces), up to a line that is
+ * less indented or a blank line before "BIP8071I: Successful command completion.".
+ */
+public class ReadBarOutputParser implements ProcessOutputPump.LineHandler {
+
+    /**
+     * Receives the configurable properties recognised by the parser.
+     */
+    public interface PropertyHandler {
+
+        /**
+         * @param property a configurable property, eg. "App#Flow#additionalInstances = 0", trimmed
+         */
+        void handleProperty(String property);
+    }
+
+    private static final String DEPLOYMENT_DESCRIPTOR = "Deployment descriptor:";
+
+    private enum State {
+        /** looking for the next deployment descriptor */
+        SEARCHING,
+        /** reading the properties of a deployment descriptor */
+        IN_DESCRIPTOR,
+        /** the end of the properties has been reached, the rest of the output is ignored */
+        DONE
+    }
+
+    private final PropertyHandler handler;
+
+    private final Log log;
+
+    private State state = State.SEARCHING;
+
+    private int descriptorIndentation;
+
+    private int propertyCount;
+
+    /**
+     * @param handler receives the properties
+     * @param log the lines are logged at debug level, may be null
+     */
+    public ReadBarOutputParser(PropertyHandler handler, Log log) {
+        this.handler = handler;
+        this.log = log != null && log.isDebugEnabled() ? log : null;
+    }
+
+    /**
+     * @param properties receives the properties
+     */
+    public ReadBarOutputParser(final List<String> properties) {
+        this(new PropertyHandler() {
+            public void handleProperty(String property) {
+                properties.add(property);
+            }
+        }, null);
+    }
+
+    public void handleLine(String line) {
+        if (log != null) {
+            log.debug(line);
+        }
+        if (state == State.DONE) {
+            return;
+        }
+
+        int indentation = getIndentation(line);
+        if (isDeploymentDescriptor(line, indentation)) {
+            // a new descriptor (eg. of the next application) starts over
+            state = State.IN_DESCRIPTOR;
+            descriptorIndentation = indentation;
+            return;
+        }
+        if (state == State.SEARCHING) {
+            return;
+        }
+
+        if (indentation < descriptorIndentation) {
+            descriptorIndentation = 0;
+            state = State.SEARCHING;
+        } else {
+            String property = line.trim();
+            if (property.length() == 0) {
+                // we found a blank line - assume it's the one before "  BIP8071I: Successful command completion." and stop
+                state = State.DONE;
+            } else {
+                propertyCount++;
+                handler.handleProperty(property);
+            }
+        }
+    }
+
+    /**
+     * @return the number of properties recognised so far
+     */
+    public int getPropertyCount() {
+        return propertyCount;
+    }
+
+    /**
+     * @param line a line of output
+     * @return the number of spaces the line starts with
+     */
+    public static int getIndentation(String line) {
+        int indentation = 0;
+        while (indentation < line.length() && line.charAt(indentation) == ' ') {
+            indentation++;
+        }
+        return indentation;
+    }
+
+    private static boolean isDeploymentDescriptor(String line, int indentation) {
+        return line.length() == indentation + DEPLOYMENT_DESCRIPTOR.length() && line.startsWith(DEPLOYMENT_DESCRIPTOR, indentation);
+    }
+}
@@ -0,0 +1,195 @@
+package ibm.maven.plugins.ace.utils;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+
+/**
+ * Captures the output of a process, see {@link ProcessOutputPump}, with a fixed memory budget. The lines are kept in
+ * memory until the budget is exceeded, from then on they are appended to a temporary file, so that the output of a
+ * long running command (eg. a recursive mqsiapplybaroverride of a big bar) can't fill up the heap.
+ * <p>
+ * The lines are added by the thread reading the process output and read by another one. All access is synchronized;
+ * an iterator returns the lines that were added before it was created, in the order they were added. Typically the
+ * output is read once the pump has reached the end of the stream, see {@link ProcessOutputPump#await()}.
+ */
+public class SpillingLineBuffer implements ProcessOutputPump.LineHandler, Iterable<String>, Closeable {
+
+    private static final String UTF8 = "UTF-8";
+
+    private final long memoryBudgetChars;
+
+    private final File tmpDirectory;
+
+    private final List<String> lines = new ArrayList<String>();
+
+    private long memoryChars;
+
+    private File spillFile;
+
+    private Writer spillWriter;
+
+    private int spilledLines;
+
+    private IOException spillException;
+
+    private boolean closed;
+
+    /**
+     * @param memoryBudgetChars the number of characters kept in memory before spilling to a file
+     * @param tmpDirectory the directory the temporary file is created in, or null for java.io.tmpdir
+     */
+    public SpillingLineBuffer(long memoryBudgetChars, File tmpDirectory) {
+        this.memoryBudgetChars = memoryBudgetChars;
+        this.tmpDirectory = tmpDirectory;
+    }
+
+    public synchronized void handleLine(String line) {
+        if (closed) {
+            throw new IllegalStateException("The buffer has been closed");
+        }
+        if (spillFile == null && memoryChars + line.length() <= memoryBudgetChars) {
+            lines.add(line);
+            memoryChars += line.length();
+            return;
+        }
+        if (spillException != null) {
+            // keep the lines in order, the ones that can't be spilled are dropped
+            return;
+        }
+        try {
+            if (spillWriter == null) {
+                if (tmpDirectory != null) {
+                    tmpDirectory.mkdirs();
+                }
+                spillFile = File.createTempFile("ace-output-", ".txt", tmpDirectory);
+                spillWriter = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(spillFile), UTF8));
+            }
+            spillWriter.write(line);
+            spillWriter.write('\n');
+            spilledLines++;
+        } catch (IOException e) {
+            spillException = e;
+        }
+    }
+
+    /**
+     * @return the number of lines added
+     */
+    public synchronized int getLineCount() {
+        return lines.size() + spilledLines;
+    }
+
+    /**
+     * @return true if the memory budget was exceeded and the lines are spilled to a file
+     */
+    public synchronized boolean isSpilled() {
+        return spillFile != null;
+    }
+
+    /**
+     * Returns the lines added so far, reading the spilled ones from the file while iterating rather than all at once.
+     *
+     * @return an iterator over the lines, throwing IllegalStateException if the spilled lines can't be read
+     */
+    public synchronized Iterator<String> iterator() {
+        if (closed) {
+            throw new IllegalStateException("The buffer has been closed");
+        }
+        if (spillException != null) {
+            throw new IllegalStateException("Could not spill the output to " + spillFile, spillException);
+        }
+        final Iterator<String> memoryLines = new ArrayList<String>(lines).iterator();
+        if (spillFile == null) {
+            return memoryLines;
+        }
+        try {
+            spillWriter.flush();
+        } catch (IOException e) {
+            throw new IllegalStateException("Could not spill the output to " + spillFile, e);
+        }
+        return new SpillIterator(memoryLines, spillFile, spilledLines);
+    }
+
+    /**
+     * Deletes the temporary file, the buffer can't be used any more.
+     */
+    public synchronized void close() {
+        closed = true;
+        lines.clear();
+        if (spillWriter != null) {
+            try {
+                spillWriter.close();
+            } catch (IOException e) {
+                // ignore this one
+            }
+        }
+        if (spillFile != null) {
+            spillFile.delete();
+        }
+    }
+
+    /**
+     * The lines held in memory followed by a given number of lines of the spill file, which is closed when the last
+     * line has been read.
+     */
+    private static final class SpillIterator implements Iterator<String> {
+
+        private final Iterator<String> memoryLines;
+
+        private final File file;
+
+        private int remainingLines;
+
+        private BufferedReader reader;
+
+        SpillIterator(Iterator<String> memoryLines, File file, int spilledLines) {
+            this.memoryLines = memoryLines;
+            this.file = file;
+            this.remainingLines = spilledLines;
+        }
+
+        public boolean hasNext() {
+            return memoryLines.hasNext() || remainingLines > 0;
+        }
+
+        public String next() {
+            if (memoryLines.hasNext()) {
+                return memoryLines.next();
+            }
+            if (remainingLines <= 0) {
+                throw new NoSuchElementException();
+            }
+            try {
+                if (reader == null) {
+                    reader = new BufferedReader(new InputStreamReader(new FileInputStream(file), UTF8));
+                }
+                String line = reader.readLine();
+                if (line == null) {
+                    throw new IllegalStateException("Unexpected end of " + file);
+                }
+                if (--remainingLines == 0) {
+                    reader.close();
+                }
+                return line;
+            } catch (IOException e) {
+                throw new IllegalStateException("Could not read " + file, e);
+            }
+        }
+
+        public void remove() {
+            throw new UnsupportedOperationException();
+        }
+    }
+}
@@ -0,0 +1,240 @@
+package ibm.maven.plugins.ace.utils;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Properties;
+
+import org.apache.maven.plugin.logging.Log;
+
+/**
+ * Talks to a long running toolkit process (a "daemon") that builds bar files on request, so that the headless Eclipse
+ * startup and workspace import of mqsicreatebar are paid once instead of per module.
+ * <p>
+ * The daemon is started with the configured command followed by "--port-file &lt;file&gt; --idle-timeout
+ * &lt;seconds&gt; --toolkit &lt;directory&gt;". It listens on localhost, writes "port" and "token" to the port file
+ * (java.util.Properties format) once it accepts requests and exits by itself after being idle for the idle timeout.
+ * Every request uses its own connection and is a sequence of UTF-8 lines, the first being the token:
+ *
+ * <pre>
+ * token, PING                                  -&gt; PONG
+ * token, BUILD, DIR &lt;dir&gt;, ARG &lt;param&gt;..., END  -&gt; ACCEPTED, OUT &lt;line&gt;..., EXIT &lt;code&gt;
+ * </pre>
+ *
+ * The parameters of BUILD are those of mqsicreatebar, DIR is the working directory.
+ */
+public class ToolkitDaemonClient {
+
+    private final File portFile;
+
+    private final int connectTimeoutMillis;
+
+    private final Log log;
+
+    /**
+     * @param portFile the file the daemon writes its port and token to
+     * @param connectTimeoutMillis the timeout for connecting and for the answer to a health check
+     * @param log logger, also for the output of the builds
+     */
+    public ToolkitDaemonClient(File portFile, int connectTimeoutMillis, Log log) {
+        this.portFile = portFile;
+        this.connectTimeoutMillis = connectTimeoutMillis;
+        this.log = log;
+    }
+
+    /**
+     * @return true if a daemon is listening on the port of the port file and answers the health check
+     */
+    public boolean ping() {
+        Properties daemon = readPortFile();
+        if (daemon == null) {
+            return false;
+        }
+        try {
+            Socket socket = connect(daemon);
+            try {
+                socket.setSoTimeout(connectTimeoutMillis);
+                Writer writer = new OutputStreamWriter(socket.getOutputStream(), "UTF-8");
+                writer.write(daemon.getProperty("token", "") + "\nPING\n");
+                writer.flush();
+                BufferedReader reader = new BufferedReader(new InputStreamReader(socket.getInputStream(), "UTF-8"));
+                return "PONG".equals(reader.readLine());
+            } finally {
+                socket.close();
+            }
+        } catch (IOException e) {
+            log.debug("Toolkit daemon health check failed: " + e.getMessage());
+            return false;
+        }
+    }
+
+    /**
+     * Starts a daemon unless a healthy one is running already.
+     *
+     * @param startCommand the command starting the daemon, without the arguments added by the client
+     * @param toolkitInstallDir the installation directory of the toolkit
+     * @param idleTimeoutSeconds the time after which an idle daemon should exit
+     * @param startupTimeoutMillis how long to wait for the daemon to answer the health check
+     * @return true if a healthy daemon is running
+     */
+    public boolean ensureRunning(List<String> startCommand, File toolkitInstallDir, long idleTimeoutSeconds, long startupTimeoutMillis) {
+        if (ping()) {
+            return true;
+        }
+        if (startCommand == null || startCommand.isEmpty()) {
+            return false;
+        }
+
+        // a stale port file would make the wait below succeed too early
+        portFile.delete();
+        portFile.getAbsoluteFile().getParentFile().mkdirs();
+
+        List<String> command = new ArrayList<String>(startCommand);
+        command.add("--port-file");
+        command.add(portFile.getAbsolutePath());
+        command.add("--idle-timeout");
+        command.add(String.valueOf(idleTimeoutSeconds));
+        command.add("--toolkit");
+        command.add(String.valueOf(toolkitInstallDir));
+        log.info("Starting toolkit daemon: " + command);
+
+        ProcessBuilder pb = new ProcessBuilder(command);
+        pb.redirectErrorStream(true);
+        // the daemon outlives this build, so its output can't go to the build log
+        pb.redirectOutput(new File(portFile.getPath() + ".log"));
+        try {
+            pb.start();
+        } catch (IOException e) {
+            log.warn("Could not start the toolkit daemon: " + e.getMessage());
+            return false;
+        }
+
+        long deadline = System.currentTimeMillis() + startupTimeoutMillis;
+        while (System.currentTimeMillis() < deadline) {
+            if (portFile.isFile() && ping()) {
+                return true;
+            }
+            try {
+                Thread.sleep(200);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return false;
+            }
+        }
+        log.warn("The toolkit daemon didn't answer within " + startupTimeoutMillis + " ms");
+        return false;
+    }
+
+    /**
+     * Sends a build request to the daemon and logs its output.
+     *
+     * @param directory the working directory of the build
+     * @param params the mqsicreatebar parameters
+     * @return the exit code of the build
+     * @throws IOException if the daemon isn't running, refuses the request or the connection is lost before the build
+     *             finished
+     */
+    public int build(File directory, List<String> params) throws IOException {
+        return build(directory, params, new ProcessOutputLogger(log));
+    }
+
+    /**
+     * Sends a build request to the daemon.
+     *
+     * @param directory the working directory of the build
+     * @param params the mqsicreatebar parameters
+     * @param output receives the output of the build
+     * @return the exit code of the build
+     * @throws IOException if the daemon isn't running, refuses the request or the connection is lost before the build
+     *             finished
+     */
+    public int build(File directory, List<String> params, ProcessOutputPump.LineHandler output) throws IOException {
+        Properties daemon = readPortFile();
+        if (daemon == null) {
+            throw new IOException("No toolkit daemon port file: " + portFile.getAbsolutePath());
+        }
+
+        Socket socket = connect(daemon);
+        try {
+            Writer writer = new OutputStreamWriter(socket.getOutputStream(), "UTF-8");
+            writer.write(daemon.getProperty("token", "") + "\nBUILD\nDIR " + directory.getAbsolutePath() + "\n");
+            for (String param : params) {
+                writer.write("ARG " + param + "\n");
+            }
+            writer.write("END\n");
+            writer.flush();
+
+            BufferedReader reader = new BufferedReader(new InputStreamReader(socket.getInputStream(), "UTF-8"));
+            // a build takes as long as it takes, only the acceptance is expected quickly
+            socket.setSoTimeout(connectTimeoutMillis);
+            String line = reader.readLine();
+            if (!"ACCEPTED".equals(line)) {
+                throw new IOException("The toolkit daemon refused the build: " + line);
+            }
+            socket.setSoTimeout(0);
+
+            while ((line = reader.readLine()) != null) {
+                if (line.startsWith("OUT ")) {
+                    output.handleLine(line.substring(4));
+                } else if (line.startsWith("EXIT ")) {
+                    try {
+                        return Integer.parseInt(line.substring(5).trim());
+                    } catch (NumberFormatException e) {
+                        throw new IOException("Invalid answer from the toolkit daemon: " + line);
+                    }
+                } else {
+                    log.debug("Ignoring unknown answer from the toolkit daemon: " + line);
+                }
+            }
+            throw new IOException("The toolkit daemon closed the connection before the build finished");
+        } finally {
+            socket.close();
+        }
+    }
+
+    private Socket connect(Properties daemon) throws IOException {
+        int port;
+        try {
+            port = Integer.parseInt(daemon.getProperty("port", ""));
+        } catch (NumberFormatException e) {
+            throw new IOException("Invalid port in " + portFile.getAbsolutePath() + ": " + daemon.getProperty("port"));
+        }
+        Socket socket = new Socket();
+        try {
+            socket.connect(new InetSocketAddress(InetAddress.getLoopbackAddress(), port), connectTimeoutMillis);
+        } catch (IOException e) {
+            socket.close();
+            throw e;
+        }
+        return socket;
+    }
+
+    private Properties readPortFile() {
+        if (!portFile.isFile()) {
+            return null;
+        }
+        Properties daemon = new Properties();
+        try {
+            InputStream is = new FileInputStream(portFile);
+            try {
+                daemon.load(is);
+            } finally {
+                is.close();
+            }
+        } catch (IOException e) {
+            log.debug("Could not read " + portFile.getAbsolutePath() + ": " + e.getMessage());
+            return null;
+        }
+        return daemon;
+    }
+}
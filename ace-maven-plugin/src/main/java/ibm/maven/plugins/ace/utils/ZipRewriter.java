@@ -0,0 +1,535 @@
+package ibm.maven.plugins.ace.utils;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.zip.CRC32;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * Rewrites zip archives (bars, .appzip and .libzip files) entry by entry. Entries that are neither removed nor
+ * transformed are copied as they are, without inflating and deflating them again, so rewriting a large bar only costs
+ * the time to copy its bytes. Only the entries a {@link EntryTransformer} replaces are compressed again.
+ * <p>
+ * Zip64 archives are not supported, which is not a restriction for bar files in practice.
+ */
+public final class ZipRewriter {
+
+    private static final int LOCAL_HEADER_SIGNATURE = 0x04034b50;
+
+    private static final int CENTRAL_HEADER_SIGNATURE = 0x02014b50;
+
+    private static final int END_OF_CENTRAL_DIRECTORY_SIGNATURE = 0x06054b50;
+
+    private static final int LOCAL_HEADER_LENGTH = 30;
+
+    private static final int CENTRAL_HEADER_LENGTH = 46;
+
+    private static final int END_OF_CENTRAL_DIRECTORY_LENGTH = 22;
+
+    private static final int FLAG_DATA_DESCRIPTOR = 1 << 3;
+
+    private static final int FLAG_UTF8 = 1 << 11;
+
+    private static final int METHOD_STORED = 0;
+
+    private static final int METHOD_DEFLATED = 8;
+
+    private static final Charset UTF8 = Charset.forName("UTF-8");
+
+    /**
+     * hide the default constructor
+     */
+    private ZipRewriter() {
+        super();
+    }
+
+    /**
+     * Decides what happens to each entry of an archive. By default every entry is copied unchanged.
+     */
+    public abstract static class EntryTransformer {
+
+        /**
+         * @param name the name of the entry
+         * @return true if the entry should be left out of the rewritten archive
+         */
+        public boolean remove(String name) {
+            return false;
+        }
+
+        /**
+         * @param name the name of the entry
+         * @return true if {@link #transform(String, byte[])} should be called for the entry
+         */
+        public boolean transforms(String name) {
+            return false;
+        }
+
+        /**
+         * @param name the name of the entry
+         * @param content the uncompressed content of the entry
+         * @return the new content of the entry, or null to copy it unchanged
+         * @throws IOException if the content can't be transformed
+         */
+        public byte[] transform(String name, byte[] content) throws IOException {
+            return null;
+        }
+    }
+
+    /**
+     * Rewrites a zip file into another file.
+     *
+     * @param source the archive to be read
+     * @param target the archive to be written, which must not be the source
+     * @param transformer decides which entries are removed or transformed
+     * @return true if any entry was removed or transformed
+     * @throws IOException if the source can't be read or isn't a zip file, or the target can't be written
+     */
+    public static boolean rewrite(File source, File target, EntryTransformer transformer) throws IOException {
+        BuildTracer.Span span = BuildTracer.start(BuildTracer.ZIP, "rewrite " + source.getName(), target.getPath());
+        RandomAccessFile raf = new RandomAccessFile(source, "r");
+        try {
+            OutputStream os = new BufferedOutputStream(new FileOutputStream(target), 64 * 1024);
+            try {
+                return rewrite(new FileArchive(raf), os, transformer);
+            } finally {
+                os.close();
+            }
+        } finally {
+            raf.close();
+            span.end();
+        }
+    }
+
+    /**
+     * Rewrites a zip archive held in memory, typically an archive nested in another one.
+     *
+     * @param source the archive to be read
+     * @param transformer decides which entries are removed or transformed
+     * @return the rewritten archive, or null if nothing was removed or transformed
+     * @throws IOException if the source isn't a zip file
+     */
+    public static byte[] rewrite(byte[] source, EntryTransformer transformer) throws IOException {
+        ByteArrayOutputStream os = new ByteArrayOutputStream(source.length);
+        return rewrite(new ByteArrayArchive(source), os, transformer) ? os.toByteArray() : null;
+    }
+
+    /**
+     * Reads the uncompressed content of every entry an archive held in memory, in the order of its central directory.
+     *
+     * @param source the archive to be read
+     * @param transformer its {@link EntryTransformer#transform(String, byte[])} is called for every entry it
+     *            {@link EntryTransformer#transforms(String) transforms}, the results are ignored
+     * @throws IOException if the source isn't a zip file
+     */
+    public static void read(byte[] source, EntryTransformer transformer) throws IOException {
+        read(new ByteArrayArchive(source), transformer);
+    }
+
+    /**
+     * Reads the uncompressed content of the entries of a zip file, see {@link #read(byte[], EntryTransformer)}.
+     *
+     * @param source the archive to be read
+     * @param transformer receives the entries it transforms
+     * @throws IOException if the source can't be read or isn't a zip file
+     */
+    public static void read(File source, EntryTransformer transformer) throws IOException {
+        RandomAccessFile raf = new RandomAccessFile(source, "r");
+        try {
+            read(new FileArchive(raf), transformer);
+        } finally {
+            raf.close();
+        }
+    }
+
+    private static void read(Archive archive, EntryTransformer transformer) throws IOException {
+        for (Entry entry : readCentralDirectory(archive)) {
+            if (!entry.isDirectory() && transformer.transforms(entry.name)) {
+                transformer.transform(entry.name, inflate(archive, entry));
+            }
+        }
+    }
+
+    private static boolean rewrite(Archive archive, OutputStream os, EntryTransformer transformer) throws IOException {
+        List<Entry> entries = readCentralDirectory(archive);
+        CountingOutputStream out = new CountingOutputStream(os);
+        ByteArrayOutputStream centralDirectory = new ByteArrayOutputStream();
+        boolean changed = false;
+        int count = 0;
+
+        byte[] buffer = new byte[64 * 1024];
+        for (Entry entry : entries) {
+            if (transformer.remove(entry.name)) {
+                changed = true;
+                continue;
+            }
+
+            byte[] content = null;
+            if (!entry.isDirectory() && transformer.transforms(entry.name)) {
+                content = transformer.transform(entry.name, inflate(archive, entry));
+            }
+
+            long offset = out.count;
+            if (content == null) {
+                copyEntry(archive, entry, out, buffer);
+                // the central directory record stays the same, apart from the position of the entry
+                byte[] record = entry.centralRecord.clone();
+                putShort(record, 8, entry.flags & ~FLAG_DATA_DESCRIPTOR);
+                putInt(record, 42, offset);
+                centralDirectory.write(record);
+            } else {
+                changed = true;
+                writeEntry(entry, content, out, centralDirectory, offset);
+            }
+            count++;
+        }
+
+        long centralDirectoryOffset = out.count;
+        centralDirectory.writeTo(out);
+
+        byte[] end = new byte[END_OF_CENTRAL_DIRECTORY_LENGTH];
+        putInt(end, 0, END_OF_CENTRAL_DIRECTORY_SIGNATURE);
+        putShort(end, 8, count);
+        putShort(end, 10, count);
+        putInt(end, 12, centralDirectory.size());
+        putInt(end, 16, centralDirectoryOffset);
+        putShort(end, 20, archive.comment.length);
+        out.write(end);
+        out.write(archive.comment);
+        out.flush();
+
+        return changed;
+    }
+
+    /**
+     * Copies the local header and the compressed data of an entry. The sizes and the checksum are taken from the
+     * central directory, so a trailing data descriptor isn't needed anymore and is left out.
+     */
+    private static void copyEntry(Archive archive, Entry entry, OutputStream out, byte[] buffer) throws IOException {
+        byte[] header = new byte[LOCAL_HEADER_LENGTH];
+        archive.read(entry.localHeaderOffset, header, 0, LOCAL_HEADER_LENGTH);
+        if (getInt(header, 0) != LOCAL_HEADER_SIGNATURE) {
+            throw new IOException("Invalid local header for zip entry " + entry.name);
+        }
+        int nameLength = getShort(header, 26);
+        int extraLength = getShort(header, 28);
+
+        putShort(header, 6, entry.flags & ~FLAG_DATA_DESCRIPTOR);
+        putInt(header, 14, entry.crc);
+        putInt(header, 18, entry.compressedSize);
+        putInt(header, 22, entry.size);
+        out.write(header);
+
+        // name, extra field and data follow the header
+        long position = entry.localHeaderOffset + LOCAL_HEADER_LENGTH;
+        long remaining = nameLength + extraLength + entry.compressedSize;
+        while (remaining > 0) {
+            int length = (int) Math.min(buffer.length, remaining);
+            archive.read(position, buffer, 0, length);
+            out.write(buffer, 0, length);
+            position += length;
+            remaining -= length;
+        }
+    }
+
+    private static void writeEntry(Entry entry, byte[] content, OutputStream out, ByteArrayOutputStream centralDirectory, long offset)
+            throws IOException {
+        CRC32 crc = new CRC32();
+        crc.update(content);
+
+        byte[] data = content;
+        int method = entry.method == METHOD_STORED ? METHOD_STORED : METHOD_DEFLATED;
+        if (method == METHOD_DEFLATED) {
+            data = deflate(content);
+        }
+        byte[] name = entry.name.getBytes(UTF8);
+        int flags = entry.flags & FLAG_UTF8;
+
+        byte[] header = new byte[LOCAL_HEADER_LENGTH];
+        putInt(header, 0, LOCAL_HEADER_SIGNATURE);
+        putShort(header, 4, 20);
+        putShort(header, 6, flags);
+        putShort(header, 8, method);
+        putInt(header, 10, entry.dosTime);
+        putInt(header, 14, crc.getValue());
+        putInt(header, 18, data.length);
+        putInt(header, 22, content.length);
+        putShort(header, 26, name.length);
+        putShort(header, 28, 0);
+        out.write(header);
+        out.write(name);
+        out.write(data);
+
+        byte[] record = new byte[CENTRAL_HEADER_LENGTH];
+        putInt(record, 0, CENTRAL_HEADER_SIGNATURE);
+        putShort(record, 4, getShort(entry.centralRecord, 4));
+        putShort(record, 6, 20);
+        putShort(record, 8, flags);
+        putShort(record, 10, method);
+        putInt(record, 12, entry.dosTime);
+        putInt(record, 16, crc.getValue());
+        putInt(record, 20, data.length);
+        putInt(record, 24, content.length);
+        putShort(record, 28, name.length);
+        putShort(record, 36, getShort(entry.centralRecord, 36));
+        putInt(record, 38, getInt(entry.centralRecord, 38));
+        putInt(record, 42, offset);
+        centralDirectory.write(record);
+        centralDirectory.write(name);
+    }
+
+    private static byte[] inflate(Archive archive, Entry entry) throws IOException {
+        byte[] header = new byte[LOCAL_HEADER_LENGTH];
+        archive.read(entry.localHeaderOffset, header, 0, LOCAL_HEADER_LENGTH);
+        long dataOffset = entry.localHeaderOffset + LOCAL_HEADER_LENGTH + getShort(header, 26) + getShort(header, 28);
+
+        byte[] data = new byte[toArrayLength(entry.compressedSize, entry.name)];
+        archive.read(dataOffset, data, 0, data.length);
+        if (entry.method == METHOD_STORED) {
+            return data;
+        }
+        if (entry.method != METHOD_DEFLATED) {
+            throw new IOException("Unsupported compression method " + entry.method + " for zip entry " + entry.name);
+        }
+
+        Inflater inflater = new Inflater(true);
+        try {
+            inflater.setInput(data);
+            byte[] content = new byte[toArrayLength(entry.size, entry.name)];
+            int length = 0;
+            while (length < content.length && !inflater.finished()) {
+                int read = inflater.inflate(content, length, content.length - length);
+                if (read == 0 && (inflater.needsInput() || inflater.needsDictionary())) {
+                    break;
+                }
+                length += read;
+            }
+            if (length != content.length) {
+                throw new IOException("Truncated zip entry " + entry.name);
+            }
+            return content;
+        } catch (DataFormatException e) {
+            throw new IOException("Invalid compressed data for zip entry " + entry.name, e);
+        } finally {
+            inflater.end();
+        }
+    }
+
+    private static byte[] deflate(byte[] content) {
+        Deflater deflater = new Deflater(Deflater.DEFAULT_COMPRESSION, true);
+        try {
+            deflater.setInput(content);
+            deflater.finish();
+            ByteArrayOutputStream os = new ByteArrayOutputStream(Math.max(64, content.length / 2));
+            byte[] buffer = new byte[64 * 1024];
+            while (!deflater.finished()) {
+                int length = deflater.deflate(buffer);
+                os.write(buffer, 0, length);
+            }
+            return os.toByteArray();
+        } finally {
+            deflater.end();
+        }
+    }
+
+    private static List<Entry> readCentralDirectory(Archive archive) throws IOException {
+        long length = archive.length();
+
+        // the end of central directory record is followed by a comment of up to 64k
+        int tailLength = (int) Math.min(length, END_OF_CENTRAL_DIRECTORY_LENGTH + 0xffff);
+        byte[] tail = new byte[tailLength];
+        archive.read(length - tailLength, tail, 0, tailLength);
+        int end = -1;
+        for (int i = tailLength - END_OF_CENTRAL_DIRECTORY_LENGTH; i >= 0; i--) {
+            if (getInt(tail, i) == END_OF_CENTRAL_DIRECTORY_SIGNATURE) {
+                end = i;
+                break;
+            }
+        }
+        if (end < 0) {
+            throw new IOException("Not a zip archive, the end of central directory record is missing");
+        }
+
+        int count = getShort(tail, end + 10);
+        long size = getInt(tail, end + 12);
+        long offset = getInt(tail, end + 16);
+        int commentLength = Math.min(getShort(tail, end + 20), tailLength - end - END_OF_CENTRAL_DIRECTORY_LENGTH);
+        if (count == 0xffff || size == 0xffffffffL || offset == 0xffffffffL) {
+            throw new IOException("Zip64 archives are not supported");
+        }
+        archive.comment = new byte[commentLength];
+        System.arraycopy(tail, end + END_OF_CENTRAL_DIRECTORY_LENGTH, archive.comment, 0, commentLength);
+
+        byte[] centralDirectory = new byte[toArrayLength(size, "central directory")];
+        archive.read(offset, centralDirectory, 0, centralDirectory.length);
+
+        List<Entry> entries = new ArrayList<Entry>(count);
+        int position = 0;
+        for (int i = 0; i < count; i++) {
+            if (position + CENTRAL_HEADER_LENGTH > centralDirectory.length || getInt(centralDirectory, position) != CENTRAL_HEADER_SIGNATURE) {
+                throw new IOException("Invalid central directory record " + i);
+            }
+            int nameLength = getShort(centralDirectory, position + 28);
+            int extraLength = getShort(centralDirectory, position + 30);
+            int commentLengthOfEntry = getShort(centralDirectory, position + 32);
+            int recordLength = CENTRAL_HEADER_LENGTH + nameLength + extraLength + commentLengthOfEntry;
+
+            Entry entry = new Entry();
+            entry.centralRecord = new byte[recordLength];
+            System.arraycopy(centralDirectory, position, entry.centralRecord, 0, recordLength);
+            entry.flags = getShort(centralDirectory, position + 8);
+            entry.method = getShort(centralDirectory, position + 10);
+            entry.dosTime = getInt(centralDirectory, position + 12);
+            entry.crc = getInt(centralDirectory, position + 16);
+            entry.compressedSize = getInt(centralDirectory, position + 20);
+            entry.size = getInt(centralDirectory, position + 24);
+            entry.localHeaderOffset = getInt(centralDirectory, position + 42);
+            entry.name = new String(centralDirectory, position + CENTRAL_HEADER_LENGTH, nameLength, UTF8);
+            if (entry.compressedSize == 0xffffffffL || entry.size == 0xffffffffL || entry.localHeaderOffset == 0xffffffffL) {
+                throw new IOException("Zip64 archives are not supported");
+            }
+            entries.add(entry);
+            position += recordLength;
+        }
+        return entries;
+    }
+
+    private static int toArrayLength(long size, String name) throws IOException {
+        if (size > Integer.MAX_VALUE - 8) {
+            throw new IOException(name + " is too large to be rewritten in memory");
+        }
+        return (int) size;
+    }
+
+    private static int getShort(byte[] b, int off) {
+        return (b[off] & 0xff) | ((b[off + 1] & 0xff) << 8);
+    }
+
+    private static long getInt(byte[] b, int off) {
+        return (getShort(b, off) | ((long) getShort(b, off + 2) << 16)) & 0xffffffffL;
+    }
+
+    private static void putShort(byte[] b, int off, int value) {
+        b[off] = (byte) value;
+        b[off + 1] = (byte) (value >> 8);
+    }
+
+    private static void putInt(byte[] b, int off, long value) {
+        putShort(b, off, (int) value & 0xffff);
+        putShort(b, off + 2, (int) (value >> 16) & 0xffff);
+    }
+
+    /**
+     * An entry as described by the central directory.
+     */
+    private static final class Entry {
+
+        String name;
+
+        byte[] centralRecord;
+
+        int flags;
+
+        int method;
+
+        long dosTime;
+
+        long crc;
+
+        long compressedSize;
+
+        long size;
+
+        long localHeaderOffset;
+
+        boolean isDirectory() {
+            return name.endsWith("/");
+        }
+    }
+
+    /**
+     * Random access to the bytes of an archive.
+     */
+    private abstract static class Archive {
+
+        byte[] comment;
+
+        abstract long length() throws IOException;
+
+        abstract void read(long position, byte[] b, int off, int len) throws IOException;
+    }
+
+    private static final class FileArchive extends Archive {
+
+        private final RandomAccessFile raf;
+
+        FileArchive(RandomAccessFile raf) {
+            this.raf = raf;
+        }
+
+        @Override
+        long length() throws IOException {
+            return raf.length();
+        }
+
+        @Override
+        void read(long position, byte[] b, int off, int len) throws IOException {
+            raf.seek(position);
+            raf.readFully(b, off, len);
+        }
+    }
+
+    private static final class ByteArrayArchive extends Archive {
+
+        private final byte[] bytes;
+
+        ByteArrayArchive(byte[] bytes) {
+            this.bytes = bytes;
+        }
+
+        @Override
+        long length() {
+            return bytes.length;
+        }
+
+        @Override
+        void read(long position, byte[] b, int off, int len) throws IOException {
+            if (position < 0 || position + len > bytes.length) {
+                throw new EOFException();
+            }
+            System.arraycopy(bytes, (int) position, b, off, len);
+        }
+    }
+
+    private static final class CountingOutputStream extends FilterOutputStream {
+
+        long count;
+
+        CountingOutputStream(OutputStream out) {
+            super(out);
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            out.write(b);
+            count++;
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            out.write(b, off, len);
+            count += len;
+        }
+    }
+}
@@ -2,11 +2,13 @@ package ibm.maven.plugins.ace.utils;
 
 import java.io.File;
 import java.io.IOException;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.UUID;
 
-import org.apache.tools.ant.Project;
-import org.apache.tools.ant.Target;
-import org.apache.tools.ant.taskdefs.Zip;
-import org.apache.tools.ant.types.ZipFileSet;
+import org.codehaus.plexus.util.SelectorUtils;
+import org.codehaus.plexus.util.StringUtils;
 
 public final class ZipUtils {
 
@@ -18,30 +20,96 @@ public final class ZipUtils {
     }
 
     /**
-     * Removes files from a given zip file.
-     * 
+     * Removes files from a given zip file. The remaining entries are copied without being recompressed and the zip file
+     * is only replaced once the new one is complete.
+     *
      * @param zipFile name of the zip file to be modified
-     * @param removePattern pattern of the files to be removed
-     * 
+     * @param removePattern pattern of the files to be removed, a comma separated list of Ant style patterns
+     * @return the number of bytes the zip file shrank by
+     *
      * @throws IOException
      */
-    public static void removeFiles(File zipFile, String removePattern) throws IOException {
-        String zipFileName = zipFile.getName();
-        File tmpFile = new File(zipFile.getCanonicalPath() + ".tmp");
-        Project antProject = new Project();
-        Target antTarget = new Target();
-        antProject.addTarget("zip", antTarget);
-        Zip zipTask = new Zip();
-        zipTask.setProject(antProject);
-        zipTask.setDestFile(tmpFile);
-        ZipFileSet set = new ZipFileSet();
-        set.setSrc(zipFile);
-        set.setExcludes(removePattern);
-        zipTask.addZipfileset(set);
-        antTarget.addTask(zipTask);
-        antTarget.execute();
-        zipFile.delete();
-        tmpFile.renameTo(new File(tmpFile.getParentFile(), zipFileName));
+    public static long removeFiles(File zipFile, String removePattern) throws IOException {
+        return removeFiles(zipFile, removePattern, false);
+    }
+
+    /**
+     * Removes files from a given zip file and, optionally, from the applications and libraries nested in it. The
+     * patterns are matched against the paths within each archive. Nested archives are rewritten in memory and only
+     * recompressed if something was removed from them.
+     *
+     * @param zipFile name of the zip file to be modified
+     * @param removePattern pattern of the files to be removed, a comma separated list of Ant style patterns
+     * @param nestedArchives whether files are removed from nested .appzip, .libzip and .shlibzip archives as well
+     * @return the number of bytes the zip file shrank by
+     *
+     * @throws IOException
+     */
+    public static long removeFiles(File zipFile, String removePattern, final boolean nestedArchives) throws IOException {
+        final String[] patterns = StringUtils.split(removePattern, ", ");
+        File tmpFile = new File(zipFile.getCanonicalPath() + "." + UUID.randomUUID() + ".tmp");
+        try {
+            boolean changed = ZipRewriter.rewrite(zipFile, tmpFile, new ZipRewriter.EntryTransformer() {
+                @Override
+                public boolean remove(String name) {
+                    return matches(name, patterns);
+                }
+
+                @Override
+                public boolean transforms(String name) {
+                    return nestedArchives && isNestedArchive(name);
+                }
+
+                @Override
+                public byte[] transform(String name, byte[] content) throws IOException {
+                    return ZipRewriter.rewrite(content, this);
+                }
+            });
+            if (!changed) {
+                return 0;
+            }
+
+            long removed = zipFile.length() - tmpFile.length();
+            replace(tmpFile, zipFile);
+            return removed;
+        } finally {
+            tmpFile.delete();
+        }
+    }
+
+    /**
+     * @param name the name of a zip entry
+     * @return true if the entry is an application or library archive nested in a bar
+     */
+    public static boolean isNestedArchive(String name) {
+        return name.endsWith(".appzip") || name.endsWith(".libzip") || name.endsWith(".shlibzip");
+    }
+
+    /**
+     * @param name the name of a zip entry
+     * @param patterns Ant style patterns
+     * @return true if the entry matches one of the patterns
+     */
+    static boolean matches(String name, String[] patterns) {
+        // SelectorUtils splits paths at the platform's file separator
+        String path = (name.endsWith("/") ? name.substring(0, name.length() - 1) : name).replace('/', File.separatorChar);
+        for (String pattern : patterns) {
+            if (SelectorUtils.matchPath(pattern.replace('/', File.separatorChar).replace('\\', File.separatorChar), path)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Moves source over target, atomically where the file system supports it.
+     */
+    static void replace(File source, File target) throws IOException {
+        try {
+            Files.move(source.toPath(), target.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (AtomicMoveNotSupportedException e) {
+            Files.move(source.toPath(), target.toPath(), StandardCopyOption.REPLACE_EXISTING);
+        }
     }
 
 }
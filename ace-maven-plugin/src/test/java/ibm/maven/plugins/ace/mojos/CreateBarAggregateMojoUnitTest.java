@@ -0,0 +1,144 @@
+package ibm.maven.plugins.ace.mojos;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Enumeration;
+import java.util.HashSet;
+import java.util.List;
+import java.util.UUID;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+import java.util.zip.ZipOutputStream;
+
+import org.apache.commons.io.FileUtils;
+import org.apache.maven.project.MavenProject;
+import org.junit.Test;
+
+public class CreateBarAggregateMojoUnitTest {
+
+    /**
+     * Validates that each module gets its own applications and libraries and the shared content of the combined bar.
+     */
+    @Test
+    public void splitBarTest() throws IOException {
+        File baseDir = new File("target", UUID.randomUUID().toString());
+        try {
+            File combinedBar = new File(baseDir, "aggregate-0.bar");
+            baseDir.mkdirs();
+            ZipOutputStream zos = new ZipOutputStream(new FileOutputStream(combinedBar));
+            for (String name : Arrays.asList("META-INF/manifest.mf", "App1.appzip", "App2.appzip", "Lib1.libzip", "Policies.policyxml")) {
+                zos.putNextEntry(new ZipEntry(name));
+                zos.write(name.getBytes("UTF-8"));
+                zos.closeEntry();
+            }
+            zos.close();
+
+            HashSet<String> allObjects = new HashSet<String>(Arrays.asList("App1", "App2", "Lib1", "Policies"));
+            File bar1 = new File(baseDir, "module1/app1.bar");
+            CreateBarAggregateMojo.splitBar(combinedBar, bar1, new HashSet<String>(Arrays.asList("App1", "Lib1")), allObjects);
+            assertEquals(Arrays.asList("App1.appzip", "Lib1.libzip", "META-INF/manifest.mf"), getEntryNames(bar1));
+
+            File bar2 = new File(baseDir, "module2/app2.bar");
+            CreateBarAggregateMojo.splitBar(combinedBar, bar2, new HashSet<String>(Arrays.asList("App2", "Lib1", "Policies")), allObjects);
+            assertEquals(Arrays.asList("App2.appzip", "Lib1.libzip", "META-INF/manifest.mf", "Policies.policyxml"), getEntryNames(bar2));
+        } finally {
+            FileUtils.deleteDirectory(baseDir);
+        }
+    }
+
+    /**
+     * Validates that modules with different versions of the same project or with different options aren't grouped
+     * together, and that the others share a group.
+     */
+    @Test
+    public void groupModulesTest() {
+        CreateBarAggregateMojo mojo = new CreateBarAggregateMojo();
+        CreateBarAggregateMojo.BarModule module1 = createModule("app1", "App1", "1", "Lib1", "a");
+        CreateBarAggregateMojo.BarModule module2 = createModule("app2", "App2", "2", "Lib1", "a");
+        CreateBarAggregateMojo.BarModule module3 = createModule("app3", "App3", "3", "Lib1", "b");
+        CreateBarAggregateMojo.BarModule module4 = createModule("app4", "App4", "4", "Lib2", "c");
+        module4.esql21 = true;
+        CreateBarAggregateMojo.BarModule module5 = createModule("app5", "App5", "5", "Lib1", "b");
+
+        List<List<CreateBarAggregateMojo.BarModule>> groups = mojo.groupModules(Arrays.asList(module1, module2, module3, module4,
+                module5));
+
+        assertEquals(3, groups.size());
+        assertEquals(Arrays.asList(module1, module2), groups.get(0));
+        assertEquals(Arrays.asList(module3, module5), groups.get(1));
+        assertEquals(Arrays.asList(module4), groups.get(2));
+    }
+
+    /**
+     * Validates that create-bar of a module recognizes the fingerprint recorded by the aggregate build, unless the
+     * workspace or the options differ.
+     */
+    @Test
+    public void aggregateFingerprintTest() throws Exception {
+        File baseDir = new File("target", UUID.randomUUID().toString());
+        try {
+            File workspace = new File(baseDir, "workspace");
+            FileUtils.writeStringToFile(new File(workspace, "App1/flow.msgflow"), "flow");
+
+            CreateBarAggregateMojo aggregate = new CreateBarAggregateMojo();
+            aggregate.createBarTraceFile = new File(baseDir, "aggregate/createbartrace-0.txt");
+            CreateBarAggregateMojo.BarModule module = createModule("app1", "App1", "1", "Lib1", "a");
+            module.workspace = workspace;
+            module.barName = new File(baseDir, "app1.bar");
+            module.cleanBuild = true;
+            String fingerprint = aggregate.getAggregateFingerprint(workspace, aggregate.getModuleParams(module));
+
+            CreateBarMojo mojo = new CreateBarMojo();
+            mojo.workspace = workspace;
+            mojo.barName = module.barName;
+            mojo.createBarTraceFile = new File(baseDir, "createbartrace.txt");
+            mojo.cleanBuild = true;
+            mojo.esql21 = false;
+            mojo.skipWSErrorCheck = false;
+            List<String> objectParams = mojo.getObjectParams(module.apps, module.libs, module.policies);
+            assertEquals(fingerprint, mojo.getAggregateFingerprint(workspace, mojo.constructParams(objectParams)));
+
+            mojo.esql21 = true;
+            assertFalse(fingerprint.equals(mojo.getAggregateFingerprint(workspace, mojo.constructParams(objectParams))));
+            mojo.esql21 = false;
+
+            FileUtils.writeStringToFile(new File(workspace, "App1/flow.msgflow"), "changed flow");
+            assertFalse(fingerprint.equals(mojo.getAggregateFingerprint(workspace, mojo.constructParams(objectParams))));
+        } finally {
+            FileUtils.deleteDirectory(baseDir);
+        }
+    }
+
+    private CreateBarAggregateMojo.BarModule createModule(String artifactId, String app, String appDigest, String lib,
+            String libDigest) {
+        CreateBarAggregateMojo.BarModule module = new CreateBarAggregateMojo.BarModule();
+        module.project = new MavenProject();
+        module.project.setArtifactId(artifactId);
+        module.apps.add(app);
+        module.libs.add(lib);
+        module.projectDigests.put(app, appDigest);
+        module.projectDigests.put(lib, libDigest);
+        return module;
+    }
+
+    private List<String> getEntryNames(File bar) throws IOException {
+        List<String> names = new ArrayList<String>();
+        ZipFile zipFile = new ZipFile(bar);
+        try {
+            for (Enumeration<? extends ZipEntry> entries = zipFile.entries(); entries.hasMoreElements();) {
+                names.add(entries.nextElement().getName());
+            }
+        } finally {
+            zipFile.close();
+        }
+        Collections.sort(names);
+        return names;
+    }
+}
@@ -0,0 +1,64 @@
+package ibm.maven.plugins.ace.mojos;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.UUID;
+
+import org.apache.commons.io.FileUtils;
+import org.apache.maven.plugin.MojoFailureException;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class ValidateBarBuildWorkspaceMojoUnitTest {
+
+    private File workspace;
+
+    @Before
+    public void setUp() throws IOException {
+        workspace = new File("target", UUID.randomUUID().toString());
+        writeProject("valid-lib", "valid-lib", "valid-lib");
+        writeProject("renamed-lib", "other-name", "renamed-lib");
+        writeProject("wrong-artifact-lib", "wrong-artifact-lib", "other-artifact");
+        FileUtils.writeStringToFile(new File(workspace, ".metadata/.log"), "ignored");
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        FileUtils.deleteDirectory(workspace);
+    }
+
+    /**
+     * tests that all the invalid projects are reported, not just the first one
+     */
+    @Test
+    public void executeTest() throws Exception {
+        ValidateBarBuildWorkspaceMojo mojo = new ValidateBarBuildWorkspaceMojo();
+        mojo.workspace = workspace;
+        try {
+            mojo.execute();
+            fail("the workspace contains invalid projects");
+        } catch (MojoFailureException e) {
+            assertEquals("2 projects in the workspace are invalid, see the errors above", e.getMessage());
+        }
+
+        assertTrue(mojo.validateProject(new File(workspace, "valid-lib")).isEmpty());
+        assertEquals(1, mojo.validateProject(new File(workspace, "renamed-lib")).size());
+        assertTrue(mojo.validateProject(new File(workspace, "wrong-artifact-lib")).get(0).contains("other-artifact"));
+
+        FileUtils.deleteDirectory(new File(workspace, "renamed-lib"));
+        FileUtils.deleteDirectory(new File(workspace, "wrong-artifact-lib"));
+        mojo.execute();
+    }
+
+    private void writeProject(String directoryName, String projectName, String artifactId) throws IOException {
+        File projectDirectory = new File(workspace, directoryName);
+        FileUtils.writeStringToFile(new File(projectDirectory, ".project"), "<projectDescription><name>" + projectName
+                + "</name><natures><nature>com.ibm.etools.msgbroker.tooling.libraryNature</nature></natures></projectDescription>");
+        FileUtils.writeStringToFile(new File(projectDirectory, "pom.xml"), "<project><artifactId>" + artifactId + "</artifactId></project>");
+    }
+}
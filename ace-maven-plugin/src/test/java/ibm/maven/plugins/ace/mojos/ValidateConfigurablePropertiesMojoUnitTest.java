@@ -71,4 +71,13 @@ public class ValidateConfigurablePropertiesMojoUnitTest {
         File propFile = new File("inte.properties");
         assertEquals(new File("/tmp/dir/", "trace-inte.txt").getAbsolutePath(), mojo.getTraceFileParameter(propFile));
     }
+
+    @Test
+    public void getOutputBarFileTest() {
+        ValidateConfigurablePropertiesMojo mojo = new ValidateConfigurablePropertiesMojo();
+        mojo.barName = new File("/tmp/dir/", "app-1.0.bar");
+        mojo.versionString = "1.0";
+        assertEquals(new File("/tmp/dir/", "inte_1.0.bar").toString(), mojo.getOutputBarFile(new File("/src/inte.properties")));
+        assertEquals(new File("/tmp/dir/", "prod_1.0.bar").toString(), mojo.getOutputBarFile(new File("/src/prod.properties")));
+    }
 }
@@ -0,0 +1,78 @@
+package ibm.maven.plugins.ace.utils;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import org.apache.maven.plugin.logging.SystemStreamLog;
+import org.junit.Test;
+
+public class AsyncLogForwarderTest {
+
+    /**
+     * Records the logged lines prefixed with their level.
+     */
+    private static class RecordingLog extends SystemStreamLog {
+
+        private final List<String> lines = Collections.synchronizedList(new ArrayList<String>());
+
+        @Override
+        public void error(CharSequence content) {
+            lines.add("error " + content);
+        }
+
+        @Override
+        public void warn(CharSequence content) {
+            lines.add("warn " + content);
+        }
+
+        @Override
+        public void info(CharSequence content) {
+            lines.add("info " + content);
+        }
+
+        @Override
+        public void debug(CharSequence content) {
+            lines.add("debug " + content);
+        }
+    }
+
+    /**
+     * Validates the level mapping and the excludes, and that all lines are logged in order when the forwarder is closed.
+     */
+    @Test
+    public void forwardTest() throws InterruptedException {
+        RecordingLog log = new RecordingLog();
+        AsyncLogForwarder forwarder = new AsyncLogForwarder(log, AsyncLogForwarder.Level.INFO, Arrays.asList("debug:^Building"),
+                Arrays.asList("^\\s*$", "Progress"), 2);
+        List<String> expected = new ArrayList<String>();
+        for (int i = 0; i < 10000; i++) {
+            forwarder.handleLine("line " + i);
+            expected.add("info line " + i);
+        }
+        for (String line : Arrays.asList("Building App1", "Progress 50%", "", "BIP0001W: a warning", "BIP0002E: an error")) {
+            forwarder.handleLine(line);
+        }
+        expected.addAll(Arrays.asList("debug Building App1", "warn BIP0001W: a warning", "error BIP0002E: an error"));
+        forwarder.close(0);
+        assertEquals(expected, log.lines);
+        assertEquals(Arrays.asList("BIP0001W: a warning", "BIP0002E: an error"), forwarder.getTail());
+    }
+
+    /**
+     * Validates that the last lines, including excluded ones, are logged when the process failed.
+     */
+    @Test
+    public void failureTailTest() throws InterruptedException {
+        RecordingLog log = new RecordingLog();
+        AsyncLogForwarder forwarder = new AsyncLogForwarder(log, AsyncLogForwarder.Level.OFF, null, Arrays.asList("excluded"), 3);
+        for (String line : Arrays.asList("line 1", "line 2", "excluded line", "line 4")) {
+            forwarder.handleLine(line);
+        }
+        forwarder.close(1);
+        assertEquals(Arrays.asList("error Last 3 of 4 lines of output:", "error line 2", "error excluded line", "error line 4"), log.lines);
+    }
+}
@@ -0,0 +1,224 @@
+package ibm.maven.plugins.ace.utils;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+import java.util.zip.ZipInputStream;
+import java.util.zip.ZipOutputStream;
+
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.io.IOUtils;
+import org.apache.maven.plugin.logging.SystemStreamLog;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class BarAssemblerTest {
+
+    private static final String XMI_HEADER = "<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n"
+            + "<ecore:EPackage xmi:version=\"2.0\" xmlns:xmi=\"http://www.omg.org/XMI\" xmlns:ecore=\"http://www.eclipse.org/emf/2002/Ecore\""
+            + " xmlns:eflow=\"http://www.ibm.com/wbi/2005/eflow\" xmlns:utility=\"http://www.ibm.com/wbi/2005/eflow_utility\"";
+
+    private File baseDir;
+
+    private File workspace;
+
+    private File toolkit;
+
+    @Before
+    public void setUp() throws IOException {
+        baseDir = new File("target", UUID.randomUUID().toString());
+        workspace = new File(baseDir, "workspace");
+        toolkit = new File(baseDir, "toolkit");
+
+        writeProject("app1", "com.ibm.etools.msgbroker.tooling.applicationNature", "lib1");
+        FileUtils.writeStringToFile(new File(workspace, "app1/com/example/Flow1.msgflow"), XMI_HEADER
+                + " xmlns:ComIbmMQInput.msgnode=\"ComIbmMQInput.msgnode\" xmlns:com_example_Sub.subflow=\"com/example/Sub.subflow\">\n"
+                + "  <eClassifiers xmi:type=\"eflow:FCMComposite\" name=\"FCMComposite_1\">\n"
+                + "    <eStructuralFeatures xmi:type=\"ecore:EAttribute\" xmi:id=\"Property.Environment\" name=\"Environment\" defaultValueLiteral=\"DEV\"/>\n"
+                + "    <translation xmi:type=\"utility:TranslatableString\" key=\"Flow1\"/>\n"
+                + "    <composition>\n"
+                + "      <nodes xmi:type=\"ComIbmMQInput.msgnode:FCMComposite_1\" xmi:id=\"FCMComposite_1_1\" location=\"10,10\" queueName=\"IN.Q\">\n"
+                + "        <translation xmi:type=\"utility:ConstantString\" string=\"MQ Input\"/>\n"
+                + "      </nodes>\n"
+                + "      <nodes xmi:type=\"com_example_Sub.subflow:FCMComposite_1\" xmi:id=\"FCMComposite_1_2\" location=\"20,10\" LogLevel=\"ERROR\">\n"
+                + "        <translation xmi:type=\"utility:ConstantString\" string=\"Logging\"/>\n"
+                + "      </nodes>\n"
+                + "    </composition>\n"
+                + "    <propertyOrganizer>\n"
+                + "      <propertyDescriptor configurable=\"true\" userDefined=\"true\" describedAttribute=\"Property.Environment\"/>\n"
+                + "    </propertyOrganizer>\n"
+                + "  </eClassifiers>\n"
+                + "</ecore:EPackage>\n");
+
+        writeProject("lib1", "com.ibm.etools.msgbroker.tooling.libraryNature");
+        FileUtils.writeStringToFile(new File(workspace, "lib1/com/example/Sub.subflow"), XMI_HEADER + ">\n"
+                + "  <eClassifiers xmi:type=\"eflow:FCMComposite\" name=\"FCMComposite_1\">\n"
+                + "    <eStructuralFeatures xmi:type=\"ecore:EAttribute\" xmi:id=\"Property.LogLevel\" name=\"LogLevel\" defaultValueLiteral=\"INFO\"/>\n"
+                + "    <propertyOrganizer>\n"
+                + "      <propertyDescriptor configurable=\"true\" userDefined=\"true\" describedAttribute=\"Property.LogLevel\"/>\n"
+                + "    </propertyOrganizer>\n"
+                + "  </eClassifiers>\n"
+                + "</ecore:EPackage>\n");
+
+        // the built-in node definitions are packaged in the toolkit plugins
+        File pluginJar = new File(toolkit, "plugins/com.ibm.etools.mft.ibmnodes.jar");
+        pluginJar.getParentFile().mkdirs();
+        ZipOutputStream zos = new ZipOutputStream(new FileOutputStream(pluginJar));
+        zos.putNextEntry(new ZipEntry("ComIbmMQInput.msgnode"));
+        zos.write((XMI_HEADER + ">\n"
+                + "  <eClassifiers xmi:type=\"eflow:FCMComposite\" name=\"FCMComposite_1\">\n"
+                + "    <eStructuralFeatures xmi:type=\"ecore:EAttribute\" xmi:id=\"Property.queueName\" name=\"queueName\"/>\n"
+                + "    <eStructuralFeatures xmi:type=\"ecore:EAttribute\" xmi:id=\"Property.messageDomainProperty\" name=\"messageDomainProperty\"/>\n"
+                + "    <eStructuralFeatures xmi:type=\"ecore:EAttribute\" xmi:id=\"Property.validateMaster\" name=\"validateMaster\" defaultValueLiteral=\"none\"/>\n"
+                + "    <propertyOrganizer>\n"
+                + "      <propertyDescriptor configurable=\"true\" describedAttribute=\"Property.queueName\">\n"
+                + "        <propertyDescriptor describedAttribute=\"Property.messageDomainProperty\">\n"
+                + "          <propertyDescriptor configurable=\"true\" describedAttribute=\"Property.validateMaster\"/>\n"
+                + "        </propertyDescriptor>\n"
+                + "      </propertyDescriptor>\n"
+                + "    </propertyOrganizer>\n"
+                + "  </eClassifiers>\n"
+                + "</ecore:EPackage>\n").getBytes("UTF-8"));
+        zos.closeEntry();
+        zos.close();
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        FileUtils.deleteDirectory(baseDir);
+    }
+
+    @Test
+    public void assembleApplicationTest() throws Exception {
+        BarAssembler assembler = new BarAssembler(workspace, toolkit, new SystemStreamLog());
+        assertNull(assembler.prepare(Arrays.asList("app1"), new ArrayList<String>(), new ArrayList<String>()));
+
+        File bar = new File(baseDir, "test.bar");
+        assembler.write(bar);
+
+        ZipFile zipFile = new ZipFile(bar);
+        try {
+            Map<String, byte[]> app = readArchive(zipFile.getInputStream(zipFile.getEntry("app1.appzip")));
+            assertTrue(app.containsKey("com/example/Flow1.msgflow"));
+
+            String descriptor = new String(app.get("META-INF/broker.xml"), "UTF-8");
+            assertTrue(descriptor, descriptor.contains("uri=\"com.example.Flow1#additionalInstances\""));
+            assertTrue(descriptor, descriptor.contains("override=\"DEV\" uri=\"com.example.Flow1#Environment\""));
+            assertTrue(descriptor, descriptor.contains("override=\"IN.Q\" uri=\"com.example.Flow1#MQ Input.queueName\""));
+            assertTrue(descriptor, descriptor.contains("override=\"none\" uri=\"com.example.Flow1#MQ Input.validateMaster\""));
+            assertTrue(descriptor, descriptor.contains("override=\"ERROR\" uri=\"com.example.Flow1#Logging.LogLevel\""));
+            assertTrue(descriptor, !descriptor.contains("messageDomainProperty"));
+
+            // the referenced library is nested in the application
+            Map<String, byte[]> lib = readArchive(new ByteArrayInputStream(app.get("lib1.libzip")));
+            String libDescriptor = new String(lib.get("META-INF/broker.xml"), "UTF-8");
+            assertTrue(libDescriptor, libDescriptor.contains("override=\"INFO\" uri=\"com.example.Sub#LogLevel\""));
+        } finally {
+            zipFile.close();
+        }
+    }
+
+    /**
+     * Validates that the properties every message flow has are those of the deployment descriptor of a bar file built
+     * by mqsicreatebar, in the same order, as listed by mqsireadbar.
+     */
+    @Test
+    @SuppressWarnings("unchecked")
+    public void messageFlowPropertiesTest() throws Exception {
+        String flowName = "iprix.cis.command.IprixCisCommand";
+        List<String> expected = new ArrayList<String>();
+        InputStream is = getClass().getResourceAsStream("/ibm/maven/plugins/ace/mojos/mqsireadbar-output1.txt");
+        try {
+            List<String> lines = IOUtils.readLines(is, "UTF-8");
+            for (String line : lines) {
+                String uri = line.trim();
+                // the properties of the flow itself, without those of its nodes
+                if (uri.startsWith(flowName + "#") && uri.indexOf('.', flowName.length()) < 0) {
+                    expected.add(uri);
+                }
+            }
+        } finally {
+            is.close();
+        }
+
+        writeProject("app2", "com.ibm.etools.msgbroker.tooling.applicationNature");
+        FileUtils.writeStringToFile(new File(workspace, "app2/iprix/cis/command/IprixCisCommand.msgflow"), XMI_HEADER + ">\n"
+                + "  <eClassifiers xmi:type=\"eflow:FCMComposite\" name=\"FCMComposite_1\">\n"
+                + "    <composition/>\n"
+                + "    <propertyOrganizer/>\n"
+                + "  </eClassifiers>\n"
+                + "</ecore:EPackage>\n");
+        BarAssembler assembler = new BarAssembler(workspace, toolkit, new SystemStreamLog());
+        assertNull(assembler.prepare(Arrays.asList("app2"), new ArrayList<String>(), new ArrayList<String>()));
+        File bar = new File(baseDir, "test.bar");
+        assembler.write(bar);
+
+        List<String> actual = new ArrayList<String>();
+        ZipFile zipFile = new ZipFile(bar);
+        try {
+            Map<String, byte[]> app = readArchive(zipFile.getInputStream(zipFile.getEntry("app2.appzip")));
+            Matcher matcher = Pattern.compile("uri=\"([^\"]*)\"").matcher(new String(app.get("META-INF/broker.xml"), "UTF-8"));
+            while (matcher.find()) {
+                actual.add(matcher.group(1));
+            }
+        } finally {
+            zipFile.close();
+        }
+        assertEquals(expected, actual);
+    }
+
+    @Test
+    public void unsupportedContentTest() throws Exception {
+        // Java projects have to be compiled by the toolkit
+        writeProject("lib1", "org.eclipse.jdt.core.javanature");
+        BarAssembler assembler = new BarAssembler(workspace, toolkit, new SystemStreamLog());
+        String reason = assembler.prepare(Arrays.asList("app1"), new ArrayList<String>(), new ArrayList<String>());
+        assertNotNull(reason);
+        assertTrue(reason, reason.contains("lib1"));
+
+        // as do unknown nodes
+        assembler = new BarAssembler(workspace, new File(baseDir, "otherToolkit"), new SystemStreamLog());
+        writeProject("lib1", "com.ibm.etools.msgbroker.tooling.libraryNature");
+        reason = assembler.prepare(Arrays.asList("app1"), new ArrayList<String>(), new ArrayList<String>());
+        assertEquals("the definition of node type ComIbmMQInput.msgnode used in com/example/Flow1.msgflow was not found in the toolkit", reason);
+    }
+
+    private void writeProject(String name, String nature, String... references) throws IOException {
+        StringBuilder projects = new StringBuilder();
+        for (String reference : references) {
+            projects.append("<project>").append(reference).append("</project>");
+        }
+        FileUtils.writeStringToFile(new File(workspace, name + "/.project"), "<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n"
+                + "<projectDescription><name>" + name + "</name><comment></comment><projects>" + projects + "</projects>"
+                + "<buildSpec><buildCommand><name>b</name><arguments></arguments></buildCommand></buildSpec>"
+                + "<natures><nature>" + nature + "</nature></natures></projectDescription>\n");
+    }
+
+    private Map<String, byte[]> readArchive(InputStream is) throws IOException {
+        Map<String, byte[]> entries = new HashMap<String, byte[]>();
+        ZipInputStream zis = new ZipInputStream(is);
+        ZipEntry entry;
+        while ((entry = zis.getNextEntry()) != null) {
+            entries.put(entry.getName(), IOUtils.toByteArray(zis));
+        }
+        return entries;
+    }
+}
@@ -0,0 +1,106 @@
+package ibm.maven.plugins.ace.utils;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.List;
+import java.util.UUID;
+
+import org.apache.commons.io.FileUtils;
+import org.apache.maven.plugin.logging.SystemStreamLog;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class BarBuildCacheTest {
+
+    private File baseDir;
+
+    private File workspace;
+
+    @Before
+    public void setUp() throws IOException {
+        baseDir = new File("target", UUID.randomUUID().toString());
+        workspace = new File(baseDir, "workspace");
+        FileUtils.writeStringToFile(new File(workspace, "project1/Flow1.msgflow"), "<flow/>");
+        FileUtils.writeStringToFile(new File(workspace, "project1/.project"), "<projectDescription/>");
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        FileUtils.deleteDirectory(baseDir);
+    }
+
+    @Test
+    public void fingerprintTest() throws IOException {
+        List<String> params = Arrays.asList("-data", workspace.getPath(), "-a", "project1");
+        String fingerprint = BarBuildCache.fingerprint(workspace, params, null, "11");
+
+        // stable for the same inputs
+        assertEquals(fingerprint, BarBuildCache.fingerprint(workspace, params, null, "11"));
+
+        // files written by the toolkit are ignored
+        FileUtils.writeStringToFile(new File(workspace, ".metadata/.log"), "log");
+        FileUtils.writeStringToFile(new File(workspace, "project1/bin/Test.class"), "class");
+        assertEquals(fingerprint, BarBuildCache.fingerprint(workspace, params, null, "11"));
+
+        // but changes to the parameters, the toolkit version or the workspace contents are not
+        assertFalse(fingerprint.equals(BarBuildCache.fingerprint(workspace, Arrays.asList("-data", workspace.getPath()), null, "11")));
+        assertFalse(fingerprint.equals(BarBuildCache.fingerprint(workspace, params, null, "10")));
+        FileUtils.writeStringToFile(new File(workspace, "project1/Flow1.msgflow"), "<flow changed='true'/>");
+        assertFalse(fingerprint.equals(BarBuildCache.fingerprint(workspace, params, null, "11")));
+    }
+
+    @Test
+    public void storeAndRestoreTest() throws IOException {
+        BarBuildCache cache = new BarBuildCache(new File(baseDir, "cache"), 0, 0, new SystemStreamLog());
+        File bar = new File(baseDir, "test.bar");
+        FileUtils.writeStringToFile(bar, "bar contents");
+
+        assertFalse(cache.restore("abc", bar));
+        cache.store("abc", bar);
+
+        File restoredBar = new File(baseDir, "restored/test.bar");
+        assertTrue(cache.restore("abc", restoredBar));
+        assertEquals("bar contents", FileUtils.readFileToString(restoredBar));
+    }
+
+    @Test
+    public void evictBySizeTest() throws IOException {
+        File cacheDir = new File(baseDir, "cache");
+        BarBuildCache cache = new BarBuildCache(cacheDir, 25, 0, new SystemStreamLog());
+        File bar = new File(baseDir, "test.bar");
+        FileUtils.writeStringToFile(bar, "0123456789");
+
+        for (int i = 0; i < 3; i++) {
+            String fingerprint = "entry" + i;
+            cache.store(fingerprint, bar);
+            new File(cacheDir, fingerprint + ".bar").setLastModified(System.currentTimeMillis() - (10 - i) * 1000L);
+        }
+        cache.evict();
+
+        // only the two most recently used entries fit
+        assertFalse(new File(cacheDir, "entry0.bar").exists());
+        assertTrue(new File(cacheDir, "entry1.bar").exists());
+        assertTrue(new File(cacheDir, "entry2.bar").exists());
+    }
+
+    @Test
+    public void evictByAgeTest() throws IOException {
+        File cacheDir = new File(baseDir, "cache");
+        BarBuildCache cache = new BarBuildCache(cacheDir, 0, 60 * 1000L, new SystemStreamLog());
+        File bar = new File(baseDir, "test.bar");
+        FileUtils.writeStringToFile(bar, "0123456789");
+
+        cache.store("old", bar);
+        new File(cacheDir, "old.bar").setLastModified(System.currentTimeMillis() - 120 * 1000L);
+        cache.store("new", bar);
+
+        assertFalse(new File(cacheDir, "old.bar").exists());
+        assertTrue(new File(cacheDir, "new.bar").exists());
+    }
+}
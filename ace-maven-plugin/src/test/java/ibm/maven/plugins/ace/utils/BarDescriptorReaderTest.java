@@ -0,0 +1,52 @@
+package ibm.maven.plugins.ace.utils;
+
+import static org.junit.Assert.assertEquals;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+
+import org.apache.commons.io.FileUtils;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class BarDescriptorReaderTest {
+
+    private File baseDir;
+
+    @Before
+    public void setUp() {
+        baseDir = new File("target", UUID.randomUUID().toString());
+        baseDir.mkdirs();
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        FileUtils.deleteDirectory(baseDir);
+    }
+
+    @Test
+    public void getConfigurablePropertiesTest() throws IOException {
+        Map<String, byte[]> lib = new LinkedHashMap<String, byte[]>();
+        lib.put("META-INF/broker.xml", TestZips.descriptor("<ConfigurableProperty override=\"INFO\" uri=\"com.example.Sub#LogLevel\"/>"));
+
+        Map<String, byte[]> app = new LinkedHashMap<String, byte[]>();
+        app.put("META-INF/broker.xml", TestZips.descriptor("<ConfigurableProperty uri=\"com.example.Flow1#additionalInstances\"/>"
+                + "<ConfigurableProperty override=\"a=b\" uri=\"com.example.Flow1#MQ Input.queueName\"/>"));
+        app.put("lib1.libzip", TestZips.zip(lib));
+
+        Map<String, byte[]> bar = new LinkedHashMap<String, byte[]>();
+        bar.put("app1.appzip", TestZips.zip(app));
+        File barFile = new File(baseDir, "test.bar");
+        FileUtils.writeByteArrayToFile(barFile, TestZips.zip(bar));
+
+        List<String> properties = BarDescriptorReader.getConfigurableProperties(barFile);
+        assertEquals(Arrays.asList("com.example.Flow1#additionalInstances", "com.example.Flow1#MQ Input.queueName = a=b",
+                "com.example.Sub#LogLevel = INFO"), properties);
+    }
+}
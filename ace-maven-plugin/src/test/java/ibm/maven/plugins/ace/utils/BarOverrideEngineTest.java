@@ -0,0 +1,134 @@
+package ibm.maven.plugins.ace.utils;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.UUID;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipInputStream;
+
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.io.IOUtils;
+import org.apache.maven.plugin.logging.SystemStreamLog;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class BarOverrideEngineTest {
+
+    private File baseDir;
+
+    private File bar;
+
+    private byte[] libzip;
+
+    @Before
+    public void setUp() throws IOException {
+        baseDir = new File("target", UUID.randomUUID().toString());
+        baseDir.mkdirs();
+
+        Map<String, byte[]> lib = new LinkedHashMap<String, byte[]>();
+        lib.put("com/example/Sub.subflow", "<subflow/>".getBytes("UTF-8"));
+        lib.put("META-INF/broker.xml", TestZips.descriptor("<ConfigurableProperty override=\"INFO\" uri=\"com.example.Sub#LogLevel\"/>"));
+        libzip = TestZips.zip(lib);
+
+        Map<String, byte[]> app = new LinkedHashMap<String, byte[]>();
+        app.put("com/example/Flow1.msgflow", "<flow/>".getBytes("UTF-8"));
+        app.put("lib1.libzip", libzip);
+        app.put("META-INF/broker.xml", TestZips.descriptor("<ConfigurableProperty uri=\"com.example.Flow1#additionalInstances\"/>"
+                + "<ConfigurableProperty override=\"IN.Q\" uri=\"com.example.Flow1#MQ Input.queueName\"/>"
+                + "<ConfigurableProperty override=\"DEV\" uri=\"com.example.Flow1#Environment\"/>"));
+
+        Map<String, byte[]> barEntries = new LinkedHashMap<String, byte[]>();
+        barEntries.put("app1.appzip", TestZips.zip(app));
+        barEntries.put("META-INF/manifest.mf", "Manifest-Version: 1.0\n".getBytes("UTF-8"));
+        bar = new File(baseDir, "test.bar");
+        FileUtils.writeByteArrayToFile(bar, TestZips.zip(barEntries));
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        FileUtils.deleteDirectory(baseDir);
+    }
+
+    @Test
+    public void readOverridesTest() throws IOException {
+        File propFile = new File(baseDir, "inte.properties");
+        FileUtils.writeStringToFile(propFile, "# comment\ncom.example.Flow1#MQ Input.queueName = INTE.IN.Q\n\ncom.example.Flow1#Url=http://host/?a=b\n");
+        Map<String, String> overrides = BarOverrideEngine.readOverrides(propFile);
+        assertEquals(2, overrides.size());
+        assertEquals("INTE.IN.Q", overrides.get("com.example.Flow1#MQ Input.queueName"));
+        assertEquals("http://host/?a=b", overrides.get("com.example.Flow1#Url"));
+    }
+
+    @Test
+    public void applyRecursivelyTest() throws IOException {
+        Map<String, String> overrides = new LinkedHashMap<String, String>();
+        overrides.put("com.example.Flow1#MQ Input.queueName", "INTE.IN.Q");
+        overrides.put("com.example.Flow1#additionalInstances", "4");
+        overrides.put("com.example.Sub#LogLevel", "DEBUG");
+        overrides.put("com.example.Other#missing", "x");
+
+        BarOverrideEngine engine = new BarOverrideEngine(overrides, new SystemStreamLog());
+        File outputBar = new File(baseDir, "inte.bar");
+        engine.apply(bar, outputBar, BarOverrideEngine.Target.APPLICATION, "app1", true);
+
+        Map<String, byte[]> app = unzip(unzip(FileUtils.readFileToByteArray(outputBar)).get("app1.appzip"));
+        String descriptor = new String(app.get("META-INF/broker.xml"), "UTF-8");
+        assertTrue(descriptor, descriptor.contains("override=\"INTE.IN.Q\" uri=\"com.example.Flow1#MQ Input.queueName\""));
+        assertTrue(descriptor, descriptor.contains("override=\"4\" uri=\"com.example.Flow1#additionalInstances\""));
+        assertTrue(descriptor, descriptor.contains("override=\"DEV\" uri=\"com.example.Flow1#Environment\""));
+
+        String libDescriptor = new String(unzip(app.get("lib1.libzip")).get("META-INF/broker.xml"), "UTF-8");
+        assertTrue(libDescriptor, libDescriptor.contains("override=\"DEBUG\" uri=\"com.example.Sub#LogLevel\""));
+
+        assertEquals(Arrays.asList("com.example.Other#missing"), engine.getUnusedOverrides());
+    }
+
+    @Test
+    public void applyNonRecursivelyTest() throws IOException {
+        Map<String, String> overrides = new LinkedHashMap<String, String>();
+        // current-property-value=override
+        overrides.put("DEV", "INTE");
+        overrides.put("com.example.Sub#LogLevel", "DEBUG");
+
+        File outputBar = new File(baseDir, "inte.bar");
+        new BarOverrideEngine(overrides, new SystemStreamLog()).apply(bar, outputBar, BarOverrideEngine.Target.APPLICATION, "app1", false);
+
+        Map<String, byte[]> app = unzip(unzip(FileUtils.readFileToByteArray(outputBar)).get("app1.appzip"));
+        String descriptor = new String(app.get("META-INF/broker.xml"), "UTF-8");
+        assertTrue(descriptor, descriptor.contains("override=\"INTE\" uri=\"com.example.Flow1#Environment\""));
+
+        // the nested library is left alone
+        assertArrayEquals(libzip, app.get("lib1.libzip"));
+    }
+
+    @Test
+    public void missingTargetTest() throws IOException {
+        BarOverrideEngine engine = new BarOverrideEngine(new LinkedHashMap<String, String>(), new SystemStreamLog());
+        try {
+            engine.apply(bar, new File(baseDir, "inte.bar"), BarOverrideEngine.Target.LIBRARY, "app1", true);
+            fail("library app1 isn't in the bar");
+        } catch (IOException e) {
+            assertTrue(e.getMessage(), e.getMessage().contains("No library app1"));
+        }
+    }
+
+    private Map<String, byte[]> unzip(byte[] zip) throws IOException {
+        Map<String, byte[]> entries = new LinkedHashMap<String, byte[]>();
+        ZipInputStream zis = new ZipInputStream(new ByteArrayInputStream(zip));
+        ZipEntry entry;
+        while ((entry = zis.getNextEntry()) != null) {
+            entries.put(entry.getName(), IOUtils.toByteArray(zis));
+        }
+        return entries;
+    }
+}
@@ -0,0 +1,85 @@
+package ibm.maven.plugins.ace.utils;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+
+import org.apache.commons.io.FileUtils;
+import org.apache.maven.plugin.logging.SystemStreamLog;
+import org.apache.maven.project.MavenProject;
+import org.junit.After;
+import org.junit.Test;
+
+public class BuildTracerTest {
+
+    private final File baseDir = new File("target", UUID.randomUUID().toString());
+
+    @After
+    public void cleanUp() throws IOException {
+        BuildTracer.reset();
+        FileUtils.deleteDirectory(baseDir);
+    }
+
+    /**
+     * Validates that nothing is written without ace.traceFile.
+     */
+    @Test
+    public void disabledTest() {
+        BuildTracer.Span mojo = BuildTracer.startMojo("create-bar", null, null, new SystemStreamLog());
+        assertFalse(BuildTracer.isEnabled());
+        BuildTracer.start(BuildTracer.PROCESS, "mqsicreatebar", "module").end();
+        mojo.end();
+        assertFalse(baseDir.exists());
+    }
+
+    /**
+     * Validates that the spans ended so far are written as complete events when a mojo span ends.
+     */
+    @Test
+    public void traceTest() throws IOException {
+        File traceFile = new File(baseDir, "trace.json");
+        MavenProject project = new MavenProject();
+        project.setArtifactId("module \"1\"");
+
+        BuildTracer.Span mojo = BuildTracer.startMojo("create-bar", project, traceFile, new SystemStreamLog());
+        assertTrue(BuildTracer.isEnabled());
+        BuildTracer.start(BuildTracer.PROCESS, "mqsicreatebar").end();
+        assertFalse(traceFile.exists());
+        mojo.end();
+
+        String trace = FileUtils.readFileToString(traceFile, "UTF-8");
+        assertTrue(trace, trace.startsWith("{\"displayTimeUnit\":\"ms\",\"traceEvents\":["));
+        assertTrue(trace, trace.trim().endsWith("]}"));
+        assertTrue(trace, trace.contains("\"name\":\"thread_name\",\"args\":{\"name\":\"" + Thread.currentThread().getName() + "\"}"));
+        assertTrue(trace, trace.contains("\"cat\":\"process\",\"name\":\"mqsicreatebar\"}"));
+        assertTrue(trace, trace.contains("\"cat\":\"mojo\",\"name\":\"create-bar\",\"args\":{\"detail\":\"module \\\"1\\\"\"}}"));
+        assertEquals(2, trace.split("\"ph\":\"X\"").length - 1);
+    }
+
+    /**
+     * Validates that a trace file which can't be written is reported to the log and doesn't fail the mojo.
+     */
+    @Test
+    public void writeErrorTest() throws IOException {
+        // the parent of the trace file is a file
+        FileUtils.writeStringToFile(new File(baseDir, "file"), "");
+        File traceFile = new File(baseDir, "file/trace.json");
+        final List<String> warnings = new ArrayList<String>();
+        SystemStreamLog log = new SystemStreamLog() {
+            @Override
+            public void warn(CharSequence content) {
+                warnings.add(content.toString());
+            }
+        };
+
+        BuildTracer.startMojo("create-bar", null, traceFile, log).end();
+        assertEquals(1, warnings.size());
+        assertTrue(warnings.get(0), warnings.get(0).startsWith("Could not write the trace file " + traceFile));
+    }
+}
@@ -25,6 +25,7 @@ public class ConfigurablePropertiesUtilTest {
         assertEquals("a#b", ConfigurablePropertiesUtil.getPropName("  a#b  "));
         assertEquals("a#b", ConfigurablePropertiesUtil.getPropName("  a#b=1  "));
         assertEquals("a#b", ConfigurablePropertiesUtil.getPropName("  a#b = 1  "));
+        assertEquals("a#b", ConfigurablePropertiesUtil.getPropName("a#b = x=1;y=2"));
     }
 
     @Test
@@ -41,6 +42,8 @@ public class ConfigurablePropertiesUtilTest {
         assertEquals("", ConfigurablePropertiesUtil.getPropValue("  a#b  "));
         assertEquals("1", ConfigurablePropertiesUtil.getPropValue("  a#b=1  "));
         assertEquals("1", ConfigurablePropertiesUtil.getPropValue("  a#b = 1  "));
+        assertEquals("x=1;y=2", ConfigurablePropertiesUtil.getPropValue("a#b = x=1;y=2"));
+        assertEquals("", ConfigurablePropertiesUtil.getPropValue("a#b ="));
     }
 
     @Test
@@ -0,0 +1,75 @@
+package ibm.maven.plugins.ace.utils;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.List;
+import java.util.UUID;
+
+import org.apache.commons.io.FileUtils;
+import org.junit.Test;
+
+public class ConfigurablePropertyIndexTest {
+
+    private static final List<String> CONFIGURABLE_PROPERTIES = Arrays.asList("Flow1#MQ Input.queueName = IN", "Flow1#MQ Input.componentLevel",
+            "Flow1#additionalInstances = 0", "Sub#Compute.dataSource = DS=1");
+
+    @Test
+    public void getFlowAndNodeTest() {
+        assertEquals("Flow1", ConfigurablePropertyIndex.getFlow("Flow1#MQ Input.queueName"));
+        assertEquals("Flow1#MQ Input", ConfigurablePropertyIndex.getNode("Flow1#MQ Input.queueName"));
+        assertEquals("Flow1#additionalInstances", ConfigurablePropertyIndex.getNode("Flow1#additionalInstances"));
+        assertEquals("App#Flow1", ConfigurablePropertyIndex.getFlow("App#Flow1#MQ Input.queueName"));
+        assertEquals("", ConfigurablePropertyIndex.getFlow("name.with.dots"));
+    }
+
+    /**
+     * Validates that unknown, duplicated and missing properties of the files are reported.
+     */
+    @Test
+    public void validateTest() throws IOException {
+        File baseDir = new File("target", UUID.randomUUID().toString());
+        try {
+            File valid = new File(baseDir, "valid.properties");
+            FileUtils.writeStringToFile(valid, "# comment\n\nFlow1#MQ Input.queueName = IN2\n  Sub#Compute.dataSource = A=B  \n");
+            File invalid = new File(baseDir, "invalid.properties");
+            FileUtils.writeStringToFile(invalid,
+                    "Flow1#MQ Input.queueName = IN2\nFlow2#MQ Input.queueName = X\nFlow1#MQ Output.queueName = Y\nFlow1#MQ Input.queue = Z\nFlow1#MQ Input.queueName = IN3\n");
+
+            ConfigurablePropertyIndex index = new ConfigurablePropertyIndex(CONFIGURABLE_PROPERTIES);
+            assertEquals(4, index.size());
+            assertTrue(index.contains("Sub#Compute.dataSource"));
+
+            List<ConfigurablePropertyIndex.Report> reports = index.validate(Arrays.asList(valid, invalid), 2);
+            assertEquals(2, reports.size());
+
+            ConfigurablePropertyIndex.Report validReport = reports.get(0);
+            assertTrue(validReport.isValid());
+            assertEquals(valid, validReport.getFile());
+            assertTrue(validReport.getDuplicated().isEmpty());
+            assertEquals(Arrays.asList("Flow1#MQ Input.componentLevel", "Flow1#additionalInstances"), validReport.getMissing());
+
+            ConfigurablePropertyIndex.Report invalidReport = reports.get(1);
+            assertFalse(invalidReport.isValid());
+            assertEquals(3, invalidReport.getUnknown().size());
+            assertEquals(2, invalidReport.getUnknown().get(0).getLineNumber());
+            assertEquals("Flow2#MQ Input.queueName = X", invalidReport.getUnknown().get(0).getLine());
+            assertEquals(ConfigurablePropertyIndex.Reason.UNKNOWN_FLOW, invalidReport.getUnknown().get(0).getReason());
+            assertEquals(ConfigurablePropertyIndex.Reason.UNKNOWN_NODE, invalidReport.getUnknown().get(1).getReason());
+            assertEquals(ConfigurablePropertyIndex.Reason.UNKNOWN_PROPERTY, invalidReport.getUnknown().get(2).getReason());
+            assertEquals(Arrays.asList("Flow1#MQ Input.queueName"), invalidReport.getDuplicated());
+
+            File reportFile = new File(baseDir, "report.json");
+            ConfigurablePropertyIndex.writeReport(reports, reportFile);
+            String report = FileUtils.readFileToString(reportFile);
+            assertTrue(report, report.contains("{\"line\": 2, \"property\": \"Flow2#MQ Input.queueName = X\", \"reason\": \"UNKNOWN_FLOW\"}"));
+            assertTrue(report, report.contains("\"duplicated\": [\"Flow1#MQ Input.queueName\"]"));
+        } finally {
+            FileUtils.deleteDirectory(baseDir);
+        }
+    }
+}
@@ -0,0 +1,100 @@
+package ibm.maven.plugins.ace.utils;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.UUID;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+import org.apache.commons.io.FileUtils;
+import org.apache.maven.plugin.MojoFailureException;
+import org.apache.maven.plugin.logging.SystemStreamLog;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class DependencyUnpackerTest {
+
+    private File baseDir;
+
+    private File workspace;
+
+    private DependencyUnpacker unpacker;
+
+    @Before
+    public void setUp() {
+        baseDir = new File("target", UUID.randomUUID().toString());
+        workspace = new File(baseDir, "workspace");
+        unpacker = new DependencyUnpacker(workspace, new File(baseDir, "markers"), 2, new SystemStreamLog());
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        FileUtils.deleteDirectory(baseDir);
+    }
+
+    @Test
+    public void unpackTest() throws Exception {
+        File lib = new File(baseDir, "Lib1-1.0-SNAPSHOT.zip");
+        writeZip(lib, "Lib1/.project", "Lib1/Old.msgflow");
+        File app = new File(baseDir, "App1-1.0.zip");
+        writeZip(app, "App1/.project");
+
+        Map<String, File> archives = new LinkedHashMap<String, File>();
+        archives.put("com.example:Lib1:zip", lib);
+        archives.put("com.example:App1:zip", app);
+        assertEquals(2, unpacker.unpack(archives));
+        assertTrue(new File(workspace, "Lib1/Old.msgflow").isFile());
+        assertTrue(new File(workspace, "App1/.project").isFile());
+
+        // nothing changed
+        assertEquals(0, unpacker.unpack(archives));
+
+        // a new SNAPSHOT replaces the projects of the previous one
+        writeZip(lib, "Lib1/.project", "Lib1/New.msgflow");
+        lib.setLastModified(lib.lastModified() + 2000);
+        assertEquals(1, unpacker.unpack(archives));
+        assertTrue(new File(workspace, "Lib1/New.msgflow").isFile());
+        assertFalse(new File(workspace, "Lib1/Old.msgflow").exists());
+
+        // a project deleted from the workspace is unpacked again
+        FileUtils.deleteDirectory(new File(workspace, "App1"));
+        assertEquals(1, unpacker.unpack(archives));
+        assertTrue(new File(workspace, "App1/.project").isFile());
+    }
+
+    @Test
+    public void unpackOutsideOfWorkspaceTest() throws Exception {
+        File evil = new File(baseDir, "evil.zip");
+        writeZip(evil, "../evil.txt");
+        try {
+            unpacker.unpack(Collections.singletonMap("com.example:evil:zip", evil));
+            fail("entries outside of the workspace must be refused");
+        } catch (MojoFailureException e) {
+            assertFalse(new File(baseDir, "evil.txt").exists());
+        }
+    }
+
+    private void writeZip(File file, String... names) throws IOException {
+        file.getParentFile().mkdirs();
+        ZipOutputStream zos = new ZipOutputStream(new FileOutputStream(file));
+        try {
+            for (String name : names) {
+                zos.putNextEntry(new ZipEntry(name));
+                zos.write(name.getBytes("UTF-8"));
+                zos.closeEntry();
+            }
+        } finally {
+            zos.close();
+        }
+    }
+}
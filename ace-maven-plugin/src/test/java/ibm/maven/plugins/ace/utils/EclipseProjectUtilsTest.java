@@ -1,12 +1,18 @@
 package ibm.maven.plugins.ace.utils;
 
+import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertTrue;
 import ibm.maven.plugins.ace.utils.EclipseProjectUtils;
+import ibm.maven.plugins.ace.utils.EclipseProjectUtils.ProjectKind;
 
 import java.io.File;
+import java.io.IOException;
+import java.util.UUID;
 
 import javax.xml.bind.JAXBException;
 
+import org.apache.commons.io.FileUtils;
+import org.apache.maven.plugin.logging.SystemStreamLog;
 import org.junit.Test;
 
 public class EclipseProjectUtilsTest {
@@ -25,6 +31,52 @@ public class EclipseProjectUtilsTest {
         }
     }
 
+    /**
+     * Test reading the name and the natures of the local .project file
+     */
+    @Test
+    public void getProjectNameTest() throws Exception {
+        assertEquals("ace-maven-plugin", EclipseProjectUtils.getProjectName(new File(".")));
+        assertTrue(EclipseProjectUtils.hasNature(new File("."), "org.eclipse.jdt.core.javanature"));
+        assertTrue(EclipseProjectUtils.getReferencedProjects(new File(".")).isEmpty());
+    }
+
+    /**
+     * Test the classification of projects, including that changes to the .project file are picked up
+     */
+    @Test
+    public void getProjectKindTest() throws Exception {
+        File projectDirectory = new File("target", UUID.randomUUID().toString());
+        try {
+            writeProjectFile(projectDirectory, "com.ibm.etools.msgbroker.tooling.libraryNature");
+            assertEquals(ProjectKind.LIBRARY, EclipseProjectUtils.getProjectKind(projectDirectory));
+            assertTrue(EclipseProjectUtils.isLibrary(projectDirectory, new SystemStreamLog()));
+
+            writeProjectFile(projectDirectory, "com.ibm.etools.msgbroker.tooling.libraryNature</nature><nature>com.ibm.etools.msgbroker.tooling.sharedLibraryNature");
+            assertEquals(ProjectKind.SHARED_LIBRARY, EclipseProjectUtils.getProjectKind(projectDirectory));
+
+            writeProjectFile(projectDirectory, "com.ibm.etools.msgbroker.tooling.applicationNature");
+            assertEquals(ProjectKind.APPLICATION, EclipseProjectUtils.getProjectKind(projectDirectory));
+
+            writeProjectFile(projectDirectory, "com.ibm.etools.mft.policy.ui.Nature");
+            assertEquals(ProjectKind.POLICY_PROJECT, EclipseProjectUtils.getProjectKind(projectDirectory));
+
+            writeProjectFile(projectDirectory, "org.eclipse.jdt.core.javanature");
+            assertEquals(ProjectKind.OTHER, EclipseProjectUtils.getProjectKind(projectDirectory));
+        } finally {
+            FileUtils.deleteDirectory(projectDirectory);
+        }
+    }
+
+    private void writeProjectFile(File projectDirectory, String nature) throws IOException {
+        File projectFile = new File(projectDirectory, ".project");
+        long lastModified = projectFile.lastModified();
+        FileUtils.writeStringToFile(projectFile, "<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n<projectDescription><name>"
+                + projectDirectory.getName() + "</name><natures><nature>" + nature + "</nature></natures></projectDescription>\n");
+        // make sure the cached version is seen as outdated, even on file systems with a coarse timestamp resolution
+        projectFile.setLastModified(lastModified + 2000);
+    }
+
     /**
      * Hier sollten vor allem:
      * - isApplication
@@ -0,0 +1,129 @@
+package ibm.maven.plugins.ace.utils;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import ibm.maven.plugins.ace.utils.ExtractedArtifactStore.LinkMode;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.attribute.PosixFilePermission;
+import java.util.Collections;
+import java.util.UUID;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+import org.apache.commons.io.FileUtils;
+import org.apache.maven.plugin.logging.SystemStreamLog;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class ExtractedArtifactStoreTest {
+
+    private File baseDir;
+
+    private File storeDir;
+
+    private File lib;
+
+    @Before
+    public void setUp() throws IOException {
+        baseDir = new File("target", UUID.randomUUID().toString());
+        storeDir = new File(baseDir, "store");
+        lib = new File(baseDir, "Lib1-1.0.zip");
+        lib.getParentFile().mkdirs();
+        ZipOutputStream zos = new ZipOutputStream(new FileOutputStream(lib));
+        try {
+            zos.putNextEntry(new ZipEntry("Lib1/.project"));
+            zos.write("<projectDescription/>".getBytes("UTF-8"));
+            zos.closeEntry();
+            zos.putNextEntry(new ZipEntry("Lib1/com/example/Flow1.msgflow"));
+            zos.write("<flow/>".getBytes("UTF-8"));
+            zos.closeEntry();
+        } finally {
+            zos.close();
+        }
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        new ExtractedArtifactStore(storeDir, LinkMode.COPY, new SystemStreamLog()).evict(0);
+        FileUtils.deleteDirectory(baseDir);
+    }
+
+    @Test
+    public void materializeTest() throws Exception {
+        ExtractedArtifactStore store = new ExtractedArtifactStore(storeDir, LinkMode.HARDLINK, new SystemStreamLog());
+        String checksum = DependencyUnpacker.checksum(lib);
+
+        File workspace1 = new File(baseDir, "workspace1");
+        File workspace2 = new File(baseDir, "workspace2");
+        assertEquals(Collections.singleton("Lib1"), store.materialize(lib, checksum, workspace1));
+        assertEquals(Collections.singleton("Lib1"), store.materialize(lib, checksum, workspace2));
+
+        File flow1 = new File(workspace1, "Lib1/com/example/Flow1.msgflow");
+        File flow2 = new File(workspace2, "Lib1/com/example/Flow1.msgflow");
+        assertEquals("<flow/>", FileUtils.readFileToString(flow1, "UTF-8"));
+        // both workspaces share the file of the store, which nobody may change in place
+        assertTrue(Files.isSameFile(flow1.toPath(), flow2.toPath()));
+        if (Files.getFileStore(flow1.toPath()).supportsFileAttributeView("posix")) {
+            // canWrite() is always true for root
+            assertFalse(Files.getPosixFilePermissions(flow1.toPath()).contains(PosixFilePermission.OWNER_WRITE));
+        }
+
+        // a workspace deleting its projects leaves the store alone
+        FileUtils.deleteDirectory(workspace1);
+        assertEquals("<flow/>", FileUtils.readFileToString(flow2, "UTF-8"));
+
+        File copied = new File(baseDir, "workspace3");
+        new ExtractedArtifactStore(storeDir, LinkMode.COPY, new SystemStreamLog()).materialize(lib, checksum, copied);
+        File flow3 = new File(copied, "Lib1/com/example/Flow1.msgflow");
+        assertFalse(Files.isSameFile(flow2.toPath(), flow3.toPath()));
+        assertTrue(flow3.canWrite());
+    }
+
+    @Test
+    public void evictTest() throws Exception {
+        ExtractedArtifactStore store = new ExtractedArtifactStore(storeDir, LinkMode.HARDLINK, new SystemStreamLog());
+        String checksum = DependencyUnpacker.checksum(lib);
+        store.materialize(lib, checksum, new File(baseDir, "workspace"));
+
+        // the entry fits, so nothing is evicted
+        assertEquals(0, store.evict(1024));
+        assertTrue(new File(storeDir, checksum).isDirectory());
+
+        assertEquals("<projectDescription/>".length() + "<flow/>".length(), store.evict(0));
+        assertFalse(new File(storeDir, checksum).exists());
+        assertTrue(new File(baseDir, "workspace/Lib1/.project").isFile());
+    }
+
+    /**
+     * Validates that an entry evicted between the check for it and its use is added again instead of materializing
+     * nothing.
+     */
+    @Test
+    public void materializeEvictedEntryTest() throws Exception {
+        ExtractedArtifactStore store = new ExtractedArtifactStore(storeDir, LinkMode.HARDLINK, new SystemStreamLog());
+        String checksum = DependencyUnpacker.checksum(lib);
+        store.materialize(lib, checksum, new File(baseDir, "workspace1"));
+
+        // what a reader sees while the entry is being deleted: the entry file still there, the directory empty
+        File entryDirectory = new File(storeDir, checksum);
+        new File(entryDirectory, "Lib1").setWritable(true);
+        new File(entryDirectory, "Lib1/com").setWritable(true);
+        new File(entryDirectory, "Lib1/com/example").setWritable(true);
+        FileUtils.deleteDirectory(new File(entryDirectory, "Lib1"));
+        assertTrue(new File(storeDir, checksum + ".entry").isFile());
+
+        File workspace2 = new File(baseDir, "workspace2");
+        assertEquals(Collections.singleton("Lib1"), store.materialize(lib, checksum, workspace2));
+        assertTrue(new File(workspace2, "Lib1/com/example/Flow1.msgflow").isFile());
+
+        // eviction moves the directory away before deleting it, and leaves nothing behind
+        store.evict(0);
+        assertEquals(0, storeDir.list().length);
+    }
+}
@@ -0,0 +1,211 @@
+package ibm.maven.plugins.ace.utils;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.io.IOUtils;
+import org.apache.maven.plugin.logging.SystemStreamLog;
+import org.junit.Test;
+
+public class HostProcessSemaphoreTest {
+
+    private static final String STALE_TICKET = "0000000000000000000.ticket";
+
+    /**
+     * Validates that the slots are limited and handed out in the order they were asked for, ignoring stale tickets.
+     */
+    @Test(timeout = 60000)
+    public void fairQueueTest() throws IOException, InterruptedException {
+        File directory = new File("target", UUID.randomUUID().toString());
+        try {
+            final HostProcessSemaphore semaphore = new HostProcessSemaphore(directory, 1);
+            final SystemStreamLog log = new SystemStreamLog();
+
+            HostProcessSemaphore.Slot first = semaphore.acquire("first", log);
+            assertNotNull(first);
+            // a ticket left behind by a build that died
+            FileUtils.touch(new File(directory, STALE_TICKET));
+
+            final List<String> order = Collections.synchronizedList(new ArrayList<String>());
+            final CountDownLatch done = new CountDownLatch(2);
+            List<Thread> threads = new ArrayList<Thread>();
+            for (final String name : new String[] { "second", "third" }) {
+                Thread thread = new Thread(new Runnable() {
+                    public void run() {
+                        try {
+                            HostProcessSemaphore.Slot slot = semaphore.acquire(name, log);
+                            order.add(name);
+                            Thread.sleep(200);
+                            slot.release();
+                        } catch (Exception e) {
+                            order.add(e.toString());
+                        } finally {
+                            done.countDown();
+                        }
+                    }
+                });
+                thread.start();
+                threads.add(thread);
+                // make sure the second one has taken its ticket before the third one
+                while (countTickets(directory, STALE_TICKET) < threads.size()) {
+                    Thread.sleep(10);
+                }
+            }
+
+            Thread.sleep(1000);
+            assertTrue(order.toString(), order.isEmpty());
+            first.release();
+
+            assertTrue(done.await(30, TimeUnit.SECONDS));
+            List<String> expected = new ArrayList<String>();
+            expected.add("second");
+            expected.add("third");
+            assertEquals(expected, order);
+            assertFalse(new File(directory, STALE_TICKET).exists());
+            assertEquals(0, countTickets(directory, null));
+        } finally {
+            FileUtils.deleteDirectory(directory);
+        }
+    }
+
+    /**
+     * Validates that the slot and the tickets stay locked for other builds (ie. JVMs) while the threads of this one are
+     * polling them: on Unix, closing a second channel to a file releases the locks of the whole JVM.
+     */
+    @Test(timeout = 60000)
+    public void locksHeldAcrossJvmsTest() throws Exception {
+        File directory = new File("target", UUID.randomUUID().toString());
+        try {
+            final HostProcessSemaphore semaphore = new HostProcessSemaphore(directory, 1);
+            final SystemStreamLog log = new SystemStreamLog();
+
+            HostProcessSemaphore.Slot first = semaphore.acquire("first", log);
+            final CountDownLatch done = new CountDownLatch(2);
+            for (final String name : new String[] { "second", "third" }) {
+                new Thread(new Runnable() {
+                    public void run() {
+                        try {
+                            semaphore.acquire(name, log).release();
+                        } catch (Exception e) {
+                            // the assertions below fail then
+                        } finally {
+                            done.countDown();
+                        }
+                    }
+                }).start();
+            }
+            while (countTickets(directory, null) < 2) {
+                Thread.sleep(10);
+            }
+            // let them poll the slot and each other's tickets a few times
+            Thread.sleep(1500);
+
+            List<String> files = new ArrayList<String>();
+            files.add(new File(directory, "slot-0.lock").getAbsolutePath());
+            for (String name : directory.list()) {
+                if (name.endsWith(".ticket")) {
+                    files.add(new File(directory, name).getAbsolutePath());
+                }
+            }
+            assertEquals(3, files.size());
+            assertEquals("held held held", probeLocks(files));
+
+            first.release();
+            assertTrue(done.await(30, TimeUnit.SECONDS));
+            assertEquals(0, countTickets(directory, null));
+            assertEquals("free", probeLocks(files.subList(0, 1)));
+        } finally {
+            FileUtils.deleteDirectory(directory);
+        }
+    }
+
+    /**
+     * Checks in another JVM whether the files are locked.
+     */
+    private String probeLocks(List<String> files) throws IOException, InterruptedException {
+        List<String> command = new ArrayList<String>();
+        command.add(new File(System.getProperty("java.home"), "bin/java").getAbsolutePath());
+        command.add("-cp");
+        command.add(System.getProperty("java.class.path"));
+        command.add(LockProbe.class.getName());
+        command.addAll(files);
+        Process process = new ProcessBuilder(command).redirectErrorStream(true).start();
+        InputStream is = process.getInputStream();
+        try {
+            String output = IOUtils.toString(is).trim();
+            assertEquals(output, 0, process.waitFor());
+            return output;
+        } finally {
+            is.close();
+        }
+    }
+
+    /**
+     * Validates that a workspace is locked outside of it, with the same lock whichever path it is reached by.
+     */
+    @Test(timeout = 60000)
+    public void workspaceLockTest() throws IOException, InterruptedException {
+        File baseDir = new File("target", UUID.randomUUID().toString());
+        try {
+            File directory = new File(baseDir, "slots");
+            File workspace = new File(baseDir, "module1/workspace");
+            assertTrue(workspace.mkdirs());
+            SystemStreamLog log = new SystemStreamLog();
+
+            HostProcessSemaphore.forWorkspace(directory, workspace).acquire("first", log).release();
+            HostProcessSemaphore.forWorkspace(directory, new File(baseDir, "module2/../module1/workspace")).acquire("second", log).release();
+            assertEquals(1, directory.list().length);
+            assertTrue(directory.list()[0].startsWith("workspace-workspace-"));
+            // a workspace without .metadata is a new one for the toolkit
+            assertEquals(0, workspace.list().length);
+        } finally {
+            FileUtils.deleteDirectory(baseDir);
+        }
+    }
+
+    /**
+     * Prints "held" or "free" for each file given.
+     */
+    public static final class LockProbe {
+
+        public static void main(String[] args) throws IOException {
+            StringBuilder result = new StringBuilder();
+            for (String file : args) {
+                FileChannel channel = FileChannel.open(new File(file).toPath(), StandardOpenOption.READ, StandardOpenOption.WRITE);
+                try {
+                    FileLock lock = channel.tryLock();
+                    result.append(result.length() > 0 ? " " : "").append(lock == null ? "held" : "free");
+                } finally {
+                    channel.close();
+                }
+            }
+            System.out.println(result);
+        }
+    }
+
+    private int countTickets(File directory, String ignored) {
+        int tickets = 0;
+        for (String name : directory.list()) {
+            if (name.endsWith(".ticket") && !name.equals(ignored)) {
+                tickets++;
+            }
+        }
+        return tickets;
+    }
+}
@@ -0,0 +1,19 @@
+package ibm.maven.plugins.ace.utils;
+
+import static org.junit.Assert.assertEquals;
+
+import org.junit.Test;
+
+public class JsonUtilsTest {
+
+    /**
+     * Validates the escaping of quotes, backslashes and control characters
+     */
+    @Test
+    public void escapeTest() {
+        assertEquals("plain", JsonUtils.escape("plain"));
+        assertEquals("say \\\"hi\\\"", JsonUtils.escape("say \"hi\""));
+        assertEquals("C:\\\\ace\\\\bar", JsonUtils.escape("C:\\ace\\bar"));
+        assertEquals("one\\u000atwo\\u0009", JsonUtils.escape("one\ntwo\t"));
+    }
+}
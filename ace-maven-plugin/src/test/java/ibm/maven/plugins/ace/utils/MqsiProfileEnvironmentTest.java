@@ -0,0 +1,49 @@
+package ibm.maven.plugins.ace.utils;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Map;
+import java.util.UUID;
+
+import org.apache.commons.io.FileUtils;
+import org.apache.maven.plugin.logging.SystemStreamLog;
+import org.junit.Test;
+
+public class MqsiProfileEnvironmentTest {
+
+    /**
+     * Validates that the profile is sourced once and the commands are found on the PATH it sets up
+     */
+    @Test
+    public void getEnvironmentTest() throws IOException {
+        if (System.getProperty("os.name").toLowerCase().contains("windows")) {
+            return;
+        }
+        File aceRunDir = new File("target", UUID.randomUUID() + " with spaces");
+        try {
+            File binDir = new File(aceRunDir, "bin");
+            File mqsireadbar = new File(binDir, "mqsireadbar");
+            FileUtils.writeStringToFile(mqsireadbar, "#!/bin/sh\necho readbar\n");
+            mqsireadbar.setExecutable(true);
+
+            File counter = new File(aceRunDir, "sourced");
+            FileUtils.writeStringToFile(new File(aceRunDir, "mqsiprofile"), "echo 'MQSI profile noise'\n"
+                    + "export ACE_TEST_VALUE='a b;c=d'\n"
+                    + "export PATH=\"" + binDir.getAbsolutePath() + ":$PATH\"\n"
+                    + "echo x >> \"" + counter.getAbsolutePath() + "\"\n");
+
+            Map<String, String> environment = MqsiProfileEnvironment.getEnvironment(aceRunDir, new SystemStreamLog());
+            assertEquals("a b;c=d", environment.get("ACE_TEST_VALUE"));
+            assertSame(environment, MqsiProfileEnvironment.getEnvironment(aceRunDir, new SystemStreamLog()));
+            assertEquals(1, FileUtils.readLines(counter).size());
+
+            assertEquals(mqsireadbar.getAbsolutePath(), MqsiProfileEnvironment.resolveExecutable("mqsireadbar", environment, aceRunDir));
+            assertEquals("mqsiunknown", MqsiProfileEnvironment.resolveExecutable("mqsiunknown", environment, aceRunDir));
+        } finally {
+            FileUtils.deleteDirectory(aceRunDir);
+        }
+    }
+}
@@ -0,0 +1,42 @@
+package ibm.maven.plugins.ace.utils;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import java.io.File;
+import java.util.UUID;
+
+import org.apache.commons.io.FileUtils;
+import org.junit.Test;
+
+public class PomXmlUtilsTest {
+
+    /**
+     * Test reading the artifactId and packaging of the local pom.xml
+     */
+    @Test
+    public void readPomSummaryTest() throws Exception {
+        PomXmlUtils.PomSummary summary = PomXmlUtils.readPomSummary(new File("pom.xml"));
+        assertEquals("ace-maven-plugin", summary.getArtifactId());
+        assertEquals("maven-plugin", summary.getPackaging());
+    }
+
+    /**
+     * the artifactIds of the parent and of dependencies must not be mistaken for the one of the project
+     */
+    @Test
+    public void readPomSummaryWithParentTest() throws Exception {
+        File pomFile = new File("target", UUID.randomUUID().toString() + ".xml");
+        try {
+            FileUtils.writeStringToFile(pomFile, "<project xmlns=\"http://maven.apache.org/POM/4.0.0\">"
+                    + "<parent><groupId>g</groupId><artifactId>parent</artifactId></parent>"
+                    + "<artifactId>child-lib</artifactId>"
+                    + "<dependencies><dependency><artifactId>other</artifactId></dependency></dependencies></project>");
+            PomXmlUtils.PomSummary summary = PomXmlUtils.readPomSummary(pomFile);
+            assertEquals("child-lib", summary.getArtifactId());
+            assertNull(summary.getPackaging());
+        } finally {
+            pomFile.delete();
+        }
+    }
+}
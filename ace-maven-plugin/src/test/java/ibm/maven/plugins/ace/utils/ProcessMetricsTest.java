@@ -0,0 +1,63 @@
+package ibm.maven.plugins.ace.utils;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.UUID;
+
+import org.apache.commons.io.FileUtils;
+import org.junit.Test;
+
+public class ProcessMetricsTest {
+
+    /**
+     * Validates the sampling of a process tree and the metrics file
+     */
+    @Test
+    public void sampleTest() throws Exception {
+        if (!new File("/proc/self/stat").isFile()) {
+            return;
+        }
+        // a shell keeping a child busy for a moment
+        Process process = new ProcessBuilder("sh", "-c", "sh -c 'i=0; while [ $i -lt 300000 ]; do i=$((i+1)); done'; exit 0").start();
+        ProcessMetrics metrics = ProcessMetrics.start("busy \"loop\"", process);
+        assertEquals(0, process.waitFor());
+        metrics.stop();
+
+        assertTrue(metrics.getWallMillis() >= 0);
+        assertTrue(metrics.getCpuMillis() > 0);
+        assertTrue(metrics.getPeakRssBytes() > 0);
+        assertTrue(metrics.getSummary(), metrics.getSummary().startsWith("busy \"loop\": wall "));
+
+        File baseDir = new File("target", UUID.randomUUID().toString());
+        try {
+            File metricsFile = new File(baseDir, "ace/metrics.json");
+            ProcessMetrics.record(metrics, metricsFile);
+            ProcessMetrics.record(metrics, metricsFile);
+            String json = FileUtils.readFileToString(metricsFile, "UTF-8");
+            assertTrue(json, json.contains("\"name\": \"busy \\\"loop\\\"\""));
+            assertEquals(json, 2, json.split("\"cpuMillis\"").length - 1);
+        } finally {
+            FileUtils.deleteDirectory(baseDir);
+        }
+    }
+
+    /**
+     * Validates that an unknown process still gets its wall time
+     */
+    @Test
+    public void summaryWithoutSamplesTest() throws IOException, InterruptedException {
+        Process process = new ProcessBuilder("java", "-version").start();
+        process.getInputStream().close();
+        process.getErrorStream().close();
+        process.waitFor();
+        // the process has exited, so there is nothing to sample
+        Thread.sleep(50);
+        ProcessMetrics metrics = ProcessMetrics.start("gone", process);
+        metrics.stop();
+        assertEquals(-1, metrics.getCpuMillis());
+        assertTrue(metrics.getSummary(), metrics.getSummary().endsWith("(no resource usage available)"));
+    }
+}
@@ -0,0 +1,117 @@
+package ibm.maven.plugins.ace.utils;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.PipedInputStream;
+import java.io.PipedOutputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+
+public class ProcessOutputPumpTest {
+
+    /**
+     * Validates that all lines are delivered in order, including a last line without a line terminator
+     */
+    @Test
+    public void pumpTest() throws Exception {
+        List<String> output = new ArrayList<String>();
+        ProcessOutputPump pump = ProcessOutputPump.start(new ByteArrayInputStream("one\ntwo\r\n\nlast".getBytes("UTF-8")), collect(output));
+        pump.await();
+        assertEquals(Arrays.asList("one", "two", "", "last"), output);
+        assertTrue(pump.getTimeToLastByteMillis() >= 0);
+    }
+
+    /**
+     * Validates that a failure reading the output is reported to the caller
+     */
+    @Test
+    public void readErrorTest() throws Exception {
+        InputStream failing = new InputStream() {
+            @Override
+            public int read() throws IOException {
+                throw new IOException("Stream closed");
+            }
+        };
+        ProcessOutputPump pump = ProcessOutputPump.start(failing, collect(new ArrayList<String>()));
+        try {
+            pump.await();
+            fail("the read error must be reported");
+        } catch (IOException e) {
+            assertEquals("Stream closed", e.getMessage());
+        }
+    }
+
+    /**
+     * Validates that a failure of the handler is reported to the caller and that the rest of the output is still read
+     */
+    @Test
+    public void handlerErrorTest() throws Exception {
+        final List<String> output = new ArrayList<String>();
+        ByteArrayInputStream is = new ByteArrayInputStream("one\ntwo\nthree\n".getBytes("UTF-8"));
+        ProcessOutputPump pump = ProcessOutputPump.start(is, new ProcessOutputPump.LineHandler() {
+            public void handleLine(String line) {
+                output.add(line);
+                if ("two".equals(line)) {
+                    throw new IllegalStateException("Failed to handle " + line);
+                }
+            }
+        });
+        try {
+            pump.await();
+            fail("the handler error must be reported");
+        } catch (IllegalStateException e) {
+            assertEquals("Failed to handle two", e.getMessage());
+        }
+        assertEquals(Arrays.asList("one", "two"), output);
+        assertEquals(0, is.available());
+    }
+
+    /**
+     * Validates that waiting for a stream that stays open ends with the timeout
+     */
+    @Test
+    public void awaitTimeoutTest() throws Exception {
+        PipedOutputStream pos = new PipedOutputStream();
+        List<String> output = new ArrayList<String>();
+        ProcessOutputPump pump = ProcessOutputPump.start(new PipedInputStream(pos), collect(output));
+        pos.write("one\n".getBytes("UTF-8"));
+        assertFalse(pump.await(200, TimeUnit.MILLISECONDS));
+        pos.close();
+        assertTrue(pump.await(10, TimeUnit.SECONDS));
+        assertEquals(Arrays.asList("one"), output);
+    }
+
+    /**
+     * Validates the pumping of an actual process, which ends as soon as the process closes its output
+     */
+    @Test
+    public void processTest() throws Exception {
+        if (System.getProperty("os.name").toLowerCase().contains("windows")) {
+            return;
+        }
+        Process process = new ProcessBuilder("sh", "-c", "echo first; echo second 1>&2").redirectErrorStream(true).start();
+        List<String> output = new ArrayList<String>();
+        ProcessOutputPump pump = ProcessOutputPump.start(process.getInputStream(), collect(output));
+        assertEquals(0, process.waitFor());
+        pump.await();
+        assertEquals(Arrays.asList("first", "second"), output);
+    }
+
+    private static ProcessOutputPump.LineHandler collect(final List<String> output) {
+        return new ProcessOutputPump.LineHandler() {
+            public void handleLine(String line) {
+                output.add(line);
+            }
+        };
+    }
+}
@@ -0,0 +1,110 @@
+package ibm.maven.plugins.ace.utils;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+import static org.junit.Assume.assumeTrue;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.commons.io.FileUtils;
+import org.apache.maven.plugin.logging.SystemStreamLog;
+import org.junit.Test;
+
+public class ProcessWatchdogTest {
+
+    /**
+     * Validates that the exit code is returned and transient failures are recognised.
+     */
+    @Test
+    public void exitCodeTest() throws IOException, InterruptedException {
+        assumeTrue(new File("/bin/sh").canExecute());
+        Process process = new ProcessBuilder("/bin/sh", "-c", "echo 'Workspace in use or cannot be created'; exit 13").start();
+        ProcessWatchdog watchdog = new ProcessWatchdog(process, "test", 60000, 60000, ProcessWatchdog.compile(Arrays.asList("(?i)workspace in use")),
+                new SystemStreamLog());
+        List<String> output = new ArrayList<String>();
+        ProcessOutputPump pump = ProcessOutputPump.start(process.getInputStream(), watchdog.watch(collect(output)));
+        assertEquals(13, watchdog.waitFor());
+        pump.await();
+        assertEquals(Arrays.asList("Workspace in use or cannot be created"), output);
+        assertTrue(watchdog.isTransientFailure());
+    }
+
+    /**
+     * Validates that a silent process is killed together with its children.
+     */
+    @Test
+    public void inactivityTimeoutTest() throws IOException, InterruptedException {
+        assumeTrue(new File("/bin/sh").canExecute() && new File("/proc/self").isDirectory());
+        Process process = new ProcessBuilder("/bin/sh", "-c", "sleep 60 & echo $!; wait").start();
+        ProcessWatchdog watchdog = new ProcessWatchdog(process, "test", 0, 1000, null, new SystemStreamLog());
+        List<String> output = new ArrayList<String>();
+        ProcessOutputPump pump = ProcessOutputPump.start(process.getInputStream(), watchdog.watch(collect(output)));
+        long start = System.currentTimeMillis();
+        try {
+            watchdog.waitFor();
+            fail("the process should have been killed");
+        } catch (ProcessWatchdog.ProcessTimeoutException e) {
+            assertTrue(e.getMessage(), e.getMessage().contains("didn't write any output"));
+        }
+        assertTrue(System.currentTimeMillis() - start < 30000);
+        // the output ends as the child holding it open is killed as well
+        assertTrue(pump.await(10, TimeUnit.SECONDS));
+        assertFalse(watchdog.isTransientFailure());
+
+        // the child is gone (or a zombie nobody reaps)
+        File child = new File("/proc", output.get(0));
+        for (int i = 0; i < 50 && isRunning(child); i++) {
+            Thread.sleep(100);
+        }
+        assertFalse(isRunning(child));
+        assertTrue(System.currentTimeMillis() - start < 30000);
+    }
+
+    /**
+     * Validates that the descendants are found in /proc, as on Java 8 without ProcessHandle
+     */
+    @Test
+    public void descendantPidsTest() throws IOException, InterruptedException {
+        assumeTrue(new File("/bin/sh").canExecute() && new File("/proc/self").isDirectory());
+        Process process = new ProcessBuilder("/bin/sh", "-c", "sleep 60 & echo $!; wait").start();
+        try {
+            BufferedReader reader = new BufferedReader(new InputStreamReader(process.getInputStream(), "UTF-8"));
+            Long child = Long.valueOf(reader.readLine().trim());
+            List<Long> descendants = ProcessWatchdog.getDescendantPids(process);
+            assertTrue(descendants + " must contain " + child, descendants.contains(child));
+            assertFalse(descendants.contains(Long.valueOf(ProcessMetrics.getPid(process))));
+        } finally {
+            new ProcessWatchdog(process, "test", 0, 0, null, new SystemStreamLog()).killTree();
+            process.waitFor();
+        }
+    }
+
+    private boolean isRunning(File proc) throws IOException {
+        if (!proc.isDirectory()) {
+            return false;
+        }
+        try {
+            String stat = FileUtils.readFileToString(new File(proc, "stat"));
+            return !stat.substring(stat.lastIndexOf(')') + 1).trim().startsWith("Z");
+        } catch (IOException e) {
+            return false;
+        }
+    }
+
+    private static ProcessOutputPump.LineHandler collect(final List<String> output) {
+        return new ProcessOutputPump.LineHandler() {
+            public void handleLine(String line) {
+                output.add(line);
+            }
+        };
+    }
+}
@@ -0,0 +1,50 @@
+package ibm.maven.plugins.ace.utils;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Test;
+
+public class ReadBarOutputParserTest {
+
+    @Test
+    public void getIndentationTest() {
+        assertEquals(0, ReadBarOutputParser.getIndentation(""));
+        assertEquals(0, ReadBarOutputParser.getIndentation("Test"));
+        assertEquals(3, ReadBarOutputParser.getIndentation("   Test "));
+        assertEquals(2, ReadBarOutputParser.getIndentation("  "));
+    }
+
+    /**
+     * Validates that the properties of all deployment descriptors are recognised, up to the blank line before the
+     * completion message.
+     */
+    @Test
+    public void parseTest() {
+        List<String> properties = new ArrayList<String>();
+        ReadBarOutputParser parser = new ReadBarOutputParser(properties);
+        for (String line : Arrays.asList(
+                "BIP1052I: Reading Bar file using runtime mqsireadbar...",
+                "  Deployment descriptor: not a descriptor",
+                "  App1.appzip (10/3/23 10:00 AM):",
+                "    Deployment descriptor:",
+                "      App1#Flow#additionalInstances = 0",
+                "      App1#Flow#commitCount = 1",
+                "  Lib1.libzip (10/3/23 10:00 AM):",
+                "      Lib1#Sub#ignored = 1",
+                "  Deployment descriptor:",
+                "    Lib1#Sub#startMode = Maintained",
+                "    ",
+                "  BIP8071I: Successful command completion.",
+                "  Deployment descriptor:",
+                "    After#The#end = 1")) {
+            parser.handleLine(line);
+        }
+        assertEquals(Arrays.asList("App1#Flow#additionalInstances = 0", "App1#Flow#commitCount = 1", "Lib1#Sub#startMode = Maintained"),
+                properties);
+        assertEquals(3, parser.getPropertyCount());
+    }
+}
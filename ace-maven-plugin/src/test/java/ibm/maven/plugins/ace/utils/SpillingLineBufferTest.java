@@ -0,0 +1,82 @@
+package ibm.maven.plugins.ace.utils;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.UUID;
+
+import org.apache.commons.io.FileUtils;
+import org.junit.Test;
+
+public class SpillingLineBufferTest {
+
+    /**
+     * Validates that small output stays in memory.
+     */
+    @Test
+    public void inMemoryTest() {
+        SpillingLineBuffer buffer = new SpillingLineBuffer(100, null);
+        buffer.handleLine("line 1");
+        buffer.handleLine("line 2");
+        assertFalse(buffer.isSpilled());
+        assertEquals(Arrays.asList("line 1", "line 2"), toList(buffer));
+        buffer.close();
+    }
+
+    /**
+     * Validates that the lines exceeding the budget are spilled to a file, read back in order and deleted on close.
+     */
+    @Test
+    public void spillTest() throws IOException, InterruptedException {
+        File tmpDir = new File("target", UUID.randomUUID().toString());
+        try {
+            StringBuilder output = new StringBuilder();
+            List<String> expected = new ArrayList<String>();
+            for (int i = 0; i < 1000; i++) {
+                output.append("line ").append(i).append('\n');
+                expected.add("line " + i);
+            }
+
+            SpillingLineBuffer buffer = new SpillingLineBuffer(50, tmpDir);
+            ProcessOutputPump pump = ProcessOutputPump.start(new ByteArrayInputStream(output.toString().getBytes("UTF-8")), buffer);
+            pump.await();
+
+            assertTrue(buffer.isSpilled());
+            assertEquals(1000, buffer.getLineCount());
+            assertEquals(1, tmpDir.list().length);
+
+            // an iterator sees the lines added before it was created only
+            Iterator<String> iterator = buffer.iterator();
+            buffer.handleLine("line 1000");
+            List<String> lines = new ArrayList<String>();
+            while (iterator.hasNext()) {
+                lines.add(iterator.next());
+            }
+            assertEquals(expected, lines);
+
+            expected.add("line 1000");
+            assertEquals(expected, toList(buffer));
+
+            buffer.close();
+            assertEquals(0, tmpDir.list().length);
+        } finally {
+            FileUtils.deleteDirectory(tmpDir);
+        }
+    }
+
+    private List<String> toList(Iterable<String> lines) {
+        List<String> list = new ArrayList<String>();
+        for (String line : lines) {
+            list.add(line);
+        }
+        return list;
+    }
+}
@@ -0,0 +1,57 @@
+package ibm.maven.plugins.ace.utils;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.Map;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+/**
+ * Builds the zip files, bar files and broker descriptors used as test input.
+ */
+public class TestZips {
+
+    private TestZips() {
+    }
+
+    /**
+     * @param entries the names and contents of the entries, in order
+     * @return the zip file
+     */
+    public static byte[] zip(Map<String, byte[]> entries) throws IOException {
+        ByteArrayOutputStream bos = new ByteArrayOutputStream();
+        ZipOutputStream zos = new ZipOutputStream(bos);
+        for (Map.Entry<String, byte[]> entry : entries.entrySet()) {
+            zos.putNextEntry(new ZipEntry(entry.getKey()));
+            zos.write(entry.getValue());
+            zos.closeEntry();
+        }
+        zos.close();
+        return bos.toByteArray();
+    }
+
+    /**
+     * @param namesAndContents the name (a String) and contents (a byte[]) of each entry, in order
+     * @return the zip file
+     */
+    public static byte[] zip(Object... namesAndContents) throws IOException {
+        ByteArrayOutputStream bos = new ByteArrayOutputStream();
+        ZipOutputStream zos = new ZipOutputStream(bos);
+        for (int i = 0; i < namesAndContents.length; i += 2) {
+            zos.putNextEntry(new ZipEntry((String) namesAndContents[i]));
+            zos.write((byte[]) namesAndContents[i + 1]);
+            zos.closeEntry();
+        }
+        zos.close();
+        return bos.toByteArray();
+    }
+
+    /**
+     * @param properties the ConfigurableProperty elements
+     * @return a broker.xml describing a message flow with the properties
+     */
+    public static byte[] descriptor(String properties) throws IOException {
+        return ("<?xml version=\"1.0\" encoding=\"UTF-8\"?><Broker><CompiledMessageFlow name=\"x\">" + properties + "</CompiledMessageFlow></Broker>")
+                .getBytes("UTF-8");
+    }
+}
@@ -0,0 +1,231 @@
+package ibm.maven.plugins.ace.utils;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketTimeoutException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Properties;
+import java.util.UUID;
+
+import org.apache.commons.io.FileUtils;
+import org.apache.maven.plugin.logging.SystemStreamLog;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class ToolkitDaemonClientTest {
+
+    private File baseDir;
+
+    private File portFile;
+
+    private ServerSocket serverSocket;
+
+    private final List<String> receivedArgs = Collections.synchronizedList(new ArrayList<String>());
+
+    @Before
+    public void setUp() {
+        baseDir = new File("target", UUID.randomUUID().toString());
+        baseDir.mkdirs();
+        portFile = new File(baseDir, "daemon.port");
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        if (serverSocket != null) {
+            serverSocket.close();
+        }
+        FileUtils.deleteDirectory(baseDir);
+    }
+
+    /**
+     * Validates the health check and the builds of a running daemon, including a failed one
+     */
+    @Test
+    public void buildTest() throws Exception {
+        startStandIn("secret");
+        ToolkitDaemonClient client = new ToolkitDaemonClient(portFile, 2000, new SystemStreamLog());
+        assertTrue(client.ping());
+        assertTrue(client.ensureRunning(null, null, 60, 1000));
+
+        File bar = new File(baseDir, "test.bar");
+        assertEquals(0, client.build(baseDir, Arrays.asList("-data", baseDir.getPath(), "-b", bar.getPath(), "-a", "App 1")));
+        assertTrue(bar.isFile());
+        assertEquals(Arrays.asList("-data", baseDir.getPath(), "-b", bar.getPath(), "-a", "App 1"), receivedArgs);
+
+        // the stand-in fails builds without -b
+        assertEquals(1, client.build(baseDir, Arrays.asList("-data", baseDir.getPath())));
+    }
+
+    /**
+     * Validates that a daemon refusing the token is reported, so that mqsicreatebar is executed instead
+     */
+    @Test
+    public void wrongTokenTest() throws Exception {
+        startStandIn("secret");
+        writePortFile(portFile, serverSocket.getLocalPort(), "wrong");
+        ToolkitDaemonClient client = new ToolkitDaemonClient(portFile, 2000, new SystemStreamLog());
+        assertFalse(client.ping());
+        try {
+            client.build(baseDir, Arrays.asList("-b", "test.bar"));
+            fail("a refused build must be reported, so that mqsicreatebar is used instead");
+        } catch (IOException e) {
+            // expected
+        }
+    }
+
+    /**
+     * Validates that a missing or stale daemon is reported if none may be started
+     */
+    @Test
+    public void noDaemonTest() throws Exception {
+        ToolkitDaemonClient client = new ToolkitDaemonClient(portFile, 500, new SystemStreamLog());
+        assertFalse(client.ping());
+        assertFalse(client.ensureRunning(Collections.<String> emptyList(), null, 60, 1000));
+
+        // a stale port file of a daemon that exited
+        ServerSocket closed = new ServerSocket(0, 1, InetAddress.getLoopbackAddress());
+        closed.close();
+        writePortFile(portFile, closed.getLocalPort(), "secret");
+        assertFalse(client.ping());
+        try {
+            client.build(baseDir, Arrays.asList("-b", "test.bar"));
+            fail("a missing daemon must be reported, so that mqsicreatebar is used instead");
+        } catch (IOException e) {
+            // expected
+        }
+    }
+
+    /**
+     * Validates that a daemon is started if none is running, and that it exits by itself once idle
+     */
+    @Test(timeout = 60000)
+    public void startTest() throws Exception {
+        List<String> command = Arrays.asList(new File(System.getProperty("java.home"), "bin/java").getAbsolutePath(), "-cp",
+                System.getProperty("java.class.path"), StandInDaemon.class.getName());
+        ToolkitDaemonClient client = new ToolkitDaemonClient(portFile, 2000, new SystemStreamLog());
+        assertTrue(client.ensureRunning(command, baseDir, 2, 30000));
+
+        File bar = new File(baseDir, "test.bar");
+        assertEquals(0, client.build(baseDir, Arrays.asList("-data", baseDir.getPath(), "-b", bar.getPath())));
+        assertTrue(bar.isFile());
+        // the running daemon is used
+        assertTrue(client.ensureRunning(command, baseDir, 2, 30000));
+
+        Thread.sleep(4000);
+        assertFalse(client.ping());
+    }
+
+    /**
+     * The toolkit daemon stand-in as a process of its own, as started by ToolkitDaemonClient.
+     */
+    public static final class StandInDaemon {
+
+        public static void main(String[] args) throws IOException {
+            List<String> options = Arrays.asList(args);
+            File portFile = new File(options.get(options.indexOf("--port-file") + 1));
+            int idleTimeoutMillis = Integer.parseInt(options.get(options.indexOf("--idle-timeout") + 1)) * 1000;
+            ServerSocket serverSocket = new ServerSocket(0, 10, InetAddress.getLoopbackAddress());
+            try {
+                serverSocket.setSoTimeout(idleTimeoutMillis);
+                writePortFile(portFile, serverSocket.getLocalPort(), "started");
+                while (true) {
+                    Socket socket = serverSocket.accept();
+                    try {
+                        handle(socket, "started", new ArrayList<String>());
+                    } finally {
+                        socket.close();
+                    }
+                }
+            } catch (SocketTimeoutException e) {
+                // idle for the idle timeout
+            } finally {
+                serverSocket.close();
+            }
+        }
+    }
+
+    /**
+     * A stand-in for the toolkit daemon that "builds" a bar by creating the file given with -b.
+     */
+    private void startStandIn(final String token) throws IOException {
+        serverSocket = new ServerSocket(0, 10, InetAddress.getLoopbackAddress());
+        Thread thread = new Thread("toolkit daemon stand-in") {
+            @Override
+            public void run() {
+                while (!serverSocket.isClosed()) {
+                    try {
+                        Socket socket = serverSocket.accept();
+                        try {
+                            handle(socket, token, receivedArgs);
+                        } finally {
+                            socket.close();
+                        }
+                    } catch (IOException e) {
+                        // closed by tearDown
+                    }
+                }
+            }
+        };
+        thread.setDaemon(true);
+        thread.start();
+        writePortFile(portFile, serverSocket.getLocalPort(), token);
+    }
+
+    private static void handle(Socket socket, String token, List<String> receivedArgs) throws IOException {
+        BufferedReader reader = new BufferedReader(new InputStreamReader(socket.getInputStream(), "UTF-8"));
+        Writer writer = new OutputStreamWriter(socket.getOutputStream(), "UTF-8");
+        if (!token.equals(reader.readLine())) {
+            writer.write("DENIED\n");
+        } else if ("PING".equals(reader.readLine())) {
+            writer.write("PONG\n");
+        } else {
+            List<String> args = new ArrayList<String>();
+            String line;
+            while ((line = reader.readLine()) != null && !"END".equals(line)) {
+                if (line.startsWith("ARG ")) {
+                    args.add(line.substring(4));
+                }
+            }
+            writer.write("ACCEPTED\nOUT Building\n");
+            int bar = args.indexOf("-b");
+            if (bar >= 0) {
+                receivedArgs.addAll(args);
+                FileUtils.touch(new File(args.get(bar + 1)));
+                writer.write("OUT Done\nEXIT 0\n");
+            } else {
+                writer.write("EXIT 1\n");
+            }
+        }
+        writer.flush();
+    }
+
+    private static void writePortFile(File portFile, int port, String token) throws IOException {
+        Properties daemon = new Properties();
+        daemon.setProperty("port", String.valueOf(port));
+        daemon.setProperty("token", token);
+        OutputStream os = new FileOutputStream(portFile);
+        try {
+            daemon.store(os, null);
+        } finally {
+            os.close();
+        }
+    }
+}
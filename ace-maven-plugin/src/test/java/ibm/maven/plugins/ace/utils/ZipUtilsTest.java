@@ -0,0 +1,133 @@
+package ibm.maven.plugins.ace.utils;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.Random;
+import java.util.UUID;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+import java.util.zip.ZipInputStream;
+import java.util.zip.ZipOutputStream;
+
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.io.IOUtils;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class ZipUtilsTest {
+
+    private File baseDir;
+
+    private File zipFile;
+
+    private byte[] flow;
+
+    @Before
+    public void setUp() throws IOException {
+        baseDir = new File("target", UUID.randomUUID().toString());
+        baseDir.mkdirs();
+
+        byte[] jar = new byte[100000];
+        new Random(1).nextBytes(jar);
+        flow = "<flow/>".getBytes("UTF-8");
+
+        zipFile = new File(baseDir, "test.bar");
+        ZipOutputStream zos = new ZipOutputStream(new FileOutputStream(zipFile));
+        zos.putNextEntry(new ZipEntry("lib/"));
+        zos.closeEntry();
+        zos.putNextEntry(new ZipEntry("lib/javacompute_Flow1.jar"));
+        zos.write(jar);
+        zos.closeEntry();
+        zos.putNextEntry(new ZipEntry("other.jar"));
+        zos.write(jar);
+        zos.closeEntry();
+        zos.putNextEntry(new ZipEntry("com/example/Flow1.msgflow"));
+        zos.write(flow);
+        zos.closeEntry();
+        zos.close();
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        FileUtils.deleteDirectory(baseDir);
+    }
+
+    @Test
+    public void removeFilesTest() throws IOException {
+        long length = zipFile.length();
+        long removed = ZipUtils.removeFiles(zipFile, "**/javacompute_**.jar,**/jplugin2_**.jar");
+        assertTrue("removed " + removed, removed > 100000);
+        assertEquals(length - removed, zipFile.length());
+
+        ZipFile zip = new ZipFile(zipFile);
+        try {
+            assertNull(zip.getEntry("lib/javacompute_Flow1.jar"));
+            assertNotNull(zip.getEntry("lib/"));
+            assertNotNull(zip.getEntry("other.jar"));
+            assertArrayEquals(flow, IOUtils.toByteArray(zip.getInputStream(zip.getEntry("com/example/Flow1.msgflow"))));
+        } finally {
+            zip.close();
+        }
+
+        // top level jars match **/*.jar as well
+        ZipUtils.removeFiles(zipFile, "**/*.jar");
+        zip = new ZipFile(zipFile);
+        try {
+            assertNull(zip.getEntry("other.jar"));
+            assertEquals(2, zip.size());
+        } finally {
+            zip.close();
+        }
+        assertFalse(new File(baseDir, "test.bar.tmp").exists());
+    }
+
+    @Test
+    public void removeNothingTest() throws IOException {
+        long lastModified = zipFile.lastModified();
+        assertEquals(0, ZipUtils.removeFiles(zipFile, "**/*.class"));
+        assertEquals(lastModified, zipFile.lastModified());
+        assertEquals(1, baseDir.list().length);
+    }
+
+    @Test
+    public void removeFilesFromNestedArchivesTest() throws IOException {
+        // an application with a nested library, both carrying a generated jar
+        byte[] lib = TestZips.zip("lib/javacompute_Sub.jar", new byte[1000], "com/example/Sub.subflow", flow);
+        byte[] otherLib = TestZips.zip("com/example/Other.subflow", flow);
+        byte[] app = TestZips.zip("javacompute_Flow1.jar", new byte[1000], "lib1.libzip", lib, "lib2.libzip", otherLib, "com/example/Flow1.msgflow", flow);
+        File bar = new File(baseDir, "nested.bar");
+        FileUtils.writeByteArrayToFile(bar, TestZips.zip("app1.appzip", app));
+
+        // without descending into nested archives there's nothing to remove
+        assertEquals(0, ZipUtils.removeFiles(bar, "**/javacompute_**.jar", false));
+
+        assertTrue(ZipUtils.removeFiles(bar, "**/javacompute_**.jar", true) > 0);
+        ZipFile zip = new ZipFile(bar);
+        try {
+            ZipInputStream appStream = new ZipInputStream(zip.getInputStream(zip.getEntry("app1.appzip")));
+            ZipEntry entry;
+            while ((entry = appStream.getNextEntry()) != null) {
+                assertFalse(entry.getName(), entry.getName().endsWith(".jar"));
+                if ("lib1.libzip".equals(entry.getName())) {
+                    ZipInputStream libStream = new ZipInputStream(appStream);
+                    assertEquals("com/example/Sub.subflow", libStream.getNextEntry().getName());
+                    assertNull(libStream.getNextEntry());
+                } else if ("lib2.libzip".equals(entry.getName())) {
+                    // unchanged archives are copied as they are
+                    assertArrayEquals(otherLib, IOUtils.toByteArray(appStream));
+                }
+            }
+        } finally {
+            zip.close();
+        }
+    }
+}